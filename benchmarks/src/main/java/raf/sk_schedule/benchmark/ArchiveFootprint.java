@@ -0,0 +1,40 @@
+package raf.sk_schedule.benchmark;
+
+import raf.sk_schedule.ScheduleSlotsManager;
+
+/**
+ * Heap footprint of live slots compared to the compact archive, not a JMH benchmark.
+ * Run with: java -cp target/benchmarks.jar raf.sk_schedule.benchmark.ArchiveFootprint [scheduleSize] [roomCount]
+ */
+public final class ArchiveFootprint {
+
+    private ArchiveFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int scheduleSize = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int roomCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        SyntheticTimetable timetable = new SyntheticTimetable(scheduleSize, roomCount);
+        long baseline = usedHeap();
+
+        ScheduleSlotsManager manager = timetable.newManager();
+        // the generator copies every slot into the manager, so its own list is not counted twice
+        long live = usedHeap() - baseline;
+
+        manager.archiveScheduleBefore(timetable.dayAsString(timetable.getDays()));
+        long archived = usedHeap() - baseline;
+
+        System.out.println("slots:                " + scheduleSize);
+        System.out.println("live bytes per slot:  " + live / scheduleSize);
+        System.out.println("archived bytes/slot:  " + archived / scheduleSize);
+        System.out.println("archive columns/slot: " + manager.getArchivedSlotsFootprint() / scheduleSize);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+package raf.sk_schedule.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import raf.sk_schedule.index.SlotTimes;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+/**
+ * Write paths. Every booking is undone in the same invocation, so the schedule keeps its size during the run.
+ * Bookings go to the 20:30 - 21:30 window, which the generator never fills.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BookingBenchmark {
+
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(SyntheticTimetable.SEED);
+    }
+
+    @Benchmark
+    public boolean bookScheduleSlot(ScheduleState state) {
+        ScheduleSlot slot = state.timetable.slot(state.timetable.randomWorkingDay(random), 20 * 60 + 30, 21 * 60 + 30, randomRoom(state));
+        boolean booked = state.manager.bookScheduleSlot(slot);
+        state.manager.deleteScheduleSlot(slot);
+        return booked;
+    }
+
+    @Benchmark
+    public List<ScheduleSlot> isScheduleSlotAvailable(ScheduleState state) {
+        int start = (8 + random.nextInt(SyntheticTimetable.BLOCKS_PER_DAY)) * 60 + 30;
+        return state.manager.isScheduleSlotAvailable(
+                state.timetable.dayAsString(state.timetable.randomWorkingDay(random)),
+                SlotTimes.formatMinute(start), SlotTimes.formatMinute(start + 45),
+                randomRoom(state).getName());
+    }
+
+    @Benchmark
+    public boolean isAvailable(ScheduleState state) {
+        int start = (8 + random.nextInt(SyntheticTimetable.BLOCKS_PER_DAY)) * 60 + 30;
+        return state.manager.isAvailable(
+                state.timetable.dayAsString(state.timetable.randomWorkingDay(random)),
+                SlotTimes.formatMinute(start), SlotTimes.formatMinute(start + 45),
+                randomRoom(state).getName());
+    }
+
+    @Benchmark
+    public void updateRoom(ScheduleState state) {
+        // same properties again, measures relinking the room's slots through the room index
+        RoomProperties room = randomRoom(state);
+        state.manager.updateRoom(room.getName(), room);
+    }
+
+    @Benchmark
+    public void bookRepetitiveScheduleSlot(ScheduleState state, Blackhole blackhole) {
+        // one weekly series (Mondays) over the whole generated range, the overload without a mapper has no room binding
+        List<ScheduleSlot> booked = state.manager.bookRepetitiveScheduleSlot("20:30", 0, "21:30", null, 7,
+                state.timetable.dayAsString(0), state.timetable.dayAsString(state.timetable.getDays() - 1));
+        blackhole.consume(state.manager.deleteScheduleSlots(booked));
+    }
+
+    @Benchmark
+    public void bookRepetitiveScheduleSlotMapper(ScheduleState state, Blackhole blackhole) {
+        RepetitiveScheduleMapper mapper = new RepetitiveScheduleMapper.Builder()
+                .setStartTime("20:30")
+                .setEndTime("21:30")
+                .setRecurrencePeriod(7)
+                .setRecurrenceIntervalStart(parseDate(state.timetable.dayAsString(0)))
+                .setRecurrenceIntervalEnd(parseDate(state.timetable.dayAsString(state.timetable.getDays() - 1)))
+                .build();
+
+        List<ScheduleSlot> booked = state.manager.bookRepetitiveScheduleSlot(mapper);
+        blackhole.consume(state.manager.deleteScheduleSlots(booked));
+    }
+
+    private RoomProperties randomRoom(ScheduleState state) {
+        return state.timetable.getRooms().get(random.nextInt(state.timetable.getRooms().size()));
+    }
+}
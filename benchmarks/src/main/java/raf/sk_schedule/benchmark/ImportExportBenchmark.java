@@ -0,0 +1,91 @@
+package raf.sk_schedule.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.report.ImportReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole schedule CSV/JSON exports (document and streaming variants) and CSV imports into an empty schedule.
+ * Runs as single shots, exports of the bigger schedules take seconds.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportExportBenchmark {
+
+    private Path directory;
+    private String exportedCsv;
+    private String streamedCsv;
+
+    @Setup(Level.Trial)
+    public void setUp(ScheduleState state) throws IOException {
+        directory = Files.createTempDirectory("schedule-benchmark");
+        exportedCsv = directory.resolve("import.csv").toString();
+        streamedCsv = directory.resolve("import-stream.csv").toString();
+        state.manager.exportScheduleCSV(exportedCsv, null, null);
+        state.manager.streamScheduleCSV(streamedCsv, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.toFile().delete();
+    }
+
+    @Benchmark
+    public int exportScheduleCSV(ScheduleState state) {
+        return state.manager.exportScheduleCSV(directory.resolve("export.csv").toString(), null, null);
+    }
+
+    @Benchmark
+    public int exportScheduleJSON(ScheduleState state) {
+        return state.manager.exportScheduleJSON(directory.resolve("export.json").toString(), null, null);
+    }
+
+    @Benchmark
+    public int streamScheduleCSV(ScheduleState state) {
+        return state.manager.streamScheduleCSV(directory.resolve("stream.csv").toString(), null, null);
+    }
+
+    @Benchmark
+    public int streamScheduleJSON(ScheduleState state) {
+        return state.manager.streamScheduleJSON(directory.resolve("stream.json").toString(), null, null);
+    }
+
+    @Benchmark
+    public int loadScheduleSCV(EmptySchedule empty) {
+        return empty.manager.loadScheduleSCV(exportedCsv);
+    }
+
+    @Benchmark
+    public ImportReport importScheduleCSVChunked(EmptySchedule empty) {
+        return empty.manager.importScheduleCSVChunked(streamedCsv);
+    }
+
+    /**
+     * Fresh manager with the rooms of the timetable and no slots, built before every import so the import alone is measured.
+     */
+    @State(Scope.Thread)
+    public static class EmptySchedule {
+
+        public ScheduleSlotsManager manager;
+
+        @Setup(Level.Invocation)
+        public void setUp(ScheduleState state) {
+            manager = new ScheduleSlotsManager();
+            state.timetable.getRooms().forEach(manager::addRoom);
+        }
+    }
+}
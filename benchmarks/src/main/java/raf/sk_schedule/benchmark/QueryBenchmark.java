@@ -0,0 +1,86 @@
+package raf.sk_schedule.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.FreeScheduleSlot;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.query.EarliestFitQuery;
+import raf.sk_schedule.snapshot.ScheduleVersion;
+import raf.sk_schedule.util.filter.CriteriaFilter;
+import raf.sk_schedule.util.filter.SearchCriteria;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths: one week windows (what dashboards poll, live and from a snapshot), searches, earliest fit searches and room look ups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark {
+
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(SyntheticTimetable.SEED);
+    }
+
+    @Benchmark
+    public List<ScheduleSlot> getScheduleWeek(ScheduleState state) {
+        int day = random.nextInt(Math.max(1, state.timetable.getDays() - 6));
+        return state.manager.getSchedule((Object) state.timetable.dayAsString(day), (Object) state.timetable.dayAsString(day + 6));
+    }
+
+    @Benchmark
+    public List<ScheduleSlot> snapshotScheduleWeek(ScheduleState state) {
+        int day = random.nextInt(Math.max(1, state.timetable.getDays() - 6));
+        try (ScheduleVersion snapshot = state.manager.openSnapshot()) {
+            return snapshot.getSchedule(state.timetable.dayAsString(day), state.timetable.dayAsString(day + 6));
+        }
+    }
+
+    @Benchmark
+    public List<ScheduleSlot> searchScheduleSlots(ScheduleState state) {
+        int day = random.nextInt(Math.max(1, state.timetable.getDays() - 6));
+        SearchCriteria criteria = new SearchCriteria.Builder()
+                .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, state.timetable.dayAsString(day))
+                .setCriteria(CriteriaFilter.UPPER_BOUND_DATE_KEY, state.timetable.dayAsString(day + 6))
+                .build();
+        return state.manager.searchScheduleSlots(criteria);
+    }
+
+    @Benchmark
+    public List<FreeScheduleSlot> getFreeScheduleSlotsDay(ScheduleState state) {
+        String day = state.timetable.dayAsString(state.timetable.randomWorkingDay(random));
+        return state.manager.getFreeScheduleSlots(day, day);
+    }
+
+    @Benchmark
+    public List<FreeScheduleSlot> findEarliestFits(ScheduleState state) {
+        int day = random.nextInt(Math.max(1, state.timetable.getDays() - 13));
+        EarliestFitQuery query = new EarliestFitQuery.Builder()
+                .setCapacity(60, -1)
+                .setHasProjector(Boolean.TRUE)
+                .setDuration(90)
+                .setDateWindow(state.timetable.dayAsString(day), state.timetable.dayAsString(day + 13))
+                .setLimit(10)
+                .build();
+        return state.manager.findEarliestFits(query);
+    }
+
+    @Benchmark
+    public List<RoomProperties> roomLookUpCapacityRange(ScheduleState state) {
+        return state.manager.roomLookUp(null, 60, -1, -1, Boolean.TRUE, null);
+    }
+
+    @Benchmark
+    public List<RoomProperties> roomLookUpExact(ScheduleState state) {
+        return state.manager.roomLookUp(null, 60, -1, null, null);
+    }
+}
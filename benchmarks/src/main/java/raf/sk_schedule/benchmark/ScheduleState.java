@@ -0,0 +1,28 @@
+package raf.sk_schedule.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import raf.sk_schedule.ScheduleSlotsManager;
+
+/**
+ * Shared benchmark state: a manager filled with a synthetic timetable of the parameterized size.
+ */
+@State(Scope.Benchmark)
+public class ScheduleState {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int scheduleSize;
+
+    @Param({"50", "500"})
+    public int roomCount;
+
+    public SyntheticTimetable timetable;
+    public ScheduleSlotsManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        timetable = new SyntheticTimetable(scheduleSize, roomCount);
+        manager = timetable.newManager();
+        // free slots are searched between 08:00 and 20:00, the same window the generator fills
+        manager.setWorkingHours("08:00", "20:00");
+    }
+}
@@ -0,0 +1,131 @@
+package raf.sk_schedule.benchmark;
+
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.index.SlotTimes;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+/**
+ * Reproducible timetable generator. The same seed, size and room count always produce the same rooms and slots,
+ * so results of different versions can be compared.
+ * <p>
+ * Every room gets up to {@link #BLOCKS_PER_DAY} non overlapping blocks per day between 08:00 and 20:00, each block
+ * starts on the full hour and is between 45 and 60 minutes long. Working days (Monday to Friday) are filled
+ * one after another starting with {@link #FIRST_DAY}, a Monday, until the requested number of slots is reached.
+ * Nothing is ever booked after 20:00, benchmarks use that window for bookings that must not collide.
+ */
+public final class SyntheticTimetable {
+
+    public static final String FIRST_DAY = "2024-01-01";
+    public static final int BLOCKS_PER_DAY = 12;
+    public static final long SEED = 0x5CEDL;
+
+    private final List<RoomProperties> rooms;
+    private final List<ScheduleSlot> slots;
+    private final long firstDay;
+    private final int days;
+
+    public SyntheticTimetable(int scheduleSize, int roomCount) {
+        Random random = new Random(SEED);
+        this.firstDay = SlotTimes.epochDay(parseDate(FIRST_DAY));
+
+        rooms = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            rooms.add(new RoomProperties.Builder()
+                    .setName("Room-" + i)
+                    .setCapacity(20 + random.nextInt(10) * 10)
+                    .setHasComputers(random.nextInt(3) == 0 ? 20 + random.nextInt(20) : 0)
+                    .setHasProjector(random.nextBoolean())
+                    .build());
+        }
+
+        slots = new ArrayList<>(scheduleSize);
+        int day = 0;
+        while (slots.size() < scheduleSize) {
+            if (!isWorkingDay(day)) {
+                day++;
+                continue;
+            }
+
+            for (int room = 0; room < roomCount && slots.size() < scheduleSize; room++) {
+                for (int block = 0; block < BLOCKS_PER_DAY && slots.size() < scheduleSize; block++) {
+                    // leave some blocks empty, so free slot and availability queries have something to find
+                    if (random.nextInt(4) == 0)
+                        continue;
+
+                    int start = (8 + block) * 60;
+                    slots.add(slot(day, start, start + 45 + random.nextInt(16), rooms.get(room)));
+                }
+            }
+            day++;
+        }
+        this.days = day;
+    }
+
+    public ScheduleSlotsManager newManager() {
+        ScheduleSlotsManager manager = new ScheduleSlotsManager();
+        rooms.forEach(manager::addRoom);
+        for (ScheduleSlot slot : slots)
+            manager.bookScheduleSlot(copy(slot));
+        return manager;
+    }
+
+    public List<RoomProperties> getRooms() {
+        return rooms;
+    }
+
+    public List<ScheduleSlot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Number of days covered by the generated slots.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    public boolean isWorkingDay(int day) {
+        return day % 7 < 5;
+    }
+
+    /**
+     * Random working day inside the generated range.
+     */
+    public int randomWorkingDay(Random random) {
+        int day;
+        do {
+            day = random.nextInt(days);
+        } while (!isWorkingDay(day));
+        return day;
+    }
+
+    public String dayAsString(int day) {
+        return formatDate(SlotTimes.dateOfEpochDay(firstDay + day));
+    }
+
+    public ScheduleSlot slot(int day, int startMinute, int endMinute, RoomProperties room) {
+        return new ScheduleSlot.Builder()
+                .setDate(SlotTimes.dateOfEpochDay(firstDay + day))
+                .setStartTime(SlotTimes.formatMinute(startMinute))
+                .setEndTime(SlotTimes.formatMinute(endMinute))
+                .setLocation(room)
+                .build();
+    }
+
+    private static ScheduleSlot copy(ScheduleSlot slot) {
+        return new ScheduleSlot.Builder()
+                .setDate(slot.getDate())
+                .setStartTime(slot.getStartTime())
+                .setEndTime(slot.getEndTime())
+                .setLocation(slot.getLocation())
+                .build();
+    }
+}
@@ -2,63 +2,246 @@ package raf.sk_schedule;
 
 import raf.sk_schedule.api.Constants.WeekDay;
 import raf.sk_schedule.api.ScheduleManagerAdapter;
+import raf.sk_schedule.concurrent.RoomLockTable;
 import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.export.ChangeFeedExporter;
+import raf.sk_schedule.export.StreamingScheduleExporter;
+import raf.sk_schedule.importer.ChunkedScheduleImporter;
+import raf.sk_schedule.index.ChronologicalSlotStore;
+import raf.sk_schedule.index.CompactSlotArchive;
+import raf.sk_schedule.index.OccupancyBitmap;
+import raf.sk_schedule.index.RoomDayIndex;
+import raf.sk_schedule.index.RoomLookupIndex;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.journal.ScheduleChange;
+import raf.sk_schedule.journal.ScheduleChangeLog;
+import raf.sk_schedule.journal.ScheduleJournal;
+import raf.sk_schedule.journal.ScheduleMutationListener;
+import raf.sk_schedule.metrics.ScheduleMetricsListener;
+import raf.sk_schedule.metrics.ScheduleOperation;
 import raf.sk_schedule.model.location_node.RoomProperties;
 import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
 import raf.sk_schedule.model.schedule_node.FreeScheduleSlot;
 import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.query.EarliestFitQuery;
+import raf.sk_schedule.query.FreeSlotFinder;
+import raf.sk_schedule.query.QueryPlan;
+import raf.sk_schedule.query.QueryPlanner;
+import raf.sk_schedule.query.QuerySource;
+import raf.sk_schedule.query.ScheduleQuery;
+import raf.sk_schedule.recurrence.RecurrenceIndex;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+import raf.sk_schedule.report.ConflictReport;
+import raf.sk_schedule.report.ImportReport;
+import raf.sk_schedule.report.ScheduleConflictException;
+import raf.sk_schedule.snapshot.ScheduleVersion;
+import raf.sk_schedule.snapshot.VersionRegistry;
 import raf.sk_schedule.util.exporter.ScheduleExporterCSV;
 import raf.sk_schedule.util.exporter.ScheduleExporterJSON;
-import raf.sk_schedule.util.filter.CriteriaFilter;
 import raf.sk_schedule.util.filter.SearchCriteria;
 import raf.sk_schedule.util.importer.ScheduleImporter;
-import raf.sk_schedule.util.sort.ScheduleSlotSorter;
 
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static raf.sk_schedule.index.RoomDayIndex.roomKey;
+import static raf.sk_schedule.index.SlotTimes.dateOfEpochDay;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
 import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
 import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
-import static raf.sk_schedule.util.filter.CriteriaFilter.WEEK_DAY_KEY;
 import static raf.sk_schedule.util.persistence.ScheduleFileOperationUnit.initializeFile;
 import static raf.sk_schedule.util.persistence.ScheduleFileOperationUnit.writeStringToFile;
-import static raf.sk_schedule.util.sort.ScheduleSlotComparator.ASCENDING_ORDER;
 
+/*
+ Thread safety: slots of different rooms never interact, so every booking, move and delete locks only the rooms it touches
+ (RoomLockTable, locks taken in room name order). Room properties and the room look up index are guarded by catalogLock,
+ which is always acquired after any room locks. The slot store publishes every change as a new version of a persistent tree
+ (ChronologicalSlotStore over a PersistentSlotTree), range reads and exports never lock.
+ */
 public class ScheduleSlotsManager extends ScheduleManagerAdapter {
 
     private Date startingDate;
     private Date endingDate;
-    private final List<ScheduleSlot> mySchedule;
-    private List<RepetitiveScheduleMapper> repetitiveSchedule;
+    // primary storage, slots ordered by absolute start time
+    private final ChronologicalSlotStore mySchedule;
+    // optional compact, read only storage of historical slots (days before archive.getArchivedUntil())
+    private volatile CompactSlotArchive archive;
+    // recurring bookings kept as rules, their occurrences are expanded only when they are read
+    private final RecurrenceIndex repetitiveSchedule;
     private final Map<String, RoomProperties> rooms;
+    // per room, per day interval index used for every collision check
+    private final RoomDayIndex roomIndex;
+    // bitset index over room properties used by room look ups
+    private final RoomLookupIndex roomLookupIndex;
+    // free slots are only searched for inside the working hours
+    private volatile String workingHoursStart = "08:00";
+    private volatile String workingHoursEnd = "20:00";
+    // lock striping per room, guards the room index of each room
+    private final RoomLockTable roomLocks;
+    // guards rooms map modifications and the room look up index
+    private final StampedLock catalogLock;
+    // operation timings and counters, the no-op listener skips measuring entirely
+    private volatile ScheduleMetricsListener metrics = ScheduleMetricsListener.NOOP;
+    // notified of every applied change, under the locks of the changed rooms
+    private final List<ScheduleMutationListener> mutationListeners = new CopyOnWriteArrayList<>();
+    // publishes of the change running on this thread, delivered to the listeners once its version step is over
+    private final ThreadLocal<List<Consumer<ScheduleMutationListener>>> deferredPublishes = new ThreadLocal<>();
+    // snapshot + write-ahead log, null until openJournal() is called
+    private volatile ScheduleJournal journal;
+    // versioned changes for incremental exports, null until enableChangeLog() is called
+    private volatile ScheduleChangeLog changeLog;
+    // chooses the index every search and filtered export reads through
+    private final QueryPlanner queryPlanner;
+    // receives the plan of every executed query, null when queries are not traced
+    private volatile Consumer<QueryPlan> queryTrace;
+    // every change is one step of the version history, snapshots read one consistent version
+    private final VersionRegistry versions = new VersionRegistry();
+    // immutable copy of the rooms map for snapshots, replaced on every catalog change
+    private volatile Map<String, RoomProperties> roomsVersion = Collections.emptyMap();
+    // days and bounds published by the owning ShardedScheduleSlotsManager, null for a manager of its own
+    private volatile Configuration followedConfiguration;
 
     public ScheduleSlotsManager() {
         super();
-        mySchedule = new ArrayList<>();
-        rooms = new HashMap<>();
+        mySchedule = new ChronologicalSlotStore();
+        archive = CompactSlotArchive.empty();
+        repetitiveSchedule = new RecurrenceIndex();
+        rooms = new ConcurrentHashMap<>();
+        roomIndex = new RoomDayIndex();
+        roomLookupIndex = new RoomLookupIndex();
+        roomLocks = new RoomLockTable();
+        catalogLock = new StampedLock();
+        queryPlanner = new QueryPlanner(new PlannerSource());
     }
 
     // TODO: still needs return counter modification
     @Override
     public int loadRoomsSCV(String csvPath) {
         Map<String, RoomProperties> roomsImport = ScheduleImporter.importRoomsCSV(csvPath);
-        rooms.putAll(roomsImport);
-        return rooms.size();
+        return writeCatalog(() -> {
+            rooms.putAll(roomsImport);
+            roomsImport.forEach(roomLookupIndex::add);
+            return rooms.size();
+        });
     }
 
     // TODO: done
     @Override
     public int loadScheduleSCV(String csvPath) {
+        return importScheduleCSV(csvPath).getAccepted().size();
+    }
+
+    /**
+     * Imports the schedule through the schedule API parser, like loadScheduleSCV, and reports what happened to every slot.
+     */
+    public ImportReport importScheduleCSV(String csvPath) {
+        try (OperationTimer timer = time(ScheduleOperation.IMPORT)) {
+            requireRooms();
+
+            List<ScheduleSlot> importedSchedule = ScheduleImporter.importScheduleCSV(csvPath, rooms);
+            ImportReport report = new ImportReport();
+            report.setRowsRead(importedSchedule.size());
+
+            // admitted a chunk at a time, the room locks and the collision sweep never span the whole file
+            for (int from = 0; from < importedSchedule.size(); from += ChunkedScheduleImporter.CHUNK_SIZE)
+                admitImported(importedSchedule.subList(from, Math.min(importedSchedule.size(), from + ChunkedScheduleImporter.CHUNK_SIZE)), report);
+            recordImport(csvPath, report.getRowsRead());
+
+            return timer.done(report);
+        }
+    }
+
+    /**
+     * Opt-in import for large files in the streaming export layout, see {@link ChunkedScheduleImporter} for the accepted columns.
+     * Parsing runs in parallel and every parsed chunk is admitted before the next ones are read,
+     * rows that can not be parsed are reported as malformed instead of failing the import.
+     */
+    public ImportReport importScheduleCSVChunked(String csvPath) {
+        try (OperationTimer timer = time(ScheduleOperation.IMPORT)) {
+            requireRooms();
+
+            ImportReport report = new ImportReport();
+            new ChunkedScheduleImporter(rooms).parse(csvPath, report, chunk -> admitImported(chunk, report));
+            recordImport(csvPath, report.getRowsRead());
+
+            return timer.done(report);
+        }
+    }
+
+    private void requireRooms() {
         if (rooms.isEmpty())
             throw new ScheduleException("Your room properties are currently empty. You need to import them first in order to bind the scheduled slots with their location.");
+    }
+
+    /**
+     * Books every imported slot that lands on an acceptable day and collides neither with the schedule
+     * nor with an earlier accepted slot of the same import. All collisions of a chunk are found in one sweep,
+     * slots of earlier chunks are already booked when the next chunk is admitted.
+     */
+    private void admitImported(List<ScheduleSlot> importedSchedule, ImportReport report) {
+
+        // day filtering of the imported slots
+        Set<WeekDay> acceptableDays = acceptableDays();
+        List<ScheduleSlot> candidates = new ArrayList<>(importedSchedule.size());
+        for (ScheduleSlot slot : importedSchedule) {
+            // archived days are closed for booking just like excluded week days
+            if (acceptableDays.contains(slot.getDayOfWeek()) && !isArchived(slot))
+                candidates.add(slot);
+            else
+                report.addRejectedByDay(slot);
+        }
 
-        List<ScheduleSlot> importedSchedule = ScheduleImporter.importScheduleCSV(csvPath, rooms);
+        // every room the import touches stays locked from the collision sweep until the slots are stored
+        roomLocks.writeAll(roomsOf(candidates), () -> change(() -> {
+            admitCandidates(candidates, report);
+            return null;
+        }));
+    }
 
-        // if u want to include day filtering
-        importedSchedule = new SearchCriteria.Builder().setCriteria(WEEK_DAY_KEY, super.acceptableDays).build().filter(new ArrayList<>(mySchedule));
-        mySchedule.addAll(importedSchedule);
+    private void admitCandidates(List<ScheduleSlot> candidates, ImportReport report) {
+        ConflictReport conflicts = new ConflictReport();
+        roomIndex.sweepConflicts(candidates, conflicts);
+        repetitiveSchedule.addConflicts(candidates, conflicts);
 
-        return importedSchedule.size();
+        // every imported slot that collides with the schedule is out
+        Set<ScheduleSlot> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ConflictReport.Conflict conflict : conflicts.getConflicts()) {
+            if (!conflict.isWithinBatch())
+                rejected.add(conflict.getRequested());
+        }
+
+        /*
+        Collisions inside the import are reported in start order of the later slot, so by the time a pair is seen
+        we already know whether the earlier slot was rejected. If it was, it does not block the later one.
+        */
+        for (ConflictReport.Conflict conflict : conflicts.getConflicts()) {
+            if (conflict.isWithinBatch() && !rejected.contains(conflict.getBooked()))
+                rejected.add(conflict.getRequested());
+        }
+
+        List<ScheduleSlot> accepted = new ArrayList<>(candidates.size());
+        for (ScheduleSlot slot : candidates) {
+            if (!rejected.contains(slot) && storeSlot(slot)) {
+                report.addAccepted(slot);
+                accepted.add(slot);
+            } else
+                report.addRejectedByCollision(slot);
+        }
+        // the slots of earlier chunks were published when their chunk was admitted
+        publishBooked(accepted);
     }
 
     // TODO: done
@@ -69,13 +252,16 @@ public class ScheduleSlotsManager extends ScheduleManagerAdapter {
 
     // TODO: done
     public void addRoom(RoomProperties roomProperties) {
+        writeCatalog(() -> {
+            if (rooms.containsKey(roomProperties.getName()))
 
-        if (rooms.containsKey(roomProperties.getName()))
-
-            throw new ScheduleException(
-                    "Room with selected name already exists, if you want to change existing room properties please use updateRoom method from the schedule api.");
+                throw new ScheduleException(
+                        "Room with selected name already exists, if you want to change existing room properties please use updateRoom method from the schedule api.");
 
-        rooms.put(roomProperties.getName(), roomProperties);
+            rooms.put(roomProperties.getName(), roomProperties);
+            roomLookupIndex.add(roomProperties.getName(), roomProperties);
+            return null;
+        });
     }
 
     // TODO: done
@@ -87,34 +273,137 @@ public class ScheduleSlotsManager extends ScheduleManagerAdapter {
     // TODO: done
     @Override
     public void updateRoom(String name, RoomProperties newProp) {
+        updateRooms(Collections.singletonMap(name, newProp));
+    }
 
-        if (!rooms.containsKey(name))
-            throw new ScheduleException("Room with a name: " + name + " does not exist in schedule.");
+    public void updateRooms(Map<String, RoomProperties> changes) {
+        /*
+        Batched room reconfiguration: old room name -> new properties, a different name in the properties renames the room.
+        Every touched room is locked once and the whole batch is one catalog write (and one schedule version),
+        the slots of each room are reached through the room index, so a room costs O(k) in its own slots.
+        */
+        Set<String> touchedRooms = new HashSet<>(changes.keySet());
+        for (RoomProperties newProp : changes.values())
+            touchedRooms.add(newProp.getName());
+
+        roomLocks.writeAll(touchedRooms, () -> writeCatalog(() -> {
+            // the whole batch is checked before anything changes
+            Set<String> newNames = new HashSet<>();
+            changes.forEach((name, newProp) -> {
+                if (!rooms.containsKey(name))
+                    throw new ScheduleException("Room with a name: " + name + " does not exist in schedule.");
+
+                if (!name.equals(newProp.getName()) && (rooms.containsKey(newProp.getName()) || !newNames.add(newProp.getName())))
+                    throw new ScheduleException("You can not change room: " + name + " to " + newProp + " because room with that name already exists.\n" +
+                            "If you really want to make this change you can change the room: " + newProp.getName() + " name to something else, than set room:. " + name + " to " + newProp.getName());
+            });
+
+            changes.forEach(this::updateRoomLocked);
+            return null;
+        }));
+    }
 
-        if (!name.equals(newProp.getName())) {
+    // caller holds the locks of the old and the new room name and the catalog lock
+    private void updateRoomLocked(String name, RoomProperties newProp) {
+        String newName = newProp.getName();
+        if (name.equals(newName)) {
+            // the slots keep their keys, each one is linked to the new properties in place
+            for (ScheduleSlot slot : roomIndex.slotsBetween(name, null, null))
+                inRoom(slot, newProp);
+            for (RecurrenceRule rule : repetitiveSchedule.rulesOf(name))
+                rule.getMappedSlots().forEach(slot -> inRoom(slot, newProp));
+            repetitiveSchedule.updateRoom(name, newProp);
+        } else {
+            // a rename changes the key of every slot of the room, each one is stored again under the new name
+            for (ScheduleSlot slot : roomIndex.removeRoom(name)) {
+                mySchedule.remove(slot);
+                inRoom(slot, newProp);
+                storeSlot(slot);
+            }
+            for (RecurrenceRule rule : repetitiveSchedule.removeRoom(name)) {
+                rule.getMappedSlots().forEach(slot -> inRoom(slot, newProp));
+                repetitiveSchedule.add(rule.inRoom(newProp));
+            }
 
-            if (rooms.containsKey(newProp.getName()))
-                throw new ScheduleException("You can not change room: " + name + " to " + newProp + " because room with that name already exists.\n" +
-                        "If you really want to make this change you can change the room: " + newProp.getName() + " name to something else, than set room:. " + name + " to " + newProp.getName());
+            rooms.remove(name);
+            roomLookupIndex.remove(name);
+            // listeners hear one rename instead of every slot deleted and booked again under a name the journal can not resolve
+            publish(listener -> listener.onRoomRenamed(name, newName));
         }
-        rooms.put(name, newProp);
+        rooms.put(newName, newProp);
+        roomLookupIndex.add(newName, newProp);
+        archive = archive.withRoom(name, newProp);
+        publish(listener -> listener.onRoomUpdated(name, newProp));
     }
 
+    public List<ScheduleSlot> cancelRoomBookings(Collection<String> roomNames, Object fromDate, Object toDate) {
+        try (OperationTimer timer = time(ScheduleOperation.DELETE_SLOT)) {
+            /*
+            Closing rooms for a period (e.g. a whole building for a week) in one batch: every booking of the rooms between
+            the dates (both inclusive, null bound is open) is removed and every rule occurrence cancelled, under one
+            acquisition of the rooms' locks and as one version. Archived days are read only and stay as they are.
+            */
+            Set<String> closedRooms = new TreeSet<>(roomNames);
+            for (String roomName : closedRooms)
+                if (!rooms.containsKey(roomName))
+                    throw new ScheduleException("There is no room with a name: " + roomName + " in schedule.");
+
+            Long fromDay = dayBound(fromDate, null);
+            Long toDay = dayBound(toDate, null);
+
+            return timer.done(roomLocks.writeAll(closedRooms, () -> change(() -> {
+                long firstLiveDay = archive.getArchivedUntil();
+                Long from = fromDay == null || fromDay < firstLiveDay ? (Long) firstLiveDay : fromDay;
+
+                List<ScheduleSlot> cancelled = new ArrayList<>();
+                List<SlotKey> occurrences = new ArrayList<>();
+                for (String roomName : closedRooms) {
+                    for (ScheduleSlot slot : roomIndex.slotsBetween(roomName, from, toDay)) {
+                        removeStoredSlot(slot);
+                        if (slot.getSharedState() != null)
+                            slot.getSharedState().removeLinkedSlot(slot);
+                        cancelled.add(slot);
+                    }
+                    for (ScheduleSlot occurrence : repetitiveSchedule.range(roomName, from, toDay)) {
+                        occurrences.add(SlotKey.of(occurrence));
+                        cancelled.add(occurrence);
+                    }
+                }
+                // every rule of the closed rooms is changed once, not once per cancelled occurrence
+                repetitiveSchedule.cancelAll(occurrences);
+                publishDeleted(cancelled);
+                return cancelled;
+            })));
+        }
+    }
 
     // TODO: done
     @Override
     public boolean deleteRoom(String roomName) {
+        // room lock first, then the catalog, the same order every other operation uses
+        return roomLocks.write(roomName, () -> writeCatalog(() -> {
 
-        if (!rooms.containsKey(roomName))
-            throw new ScheduleException("There is no room with that name in schedule.");
+            if (!rooms.containsKey(roomName))
+                throw new ScheduleException("There is no room with that name in schedule.");
 
-        // remove all the slots that are booked in that room
-        mySchedule.removeIf(slot -> slot.getLocation().equals(rooms.get(roomName)));
+            removeRoomLocked(roomName);
+            publish(listener -> listener.onRoomDeleted(roomName));
+            return true;
+        }));
+    }
+
+    // caller holds the room lock and the catalog lock
+    private void removeRoomLocked(String roomName) {
+        // remove all the slots that are booked in that room, the room index already knows exactly which ones
+        for (ScheduleSlot slot : roomIndex.removeRoom(roomName))
+            mySchedule.remove(slot);
+
+        archive = archive.withoutRoom(roomName);
+        repetitiveSchedule.removeRoom(roomName);
 
         // remove the room itself
         rooms.remove(roomName);
-
-        return true;
+        roomLookupIndex.remove(roomName);
     }
 
     // TODO: done
@@ -125,131 +414,175 @@ public class ScheduleSlotsManager extends ScheduleManagerAdapter {
 
     // TODO: done
     public List<RoomProperties> roomLookUp(String name, int capacity, int hasComputers, Boolean hasProjector, Map<String, String> attributes) {
+        // exact capacity match is a range with equal bounds
+        return roomLookUp(name, capacity, capacity, hasComputers, hasProjector, attributes);
+    }
 
-        List<RoomProperties> lookUpResult = new ArrayList<>();
-        boolean include;
-
-        // iterate through rooms
-        for (RoomProperties room : rooms.values()) {
-
-            // perform attributes lookup first if attributes are queried
-            if (attributes != null) {
-                include = true;
-                // iterate through queried attributes
-                for (String attribute : attributes.keySet()) {
-
-                    // check if the queried attributes exists inside currently iterated room and does the queried attributes values match
-                    if (room.hasAttribute(attribute) && !room.getAttribute(attribute).equals(attributes.get(attribute))) {
-                        include = false;
-                        break;
-                    }
-                }
-
-                // based on attributes names and values lookup we determine weather the room should be included in lookUp result, if not  jump to next room
-                if (!include)
-                    continue;
-
+    public List<RoomProperties> roomLookUp(String name, int minCapacity, int maxCapacity, int hasComputers, Boolean hasProjector, Map<String, String> attributes) {
+        try (OperationTimer timer = time(ScheduleOperation.ROOM_LOOKUP)) {
+            /*
+            Negative capacity bound means there is no bound on that side,
+            so roomLookUp(null, 60, -1, ...) returns every room with at least 60 seats.
+            */
+            // look ups may lazily add attribute postings, so they share the lock instead of reading optimistically
+            long stamp = catalogLock.readLock();
+            try {
+                return timer.done(roomLookupIndex.lookUp(name, minCapacity, maxCapacity, hasComputers, hasProjector, attributes));
+            } finally {
+                catalogLock.unlockRead(stamp);
             }
-
-            if ((name != null && !room.getName().equals(name))
-                    ||
-                    (capacity >= 0 && room.getCapacity() != capacity)
-                    ||
-                    (hasComputers >= 0 && room.hasComputers() != hasComputers)
-                    ||
-                    (hasProjector != null && room.hasProjector() != hasProjector)
-            )
-
-                continue;
-
-            // since we touched down this line of code the room passed the lookup query requirements and is included in lookUpResult
-            lookUpResult.add(room);
-
         }
-        return lookUpResult;
     }
 
     // TODO: done
     @Override
     public boolean bookScheduleSlot(ScheduleSlot scheduleSlot) throws ScheduleException {
-        //check if there is collision with any of the existing slots
-
-        for (ScheduleSlot curr : mySchedule) {
-            if (curr.isCollidingWith(scheduleSlot))
-                throw new ScheduleException(
-                        "The room: " + curr.getLocation().getName()
-                                + " is already scheduled between " + curr.getStartTime()
-                                + " and " + curr.getEndTime()
-                                + " on date: " + curr.getDate()
-                );
+        try (OperationTimer timer = time(ScheduleOperation.BOOK_SLOT)) {
+            if (!acceptableDays().contains(scheduleSlot.getDayOfWeek()))
+                throw new ScheduleException("Schedule slot was not booked because the day " + scheduleSlot.getDayOfWeek() + " has been excluded by schedule configuration!");
+
+            // check and insert happen under the same room lock, so no other booking can slip in between
+            return timer.done(roomLocks.write(roomKey(scheduleSlot), () -> {
+                requireLiveDay(scheduleSlot);
+
+                //check if there is collision with any of the existing slots in the same room on the same day
+                ScheduleSlot curr = firstCollision(scheduleSlot);
+                if (curr != null)
+                    throw new ScheduleException(
+                            "The room: " + curr.getLocation().getName()
+                                    + " is already scheduled between " + curr.getStartTime()
+                                    + " and " + curr.getEndTime()
+                                    + " on date: " + curr.getDate()
+                    );
+
+                // the change log hears about the booking inside the same version step
+                return change(() -> {
+                    if (!storeSlot(scheduleSlot))
+                        return false;
+                    publishBooked(Collections.singletonList(scheduleSlot));
+                    return true;
+                });
+            }));
         }
-        if (!super.acceptableDays.contains(scheduleSlot.getDayOfWeek()))
-            throw new ScheduleException("Schedule slot was not booked because the day " + scheduleSlot.getDayOfWeek() + " has been excluded by schedule configuration!");
-
-        return mySchedule.add(scheduleSlot);
     }
 
     @Override
     public List<ScheduleSlot> bookRepetitiveScheduleSlot(String startTime, int duration, String endTime, WeekDay weekDay, int recurrencePeriod, String schedulingIntervalStart, String schedulingIntervalEnd) {
-        RepetitiveScheduleMapper.Builder mapperBuilder = new RepetitiveScheduleMapper.Builder()
-                .setStartTime(startTime)
-                .setRecurrenceIntervalStart(parseDate(schedulingIntervalStart))
-                .setRecurrenceIntervalEnd(parseDate(schedulingIntervalEnd));
-
-        if (endTime != null)
-            mapperBuilder.setEndTime(endTime);
+        try (OperationTimer timer = time(ScheduleOperation.BOOK_REPETITIVE)) {
+            RepetitiveScheduleMapper.Builder mapperBuilder = new RepetitiveScheduleMapper.Builder()
+                    .setStartTime(startTime)
+                    .setRecurrenceIntervalStart(parseDate(schedulingIntervalStart))
+                    .setRecurrenceIntervalEnd(parseDate(schedulingIntervalEnd));
 
-        else if (duration > 0)
-            mapperBuilder.setDuration(duration);
+            if (endTime != null)
+                mapperBuilder.setEndTime(endTime);
 
-        if (weekDay != null)
-            mapperBuilder.setWeekDay(weekDay);
+            else if (duration > 0)
+                mapperBuilder.setDuration(duration);
 
-        if (recurrencePeriod > 0)
-            mapperBuilder.setRecurrencePeriod(recurrencePeriod);
+            if (weekDay != null)
+                mapperBuilder.setWeekDay(weekDay);
 
-        List<ScheduleSlot> mappedSlots = mapperBuilder.build().mapSchedule();
+            if (recurrencePeriod > 0)
+                mapperBuilder.setRecurrencePeriod(recurrencePeriod);
 
-        // nullptr safety handle return empty list
-        if (mappedSlots == null)
-            return new ArrayList<>();
+            List<ScheduleSlot> mappedSlots = mapperBuilder.build().mapSchedule();
 
-        //check for collisions before booking
-        for (ScheduleSlot bookedSlot : mySchedule) {
-            for (ScheduleSlot toBeBookedSlot : mappedSlots) {
-                if (bookedSlot.isCollidingWith(toBeBookedSlot)) {
-                    throw new ScheduleException("The action: scheduleRepetitiveTimeSlot could not be executed because "
-                            + "the collision with an existing slot that occupies the time window on date:" + formatDate(bookedSlot.getDate())
-                            + " between " + bookedSlot.getStartTime() + " and " + bookedSlot.getEndTime() + ".");
-                }
-                if (!super.acceptableDays.contains(toBeBookedSlot.getDayOfWeek()))
-                    throw new ScheduleException("The action: scheduleRepetitiveTimeSlot was not executed because the mapped slot landed on week day that has been excluded by schedule configuration!");
+            // nullptr safety handle return empty list
+            if (mappedSlots == null)
+                return timer.done(new ArrayList<>());
 
-            }
+            return timer.done(bookMapped(mappedSlots));
         }
-        // booking mapped slots
-        mySchedule.addAll(mappedSlots);
-        // return the slots that have been booked
-        return mappedSlots;
     }
 
     // TODO: done
     @Override
     public List<ScheduleSlot> bookRepetitiveScheduleSlot(RepetitiveScheduleMapper repetitiveScheduleMapper) {
-        List<ScheduleSlot> mappedSlots = repetitiveScheduleMapper.mapSchedule();
+        try (OperationTimer timer = time(ScheduleOperation.BOOK_REPETITIVE)) {
+            List<ScheduleSlot> mappedSlots = repetitiveScheduleMapper.mapSchedule();
+
+            if (mappedSlots == null)
+                return timer.done(new ArrayList<>());
 
-        for (ScheduleSlot bookedSlot : mySchedule) {
-            for (ScheduleSlot toBeBookedSlot : mappedSlots) {
-                if (bookedSlot.isCollidingWith(toBeBookedSlot)) {
-                    throw new ScheduleException("The action: scheduleRepetitiveTimeSlot could not be executed because "
-                            + "the collision with an existing slot that occupies the time window on date:" + formatDate(bookedSlot.getDate())
-                            + " between " + bookedSlot.getStartTime() + " and " + bookedSlot.getEndTime() + " . ");
+            return timer.done(bookMapped(mappedSlots));
+        }
+    }
+
+    /*
+     Returns the mapped slots. Those booked as a rule are values from then on: reads return equal occurrences built for
+     the read, which look ups, moves and deletes accept like the mapped slots. A rule keeps the mapped instances themselves
+     only if they carry state of their own, see RecurrenceRule.
+     */
+    private List<ScheduleSlot> bookMapped(List<ScheduleSlot> mappedSlots) {
+        // evenly spaced occurrences of one time window in one room are kept as a single rule instead of separate slots
+        RecurrenceRule rule = RecurrenceRule.of(mappedSlots);
+
+        return roomLocks.writeAll(roomsOf(mappedSlots), () -> {
+            //check for collisions before booking
+            requireNoConflicts(mappedSlots, rule);
+
+            // booking mapped slots, the whole series is one version
+            change(() -> {
+                if (rule != null) {
+                    repetitiveSchedule.add(rule);
+                    publish(listener -> listener.onRuleBooked(rule));
+                } else {
+                    mappedSlots.forEach(this::storeSlot);
+                    publishBooked(mappedSlots);
                 }
-            }
+                return null;
+            });
+            // return the slots that have been booked
+            return mappedSlots;
+        });
+    }
+
+    public ConflictReport detectConflicts(RepetitiveScheduleMapper repetitiveScheduleMapper) {
+        List<ScheduleSlot> mappedSlots = repetitiveScheduleMapper.mapSchedule();
+        List<ScheduleSlot> toBeBooked = mappedSlots == null ? new ArrayList<>() : mappedSlots;
+        RecurrenceRule rule = RecurrenceRule.of(toBeBooked);
+
+        try (OperationTimer timer = time(ScheduleOperation.DETECT_CONFLICTS)) {
+            return timer.done(roomLocks.readAll(roomsOf(toBeBooked), () -> detectConflictsLocked(toBeBooked, rule)));
+        }
+    }
+
+    public ConflictReport detectConflicts(List<ScheduleSlot> toBeBooked) {
+        try (OperationTimer timer = time(ScheduleOperation.DETECT_CONFLICTS)) {
+            return timer.done(roomLocks.readAll(roomsOf(toBeBooked), () -> detectConflictsLocked(toBeBooked, null)));
+        }
+    }
+
+    /**
+     * Caller holds the locks of every room in the batch. If the batch are the occurrences of a rule (not null),
+     * it is compared with the stored rules arithmetically instead of slot by slot.
+     */
+    private ConflictReport detectConflictsLocked(List<ScheduleSlot> toBeBooked, RecurrenceRule asRule) {
+        ConflictReport report = new ConflictReport();
+
+        // week day check is done once per slot instead of once per (booked, requested) pair, archived days count as excluded
+        Set<WeekDay> acceptableDays = acceptableDays();
+        for (ScheduleSlot slot : toBeBooked) {
+            if (!acceptableDays.contains(slot.getDayOfWeek()) || isArchived(slot))
+                report.addExcludedDaySlot(slot);
         }
 
-        mySchedule.addAll(mappedSlots);
-        return mappedSlots;
+        // single sweep per room and day against the already booked slots
+        roomIndex.sweepConflicts(toBeBooked, report);
+
+        if (asRule != null)
+            repetitiveSchedule.addConflicts(asRule, toBeBooked, report);
+        else
+            repetitiveSchedule.addConflicts(toBeBooked, report);
+        return report;
+    }
+
+    private void requireNoConflicts(List<ScheduleSlot> toBeBooked, RecurrenceRule asRule) {
+        ConflictReport report = detectConflictsLocked(toBeBooked, asRule);
+        if (!report.isClean())
+            throw new ScheduleConflictException("The action: scheduleRepetitiveTimeSlot could not be executed because "
+                    + "some of the mapped slots collide with the schedule or land on excluded week days.", report);
     }
 
     @Override
@@ -263,77 +596,211 @@ public class ScheduleSlotsManager extends ScheduleManagerAdapter {
             date1 = (Date) date;
         else throw new ScheduleException("Argument date should be a String or java util Date object!");
 
-        for (ScheduleSlot slot : mySchedule) {
-            if (slot.getDate().equals(date1) &&
-                    slot.getStartTime().equals(startTime) &&
-                    slot.getEndTime().equals(endTime) &&
-                    slot.getLocation().getName().equals(location))
-                return slot;
-        }
-        return null;
+        // slots are keyed by exactly these four properties
+        SlotKey key = SlotKey.of(date1, startTime, endTime, location);
+        CompactSlotArchive archived = archive;
+        if (archived.isArchived(key.getDay()))
+            return archived.get(key);
+
+        ScheduleSlot slot = mySchedule.get(key);
+        if (slot != null)
+            return slot;
+
+        RecurrenceRule rule = repetitiveSchedule.ruleOf(key);
+        return rule == null ? null : rule.occurrence(rule.indexOf(key));
     }
 
 
     // TODO: done
     @Override
     public List<ScheduleSlot> deleteScheduleSlot(ScheduleSlot timeSlot) throws ScheduleException {
-        List<ScheduleSlot> removedSlots = new ArrayList<>();
-        for (ScheduleSlot slot : mySchedule) {
-            if (slot.equals(timeSlot)) {
-                mySchedule.remove(slot);
-                if (slot.getSharedState() != null)
-                    slot.getSharedState().removeLinkedSlot(slot);
-                removedSlots.add(slot);
-                return removedSlots;
-            }
+        try (OperationTimer timer = time(ScheduleOperation.DELETE_SLOT)) {
+            // a missing slot still counts as a (failed) delete
+            return timer.done(roomLocks.write(roomKey(timeSlot), () -> change(() -> {
+                requireLiveDay(timeSlot);
+
+                List<ScheduleSlot> removedSlots = new ArrayList<>();
+                ScheduleSlot slot = mySchedule.get(SlotKey.of(timeSlot));
+                if (slot != null && slot.equals(timeSlot)) {
+                    removeStoredSlot(slot);
+                    if (slot.getSharedState() != null)
+                        slot.getSharedState().removeLinkedSlot(slot);
+                    removedSlots.add(slot);
+                    publishDeleted(removedSlots);
+                    return removedSlots;
+                }
+
+                if (cancelOccurrence(SlotKey.of(timeSlot))) {
+                    removedSlots.add(timeSlot);
+                    publishDeleted(removedSlots);
+                    return removedSlots;
+                }
+
+                throw new ScheduleException("The slot with the specified time/location properties was not found in schedule.");
+            })));
         }
+    }
 
-        throw new ScheduleException("The slot with the specified time/location properties was not found in schedule.");
+    public List<ScheduleSlot> deleteScheduleSlots(Collection<ScheduleSlot> timeSlots) {
+        try (OperationTimer timer = time(ScheduleOperation.DELETE_SLOT)) {
+            /*
+            All affected rooms are locked once and every slot is removed through the hash index,
+            slots that are not in the schedule are skipped instead of failing the whole batch.
+            */
+            return timer.done(roomLocks.writeAll(roomsOf(timeSlots), () -> change(() -> {
+                Map<ScheduleSlot, ScheduleSlot> removedStored = new IdentityHashMap<>();
+                List<SlotKey> occurrences = new ArrayList<>();
+                for (ScheduleSlot timeSlot : timeSlots) {
+                    SlotKey key = SlotKey.of(timeSlot);
+                    ScheduleSlot slot = mySchedule.get(key);
+                    if (slot == null || !slot.equals(timeSlot)) {
+                        occurrences.add(key);
+                        continue;
+                    }
+
+                    removeStoredSlot(slot);
+                    if (slot.getSharedState() != null)
+                        slot.getSharedState().removeLinkedSlot(slot);
+                    removedStored.put(timeSlot, slot);
+                }
+                // rule occurrences are cancelled in one batch, each rule is changed once
+                Set<SlotKey> cancelled = repetitiveSchedule.cancelAll(occurrences);
+
+                List<ScheduleSlot> removedSlots = new ArrayList<>(timeSlots.size());
+                for (ScheduleSlot timeSlot : timeSlots) {
+                    ScheduleSlot slot = removedStored.remove(timeSlot);
+                    if (slot != null)
+                        removedSlots.add(slot);
+                    else if (cancelled.remove(SlotKey.of(timeSlot)))
+                        removedSlots.add(timeSlot);
+                }
+                publishDeleted(removedSlots);
+                return removedSlots;
+            })));
+        }
     }
 
+    /**
+     * Moves the booked slot in place, like the schedule API does: the stored instance gets the new date, times and room
+     * and keeps everything else it carries, so instances the caller holds stay valid for later lookups, moves and deletes.
+     * A moved rule occurrence is cancelled in its rule and the given instance is stored as a regular slot.
+     */
     public void moveScheduleSlot(ScheduleSlot scheduleSlot, Object newDate, String newStartTime, String newEndTime, RoomProperties newLocation) {
+        try (OperationTimer timer = time(ScheduleOperation.MOVE_SLOT)) {
+            Date date = newDate instanceof String ? parseDate((String) newDate) : (Date) newDate;
+            // the target window only, for the locks and the collision check
+            ScheduleSlot target = new ScheduleSlot.Builder()
+                    .setDate(date)
+                    .setStartTime(newStartTime)
+                    .setEndTime(newEndTime)
+                    .setLocation(newLocation)
+                    .build();
+
+
+            // moving between rooms locks both of them, in name order, a snapshot sees the slot either before or after the move
+            roomLocks.writeAll(Arrays.asList(roomKey(scheduleSlot), roomKey(target)), () -> change(() -> {
+                requireLiveDay(scheduleSlot);
+                requireLiveDay(target);
+
+                ScheduleSlot colliding = firstCollision(target);
+                if (colliding != null)
+                    throw new ScheduleException(
+                            "The desired changes to schedule slot can not happen because the desired time window is colliding existing slot:\n"
+                                    + colliding.toString());
+
+                SlotKey from = SlotKey.of(scheduleSlot);
+                SlotKey to = SlotKey.of(target);
+                ScheduleSlot curr = mySchedule.get(from);
+                if (curr != null && curr.equals(scheduleSlot)) {
+                    removeStoredSlot(curr);
+                    relocate(curr, date, newStartTime, newEndTime, newLocation);
+                    storeSlot(curr);
+                    publish(listener -> listener.onMoved(from, to));
+                    return null;
+                }
 
-        ScheduleSlot dummy = new ScheduleSlot.Builder()
-                .setDate(newDate instanceof String ? parseDate((String) newDate) : (Date) newDate)
-                .setStartTime(newStartTime)
-                .setEndTime(newEndTime)
-                .setLocation(newLocation)
-                .build();
+                // a moved occurrence becomes a regular slot, the rule keeps the original day as an exception
+                if (cancelOccurrence(from)) {
+                    relocate(scheduleSlot, date, newStartTime, newEndTime, newLocation);
+                    storeSlot(scheduleSlot);
+                    publish(listener -> listener.onMoved(from, to));
+                    return null;
+                }
 
 
-        for (ScheduleSlot curr : mySchedule) {
-            if (dummy.isCollidingWith(curr))
-                throw new ScheduleException(
-                        "The desired changes to schedule slot can not happen because the desired time window is colliding existing slot:\n"
-                                + curr.toString());
+                throw new ScheduleException("Required slot to change is non existing.");
+            }));
+            timer.done();
         }
+    }
 
-        for (ScheduleSlot curr : mySchedule) {
-            if (curr.equals(scheduleSlot)) {
-                curr.setDate(newDate instanceof Date ? (Date) newDate : parseDate((String) newDate));
-                curr.setLocation(newLocation);
-                curr.setStartTime(newStartTime);
-                curr.setEndTime(newEndTime);
-                return;
-            }
-        }
+    /**
+     * Runs the action under the write locks of the rooms. A move between the shards of a {@link ShardedScheduleSlotsManager}
+     * holds the old and the new room this way, in name order across both shards, the action must not lock them again.
+     */
+    <T> T writingRooms(Collection<String> roomNames, Supplier<T> write) {
+        return roomLocks.writeAll(roomNames, write);
+    }
 
+    /**
+     * Target half of a move from another shard, fails if the slot could not be booked at the new place.
+     * Caller holds the write lock of the new room.
+     */
+    void checkMoveTarget(ScheduleSlot target) {
+        if (!acceptableDays().contains(target.getDayOfWeek()))
+            throw new ScheduleException("Schedule slot was not moved because the day " + target.getDayOfWeek() + " has been excluded by schedule configuration!");
+        requireLiveDay(target);
+
+        ScheduleSlot colliding = firstCollision(target);
+        if (colliding != null)
+            throw new ScheduleException(
+                    "The desired changes to schedule slot can not happen because the desired time window is colliding existing slot:\n"
+                            + colliding.toString());
+    }
 
-        throw new ScheduleException("Required slot to change is non existing.");
+    /**
+     * Source half of a move to another shard: the slot leaves this schedule and is moved in place like in moveScheduleSlot.
+     * Caller holds the write locks of both rooms and has checked the target.
+     */
+    ScheduleSlot moveOut(ScheduleSlot scheduleSlot, Date newDate, String newStartTime, String newEndTime, RoomProperties newLocation) {
+        return change(() -> {
+            requireLiveDay(scheduleSlot);
+
+            List<ScheduleSlot> removed = Collections.singletonList(scheduleSlot);
+            ScheduleSlot curr = mySchedule.get(SlotKey.of(scheduleSlot));
+            if (curr != null && curr.equals(scheduleSlot)) {
+                removeStoredSlot(curr);
+                publishDeleted(removed);
+                relocate(curr, newDate, newStartTime, newEndTime, newLocation);
+                return curr;
+            }
+
+            if (cancelOccurrence(SlotKey.of(scheduleSlot))) {
+                publishDeleted(removed);
+                relocate(scheduleSlot, newDate, newStartTime, newEndTime, newLocation);
+                return scheduleSlot;
+            }
 
+            throw new ScheduleException("Required slot to change is non existing.");
+        });
+    }
 
+    /**
+     * Target half of a move from another shard, stores the moved slot. Caller holds the write locks of both rooms.
+     */
+    void moveIn(ScheduleSlot moved) {
+        change(() -> {
+            storeSlot(moved);
+            publishBooked(Collections.singletonList(moved));
+            return null;
+        });
     }
 
     // TODO: done
     @Override
     public List<ScheduleSlot> isScheduleSlotAvailable(ScheduleSlot timeSlot) {
 
-        List<ScheduleSlot> collisions = new ArrayList<>();
-        for (ScheduleSlot curr : mySchedule) {
-            if (curr.isCollidingWith(timeSlot))
-                collisions.add(curr);
-        }
-        return collisions;
+        return findCollisions(timeSlot);
 
     }
 
@@ -356,169 +823,1192 @@ public class ScheduleSlotsManager extends ScheduleManagerAdapter {
                 .setLocation(rooms.get(location))
 
                 .build();
-        //result list
-        List<ScheduleSlot> collisions = new ArrayList<>();
+        // detect all the collisions, if there are no collisions the list will be empty
+        return findCollisions(slot);
+    }
+
+    public boolean isAvailable(Object date, String startTime, String endTime, String location) {
+        try (OperationTimer timer = time(ScheduleOperation.AVAILABILITY_CHECK)) {
+            if (!rooms.containsKey(location))
+                throw new ScheduleException("Schedule model does not contain the room with the name: " + location + ".");
+
+            long day = epochDay(toDate(date));
+            int start = minuteOfDay(startTime);
+            int end = minuteOfDay(endTime);
+
+            // no probe slot and no collision list, the occupancy bitmaps decide almost every window on their own
+            if (!archive.isArchived(day)) {
+                OccupancyBitmap.Probe probe = roomLocks.read(location, () -> occupancyOf(location, day, start, end));
+                if (probe != OccupancyBitmap.Probe.UNDECIDED)
+                    return timer.done(probe == OccupancyBitmap.Probe.FREE);
+            }
 
-        // detect all the collisions
-        for (ScheduleSlot curr : mySchedule) {
-            if (curr.isCollidingWith(slot))
-                collisions.add(curr);
+            // the window only touches booked slots, the model decides
+            ScheduleSlot slot = new ScheduleSlot.Builder()
+                    .setDate(dateOfEpochDay(day))
+                    .setStartTime(startTime)
+                    .setEndTime(endTime)
+                    .setLocation(rooms.get(location))
+                    .build();
+            return timer.done(collisionsOf(slot).isEmpty());
         }
+    }
+
+    // caller holds the read lock of the room
+    private OccupancyBitmap.Probe occupancyOf(String room, long day, int start, int end) {
+        return roomIndex.probe(room, day, start, end).and(repetitiveSchedule.probe(room, day, start, end));
+    }
+
+    public void setWorkingHours(String workingHoursStart, String workingHoursEnd) {
+        if (minuteOfDay(workingHoursStart) >= minuteOfDay(workingHoursEnd))
+            throw new ScheduleException("Working hours start: " + workingHoursStart + " has to be before working hours end: " + workingHoursEnd + ".");
 
-        // if there are no collisions the list will be empty
-        return collisions;
+        this.workingHoursStart = workingHoursStart;
+        this.workingHoursEnd = workingHoursEnd;
     }
 
-    // TODO: LAST
+    // TODO: done
     @Override
     public List<FreeScheduleSlot> getFreeScheduleSlots(Object lowerDateBound, Object upperDateBound) {
+        try (OperationTimer timer = time(ScheduleOperation.FREE_SLOTS)) {
+            // rooms are swept in parallel, the collected list still keeps room/date/time order
+            return timer.done(streamFreeScheduleSlots(lowerDateBound, upperDateBound, true).collect(Collectors.toList()));
+        }
+    }
+
+    public Iterator<FreeScheduleSlot> freeScheduleSlotIterator(Object lowerDateBound, Object upperDateBound) {
+        return streamFreeScheduleSlots(lowerDateBound, upperDateBound, false).iterator();
+    }
+
+    public Stream<FreeScheduleSlot> streamFreeScheduleSlots(Object lowerDateBound, Object upperDateBound, boolean parallel) {
+
+        // if bounds are not passed we go from the start till the end of the schedule
+        Configuration configuration = configuration();
+        long fromDay = epochDay(toDate(lowerDateBound == null ? configuration.getStartingDate() : lowerDateBound));
+        long toDay = epochDay(toDate(upperDateBound == null ? configuration.getEndingDate() : upperDateBound));
+
+        List<RoomProperties> sortedRooms = new ArrayList<>(rooms.values());
+        sortedRooms.sort(Comparator.comparing(RoomProperties::getName));
+
+        // each room/day is read under its own room read lock
+        return new FreeSlotFinder(this::occupiedSlotsOn, workingHoursStart, workingHoursEnd, configuration.getAcceptableDays())
+                .stream(sortedRooms, fromDay, toDay, parallel);
+    }
 
-        throw new RuntimeException("NIJE GOTOVOOOOOOOOOOOOOOOOOO x,X' !");
+    public List<FreeScheduleSlot> findEarliestFits(EarliestFitQuery query) {
+        try (OperationTimer timer = time(ScheduleOperation.FREE_SLOTS)) {
+            // archived days are closed for booking, the search starts at the first live day
+            Configuration configuration = configuration();
+            long fromDay = Math.max(epochDay(toDate(query.getLowerDateBound() == null ? configuration.getStartingDate() : query.getLowerDateBound())), archive.getArchivedUntil());
+            long toDay = epochDay(toDate(query.getUpperDateBound() == null ? configuration.getEndingDate() : query.getUpperDateBound()));
+
+            // only days both the query and the schedule accept, a fit on any other day could not be booked
+            Set<WeekDay> days = EnumSet.noneOf(WeekDay.class);
+            days.addAll(configuration.getAcceptableDays());
+            if (query.getAcceptableDays() != null)
+                days.retainAll(query.getAcceptableDays());
+
+            List<RoomProperties> matchingRooms = roomLookUp(null, query.getMinCapacity(), query.getMaxCapacity(),
+                    query.getHasComputers(), query.getHasProjector(), query.getAttributes());
+
+            // each room/day is read under its own room read lock, like every free slot search
+            return timer.done(new FreeSlotFinder(this::occupiedSlotsOn, workingHoursStart, workingHoursEnd, days)
+                    .earliestFits(matchingRooms, fromDay, toDay, query.getDuration(), query.getLimit(), query.isParallel()));
+        }
     }
 
 
     // TODO: done
     @Override
     public List<ScheduleSlot> searchScheduleSlots(SearchCriteria criteria) {
+        // the planner can not see into built criteria, they are applied chunk by chunk over the whole schedule
+        try (OperationTimer timer = time(ScheduleOperation.SEARCH)) {
+            return timer.done(search(ScheduleQuery.of(criteria)));
+        }
+    }
+
+    public List<ScheduleSlot> searchScheduleSlots(ScheduleQuery query) {
+        try (OperationTimer timer = time(ScheduleOperation.SEARCH)) {
+            return timer.done(search(query));
+        }
+    }
 
+    public QueryPlan explainSearch(ScheduleQuery query) {
+        // plan only, nothing is read until the results of a plan are consumed
+        return queryPlanner.plan(query);
+    }
+
+    public void setQueryTrace(Consumer<QueryPlan> trace) {
         /*
-        I can ignore the return value of filter() method call because the passed modelState list
-        is automatically changed  via reference that is sent as an argument
+        The trace is handed the plan of every search and filtered export after it ran, plan.toString() is the explain output
+        with the access path, the estimates and the candidate/result counts. Null turns tracing off.
         */
-        return criteria.filter(new ArrayList<>(mySchedule));
+        queryTrace = trace;
+    }
+
+    private List<ScheduleSlot> search(ScheduleQuery query) {
+        QueryPlan plan = queryPlanner.plan(query);
+        List<ScheduleSlot> result = toList(queryPlanner.results(plan));
+        trace(plan);
+        return result;
+    }
+
+    private void trace(QueryPlan plan) {
+        Consumer<QueryPlan> trace = queryTrace;
+        if (trace != null)
+            trace.accept(plan);
     }
 
 
     // TODO: done
     @Override
     public int exportScheduleCSV(String filePath, Object lowerDateBound, Object upperDateBound, String... includedAttributes) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            // configure file
+            File file = initializeFile(filePath);
 
-        // configure file
-        File file = initializeFile(filePath);
-
-        // extract the data
-        List<ScheduleSlot> schedule = getSchedule(lowerDateBound, upperDateBound);
+            // extract the data (already in chronological order) from one version, bookings go on while it is read
+            List<ScheduleSlot> schedule = readVersion(version -> toList(versionRange(version, lowerDateBound, upperDateBound)));
 
-        // sort data (default chronological order)
-        schedule = ScheduleSlotSorter.sortByAbsoluteStartTime(schedule, ASCENDING_ORDER);
+            /* ScheduleComponentAPI Util default CSV serialization */
+            String serializedList = ScheduleExporterCSV.listToCSV(schedule, includedAttributes);
 
-        /* ScheduleComponentAPI Util default CSV serialization */
-        String serializedList = ScheduleExporterCSV.listToCSV(schedule, includedAttributes);
+            // append argument is false meaning that we want to delete previous file contents if there was any and then write our string
+            writeStringToFile(file, serializedList, false);
 
-        // append argument is false meaning that we want to delete previous file contents if there was any and then write our string
-        writeStringToFile(file, serializedList, false);
-
-        /* return number of exported rows */
-        return schedule.size();
+            /* return number of exported rows */
+            return timer.done(recordExport(file, 0, schedule.size()));
+        }
     }
 
 
     // TODO: done
     @Override
     public int exportFilteredScheduleCSV(String filePath, SearchCriteria searchCriteria, String... includedAttributes) {
+        return exportFilteredScheduleCSV(filePath, ScheduleQuery.of(searchCriteria), includedAttributes);
+    }
 
-        // configure file
-        File file = initializeFile(filePath);
-
-        // extract the data
-        List<ScheduleSlot> searchResult = searchCriteria.filter(new ArrayList<>(mySchedule));
+    public int exportFilteredScheduleCSV(String filePath, ScheduleQuery query, String... includedAttributes) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            // configure file
+            File file = initializeFile(filePath);
+            // the file is appended to, only the new part counts as exported
+            long lengthBefore = file.length();
 
-        // sort data (default chronological order)
-        searchResult = ScheduleSlotSorter.sortByAbsoluteStartTime(searchResult, ASCENDING_ORDER);
+            // extract the data through the planned index, the results keep the chronological order of the store
+            List<ScheduleSlot> searchResult = search(query);
 
-        // serialize data
-        String csv = ScheduleExporterCSV.listToCSV(searchResult, includedAttributes);
+            // serialize data
+            String csv = ScheduleExporterCSV.listToCSV(searchResult, includedAttributes);
 
-        // persisting the result (writing to file)
-        writeStringToFile(file, csv, true);
+            // persisting the result (writing to file)
+            writeStringToFile(file, csv, true);
 
-        return searchResult.size();
+            return timer.done(recordExport(file, lengthBefore, searchResult.size()));
+        }
     }
 
 
     // TODO: done
     @Override
     public int exportScheduleJSON(String filePath, Object lowerDateBound, Object upperDateBound) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            // configure file
+            File file = initializeFile(filePath);
 
-        // configure file
-        File file = initializeFile(filePath);
-
-        // extract the data
-        List<ScheduleSlot> schedule = getSchedule(lowerDateBound, upperDateBound);
+            long lengthBefore = file.length();
 
-        //serialize data
-        String serializedList = ScheduleExporterJSON.serializeObject(schedule);
+            // extract the data from one version
+            List<ScheduleSlot> schedule = readVersion(version -> toList(versionRange(version, lowerDateBound, upperDateBound)));
 
-        //persist serialize data inside the file
-        writeStringToFile(file, serializedList, true);
+            //serialize data
+            String serializedList = ScheduleExporterJSON.serializeObject(schedule);
 
-        //return serialized objects count
-        return schedule.size();
+            //persist serialize data inside the file
+            writeStringToFile(file, serializedList, true);
 
+            //return serialized objects count
+            return timer.done(recordExport(file, lengthBefore, schedule.size()));
+        }
     }
 
 
     // TODO: done
     @Override
     public int exportFilteredScheduleJSON(String filePath, SearchCriteria searchCriteria) {
+        return exportFilteredScheduleJSON(filePath, ScheduleQuery.of(searchCriteria));
+    }
+
+    public int exportFilteredScheduleJSON(String filePath, ScheduleQuery query) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            // configure file
+            File file = initializeFile(filePath);
 
-        // configure file
-        File file = initializeFile(filePath);
+            // filter data through the planned index, the results keep the chronological order of the store
+            List<ScheduleSlot> searchResult = search(query);
 
-        // filter data
-        List<ScheduleSlot> searchResult = searchCriteria.filter(new ArrayList<>(mySchedule));
+            //serialize data
+            String serializedList = ScheduleExporterJSON.serializeObject(searchResult);
 
-        // sort data (default chronological order)
-        searchResult = ScheduleSlotSorter.sortByAbsoluteStartTime(searchResult, ASCENDING_ORDER);
+            //persist serialize data inside the file
+            writeStringToFile(file, serializedList, false);
 
-        //serialize data
-        String serializedList = ScheduleExporterJSON.serializeObject(searchResult);
+            //return serialized objects count with null ptr exception safety check
+            return timer.done(recordExport(file, 0, searchResult != null ? searchResult.size() : 0));
+        }
+    }
 
-        //persist serialize data inside the file
-        writeStringToFile(file, serializedList, false);
 
-        //return serialized objects count with null ptr exception safety check
-        return searchResult != null ? searchResult.size() : 0;
+    public int streamScheduleCSV(String filePath, Object lowerDateBound, Object upperDateBound, String... includedAttributes) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            // slots go straight from one version of the store to the file, nothing is copied
+            return timer.done(recordExport(new File(filePath), 0, readVersion(version ->
+                    StreamingScheduleExporter.exportCSV(filePath, versionRange(version, lowerDateBound, upperDateBound), null, includedAttributes))));
+        }
+    }
+
+    public int streamFilteredScheduleCSV(String filePath, SearchCriteria searchCriteria, String... includedAttributes) {
+        return streamFilteredScheduleCSV(filePath, ScheduleQuery.of(searchCriteria), includedAttributes);
+    }
+
+    public int streamFilteredScheduleCSV(String filePath, ScheduleQuery query, String... includedAttributes) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            // residual predicates are applied on bounded chunks of the planned candidates
+            QueryPlan plan = queryPlanner.plan(query);
+            int rows = StreamingScheduleExporter.exportCSV(filePath, queryPlanner.results(plan), null, includedAttributes);
+            trace(plan);
+            return timer.done(recordExport(new File(filePath), 0, rows));
+        }
+    }
+
+    public int streamScheduleJSON(String filePath, Object lowerDateBound, Object upperDateBound) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            return timer.done(recordExport(new File(filePath), 0, readVersion(version ->
+                    StreamingScheduleExporter.exportJSON(filePath, versionRange(version, lowerDateBound, upperDateBound), null))));
+        }
+    }
+
+    public int streamFilteredScheduleJSON(String filePath, SearchCriteria searchCriteria) {
+        return streamFilteredScheduleJSON(filePath, ScheduleQuery.of(searchCriteria));
+    }
+
+    public int streamFilteredScheduleJSON(String filePath, ScheduleQuery query) {
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            QueryPlan plan = queryPlanner.plan(query);
+            int rows = StreamingScheduleExporter.exportJSON(filePath, queryPlanner.results(plan), null);
+            trace(plan);
+            return timer.done(recordExport(new File(filePath), 0, rows));
+        }
     }
 
 
     // TODO: done
     @Override
     public List<ScheduleSlot> getSchedule(String lowerBoundDate, String upperBoundDate) {
-        // Using search criteria utility of SchedulingComponentAPI and setting lower and upper date bounds.
-        return new SearchCriteria.Builder()
-                .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, lowerBoundDate)
-                .setCriteria(CriteriaFilter.UPPER_BOUND_DATE_KEY, upperBoundDate)
-                .build()
-                .filter(new ArrayList<>(mySchedule));
+        try (OperationTimer timer = time(ScheduleOperation.GET_SCHEDULE)) {
+            // null bound leaves the range open on that side
+            return timer.done(toList(slotRange(
+                    lowerBoundDate == null ? null : epochDay(parseDate(lowerBoundDate)),
+                    upperBoundDate == null ? null : epochDay(parseDate(upperBoundDate))
+            )));
+        }
     }
 
 
-    // TODO: done
-
     // TODO: done
     @Override
     public List<ScheduleSlot> getSchedule(Object lowerBoundDate, Object upperBoundDate) {
+        try (OperationTimer timer = time(ScheduleOperation.GET_SCHEDULE)) {
+            return timer.done(toList(scheduleRange(lowerBoundDate, upperBoundDate)));
+        }
+    }
+
+    /**
+     * Chronological view of the store between the bounds, null bound falls back to the schedule start/end.
+     */
+    private Iterable<ScheduleSlot> scheduleRange(Object lowerBoundDate, Object upperBoundDate) {
+        // sub view of the chronologically ordered store, no filtering or sorting needed
+        Configuration configuration = configuration();
+        return slotRange(dayBound(lowerBoundDate, configuration.getStartingDate()), dayBound(upperBoundDate, configuration.getEndingDate()));
+    }
+
+    // same bounds as scheduleRange, read from one version
+    private Iterable<ScheduleSlot> versionRange(ScheduleVersion version, Object lowerBoundDate, Object upperBoundDate) {
+        Configuration configuration = configuration();
+        return version.range(dayBound(lowerBoundDate, configuration.getStartingDate()), dayBound(upperBoundDate, configuration.getEndingDate()));
+    }
+
+    // epoch day of the bound, a null bound falls back to the schedule start/end and stays open if that is not set either
+    private static Long dayBound(Object bound, Date fallback) {
+        Object date = bound == null ? fallback : bound;
+        return date == null ? null : epochDay(toDate(date));
+    }
+
+    public ScheduleVersion openSnapshot() {
+        /*
+        O(1) immutable view of the rooms and slots at the current version, it is read without locks while the schedule
+        keeps changing. Close it when done (try with resources), a version is released when its last reader closes it.
+        Snapshots opened while nothing changed share the same version.
+        */
+        return versions.acquire(version -> {
+            ScheduleChangeLog log = changeLog;
+            return new ScheduleVersion(version, log == null ? -1 : log.getVersion(), mySchedule.snapshot(), repetitiveSchedule.snapshot(), archive, roomsVersion);
+        });
+    }
+
+    public long getScheduleVersion() {
+        return versions.getVersion();
+    }
+
+    private <T> T readVersion(Function<ScheduleVersion, T> read) {
+        try (ScheduleVersion version = openSnapshot()) {
+            return read.apply(version);
+        }
+    }
+
+    /**
+     * Archived slots (materialized lazily) followed by the live slots of the range, all archived days
+     * come before the live ones so the result is chronological. Occurrences of the rules are merged into the live part.
+     * The archive, the slots and the rules are taken from one version, archiving moves slots between them.
+     */
+    private Iterable<ScheduleSlot> slotRange(Long fromDay, Long toDay) {
+        return readVersion(version -> version.range(fromDay, toDay));
+    }
+
+    private static List<ScheduleSlot> toList(Iterable<ScheduleSlot> slots) {
+        if (slots instanceof Collection)
+            return new ArrayList<>((Collection<ScheduleSlot>) slots);
+
+        List<ScheduleSlot> list = new ArrayList<>();
+        slots.forEach(list::add);
+        return list;
+    }
+
+    public int archiveScheduleBefore(Object date) {
+        try (OperationTimer timer = time(ScheduleOperation.ARCHIVE)) {
+            long until = epochDay(toDate(date));
+
+            // archiving takes slots out of every room at once
+            return timer.done(roomLocks.writeAll(allRoomNames(), () -> change(() -> {
+                if (until <= archive.getArchivedUntil())
+                    return 0;
+
+                int archivedSlots = archiveLocked(until);
+                publish(listener -> listener.onArchived(until));
+                return archivedSlots;
+            })));
+        }
+    }
+
+    // caller holds the locks of all rooms
+    private int archiveLocked(long until) {
+        List<ScheduleSlot> stored = new ArrayList<>(mySchedule.range(null, until - 1));
+        // past occurrences of the rules are archived as plain slots
+        List<ScheduleSlot> historical = toList(repetitiveSchedule.mergeWith(stored, null, until - 1));
+
+        /*
+        The slots leave the live store before the new archive is published. Both happen inside one change under the locks
+        of every room, range reads take the live store and the archive from one version and room reads take both under
+        the room lock, so no reader sees an archived slot twice or misses it.
+        */
+        CompactSlotArchive appended = archive.append(historical, until);
+        for (ScheduleSlot slot : stored)
+            removeStoredSlot(slot);
+        repetitiveSchedule.trimBefore(until);
+        archive = appended;
+
+        return historical.size();
+    }
+
+    private Set<String> allRoomNames() {
+        Set<String> allRooms = roomIndex.roomNames();
+        allRooms.addAll(rooms.keySet());
+        return allRooms;
+    }
+
+    public long getArchivedSlotsFootprint() {
+        return archive.footprintBytes();
+    }
+
+    private boolean isArchived(ScheduleSlot slot) {
+        return archive.isArchived(epochDay(slot.getDate()));
+    }
+
+    private void requireLiveDay(ScheduleSlot slot) {
+        if (isArchived(slot))
+            throw new ScheduleException("The date: " + formatDate(slot.getDate()) + " belongs to the archived part of the schedule, archived slots are read only.");
+    }
+
+    private List<ScheduleSlot> findCollisions(ScheduleSlot probe) {
+        try (OperationTimer timer = time(ScheduleOperation.AVAILABILITY_CHECK)) {
+            return timer.done(collisionsOf(probe));
+        }
+    }
+
+    private List<ScheduleSlot> collisionsOf(ScheduleSlot probe) {
+        CompactSlotArchive archived = archive;
+        long day = epochDay(probe.getDate());
+
+        if (archived.isArchived(day)) {
+            List<ScheduleSlot> archivedSlots = archived.slotsOn(roomKey(probe), day);
+            List<ScheduleSlot> collisions = new ArrayList<>();
+            for (ScheduleSlot curr : archivedSlots)
+                if (curr.isCollidingWith(probe))
+                    collisions.add(curr);
+
+            ScheduleMetricsListener listener = metrics;
+            if (listener.isEnabled())
+                listener.onCollisionScan(archivedSlots.size(), collisions.size());
+            return collisions;
+        }
+        String room = roomKey(probe);
+        int start = minuteOfDay(probe.getStartTime());
+        int end = minuteOfDay(probe.getEndTime());
+        return roomLocks.read(room, () -> {
+            // a window the bitmaps call free has no collisions to list
+            if (occupancyOf(room, day, start, end) == OccupancyBitmap.Probe.FREE)
+                return new ArrayList<>();
+            return byStartTime(roomIndex.findCollisions(probe), repetitiveSchedule.findCollisions(probe));
+        });
+    }
+
+    List<ScheduleSlot> occupiedSlotsOn(String room, long day) {
+        CompactSlotArchive archived = archive;
+        if (archived.isArchived(day))
+            return archived.slotsOn(room, day);
+        return roomLocks.read(room, () -> byStartTime(roomIndex.slotsOn(room, day), repetitiveSchedule.slotsOn(room, day)));
+    }
+
+    /**
+     * Stored slots and rule occurrences of one room and day, each list already ordered by start time.
+     */
+    private static List<ScheduleSlot> byStartTime(List<ScheduleSlot> stored, List<ScheduleSlot> occurrences) {
+        if (occurrences.isEmpty())
+            return stored;
+
+        stored.addAll(occurrences);
+        stored.sort(Comparator.comparingInt(slot -> minuteOfDay(slot.getStartTime())));
+        return stored;
+    }
+
+    // caller holds the lock of the slot room
+    private ScheduleSlot firstCollision(ScheduleSlot probe) {
+        if (occupancyOf(roomKey(probe), epochDay(probe.getDate()), minuteOfDay(probe.getStartTime()), minuteOfDay(probe.getEndTime())) == OccupancyBitmap.Probe.FREE)
+            return null;
+
+        ScheduleSlot collision = roomIndex.findFirstCollision(probe);
+        if (collision != null)
+            return collision;
+
+        List<ScheduleSlot> occurrences = repetitiveSchedule.findCollisions(probe);
+        return occurrences.isEmpty() ? null : occurrences.get(0);
+    }
+
+    /**
+     * Cancels the rule occurrence identified by the key, returns false if the key is not an occurrence of any rule.
+     * Caller holds the lock of the slot room.
+     */
+    private boolean cancelOccurrence(SlotKey key) {
+        RecurrenceRule rule = repetitiveSchedule.ruleOf(key);
+        if (rule == null)
+            return false;
+
+        repetitiveSchedule.replace(rule, rule.withCancelled(rule.indexOf(key)));
+        return true;
+    }
+
+    public void setMetricsListener(ScheduleMetricsListener metricsListener) {
+        /*
+        Pass ScheduleMetricsRegistry for the built in counters and histograms (and registerMBean() on it for JMX),
+        null or ScheduleMetricsListener.NOOP turns measuring off.
+        */
+        ScheduleMetricsListener listener = metricsListener == null ? ScheduleMetricsListener.NOOP : metricsListener;
+        metrics = listener;
+        roomIndex.setMetricsListener(listener);
+    }
+
+    public ScheduleMetricsListener getMetricsListener() {
+        return metrics;
+    }
+
+    /**
+     * Starts timing a public operation, used as try (OperationTimer timer = time(...)) { ... return timer.done(result); }.
+     * Disabled metrics share one timer that does nothing, so they cost a single volatile read and no allocation.
+     */
+    private OperationTimer time(ScheduleOperation operation) {
+        ScheduleMetricsListener listener = metrics;
+        if (!listener.isEnabled())
+            return OperationTimer.DISABLED;
+        return new OperationTimer(listener, operation);
+    }
+
+    /**
+     * Latency of one operation call, reported on close. A call that closes the timer without done() ended with an exception.
+     */
+    private static final class OperationTimer implements AutoCloseable {
+
+        static final OperationTimer DISABLED = new OperationTimer(null, null);
+
+        private final ScheduleMetricsListener listener;
+        private final ScheduleOperation operation;
+        private final long start;
+        private boolean failed = true;
+
+        private OperationTimer(ScheduleMetricsListener listener, ScheduleOperation operation) {
+            this.listener = listener;
+            this.operation = operation;
+            this.start = listener == null ? 0 : System.nanoTime();
+        }
+
+        <T> T done(T result) {
+            done();
+            return result;
+        }
+
+        void done() {
+            if (listener != null)
+                failed = false;
+        }
+
+        @Override
+        public void close() {
+            if (listener != null)
+                listener.onOperation(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    private void recordImport(String csvPath, int rows) {
+        ScheduleMetricsListener listener = metrics;
+        if (listener.isEnabled())
+            listener.onImport(rows, new File(csvPath).length());
+    }
+
+    private int recordExport(File file, long lengthBefore, int rows) {
+        ScheduleMetricsListener listener = metrics;
+        if (listener.isEnabled())
+            listener.onExport(rows, file.length() - lengthBefore);
+        return rows;
+    }
+
+    public void addMutationListener(ScheduleMutationListener listener) {
+        mutationListeners.add(listener);
+    }
+
+    public void removeMutationListener(ScheduleMutationListener listener) {
+        mutationListeners.remove(listener);
+    }
+
+    public int openJournal(String directory) {
+        return openJournal(directory, false);
+    }
+
+    public int openJournal(String directory, boolean syncOnWrite) {
+        /*
+        Restores the schedule from the snapshot and write-ahead log in the directory (if there are any) and from then on
+        journals every change. Rooms are not journaled, they have to be loaded first (see ScheduleJournal for what that means
+        for renamed rooms and how long a restore takes). Without syncOnWrite the log survives
+        a crash of the process but not of the operating system, with it every change is forced to disk before the call returns.
+        */
+        if (rooms.isEmpty())
+            throw new ScheduleException("Your room properties are currently empty. You need to import them first in order to bind the journaled slots with their location.");
+
+        return roomLocks.writeAll(allRoomNames(), () -> {
+            if (journal != null)
+                throw new ScheduleException("The schedule journal is already open.");
+            if (!mySchedule.isEmpty() || !repetitiveSchedule.isEmpty() || archive.size() > 0)
+                throw new ScheduleException("The schedule journal can only be opened on an empty schedule.");
+
+            ScheduleJournal opened = ScheduleJournal.open(Paths.get(directory), syncOnWrite);
+            try {
+                opened.replay(new JournalReplay(opened.roomChanges()));
+            } catch (RuntimeException e) {
+                // nothing of a failed restore stays in the schedule
+                for (ScheduleSlot slot : mySchedule.toList())
+                    removeStoredSlot(slot);
+                repetitiveSchedule.clear();
+                archive = CompactSlotArchive.empty();
+                opened.close();
+                throw e;
+            }
+
+            journal = opened;
+            mutationListeners.add(opened);
+            return mySchedule.size() + repetitiveSchedule.size() + archive.size();
+        });
+    }
+
+    public void compactJournal() {
+        ScheduleJournal opened = journal;
+        if (opened == null)
+            throw new ScheduleException("The schedule journal is not open.");
+        opened.compact();
+    }
+
+    public void closeJournal() {
+        // no change may be half way through publishing while the journal goes away
+        roomLocks.writeAll(allRoomNames(), () -> {
+            ScheduleJournal opened = journal;
+            if (opened != null) {
+                mutationListeners.remove(opened);
+                journal = null;
+                opened.close();
+            }
+            return null;
+        });
+    }
+
+    public synchronized long enableChangeLog(int retainedChanges) {
+        /*
+        From now on every booking, move, delete, room update, room delete and archiving gets a version number,
+        exportChangesCSV/JSON append only the changes after a given version. The latest retainedChanges changes are kept,
+        a consumer that falls further behind has to do a full export again. Returns the current version.
+        A consumer starts (and starts over) with exportChangeFeedBaselineCSV/JSON, which returns the version its export ends at.
+        */
+        if (changeLog == null) {
+            // enabling is a version step of its own, no version taken before it claims a change log position
+            change(() -> {
+                changeLog = new ScheduleChangeLog(retainedChanges);
+                return null;
+            });
+        }
+        return changeLog.getVersion();
+    }
+
+    public long exportChangeFeedBaselineCSV(String filePath, String... includedAttributes) {
+        return exportChangeFeedBaseline(filePath, version -> StreamingScheduleExporter.exportCSV(filePath, version.range(null, null), null, includedAttributes));
+    }
+
+    public long exportChangeFeedBaselineJSON(String filePath) {
+        return exportChangeFeedBaseline(filePath, version -> StreamingScheduleExporter.exportJSON(filePath, version.range(null, null), null));
+    }
+
+    /**
+     * Exports the whole schedule of one version and returns the change log version it is consistent with,
+     * exportChangesCSV/JSON from that version on continue exactly where the export ends.
+     */
+    private long exportChangeFeedBaseline(String filePath, ToIntFunction<ScheduleVersion> export) {
+        requireChangeLog();
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            try (ScheduleVersion version = openSnapshot()) {
+                recordExport(new File(filePath), 0, export.applyAsInt(version));
+                return timer.done(version.getChangeVersion());
+            }
+        }
+    }
+
+    public long getChangeVersion() {
+        return requireChangeLog().getVersion();
+    }
+
+    public long exportChangesCSV(String filePath, long sinceVersion) {
+        return exportChanges(filePath, sinceVersion, ChangeFeedExporter::appendCSV);
+    }
 
-        return ScheduleSlotSorter.sortByAbsoluteStartTime(
-                // perform upper/lower date bound schedule filtering
-                new SearchCriteria.Builder()
-                        // if lowerBoundDate is null we go from start
-                        .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, lowerBoundDate == null ? super.startingDate : lowerBoundDate)
-                        // if upperBoundDate is null we go till the end
-                        .setCriteria(CriteriaFilter.UPPER_BOUND_DATE_KEY, upperBoundDate == null ? super.endingDate : upperBoundDate)
-                        .build()
-                        .filter(new ArrayList<>(mySchedule))
-                // perform sorting by absolute start time (default chronological order)
-                , ASCENDING_ORDER
-        );
+    public long exportChangesJSON(String filePath, long sinceVersion) {
+        return exportChanges(filePath, sinceVersion, ChangeFeedExporter::appendJSON);
+    }
+
+    /**
+     * Appends the changes after the version to the file and returns the version of the last appended change
+     * (the passed version if nothing changed), which is where the next sync continues from.
+     */
+    private long exportChanges(String filePath, long sinceVersion, BiFunction<String, List<ScheduleChange>, Integer> append) {
+        ScheduleChangeLog log = requireChangeLog();
+        try (OperationTimer timer = time(ScheduleOperation.EXPORT)) {
+            File file = new File(filePath);
+            long lengthBefore = file.length();
+
+            List<ScheduleChange> delta = log.changesSince(sinceVersion);
+            recordExport(file, lengthBefore, append.apply(filePath, delta));
+            return timer.done(delta.isEmpty() ? sinceVersion : delta.get(delta.size() - 1).getVersion());
+        }
+    }
+
+    private ScheduleChangeLog requireChangeLog() {
+        ScheduleChangeLog log = changeLog;
+        if (log == null)
+            throw new ScheduleException("The change log is not enabled, call enableChangeLog() first.");
+        return log;
+    }
+
+    /**
+     * Applies the change as one step of the version history. The change log is fed inside the step, so a version and its
+     * change log position always agree, the other listeners (the journal writes to disk) are called once the step is over
+     * and snapshots are no longer held up by them. The caller's room locks are still held, so per room order is kept.
+     * Every listener hears about what was applied even if the change or an earlier listener fails, the first failure
+     * is rethrown afterwards with the others suppressed.
+     */
+    private <T> T change(Supplier<T> change) {
+        if (deferredPublishes.get() != null)
+            return change.get();
+
+        List<Consumer<ScheduleMutationListener>> deferred = new ArrayList<>();
+        deferredPublishes.set(deferred);
+        RuntimeException failure = null;
+        T result = null;
+        try {
+            result = versions.change(change);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            deferredPublishes.remove();
+        }
+
+        for (Consumer<ScheduleMutationListener> published : deferred)
+            failure = notifyListeners(published, failure);
+        if (failure != null)
+            throw failure;
+        return result;
+    }
+
+    private void publish(Consumer<ScheduleMutationListener> change) {
+        ScheduleChangeLog log = changeLog;
+        if (log != null)
+            change.accept(log);
+
+        List<Consumer<ScheduleMutationListener>> deferred = deferredPublishes.get();
+        if (deferred != null) {
+            deferred.add(change);
+            return;
+        }
+        RuntimeException failure = notifyListeners(change, null);
+        if (failure != null)
+            throw failure;
+    }
+
+    // returns the first failure of the listeners, the given one if there was one before
+    private RuntimeException notifyListeners(Consumer<ScheduleMutationListener> change, RuntimeException failure) {
+        for (ScheduleMutationListener listener : mutationListeners) {
+            try {
+                change.accept(listener);
+            } catch (RuntimeException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        return failure;
+    }
+
+    private void publishBooked(Collection<ScheduleSlot> slots) {
+        if ((mutationListeners.isEmpty() && changeLog == null) || slots.isEmpty())
+            return;
+        List<SlotKey> keys = keysOf(slots);
+        publish(listener -> listener.onBooked(keys));
+    }
+
+    private void publishDeleted(Collection<ScheduleSlot> slots) {
+        if ((mutationListeners.isEmpty() && changeLog == null) || slots.isEmpty())
+            return;
+        List<SlotKey> keys = keysOf(slots);
+        publish(listener -> listener.onDeleted(keys));
+    }
+
+    private static List<SlotKey> keysOf(Collection<ScheduleSlot> slots) {
+        List<SlotKey> keys = new ArrayList<>(slots.size());
+        for (ScheduleSlot slot : slots)
+            keys.add(SlotKey.of(slot));
+        return keys;
+    }
+
+    /**
+     * Journaled slots come back as new slot instances bound to the currently loaded rooms, the journal only has their keys.
+     * Replayed moves and renames change these instances in place like the original changes did.
+     */
+    private ScheduleSlot slotOf(SlotKey key) {
+        return new ScheduleSlot.Builder()
+                .setDate(dateOfEpochDay(key.getDay()))
+                .setStartTime(formatMinute(key.getStart()))
+                .setEndTime(formatMinute(key.getEnd()))
+                .setLocation(journaledRoom(key.getRoom()))
+                .build();
+    }
+
+    // the empty name stands for slots booked without a room
+    private RoomProperties journaledRoom(String roomName) {
+        if (roomName.isEmpty())
+            return null;
+
+        RoomProperties room = rooms.get(roomName);
+        if (room == null)
+            throw new ScheduleException("The room: " + roomName + " referenced by the schedule journal is not loaded.");
+        return room;
+    }
+
+    /**
+     * Immutable copy of the acceptable week days and the start/end dates of a schedule.
+     */
+    static final class Configuration {
+
+        private final Set<WeekDay> acceptableDays;
+        private final Date startingDate;
+        private final Date endingDate;
+
+        Configuration(Collection<WeekDay> acceptableDays, Date startingDate, Date endingDate) {
+            Set<WeekDay> days = EnumSet.noneOf(WeekDay.class);
+            days.addAll(acceptableDays);
+            this.acceptableDays = Collections.unmodifiableSet(days);
+            this.startingDate = startingDate == null ? null : new Date(startingDate.getTime());
+            this.endingDate = endingDate == null ? null : new Date(endingDate.getTime());
+        }
+
+        /**
+         * True if the configuration has these days and bounds, compared without copying them.
+         */
+        boolean matches(Collection<WeekDay> acceptableDays, Date startingDate, Date endingDate) {
+            return Objects.equals(this.startingDate, startingDate) && Objects.equals(this.endingDate, endingDate)
+                    && this.acceptableDays.containsAll(acceptableDays) && acceptableDays.containsAll(this.acceptableDays);
+        }
+
+        Set<WeekDay> getAcceptableDays() {
+            return acceptableDays;
+        }
+
+        Date getStartingDate() {
+            return startingDate;
+        }
+
+        Date getEndingDate() {
+            return endingDate;
+        }
+    }
+
+
+    /**
+     * Applies journal records straight to the store, the changes were checked when they were made the first time,
+     * so there are no collision checks and nothing is published again. Caller holds the locks of all rooms.
+     */
+    private class JournalReplay implements ScheduleMutationListener {
+
+        // room renames and deletions the replay has not reached yet, old name to new name (null for a deletion)
+        private final Deque<Map.Entry<String, String>> comingRoomChanges;
+        // earlier names of the rooms renamed so far, by their current name in the journal, oldest first
+        private final Map<String, List<String>> earlierNames = new HashMap<>();
+
+        JournalReplay(List<Map.Entry<String, String>> roomChanges) {
+            comingRoomChanges = new ArrayDeque<>(roomChanges);
+        }
+
+        @Override
+        public void onBooked(List<SlotKey> slots) {
+            for (SlotKey key : slots)
+                storeSlot(slotOf(loaded(key)));
+        }
+
+        @Override
+        public void onRuleBooked(RecurrenceRule rule) {
+            String roomName = loadedName(rule.getRoom());
+            RoomProperties room = journaledRoom(roomName);
+            repetitiveSchedule.add(roomName.equals(rule.getRoom()) ? rule.withLocation(room) : rule.inRoom(room));
+        }
+
+        @Override
+        public void onDeleted(List<SlotKey> slots) {
+            List<SlotKey> occurrences = new ArrayList<>();
+            for (SlotKey journaled : slots) {
+                SlotKey key = loaded(journaled);
+                ScheduleSlot slot = mySchedule.get(key);
+                if (slot != null)
+                    removeStoredSlot(slot);
+                else
+                    occurrences.add(key);
+            }
+            repetitiveSchedule.cancelAll(occurrences);
+        }
+
+        @Override
+        public void onMoved(SlotKey journaledFrom, SlotKey journaledTo) {
+            SlotKey from = loaded(journaledFrom);
+            ScheduleSlot slot = mySchedule.get(from);
+            if (slot == null) {
+                // a moved occurrence, the rule keeps the original day as an exception
+                if (cancelOccurrence(from))
+                    storeSlot(slotOf(loaded(journaledTo)));
+                return;
+            }
+
+            SlotKey to = loaded(journaledTo);
+            removeStoredSlot(slot);
+            relocate(slot, dateOfEpochDay(to.getDay()), formatMinute(to.getStart()), formatMinute(to.getEnd()), journaledRoom(to.getRoom()));
+            storeSlot(slot);
+        }
+
+        @Override
+        public void onRoomRenamed(String roomName, String newName) {
+            // every change of the room was and will be replayed under the same loaded name, nothing is moved
+            comingRoomChanges.poll();
+            List<String> earlier = earlierNames.remove(roomName);
+            if (earlier == null)
+                earlier = new ArrayList<>();
+            earlier.add(roomName);
+            earlierNames.put(newName, earlier);
+        }
+
+        @Override
+        public void onRoomDeleted(String roomName) {
+            String loadedName = findLoadedName(roomName);
+            comingRoomChanges.poll();
+            earlierNames.remove(roomName);
+            writeCatalog(() -> {
+                if (loadedName != null)
+                    removeRoomLocked(loadedName);
+                return null;
+            });
+        }
+
+        @Override
+        public void onArchived(long untilDay) {
+            if (untilDay > archive.getArchivedUntil())
+                archiveLocked(untilDay);
+        }
+
+        private SlotKey loaded(SlotKey key) {
+            String roomName = loadedName(key.getRoom());
+            return roomName.equals(key.getRoom()) ? key : new SlotKey(key.getDay(), key.getStart(), key.getEnd(), roomName);
+        }
+
+        private String loadedName(String roomName) {
+            String loadedName = findLoadedName(roomName);
+            if (loadedName == null)
+                throw new ScheduleException("The room: " + roomName + " referenced by the schedule journal is not loaded.");
+            return loadedName;
+        }
+
+        /*
+         The journal names a room by the name it had when the change was made, the room may be loaded under a later or an
+         earlier name. The latest loaded name the room ever has wins, so every change of one room lands under the same name
+         no matter when it was made. Null if none of its names is loaded.
+         */
+        private String findLoadedName(String roomName) {
+            if (roomName.isEmpty())
+                return roomName;
+
+            List<String> later = new ArrayList<>();
+            String name = roomName;
+            for (Map.Entry<String, String> change : comingRoomChanges) {
+                if (change.getKey().equals(name)) {
+                    if (change.getValue() == null)
+                        break;
+                    name = change.getValue();
+                    later.add(name);
+                }
+            }
+            for (int i = later.size() - 1; i >= 0; i--)
+                if (rooms.containsKey(later.get(i)))
+                    return later.get(i);
+
+            if (rooms.containsKey(roomName))
+                return roomName;
+
+            List<String> earlier = earlierNames.getOrDefault(roomName, Collections.emptyList());
+            for (int i = earlier.size() - 1; i >= 0; i--)
+                if (rooms.containsKey(earlier.get(i)))
+                    return earlier.get(i);
+            return null;
+        }
+    }
+
+    /**
+     * Access paths of the query planner, every read follows the same locking rules as the rest of the manager.
+     */
+    private class PlannerSource implements QuerySource {
+
+        @Override
+        public Iterable<ScheduleSlot> range(Long fromDay, Long toDay) {
+            return slotRange(fromDay, toDay);
+        }
+
+        @Override
+        public List<ScheduleSlot> roomRange(String roomName, Long fromDay, Long toDay) {
+            // archived days all come before the live ones, archiving holds every room lock so both parts are read under it
+            return roomLocks.read(roomName, () -> {
+                List<ScheduleSlot> live = roomIndex.slotsBetween(roomName, fromDay, toDay);
+                repetitiveSchedule.range(roomName, fromDay, toDay).forEach(live::add);
+                live.sort(Comparator.comparing(SlotKey::of));
+
+                List<ScheduleSlot> slots = archive.slotsBetween(roomName, fromDay, toDay);
+                slots.addAll(live);
+                return slots;
+            });
+        }
+
+        @Override
+        public Set<String> roomsMatching(Set<String> names, Map<String, String> attributes) {
+            Set<String> matching = new TreeSet<>();
+            long stamp = catalogLock.readLock();
+            try {
+                for (RoomProperties room : roomLookupIndex.lookUp(null, -1, -1, -1, null, attributes)) {
+                    if (!names.isEmpty() && !names.contains(room.getName()))
+                        continue;
+                    // the look up keeps rooms that lack the attribute, a query only keeps rooms that have it
+                    boolean hasAll = true;
+                    for (Map.Entry<String, String> attribute : attributes.entrySet())
+                        hasAll &= room.hasAttribute(attribute.getKey()) && attribute.getValue().equals(room.getAttribute(attribute.getKey()));
+                    if (hasAll)
+                        matching.add(room.getName());
+                }
+            } finally {
+                catalogLock.unlockRead(stamp);
+            }
+            return matching;
+        }
+
+        @Override
+        public int roomCount() {
+            return rooms.size();
+        }
+
+        @Override
+        public long slotCount() {
+            return (long) mySchedule.size() + archive.size() + repetitiveSchedule.size();
+        }
+
+        @Override
+        public long[] daySpan() {
+            CompactSlotArchive archived = archive;
+            long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+            for (Long day : Arrays.asList(mySchedule.firstDay(), mySchedule.lastDay(), archived.firstDay(), archived.lastDay())) {
+                if (day != null) {
+                    first = Math.min(first, day);
+                    last = Math.max(last, day);
+                }
+            }
+            long[] rules = repetitiveSchedule.daySpan();
+            if (rules != null) {
+                first = Math.min(first, rules[0]);
+                last = Math.max(last, rules[1]);
+            }
+            return first > last ? null : new long[]{first, last};
+        }
+    }
+
+    /*
+     Package private hooks of ShardedScheduleSlotsManager, a shard never sees the configuration calls of the api,
+     so it follows the configuration of the manager that owns it. The configuration is replaced as a whole,
+     a shard reading it concurrently sees either the old or the new one, never a half written list of days.
+     */
+    void followConfiguration(Configuration configuration) {
+        followedConfiguration = configuration;
+    }
+
+    /**
+     * Days and bounds every operation reads, the followed ones for a shard, a copy of the api fields otherwise.
+     */
+    Configuration configuration() {
+        Configuration followed = followedConfiguration;
+        return followed != null ? followed : new Configuration(super.acceptableDays, super.startingDate, super.endingDate);
+    }
+
+    private Set<WeekDay> acceptableDays() {
+        return configuration().getAcceptableDays();
+    }
+
+    // admits slots parsed by the owning manager, the returned report has no rows read or malformed rows
+    ImportReport admitParsed(List<ScheduleSlot> parsed) {
+        ImportReport report = new ImportReport();
+        admitImported(parsed, report);
+        return report;
+    }
+
+    List<ScheduleSlot> bookMappedSlots(List<ScheduleSlot> mappedSlots) {
+        try (OperationTimer timer = time(ScheduleOperation.BOOK_REPETITIVE)) {
+            return timer.done(bookMapped(mappedSlots));
+        }
+    }
+
+    Iterable<ScheduleSlot> scheduleView(Object lowerBoundDate, Object upperBoundDate) {
+        return scheduleRange(lowerBoundDate, upperBoundDate);
+    }
+
+    Iterable<ScheduleSlot> queryView(ScheduleQuery query) {
+        return queryPlanner.results(queryPlanner.plan(query));
+    }
+
+    long getArchivedUntil() {
+        return archive.getArchivedUntil();
+    }
+
+    private <T> T writeCatalog(Supplier<T> write) {
+        long stamp = catalogLock.writeLock();
+        try {
+            return change(() -> {
+                T result = write.get();
+                roomsVersion = Collections.unmodifiableMap(new HashMap<>(rooms));
+                return result;
+            });
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+    }
+
+    private static Set<String> roomsOf(Collection<ScheduleSlot> slots) {
+        Set<String> roomNames = new HashSet<>();
+        for (ScheduleSlot slot : slots)
+            roomNames.add(roomKey(slot));
+        return roomNames;
+    }
+
+    /**
+     * Single entry point for putting a slot into the schedule, keeps every index in sync.
+     * Returns false if an identical slot is already booked. Caller holds the write lock of the slot room.
+     */
+    private boolean storeSlot(ScheduleSlot slot) {
+        if (!mySchedule.add(slot))
+            return false;
+        roomIndex.add(slot);
+        return true;
+    }
+
+    /**
+     * Counterpart of storeSlot, the slot must still have the coordinates it was stored with.
+     */
+    private void removeStoredSlot(ScheduleSlot slot) {
+        mySchedule.remove(slot);
+        roomIndex.remove(slot);
+    }
+
+    /**
+     * Changes a stored slot in place, the slot must be out of the store while it changes. Versions taken before
+     * keep listing it with its old date, times and room, they get a copy of it as it is now. Caller is inside a change.
+     */
+    private void relocate(ScheduleSlot slot, Date date, String startTime, String endTime, RoomProperties location) {
+        versions.retire(slot, ScheduleSlotsManager::copyOf);
+        slot.setDate(date);
+        slot.setStartTime(startTime);
+        slot.setEndTime(endTime);
+        slot.setLocation(location);
+    }
+
+    // links the slot to the properties of its room in place, the slot must be out of the store if the room name changes
+    private void inRoom(ScheduleSlot slot, RoomProperties location) {
+        relocate(slot, slot.getDate(), slot.getStartTime(), slot.getEndTime(), location);
+    }
+
+    // what a version needs of a slot changed after it was taken
+    private static ScheduleSlot copyOf(ScheduleSlot slot) {
+        return new ScheduleSlot.Builder()
+                .setDate(slot.getDate())
+                .setStartTime(slot.getStartTime())
+                .setEndTime(slot.getEndTime())
+                .setLocation(slot.getLocation())
+                .build();
+    }
+
+    private static Date toDate(Object date) {
+        if (date instanceof Date)
+            return (Date) date;
+        if (date instanceof String)
+            return parseDate((String) date);
+        throw new ScheduleException("Argument date should be a String or java util Date object!");
     }
 
     @Override
     public List<ScheduleSlot> getWholeSchedule() {
-
-        // perform sorting by absolute start time (default chronological order)
-        return ScheduleSlotSorter.sortByAbsoluteStartTime(new ArrayList<>(mySchedule), ASCENDING_ORDER);
+        try (OperationTimer timer = time(ScheduleOperation.GET_SCHEDULE)) {
+            // the store is already in chronological order, the copy is made from one version
+            return timer.done(readVersion(version -> toList(version.range(null, null))));
+        }
     }
 
 
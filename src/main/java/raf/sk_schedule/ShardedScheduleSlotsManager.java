@@ -0,0 +1,668 @@
+package raf.sk_schedule;
+
+import raf.sk_schedule.ScheduleSlotsManager.Configuration;
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.api.ScheduleManagerAdapter;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.export.StreamingScheduleExporter;
+import raf.sk_schedule.importer.ChunkedScheduleImporter;
+import raf.sk_schedule.index.ChronologicalMerge;
+import raf.sk_schedule.journal.ScheduleMutationListener;
+import raf.sk_schedule.metrics.ScheduleMetricsListener;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
+import raf.sk_schedule.model.schedule_node.FreeScheduleSlot;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.query.EarliestFitQuery;
+import raf.sk_schedule.query.FreeSlotFinder;
+import raf.sk_schedule.query.QueryPlan;
+import raf.sk_schedule.query.ScheduleQuery;
+import raf.sk_schedule.report.ConflictReport;
+import raf.sk_schedule.report.ImportReport;
+import raf.sk_schedule.util.exporter.ScheduleExporterCSV;
+import raf.sk_schedule.util.exporter.ScheduleExporterJSON;
+import raf.sk_schedule.util.filter.SearchCriteria;
+import raf.sk_schedule.util.importer.ScheduleImporter;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static raf.sk_schedule.index.RoomDayIndex.roomKey;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+import static raf.sk_schedule.util.persistence.ScheduleFileOperationUnit.initializeFile;
+import static raf.sk_schedule.util.persistence.ScheduleFileOperationUnit.writeStringToFile;
+
+/*
+ Schedule split into independent ScheduleSlotsManager shards by room name. Slots of different rooms never collide,
+ so every booking, move inside one shard and collision check stays inside a single shard with its own indexes and locks.
+ Reads that span rooms fan out to all shards on the fork-join pool and the per shard results, each already chronological,
+ are merged with a k-way merge. Moving a slot between shards is a delete in one shard followed by a booking in the other,
+ under the locks of both rooms.
+ A room lives in the shard of the name it was added under, a room renamed later is found through the room to shard map.
+ */
+public class ShardedScheduleSlotsManager extends ScheduleManagerAdapter {
+
+    private final List<ScheduleSlotsManager> shards;
+    // shard index of every room, names that are not there (rooms not added yet) go to the shard of their hash
+    private final Map<String, Integer> roomShards = new ConcurrentHashMap<>();
+    // free slot searches run over the rooms of all shards at once, so the working hours are kept here as well
+    private volatile String workingHoursStart = "08:00";
+    private volatile String workingHoursEnd = "20:00";
+    // days and bounds every shard follows, see publishConfiguration()
+    private volatile Configuration published;
+
+    public ShardedScheduleSlotsManager() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedScheduleSlotsManager(int shardCount) {
+        super();
+        if (shardCount < 1)
+            throw new ScheduleException("Shard count has to be at least 1, got: " + shardCount + ".");
+
+        List<ScheduleSlotsManager> managers = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            managers.add(new ScheduleSlotsManager());
+        shards = Collections.unmodifiableList(managers);
+
+        // a shard never reads its own api fields, only the configuration published here
+        publishConfiguration();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public int loadRoomsSCV(String csvPath) {
+        Map<String, RoomProperties> roomsImport = ScheduleImporter.importRoomsCSV(csvPath);
+
+        // same semantics as a single manager, a room that is already there gets the imported properties
+        synchronized (roomShards) {
+            roomsImport.forEach((name, properties) -> {
+                if (roomShards.containsKey(name)) {
+                    shardOf(name).updateRoom(name, properties);
+                } else {
+                    shardOf(name).addRoom(properties);
+                    roomShards.put(name, shardIndex(name));
+                }
+            });
+        }
+        return getAllRooms().size();
+    }
+
+    @Override
+    public int loadScheduleSCV(String csvPath) {
+        return importScheduleCSV(csvPath).getAccepted().size();
+    }
+
+    /**
+     * Imports the schedule through the schedule API parser, like loadScheduleSCV, and reports what happened to every slot.
+     */
+    public ImportReport importScheduleCSV(String csvPath) {
+        Map<String, RoomProperties> rooms = requireRooms();
+
+        List<ScheduleSlot> importedSchedule = ScheduleImporter.importScheduleCSV(csvPath, rooms);
+        ImportReport report = new ImportReport();
+        report.setRowsRead(importedSchedule.size());
+
+        for (int from = 0; from < importedSchedule.size(); from += ChunkedScheduleImporter.CHUNK_SIZE)
+            admitImported(importedSchedule.subList(from, Math.min(importedSchedule.size(), from + ChunkedScheduleImporter.CHUNK_SIZE)), report);
+
+        return report;
+    }
+
+    /**
+     * Opt-in parallel import for large files in the streaming export layout, see {@link ScheduleSlotsManager#importScheduleCSVChunked}.
+     */
+    public ImportReport importScheduleCSVChunked(String csvPath) {
+        Map<String, RoomProperties> rooms = requireRooms();
+
+        // parsed once, each shard admits its own part of every chunk
+        ImportReport report = new ImportReport();
+        new ChunkedScheduleImporter(rooms).parse(csvPath, report, chunk -> admitImported(chunk, report));
+
+        return report;
+    }
+
+    private Map<String, RoomProperties> requireRooms() {
+        Map<String, RoomProperties> rooms = new HashMap<>();
+        for (RoomProperties room : getAllRooms())
+            rooms.put(room.getName(), room);
+
+        if (rooms.isEmpty())
+            throw new ScheduleException("Your room properties are currently empty. You need to import them first in order to bind the scheduled slots with their location.");
+        return rooms;
+    }
+
+    /**
+     * Partitions the parsed slots by shard, the shards admit their parts in parallel and the reports are merged.
+     */
+    private void admitImported(List<ScheduleSlot> importedSchedule, ImportReport report) {
+        List<List<ScheduleSlot>> parts = partition(importedSchedule);
+
+        publishConfiguration();
+        List<ImportReport> shardReports = IntStream.range(0, shards.size()).parallel()
+                .mapToObj(i -> parts.get(i).isEmpty() ? new ImportReport() : shards.get(i).admitParsed(parts.get(i)))
+                .collect(Collectors.toList());
+
+        for (ImportReport shardReport : shardReports) {
+            shardReport.getAccepted().forEach(report::addAccepted);
+            shardReport.getRejectedByDay().forEach(report::addRejectedByDay);
+            shardReport.getRejectedByCollision().forEach(report::addRejectedByCollision);
+        }
+    }
+
+    @Override
+    public List<RoomProperties> getAllRooms() {
+        List<RoomProperties> allRooms = new ArrayList<>();
+        for (ScheduleSlotsManager shard : shards)
+            allRooms.addAll(shard.getAllRooms());
+        return allRooms;
+    }
+
+    public void addRoom(RoomProperties roomProperties) {
+        // room catalog changes are serialized with the room to shard map, the shard rejects a name that is already there
+        synchronized (roomShards) {
+            String name = roomProperties.getName();
+            shardOf(name).addRoom(roomProperties);
+            roomShards.put(name, shardIndex(name));
+        }
+    }
+
+    @Override
+    public boolean hasRoom(String roomName) {
+        return shardOf(roomName).hasRoom(roomName);
+    }
+
+    @Override
+    public void updateRoom(String name, RoomProperties newProp) {
+        updateRooms(Collections.singletonMap(name, newProp));
+    }
+
+    public void updateRooms(Map<String, RoomProperties> changes) {
+        List<Map<String, RoomProperties>> parts = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++)
+            parts.add(new HashMap<>());
+
+        synchronized (roomShards) {
+            // a new name may belong to any shard, so a rename onto an existing room is checked here across all of them
+            Set<String> newNames = new HashSet<>();
+            Map<String, Integer> renamed = new HashMap<>();
+            changes.forEach((name, newProp) -> {
+                if (!roomShards.containsKey(name))
+                    throw new ScheduleException("Room with a name: " + name + " does not exist in schedule.");
+
+                String newName = newProp.getName();
+                if (!name.equals(newName)) {
+                    if (roomShards.containsKey(newName) || !newNames.add(newName))
+                        throw new ScheduleException("You can not change room: " + name + " to " + newProp + " because room with that name already exists.\n" +
+                                "If you really want to make this change you can change the room: " + newName + " name to something else, than set room:. " + name + " to " + newName);
+                    renamed.put(newName, shardIndex(name));
+                }
+                parts.get(shardIndex(name)).put(name, newProp);
+            });
+
+            /*
+            The room stays in its shard under the new name. The new name points there before the shard renames the room,
+            a booking for it waits on the room lock of the rename instead of landing in the shard of the new name's hash.
+            */
+            roomShards.putAll(renamed);
+            try {
+                publishConfiguration();
+                for (int i = 0; i < shards.size(); i++) {
+                    if (!parts.get(i).isEmpty())
+                        shards.get(i).updateRooms(parts.get(i));
+                }
+            } finally {
+                // the map follows what the shards hold, a failed shard leaves the parts of the shards before it applied
+                changes.forEach((name, newProp) -> {
+                    if (!name.equals(newProp.getName()) && !shardOf(name).hasRoom(name))
+                        roomShards.remove(name);
+                });
+                renamed.forEach((newName, shard) -> {
+                    if (!shards.get(shard).hasRoom(newName))
+                        roomShards.remove(newName);
+                });
+            }
+        }
+    }
+
+    public List<ScheduleSlot> cancelRoomBookings(Collection<String> roomNames, Object fromDate, Object toDate) {
+        List<List<String>> parts = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++)
+            parts.add(new ArrayList<>());
+        for (String roomName : roomNames)
+            parts.get(shardIndex(roomName)).add(roomName);
+
+        publishConfiguration();
+        List<ScheduleSlot> cancelled = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (!parts.get(i).isEmpty())
+                cancelled.addAll(shards.get(i).cancelRoomBookings(parts.get(i), fromDate, toDate));
+        }
+        return cancelled;
+    }
+
+    @Override
+    public boolean deleteRoom(String roomName) {
+        synchronized (roomShards) {
+            boolean deleted = shardOf(roomName).deleteRoom(roomName);
+            roomShards.remove(roomName);
+            return deleted;
+        }
+    }
+
+    @Override
+    public RoomProperties getRoomByName(String name) {
+        return shardOf(name).getRoomByName(name);
+    }
+
+    public List<RoomProperties> roomLookUp(String name, int capacity, int hasComputers, Boolean hasProjector, Map<String, String> attributes) {
+        return roomLookUp(name, capacity, capacity, hasComputers, hasProjector, attributes);
+    }
+
+    public List<RoomProperties> roomLookUp(String name, int minCapacity, int maxCapacity, int hasComputers, Boolean hasProjector, Map<String, String> attributes) {
+        // a named look up can only match in the shard of that name
+        if (name != null)
+            return shardOf(name).roomLookUp(name, minCapacity, maxCapacity, hasComputers, hasProjector, attributes);
+
+        List<RoomProperties> found = new ArrayList<>();
+        for (ScheduleSlotsManager shard : shards)
+            found.addAll(shard.roomLookUp(null, minCapacity, maxCapacity, hasComputers, hasProjector, attributes));
+        return found;
+    }
+
+    @Override
+    public boolean bookScheduleSlot(ScheduleSlot scheduleSlot) throws ScheduleException {
+        return slotShard(scheduleSlot).bookScheduleSlot(scheduleSlot);
+    }
+
+    @Override
+    public List<ScheduleSlot> bookRepetitiveScheduleSlot(String startTime, int duration, String endTime, WeekDay weekDay, int recurrencePeriod, String schedulingIntervalStart, String schedulingIntervalEnd) {
+        // these slots are mapped without a location, they belong to the shard of the empty room name
+        return configured(shardOf("")).bookRepetitiveScheduleSlot(startTime, duration, endTime, weekDay, recurrencePeriod, schedulingIntervalStart, schedulingIntervalEnd);
+    }
+
+    @Override
+    public List<ScheduleSlot> bookRepetitiveScheduleSlot(RepetitiveScheduleMapper repetitiveScheduleMapper) {
+        List<ScheduleSlot> mappedSlots = repetitiveScheduleMapper.mapSchedule();
+
+        if (mappedSlots == null || mappedSlots.isEmpty())
+            return new ArrayList<>();
+
+        // a mapper books one room, so the whole series lands in one shard
+        return slotShard(mappedSlots.get(0)).bookMappedSlots(mappedSlots);
+    }
+
+    public ConflictReport detectConflicts(RepetitiveScheduleMapper repetitiveScheduleMapper) {
+        List<ScheduleSlot> mappedSlots = repetitiveScheduleMapper.mapSchedule();
+        return detectConflicts(mappedSlots == null ? new ArrayList<>() : mappedSlots);
+    }
+
+    public ConflictReport detectConflicts(List<ScheduleSlot> toBeBooked) {
+        List<List<ScheduleSlot>> parts = partition(toBeBooked);
+
+        publishConfiguration();
+        ConflictReport report = new ConflictReport();
+        int checkedSlots = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            if (parts.get(i).isEmpty())
+                continue;
+
+            ConflictReport shardReport = shards.get(i).detectConflicts(parts.get(i));
+            for (ConflictReport.Conflict conflict : shardReport.getConflicts())
+                report.addConflict(conflict.getBooked(), conflict.getRequested(), conflict.isWithinBatch());
+            shardReport.getExcludedDaySlots().forEach(report::addExcludedDaySlot);
+            checkedSlots += shardReport.getCheckedSlots();
+        }
+        report.setCheckedSlots(checkedSlots);
+        return report;
+    }
+
+    @Override
+    public ScheduleSlot getScheduleSlot(Object date, String startTime, String endTime, String location) {
+        return shardOf(location).getScheduleSlot(date, startTime, endTime, location);
+    }
+
+    @Override
+    public List<ScheduleSlot> deleteScheduleSlot(ScheduleSlot timeSlot) throws ScheduleException {
+        return slotShard(timeSlot).deleteScheduleSlot(timeSlot);
+    }
+
+    public List<ScheduleSlot> deleteScheduleSlots(Collection<ScheduleSlot> timeSlots) {
+        List<List<ScheduleSlot>> parts = partition(timeSlots);
+
+        List<ScheduleSlot> removedSlots = new ArrayList<>(timeSlots.size());
+        for (int i = 0; i < shards.size(); i++) {
+            if (!parts.get(i).isEmpty())
+                removedSlots.addAll(shards.get(i).deleteScheduleSlots(parts.get(i)));
+        }
+        return removedSlots;
+    }
+
+    public void moveScheduleSlot(ScheduleSlot scheduleSlot, Object newDate, String newStartTime, String newEndTime, RoomProperties newLocation) {
+        ScheduleSlotsManager from = slotShard(scheduleSlot);
+        ScheduleSlotsManager to = configured(shardOf(newLocation == null ? "" : newLocation.getName()));
+
+        if (from == to) {
+            from.moveScheduleSlot(scheduleSlot, newDate, newStartTime, newEndTime, newLocation);
+            return;
+        }
+
+        /*
+        Moving between shards is a delete in one shard and a booking in the other. The old and the new room are write locked
+        in name order across both shards, the same order a single manager locks the rooms of a move in, so the target is
+        checked before the slot leaves its shard and nothing can take the new window in between.
+        */
+        ScheduleSlot target = new ScheduleSlot.Builder()
+                .setDate(toDate(newDate))
+                .setStartTime(newStartTime)
+                .setEndTime(newEndTime)
+                .setLocation(newLocation)
+                .build();
+
+        String fromRoom = roomKey(scheduleSlot);
+        String toRoom = roomKey(target);
+        boolean fromFirst = fromRoom.compareTo(toRoom) < 0;
+        ScheduleSlotsManager first = fromFirst ? from : to;
+        ScheduleSlotsManager second = fromFirst ? to : from;
+
+        first.writingRooms(Collections.singletonList(fromFirst ? fromRoom : toRoom), () ->
+                second.writingRooms(Collections.singletonList(fromFirst ? toRoom : fromRoom), () -> {
+                    to.checkMoveTarget(target);
+                    to.moveIn(from.moveOut(scheduleSlot, target.getDate(), newStartTime, newEndTime, newLocation));
+                    return null;
+                }));
+    }
+
+    @Override
+    public List<ScheduleSlot> isScheduleSlotAvailable(ScheduleSlot timeSlot) {
+        return shardOf(roomKey(timeSlot)).isScheduleSlotAvailable(timeSlot);
+    }
+
+    public List<ScheduleSlot> isScheduleSlotAvailable(Object date, String startTime, String endTime, String location) {
+        return shardOf(location).isScheduleSlotAvailable(date, startTime, endTime, location);
+    }
+
+    public boolean isAvailable(Object date, String startTime, String endTime, String location) {
+        return shardOf(location).isAvailable(date, startTime, endTime, location);
+    }
+
+    public void setWorkingHours(String workingHoursStart, String workingHoursEnd) {
+        if (minuteOfDay(workingHoursStart) >= minuteOfDay(workingHoursEnd))
+            throw new ScheduleException("Working hours start: " + workingHoursStart + " has to be before working hours end: " + workingHoursEnd + ".");
+
+        for (ScheduleSlotsManager shard : shards)
+            shard.setWorkingHours(workingHoursStart, workingHoursEnd);
+        this.workingHoursStart = workingHoursStart;
+        this.workingHoursEnd = workingHoursEnd;
+    }
+
+    @Override
+    public List<FreeScheduleSlot> getFreeScheduleSlots(Object lowerDateBound, Object upperDateBound) {
+        Configuration configuration = publishConfiguration();
+        long fromDay = epochDay(toDate(lowerDateBound == null ? configuration.getStartingDate() : lowerDateBound));
+        long toDay = epochDay(toDate(upperDateBound == null ? configuration.getEndingDate() : upperDateBound));
+
+        List<RoomProperties> sortedRooms = getAllRooms();
+        sortedRooms.sort(Comparator.comparing(RoomProperties::getName));
+
+        // rooms of all shards are swept in parallel, each room/day is read from the shard that owns the room
+        return new FreeSlotFinder(this::occupiedSlotsOn, workingHoursStart, workingHoursEnd, configuration.getAcceptableDays())
+                .stream(sortedRooms, fromDay, toDay, true)
+                .collect(Collectors.toList());
+    }
+
+    public List<FreeScheduleSlot> findEarliestFits(EarliestFitQuery query) {
+        long archivedUntil = Long.MIN_VALUE;
+        for (ScheduleSlotsManager shard : shards)
+            archivedUntil = Math.max(archivedUntil, shard.getArchivedUntil());
+
+        Configuration configuration = publishConfiguration();
+        long fromDay = Math.max(epochDay(toDate(query.getLowerDateBound() == null ? configuration.getStartingDate() : query.getLowerDateBound())), archivedUntil);
+        long toDay = epochDay(toDate(query.getUpperDateBound() == null ? configuration.getEndingDate() : query.getUpperDateBound()));
+
+        Set<WeekDay> days = EnumSet.noneOf(WeekDay.class);
+        days.addAll(configuration.getAcceptableDays());
+        if (query.getAcceptableDays() != null)
+            days.retainAll(query.getAcceptableDays());
+
+        List<RoomProperties> matchingRooms = roomLookUp(null, query.getMinCapacity(), query.getMaxCapacity(),
+                query.getHasComputers(), query.getHasProjector(), query.getAttributes());
+
+        return new FreeSlotFinder(this::occupiedSlotsOn, workingHoursStart, workingHoursEnd, days)
+                .earliestFits(matchingRooms, fromDay, toDay, query.getDuration(), query.getLimit(), query.isParallel());
+    }
+
+    private List<ScheduleSlot> occupiedSlotsOn(String room, long day) {
+        return shardOf(room).occupiedSlotsOn(room, day);
+    }
+
+    @Override
+    public List<ScheduleSlot> searchScheduleSlots(SearchCriteria criteria) {
+        return searchScheduleSlots(ScheduleQuery.of(criteria));
+    }
+
+    public List<ScheduleSlot> searchScheduleSlots(ScheduleQuery query) {
+        // every shard plans the query against its own indexes
+        return fanOut(shard -> shard.searchScheduleSlots(query));
+    }
+
+    public void setQueryTrace(Consumer<QueryPlan> trace) {
+        // the trace receives one plan per shard and query
+        for (ScheduleSlotsManager shard : shards)
+            shard.setQueryTrace(trace);
+    }
+
+    @Override
+    public int exportScheduleCSV(String filePath, Object lowerDateBound, Object upperDateBound, String... includedAttributes) {
+        File file = initializeFile(filePath);
+
+        List<ScheduleSlot> schedule = getSchedule(lowerDateBound, upperDateBound);
+
+        String serializedList = ScheduleExporterCSV.listToCSV(schedule, includedAttributes);
+        writeStringToFile(file, serializedList, false);
+
+        return schedule.size();
+    }
+
+    @Override
+    public int exportFilteredScheduleCSV(String filePath, SearchCriteria searchCriteria, String... includedAttributes) {
+        return exportFilteredScheduleCSV(filePath, ScheduleQuery.of(searchCriteria), includedAttributes);
+    }
+
+    public int exportFilteredScheduleCSV(String filePath, ScheduleQuery query, String... includedAttributes) {
+        File file = initializeFile(filePath);
+
+        List<ScheduleSlot> searchResult = searchScheduleSlots(query);
+
+        String csv = ScheduleExporterCSV.listToCSV(searchResult, includedAttributes);
+        writeStringToFile(file, csv, true);
+
+        return searchResult.size();
+    }
+
+    @Override
+    public int exportScheduleJSON(String filePath, Object lowerDateBound, Object upperDateBound) {
+        File file = initializeFile(filePath);
+
+        List<ScheduleSlot> schedule = getSchedule(lowerDateBound, upperDateBound);
+
+        String serializedList = ScheduleExporterJSON.serializeObject(schedule);
+        writeStringToFile(file, serializedList, true);
+
+        return schedule.size();
+    }
+
+    @Override
+    public int exportFilteredScheduleJSON(String filePath, SearchCriteria searchCriteria) {
+        return exportFilteredScheduleJSON(filePath, ScheduleQuery.of(searchCriteria));
+    }
+
+    public int exportFilteredScheduleJSON(String filePath, ScheduleQuery query) {
+        File file = initializeFile(filePath);
+
+        List<ScheduleSlot> searchResult = searchScheduleSlots(query);
+
+        String serializedList = ScheduleExporterJSON.serializeObject(searchResult);
+        writeStringToFile(file, serializedList, false);
+
+        return searchResult.size();
+    }
+
+    public int streamScheduleCSV(String filePath, Object lowerDateBound, Object upperDateBound, String... includedAttributes) {
+        // the shard views are merged while they are written, nothing is copied
+        return StreamingScheduleExporter.exportCSV(filePath, mergedView(shard -> shard.scheduleView(lowerDateBound, upperDateBound)), null, includedAttributes);
+    }
+
+    public int streamFilteredScheduleCSV(String filePath, SearchCriteria searchCriteria, String... includedAttributes) {
+        return streamFilteredScheduleCSV(filePath, ScheduleQuery.of(searchCriteria), includedAttributes);
+    }
+
+    public int streamFilteredScheduleCSV(String filePath, ScheduleQuery query, String... includedAttributes) {
+        return StreamingScheduleExporter.exportCSV(filePath, mergedView(shard -> shard.queryView(query)), null, includedAttributes);
+    }
+
+    public int streamScheduleJSON(String filePath, Object lowerDateBound, Object upperDateBound) {
+        return StreamingScheduleExporter.exportJSON(filePath, mergedView(shard -> shard.scheduleView(lowerDateBound, upperDateBound)), null);
+    }
+
+    public int streamFilteredScheduleJSON(String filePath, SearchCriteria searchCriteria) {
+        return streamFilteredScheduleJSON(filePath, ScheduleQuery.of(searchCriteria));
+    }
+
+    public int streamFilteredScheduleJSON(String filePath, ScheduleQuery query) {
+        return StreamingScheduleExporter.exportJSON(filePath, mergedView(shard -> shard.queryView(query)), null);
+    }
+
+    @Override
+    public List<ScheduleSlot> getSchedule(String lowerBoundDate, String upperBoundDate) {
+        return fanOut(shard -> shard.getSchedule(lowerBoundDate, upperBoundDate));
+    }
+
+    @Override
+    public List<ScheduleSlot> getSchedule(Object lowerBoundDate, Object upperBoundDate) {
+        return fanOut(shard -> shard.getSchedule(lowerBoundDate, upperBoundDate));
+    }
+
+    @Override
+    public List<ScheduleSlot> getWholeSchedule() {
+        return fanOut(ScheduleSlotsManager::getWholeSchedule);
+    }
+
+    public int archiveScheduleBefore(Object date) {
+        // every shard archives on its own, the total is the number of slots archived across the shards
+        return shards.parallelStream()
+                .mapToInt(shard -> shard.archiveScheduleBefore(date))
+                .sum();
+    }
+
+    public long getArchivedSlotsFootprint() {
+        long footprint = 0;
+        for (ScheduleSlotsManager shard : shards)
+            footprint += shard.getArchivedSlotsFootprint();
+        return footprint;
+    }
+
+    public void setMetricsListener(ScheduleMetricsListener metricsListener) {
+        // the shards report into the same listener, so it sees the operations of the whole schedule
+        for (ScheduleSlotsManager shard : shards)
+            shard.setMetricsListener(metricsListener);
+    }
+
+    public void addMutationListener(ScheduleMutationListener listener) {
+        for (ScheduleSlotsManager shard : shards)
+            shard.addMutationListener(listener);
+    }
+
+    public void removeMutationListener(ScheduleMutationListener listener) {
+        for (ScheduleSlotsManager shard : shards)
+            shard.removeMutationListener(listener);
+    }
+
+    /**
+     * Runs the read on every shard in parallel and merges the per shard results, each in chronological order, into one list.
+     */
+    private List<ScheduleSlot> fanOut(Function<ScheduleSlotsManager, List<ScheduleSlot>> read) {
+        publishConfiguration();
+        List<List<ScheduleSlot>> results = shards.parallelStream()
+                .map(shard -> read.apply(shard))
+                .collect(Collectors.toList());
+        return ChronologicalMerge.mergeLists(results);
+    }
+
+    private Iterable<ScheduleSlot> mergedView(Function<ScheduleSlotsManager, Iterable<ScheduleSlot>> view) {
+        publishConfiguration();
+        List<Iterable<ScheduleSlot>> views = new ArrayList<>(shards.size());
+        for (ScheduleSlotsManager shard : shards)
+            views.add(view.apply(shard));
+        return ChronologicalMerge.merge(views);
+    }
+
+    private List<List<ScheduleSlot>> partition(Collection<ScheduleSlot> slots) {
+        List<List<ScheduleSlot>> parts = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++)
+            parts.add(new ArrayList<>());
+        for (ScheduleSlot slot : slots)
+            parts.get(shardIndex(roomKey(slot))).add(slot);
+        return parts;
+    }
+
+    private int shardIndex(String roomName) {
+        Integer placed = roomName == null ? null : roomShards.get(roomName);
+        if (placed != null)
+            return placed;
+        return Math.floorMod(roomName == null ? 0 : roomName.hashCode(), shards.size());
+    }
+
+    private ScheduleSlotsManager shardOf(String roomName) {
+        return shards.get(shardIndex(roomName));
+    }
+
+    // shard of a slot that is about to be written, configured with the days and bounds of this manager
+    private ScheduleSlotsManager slotShard(ScheduleSlot slot) {
+        return configured(shardOf(roomKey(slot)));
+    }
+
+    private ScheduleSlotsManager configured(ScheduleSlotsManager shard) {
+        publishConfiguration();
+        return shard;
+    }
+
+    /**
+     * Configuration the shards follow. The days and bounds of this manager are api fields anyone can change, a new
+     * configuration is only published to the shards when they differ from the published one, each shard gets it in one volatile write.
+     */
+    private Configuration publishConfiguration() {
+        Configuration current = published;
+        if (current != null && current.matches(super.acceptableDays, super.startingDate, super.endingDate))
+            return current;
+
+        synchronized (shards) {
+            current = published;
+            if (current == null || !current.matches(super.acceptableDays, super.startingDate, super.endingDate)) {
+                current = new Configuration(super.acceptableDays, super.startingDate, super.endingDate);
+                for (ScheduleSlotsManager shard : shards)
+                    shard.followConfiguration(current);
+                published = current;
+            }
+            return current;
+        }
+    }
+
+    private static Date toDate(Object date) {
+        if (date instanceof Date)
+            return (Date) date;
+        if (date instanceof String)
+            return parseDate((String) date);
+        throw new ScheduleException("Argument date should be a String or java util Date object!");
+    }
+}
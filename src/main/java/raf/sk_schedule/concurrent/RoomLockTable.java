@@ -0,0 +1,81 @@
+package raf.sk_schedule.concurrent;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * One {@link StampedLock} per room name.
+ * <p>
+ * Writers lock only the rooms they touch. Operations spanning several rooms always acquire the locks
+ * in room name order, which makes them deadlock free against each other. Readers of one room share its read lock.
+ * <p>
+ * Reads are not run optimistically: the room index below the room level is plain TreeMaps, lists and bitsets,
+ * a traversal racing with a writer could loop or fail in ways a later validation can not undo, and the side effects
+ * of a read (collision scan metrics) would be counted once per attempt.
+ * <p>
+ * Stamped locks are not reentrant, a thread holding a room lock must not call back into a method that locks the same room.
+ */
+public class RoomLockTable {
+
+    private final Map<String, StampedLock> locks = new ConcurrentHashMap<>();
+
+    public StampedLock lockOf(String room) {
+        return locks.computeIfAbsent(room, key -> new StampedLock());
+    }
+
+    /**
+     * Runs the read under the shared read lock of the room.
+     */
+    public <T> T read(String room, Supplier<T> read) {
+        StampedLock lock = lockOf(room);
+        long stamp = lock.readLock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public <T> T write(String room, Supplier<T> write) {
+        StampedLock lock = lockOf(room);
+        long stamp = lock.writeLock();
+        try {
+            return write.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write locks every room in name order, runs the action and releases them in reverse order.
+     */
+    public <T> T writeAll(Collection<String> rooms, Supplier<T> write) {
+        return lockAll(rooms, true, write);
+    }
+
+    /**
+     * Shared read locks on every room in name order, for reads that have to see several rooms at once.
+     */
+    public <T> T readAll(Collection<String> rooms, Supplier<T> read) {
+        return lockAll(rooms, false, read);
+    }
+
+    private <T> T lockAll(Collection<String> rooms, boolean exclusive, Supplier<T> action) {
+        StampedLock[] ordered = new TreeSet<>(rooms).stream().map(this::lockOf).toArray(StampedLock[]::new);
+        long[] stamps = new long[ordered.length];
+        int acquired = 0;
+        try {
+            for (; acquired < ordered.length; acquired++)
+                stamps[acquired] = exclusive ? ordered[acquired].writeLock() : ordered[acquired].readLock();
+
+            return action.get();
+        } finally {
+            for (int i = acquired - 1; i >= 0; i--)
+                ordered[i].unlock(stamps[i]);
+        }
+    }
+}
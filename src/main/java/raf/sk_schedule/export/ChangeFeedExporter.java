@@ -0,0 +1,166 @@
+package raf.sk_schedule.export;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.journal.ScheduleChange;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+import static raf.sk_schedule.index.SlotTimes.dateOfEpochDay;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+/**
+ * Appends schedule changes to a feed file, one line per change, so a sync costs as much as the changes it carries.
+ * <p>
+ * CSV lines are: version, change, date, start time, end time, location and, for moves, the new date, start time,
+ * end time and location. A room update puts the new room name in the last column, archiving puts the first live day
+ * in the date column. The header is written only into an empty file.
+ * JSON output is one object per line (JSON lines) with the same fields, the new position of a moved slot is a nested "to" object.
+ */
+public final class ChangeFeedExporter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ChangeFeedExporter() {
+    }
+
+    /**
+     * @return number of appended changes
+     */
+    public static int appendCSV(String filePath, List<ScheduleChange> changes) {
+        return append(filePath, changes, (change, row) -> {
+            SlotKey slot = change.getSlot();
+            row.append(change.getVersion()).append(',').append(change.getType()).append(',');
+            switch (change.getType()) {
+                case MOVED:
+                    csvSlot(slot, row);
+                    row.append(',');
+                    csvSlot(change.getMovedTo(), row);
+                    break;
+                case ROOM_UPDATED:
+                    row.append(",,,").append(csvValue(change.getRoom())).append(",,,,").append(csvValue(change.getNewRoom()));
+                    break;
+                case ROOM_DELETED:
+                    row.append(",,,").append(csvValue(change.getRoom())).append(",,,,");
+                    break;
+                case ARCHIVED:
+                    row.append(csvValue(dayString(change.getDay()))).append(",,,,,,,");
+                    break;
+                default:
+                    csvSlot(slot, row);
+                    row.append(",,,,");
+            }
+            row.append('\n');
+        }, "version,change,date,startTime,endTime,location,toDate,toStartTime,toEndTime,toLocation\n");
+    }
+
+    /**
+     * @return number of appended changes
+     */
+    public static int appendJSON(String filePath, List<ScheduleChange> changes) {
+        return append(filePath, changes, (change, row) -> {
+            row.append("{\"version\": ").append(change.getVersion()).append(", \"change\": ");
+            jsonValue(change.getType().name(), row);
+            switch (change.getType()) {
+                case MOVED:
+                    jsonSlot(change.getSlot(), row);
+                    row.append(", \"to\": {");
+                    jsonSlotFields(change.getMovedTo(), row);
+                    row.append('}');
+                    break;
+                case ROOM_UPDATED:
+                    row.append(", \"location\": ");
+                    jsonValue(change.getRoom(), row);
+                    row.append(", \"newLocation\": ");
+                    jsonValue(change.getNewRoom(), row);
+                    break;
+                case ROOM_DELETED:
+                    row.append(", \"location\": ");
+                    jsonValue(change.getRoom(), row);
+                    break;
+                case ARCHIVED:
+                    row.append(", \"date\": ");
+                    jsonValue(dayString(change.getDay()), row);
+                    break;
+                default:
+                    jsonSlot(change.getSlot(), row);
+            }
+            row.append("}\n");
+        }, null);
+    }
+
+    private static int append(String filePath, List<ScheduleChange> changes, ChangeEncoder encoder, String header) {
+        Path path = Paths.get(filePath);
+        if (path.getParent() != null)
+            path.getParent().toFile().mkdirs();
+
+        try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+             Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+
+            StringBuilder row = new StringBuilder(256);
+            if (header != null && channel.size() == 0)
+                writer.append(header);
+
+            for (ScheduleChange change : changes) {
+                encoder.encode(change, row);
+                writer.append(row);
+                row.setLength(0);
+            }
+            return changes.size();
+
+        } catch (IOException e) {
+            throw new ScheduleException("Export of schedule changes to file: " + filePath + " failed: " + e.getMessage());
+        }
+    }
+
+    private static void csvSlot(SlotKey slot, StringBuilder row) {
+        row.append(csvValue(dayString(slot.getDay()))).append(',')
+                .append(formatMinute(slot.getStart())).append(',')
+                .append(formatMinute(slot.getEnd())).append(',')
+                .append(csvValue(slot.getRoom()));
+    }
+
+    private static void jsonSlot(SlotKey slot, StringBuilder row) {
+        row.append(", ");
+        jsonSlotFields(slot, row);
+    }
+
+    private static void jsonSlotFields(SlotKey slot, StringBuilder row) {
+        row.append("\"date\": ");
+        jsonValue(dayString(slot.getDay()), row);
+        row.append(", \"startTime\": ");
+        jsonValue(formatMinute(slot.getStart()), row);
+        row.append(", \"endTime\": ");
+        jsonValue(formatMinute(slot.getEnd()), row);
+        row.append(", \"location\": ");
+        jsonValue(slot.getRoom(), row);
+    }
+
+    private static String dayString(long day) {
+        return formatDate(dateOfEpochDay(day));
+    }
+
+    private static String csvValue(String value) {
+        return StreamingScheduleExporter.csvValue(value);
+    }
+
+    private static void jsonValue(String value, StringBuilder row) {
+        StreamingScheduleExporter.jsonValue(value, row);
+    }
+
+
+    private interface ChangeEncoder {
+
+        void encode(ScheduleChange change, StringBuilder row);
+    }
+}
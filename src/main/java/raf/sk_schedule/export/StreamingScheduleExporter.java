@@ -0,0 +1,211 @@
+package raf.sk_schedule.export;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.util.filter.SearchCriteria;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+/**
+ * Export path that never builds the whole document in memory.
+ * <p>
+ * Slots are taken from the passed iterable in its order (the schedule store hands them out chronologically),
+ * encoded one by one into a single reused row buffer and written through a buffered writer on top of a file channel.
+ * When search criteria are passed they are applied chunk by chunk, so at most {@link #CHUNK_SIZE} slots are held at a time.
+ * <p>
+ * CSV rows are: date, start time, end time, room name and the values of the included room attributes.
+ * JSON output is an array of objects with the same fields.
+ */
+public final class StreamingScheduleExporter {
+
+    public static final int CHUNK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private StreamingScheduleExporter() {
+    }
+
+    /**
+     * @return number of exported rows
+     */
+    public static int exportCSV(String filePath, Iterable<ScheduleSlot> slots, SearchCriteria criteria, String... includedAttributes) {
+        String[] attributes = includedAttributes == null ? new String[0] : includedAttributes;
+
+        return export(filePath, slots, criteria, new SlotEncoder() {
+
+            @Override
+            public void header(StringBuilder row) {
+                row.append("date,startTime,endTime,location");
+                for (String attribute : attributes)
+                    row.append(',').append(csvValue(attribute));
+                row.append('\n');
+            }
+
+            @Override
+            public void encode(ScheduleSlot slot, boolean first, StringBuilder row) {
+                row.append(csvValue(formatDate(slot.getDate()))).append(',')
+                        .append(csvValue(slot.getStartTime())).append(',')
+                        .append(csvValue(slot.getEndTime())).append(',')
+                        .append(csvValue(slot.getLocation() == null ? "" : slot.getLocation().getName()));
+
+                for (String attribute : attributes) {
+                    row.append(',');
+                    if (slot.getLocation() != null && slot.getLocation().hasAttribute(attribute))
+                        row.append(csvValue(slot.getLocation().getAttribute(attribute)));
+                }
+                row.append('\n');
+            }
+
+            @Override
+            public void footer(StringBuilder row) {
+            }
+        });
+    }
+
+    /**
+     * @return number of exported objects
+     */
+    public static int exportJSON(String filePath, Iterable<ScheduleSlot> slots, SearchCriteria criteria) {
+
+        return export(filePath, slots, criteria, new SlotEncoder() {
+
+            @Override
+            public void header(StringBuilder row) {
+                row.append('[');
+            }
+
+            @Override
+            public void encode(ScheduleSlot slot, boolean first, StringBuilder row) {
+                if (!first)
+                    row.append(',');
+                row.append("\n  {\"date\": ");
+                jsonValue(formatDate(slot.getDate()), row);
+                row.append(", \"startTime\": ");
+                jsonValue(slot.getStartTime(), row);
+                row.append(", \"endTime\": ");
+                jsonValue(slot.getEndTime(), row);
+                row.append(", \"location\": ");
+                jsonValue(slot.getLocation() == null ? null : slot.getLocation().getName(), row);
+                row.append('}');
+            }
+
+            @Override
+            public void footer(StringBuilder row) {
+                row.append("\n]\n");
+            }
+        });
+    }
+
+    private static int export(String filePath, Iterable<ScheduleSlot> slots, SearchCriteria criteria, SlotEncoder encoder) {
+        Path path = Paths.get(filePath);
+        if (path.getParent() != null)
+            path.getParent().toFile().mkdirs();
+
+        try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING);
+             Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+
+            StringBuilder row = new StringBuilder(256);
+            encoder.header(row);
+            flush(row, writer);
+
+            int rows = 0;
+            Iterator<ScheduleSlot> it = slots.iterator();
+            List<ScheduleSlot> chunk = new ArrayList<>(Math.min(CHUNK_SIZE, 1024));
+
+            while (it.hasNext()) {
+                chunk.clear();
+                while (it.hasNext() && chunk.size() < CHUNK_SIZE)
+                    chunk.add(it.next());
+
+                List<ScheduleSlot> accepted = criteria == null ? chunk : criteria.filter(chunk);
+                if (accepted == null)
+                    continue;
+
+                for (ScheduleSlot slot : accepted) {
+                    encoder.encode(slot, rows == 0, row);
+                    flush(row, writer);
+                    rows++;
+                }
+            }
+
+            encoder.footer(row);
+            flush(row, writer);
+            return rows;
+
+        } catch (IOException e) {
+            throw new ScheduleException("Export to file: " + filePath + " failed: " + e.getMessage());
+        }
+    }
+
+    private static void flush(StringBuilder row, Writer writer) throws IOException {
+        writer.append(row);
+        row.setLength(0);
+    }
+
+    static String csvValue(String value) {
+        if (value == null)
+            return "";
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    static void jsonValue(String value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+
+    private interface SlotEncoder {
+
+        void header(StringBuilder row);
+
+        void encode(ScheduleSlot slot, boolean first, StringBuilder row);
+
+        void footer(StringBuilder row);
+    }
+}
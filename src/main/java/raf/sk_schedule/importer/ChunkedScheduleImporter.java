@@ -0,0 +1,239 @@
+package raf.sk_schedule.importer;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.report.ImportReport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+/**
+ * Reads a schedule CSV in chunks of lines and parses the chunks in parallel on the fork-join pool.
+ * <p>
+ * The file has the layout of the streaming export without attribute columns: a header row naming the
+ * date, startTime, endTime and location columns, in any order. A header with any other column is rejected,
+ * a file without a header row is read as date, start time, end time, room name and nothing else.
+ * <p>
+ * Only a bounded number of chunks is in flight at a time. Parsed chunks are handed to the consumer in file order
+ * on the calling thread, so at most a few chunks of slots are held in memory whatever the size of the file.
+ * Rows that can not be parsed or reference an unknown room are recorded in the report as malformed, blank lines are skipped.
+ */
+public class ChunkedScheduleImporter {
+
+    public static final int CHUNK_SIZE = 8192;
+
+    private final Map<String, RoomProperties> rooms;
+    private final ForkJoinPool pool;
+    // distinct dates are few, parsing each of them once also keeps parseDate off the parallel path
+    private final Map<String, Date> dateCache = new ConcurrentHashMap<>();
+
+    public ChunkedScheduleImporter(Map<String, RoomProperties> rooms) {
+        this(rooms, ForkJoinPool.commonPool());
+    }
+
+    public ChunkedScheduleImporter(Map<String, RoomProperties> rooms, ForkJoinPool pool) {
+        this.rooms = rooms;
+        this.pool = pool;
+    }
+
+    /**
+     * Parses the file and passes the slots of every chunk to the consumer, in file order.
+     * The report gets the number of non blank data rows and the malformed ones.
+     */
+    public void parse(String csvPath, ImportReport report, Consumer<List<ScheduleSlot>> chunkConsumer) {
+        Deque<CompletableFuture<ParsedChunk>> inFlight = new ArrayDeque<>();
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        int rowsRead = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(csvPath), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            int lineNumber = 1;
+            while (line != null && line.isBlank()) {
+                line = reader.readLine();
+                lineNumber++;
+            }
+
+            Schema header = line == null ? null : Schema.ofHeader(splitRow(line));
+            Schema schema = header == null ? Schema.POSITIONAL : header;
+            if (header != null) {
+                line = reader.readLine();
+                lineNumber++;
+            }
+
+            while (line != null) {
+                List<String> lines = new ArrayList<>(CHUNK_SIZE);
+                int firstLine = lineNumber;
+                while (line != null && lines.size() < CHUNK_SIZE) {
+                    lines.add(line);
+                    if (!line.isBlank())
+                        rowsRead++;
+                    line = reader.readLine();
+                    lineNumber++;
+                }
+
+                inFlight.add(CompletableFuture.supplyAsync(() -> parseChunk(lines, firstLine, schema), pool));
+                if (inFlight.size() >= maxInFlight)
+                    inFlight.poll().join().drainTo(chunkConsumer, report);
+            }
+        } catch (IOException e) {
+            throw new ScheduleException("Schedule file: " + csvPath + " could not be read: " + e.getMessage());
+        }
+
+        while (!inFlight.isEmpty())
+            inFlight.poll().join().drainTo(chunkConsumer, report);
+
+        report.setRowsRead(rowsRead);
+    }
+
+    private ParsedChunk parseChunk(List<String> lines, int firstLine, Schema schema) {
+        ParsedChunk chunk = new ParsedChunk(lines.size());
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank())
+                continue;
+
+            try {
+                List<String> fields = splitRow(line);
+                if (fields.size() != schema.columns)
+                    throw new ScheduleException("expected " + schema.columns + " columns but found " + fields.size());
+
+                String roomName = fields.get(schema.room);
+                RoomProperties room = rooms.get(roomName);
+                if (room == null)
+                    throw new ScheduleException("room " + roomName + " does not exist");
+
+                String startTime = fields.get(schema.start);
+                String endTime = fields.get(schema.end);
+                // fail early on bad times, before the model sees them
+                minuteOfDay(startTime);
+                minuteOfDay(endTime);
+
+                chunk.slots.add(new ScheduleSlot.Builder()
+                        .setDate(date(fields.get(schema.date)))
+                        .setStartTime(startTime)
+                        .setEndTime(endTime)
+                        .setLocation(room)
+                        .build());
+
+            } catch (RuntimeException e) {
+                chunk.malformed.put(firstLine + i, e.getMessage());
+            }
+        }
+        return chunk;
+    }
+
+    private Date date(String value) {
+        Date date = dateCache.get(value);
+        if (date == null) {
+            synchronized (dateCache) {
+                date = dateCache.computeIfAbsent(value, key -> parseDate(key));
+            }
+        }
+        return date;
+    }
+
+    /**
+     * Splits one CSV row, double quoted fields may contain commas and escaped ("") quotes.
+     */
+    static List<String> splitRow(String line) {
+        List<String> fields = new ArrayList<>(6);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else
+                        quoted = false;
+                } else
+                    field.append(c);
+            } else if (c == '"')
+                quoted = true;
+            else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else
+                field.append(c);
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+
+    /**
+     * Positions of the columns a slot is built from.
+     */
+    static final class Schema {
+
+        private static final List<String> NAMES = List.of("date", "startTime", "endTime", "location");
+
+        static final Schema POSITIONAL = new Schema(0, 1, 2, 3);
+
+        final int date;
+        final int start;
+        final int end;
+        final int room;
+        final int columns;
+
+        Schema(int date, int start, int end, int room) {
+            this.date = date;
+            this.start = start;
+            this.end = end;
+            this.room = room;
+            this.columns = NAMES.size();
+        }
+
+        /**
+         * Schema named by the header row, null if the row names none of the columns (a data row).
+         * A header that misses one of them, repeats one or has any other column is rejected.
+         */
+        static Schema ofHeader(List<String> row) {
+            // a data row never holds a column name, spelt in whatever case
+            if (row.stream().noneMatch(field -> NAMES.stream().anyMatch(field::equalsIgnoreCase)))
+                return null;
+
+            for (String name : row) {
+                if (!NAMES.contains(name))
+                    throw new ScheduleException("Schedule file header column \"" + name + "\" is not one of " + NAMES + ".");
+            }
+            if (row.size() != NAMES.size() || !row.containsAll(NAMES))
+                throw new ScheduleException("Schedule file header " + row + " has to name each of the " + NAMES + " columns once.");
+
+            return new Schema(row.indexOf("date"), row.indexOf("startTime"), row.indexOf("endTime"), row.indexOf("location"));
+        }
+    }
+
+
+    private static class ParsedChunk {
+
+        final List<ScheduleSlot> slots;
+        final Map<Integer, String> malformed = new TreeMap<>();
+
+        ParsedChunk(int capacity) {
+            slots = new ArrayList<>(capacity);
+        }
+
+        void drainTo(Consumer<List<ScheduleSlot>> chunkConsumer, ImportReport report) {
+            malformed.forEach(report::addMalformedRow);
+            if (!slots.isEmpty())
+                chunkConsumer.accept(slots);
+        }
+    }
+}
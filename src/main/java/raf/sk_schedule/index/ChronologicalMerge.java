@@ -0,0 +1,95 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+
+/**
+ * K-way merge of slot sequences that are each already in chronological ({@link SlotKey}) order,
+ * a heap holds the next slot of every sequence so merging n slots from k sequences costs O(n log k).
+ */
+public final class ChronologicalMerge {
+
+    private ChronologicalMerge() {
+    }
+
+    /**
+     * Lazily merged view, the sequences are pulled only as far as the view is iterated.
+     */
+    public static Iterable<ScheduleSlot> merge(List<? extends Iterable<ScheduleSlot>> sequences) {
+        if (sequences.size() == 1)
+            return sequences.get(0);
+        return () -> new MergingIterator(sequences);
+    }
+
+    public static List<ScheduleSlot> mergeLists(List<List<ScheduleSlot>> sequences) {
+        int size = 0;
+        for (List<ScheduleSlot> sequence : sequences)
+            size += sequence.size();
+
+        List<ScheduleSlot> merged = new ArrayList<>(size);
+        merge(sequences).forEach(merged::add);
+        return merged;
+    }
+
+
+    private static class MergingIterator implements Iterator<ScheduleSlot> {
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+        MergingIterator(List<? extends Iterable<ScheduleSlot>> sequences) {
+            for (int i = 0; i < sequences.size(); i++) {
+                Iterator<ScheduleSlot> it = sequences.get(i).iterator();
+                if (it.hasNext())
+                    heads.add(new Head(it, i));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public ScheduleSlot next() {
+            Head head = heads.poll();
+            if (head == null)
+                throw new NoSuchElementException();
+
+            ScheduleSlot slot = head.slot;
+            if (head.advance())
+                heads.add(head);
+            return slot;
+        }
+    }
+
+
+    private static class Head implements Comparable<Head> {
+
+        private final Iterator<ScheduleSlot> rest;
+        // equal keys keep the order of the sequences
+        private final int sequence;
+        private ScheduleSlot slot;
+        private SlotKey key;
+
+        Head(Iterator<ScheduleSlot> rest, int sequence) {
+            this.rest = rest;
+            this.sequence = sequence;
+            advance();
+        }
+
+        boolean advance() {
+            if (!rest.hasNext())
+                return false;
+            slot = rest.next();
+            key = SlotKey.of(slot);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : Integer.compare(sequence, other.sequence);
+        }
+    }
+}
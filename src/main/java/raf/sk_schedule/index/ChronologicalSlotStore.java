@@ -0,0 +1,101 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Primary storage of booked slots ordered by absolute start time.
+ * <p>
+ * Range queries are in order walks of a sorted tree, so results come out already in chronological order and
+ * a bounded query costs O(log n + k) instead of filtering and sorting the whole schedule.
+ * Two slots with the same date, times and room can not be stored at the same time,
+ * such a pair would always be a collision.
+ * <p>
+ * Next to the ordered map the store keeps a hash index over the same keys, exact look ups by date, times and room
+ * are constant time and both structures are updated together on every add and remove.
+ * <p>
+ * The ordered part is a {@link PersistentSlotTree} published through a single reference. Every add and remove swaps in
+ * a new version (compare and set, writers of different rooms retry on a lost race), so a reader takes the current version
+ * once and iterates it without locks, it never sees a half applied change or a slot booked after its read started.
+ */
+public class ChronologicalSlotStore implements Iterable<ScheduleSlot> {
+
+    private final AtomicReference<PersistentSlotTree> slots = new AtomicReference<>(PersistentSlotTree.empty());
+    private final Map<SlotKey, ScheduleSlot> exact = new ConcurrentHashMap<>();
+
+    /**
+     * Returns false if an identical slot is already stored.
+     */
+    public boolean add(ScheduleSlot slot) {
+        SlotKey key = SlotKey.of(slot);
+        if (exact.putIfAbsent(key, slot) != null)
+            return false;
+        slots.updateAndGet(tree -> tree.with(key, slot));
+        return true;
+    }
+
+    public boolean remove(ScheduleSlot slot) {
+        SlotKey key = SlotKey.of(slot);
+        if (!exact.remove(key, slot))
+            return false;
+        slots.updateAndGet(tree -> tree.without(key));
+        return true;
+    }
+
+    public ScheduleSlot get(SlotKey key) {
+        return exact.get(key);
+    }
+
+    public boolean contains(SlotKey key) {
+        return exact.containsKey(key);
+    }
+
+    /**
+     * Chronological view of the slots between the two epoch days, both inclusive.
+     * Null bound means the range is open on that side. The view reads the version that was current when it was created.
+     */
+    public Collection<ScheduleSlot> range(Long fromDay, Long toDay) {
+        return slots.get().range(fromDay, toDay);
+    }
+
+    /**
+     * Current version of the ordered slots, O(1). Later changes of the store are not visible through it.
+     */
+    public PersistentSlotTree snapshot() {
+        return slots.get();
+    }
+
+    /**
+     * Epoch day of the earliest stored slot, null if the store is empty.
+     */
+    public Long firstDay() {
+        return slots.get().firstDay();
+    }
+
+    /**
+     * Epoch day of the latest stored slot, null if the store is empty.
+     */
+    public Long lastDay() {
+        return slots.get().lastDay();
+    }
+
+    public List<ScheduleSlot> toList() {
+        return new ArrayList<>(slots.get().range(null, null));
+    }
+
+    public int size() {
+        return slots.get().size();
+    }
+
+    public boolean isEmpty() {
+        return slots.get().isEmpty();
+    }
+
+    @Override
+    public Iterator<ScheduleSlot> iterator() {
+        return slots.get().range(null, null).iterator();
+    }
+}
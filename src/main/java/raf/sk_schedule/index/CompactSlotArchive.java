@@ -0,0 +1,289 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+
+import static raf.sk_schedule.index.SlotTimes.*;
+
+/**
+ * Read only, columnar storage for historical slots.
+ * <p>
+ * Each slot takes one int for the epoch day, two shorts for the start and end minute and one int for the room id,
+ * 12 bytes instead of a slot object with its date, two time strings and the index entries pointing at it.
+ * Slots carrying extra state (linked slots) are rare and are kept as objects in a side table.
+ * Everything else is materialized into a new {@link ScheduleSlot} only when it leaves the archive.
+ * <p>
+ * Rows are kept in chronological order. Instances are immutable: appending or dropping a room returns a new archive
+ * (room table changes share the columns), so readers can use an archive without any locking.
+ */
+public final class CompactSlotArchive {
+
+    private static final CompactSlotArchive EMPTY = new CompactSlotArchive(new int[0], new short[0], new short[0], new int[0], 0,
+            new RoomProperties[0], Collections.emptyMap(), Collections.emptyMap(), Long.MIN_VALUE);
+
+    private final int[] days;
+    private final short[] starts;
+    private final short[] ends;
+    private final int[] roomIds;
+    private final int size;
+
+    private final RoomProperties[] roomTable;
+    private final Map<String, Integer> roomIdsByName;
+    // rows whose slot carries more than date, times and location
+    private final Map<Integer, ScheduleSlot> sideTable;
+    // every day before this one is archived
+    private final long archivedUntil;
+
+    private CompactSlotArchive(int[] days, short[] starts, short[] ends, int[] roomIds, int size,
+                               RoomProperties[] roomTable, Map<String, Integer> roomIdsByName, Map<Integer, ScheduleSlot> sideTable, long archivedUntil) {
+        this.days = days;
+        this.starts = starts;
+        this.ends = ends;
+        this.roomIds = roomIds;
+        this.size = size;
+        this.roomTable = roomTable;
+        this.roomIdsByName = roomIdsByName;
+        this.sideTable = sideTable;
+        this.archivedUntil = archivedUntil;
+    }
+
+    public static CompactSlotArchive empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Days strictly before this epoch day belong to the archive.
+     */
+    public long getArchivedUntil() {
+        return archivedUntil;
+    }
+
+    public boolean isArchived(long day) {
+        return day < archivedUntil;
+    }
+
+    /**
+     * Appends chronologically ordered slots that all lie on days in [archivedUntil, newArchivedUntil).
+     */
+    public CompactSlotArchive append(List<ScheduleSlot> slots, long newArchivedUntil) {
+        int newSize = size + slots.size();
+        int[] newDays = Arrays.copyOf(days, newSize);
+        short[] newStarts = Arrays.copyOf(starts, newSize);
+        short[] newEnds = Arrays.copyOf(ends, newSize);
+        int[] newRoomIds = Arrays.copyOf(roomIds, newSize);
+        List<RoomProperties> newRoomTable = new ArrayList<>(Arrays.asList(roomTable));
+        Map<String, Integer> newRoomIdsByName = new HashMap<>(roomIdsByName);
+        Map<Integer, ScheduleSlot> newSideTable = new HashMap<>(sideTable);
+
+        int row = size;
+        for (ScheduleSlot slot : slots) {
+            String room = RoomDayIndex.roomKey(slot);
+            Integer roomId = newRoomIdsByName.get(room);
+            if (roomId == null) {
+                roomId = newRoomTable.size();
+                newRoomTable.add(slot.getLocation());
+                newRoomIdsByName.put(room, roomId);
+            }
+
+            newDays[row] = (int) epochDay(slot.getDate());
+            newStarts[row] = (short) minuteOfDay(slot.getStartTime());
+            newEnds[row] = (short) minuteOfDay(slot.getEndTime());
+            newRoomIds[row] = roomId;
+            if (slot.getSharedState() != null)
+                newSideTable.put(row, slot);
+            row++;
+        }
+
+        return new CompactSlotArchive(newDays, newStarts, newEnds, newRoomIds, newSize,
+                newRoomTable.toArray(new RoomProperties[0]), newRoomIdsByName, newSideTable, Math.max(archivedUntil, newArchivedUntil));
+    }
+
+    /**
+     * Archive without the rows and the room table entry of the room, used when the room is deleted from the schedule.
+     */
+    public CompactSlotArchive withoutRoom(String roomName) {
+        Integer removedId = roomIdsByName.get(roomName);
+        if (removedId == null)
+            return this;
+        int roomId = removedId;
+
+        int[] newDays = new int[size];
+        short[] newStarts = new short[size];
+        short[] newEnds = new short[size];
+        int[] newRoomIds = new int[size];
+        Map<Integer, ScheduleSlot> newSideTable = new HashMap<>();
+
+        // the rows are copied anyway, so the ids above the removed one move down and the room table stays dense
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (roomIds[row] == roomId)
+                continue;
+            newDays[kept] = days[row];
+            newStarts[kept] = starts[row];
+            newEnds[kept] = ends[row];
+            newRoomIds[kept] = roomIds[row] > roomId ? roomIds[row] - 1 : roomIds[row];
+            if (sideTable.containsKey(row))
+                newSideTable.put(kept, sideTable.get(row));
+            kept++;
+        }
+
+        RoomProperties[] newRoomTable = new RoomProperties[roomTable.length - 1];
+        System.arraycopy(roomTable, 0, newRoomTable, 0, roomId);
+        System.arraycopy(roomTable, roomId + 1, newRoomTable, roomId, newRoomTable.length - roomId);
+
+        Map<String, Integer> newRoomIdsByName = new HashMap<>();
+        roomIdsByName.forEach((name, id) -> {
+            if (id != roomId)
+                newRoomIdsByName.put(name, id > roomId ? id - 1 : id);
+        });
+        return new CompactSlotArchive(newDays, newStarts, newEnds, newRoomIds, kept,
+                newRoomTable, newRoomIdsByName, newSideTable, archivedUntil);
+    }
+
+    /**
+     * Number of rooms the archive keeps properties for.
+     */
+    public int roomCount() {
+        return roomTable.length;
+    }
+
+    /**
+     * Archive whose rows of the room now materialize with the new room properties, under the new name if the room was renamed.
+     */
+    public CompactSlotArchive withRoom(String roomName, RoomProperties properties) {
+        Integer roomId = roomIdsByName.get(roomName);
+        if (roomId == null)
+            return this;
+
+        RoomProperties[] newRoomTable = roomTable.clone();
+        newRoomTable[roomId] = properties;
+
+        // the rows reference the room by id, a rename only re-keys the name table
+        Map<String, Integer> newRoomIdsByName = roomIdsByName;
+        if (!roomName.equals(properties.getName())) {
+            newRoomIdsByName = new HashMap<>(roomIdsByName);
+            newRoomIdsByName.remove(roomName);
+            newRoomIdsByName.put(properties.getName(), roomId);
+        }
+        return new CompactSlotArchive(days, starts, ends, roomIds, size, newRoomTable, newRoomIdsByName, sideTable, archivedUntil);
+    }
+
+    /**
+     * Lazily materialized, chronologically ordered slots between the two epoch days (both inclusive, null is open).
+     */
+    public Iterable<ScheduleSlot> range(Long fromDay, Long toDay) {
+        int from = fromDay == null ? 0 : firstRowOf(fromDay);
+        int to = toDay == null ? size : firstRowOf(toDay + 1);
+
+        return () -> new Iterator<>() {
+            private int row = from;
+
+            @Override
+            public boolean hasNext() {
+                return row < to;
+            }
+
+            @Override
+            public ScheduleSlot next() {
+                if (row >= to)
+                    throw new NoSuchElementException();
+                return materialize(row++);
+            }
+        };
+    }
+
+    /**
+     * Archived slots of the room on the day, ordered by start time.
+     */
+    public List<ScheduleSlot> slotsOn(String roomName, long day) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        Integer roomId = roomIdsByName.get(roomName);
+        if (roomId == null)
+            return slots;
+
+        for (int row = firstRowOf(day); row < size && days[row] == day; row++)
+            if (roomIds[row] == roomId)
+                slots.add(materialize(row));
+        return slots;
+    }
+
+    /**
+     * Archived slots of the room between the two epoch days (both inclusive, null is open), in chronological order.
+     * Rows of other rooms are skipped on the room id column without being materialized.
+     */
+    public List<ScheduleSlot> slotsBetween(String roomName, Long fromDay, Long toDay) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        Integer roomId = roomIdsByName.get(roomName);
+        if (roomId == null)
+            return slots;
+
+        int to = toDay == null ? size : firstRowOf(toDay + 1);
+        for (int row = fromDay == null ? 0 : firstRowOf(fromDay); row < to; row++)
+            if (roomIds[row] == roomId)
+                slots.add(materialize(row));
+        return slots;
+    }
+
+    /**
+     * Epoch day of the earliest archived slot, null if the archive is empty.
+     */
+    public Long firstDay() {
+        return size == 0 ? null : (long) days[0];
+    }
+
+    /**
+     * Epoch day of the latest archived slot, null if the archive is empty.
+     */
+    public Long lastDay() {
+        return size == 0 ? null : (long) days[size - 1];
+    }
+
+    public ScheduleSlot get(SlotKey key) {
+        Integer roomId = roomIdsByName.get(key.getRoom());
+        if (roomId == null)
+            return null;
+
+        for (int row = firstRowOf(key.getDay()); row < size && days[row] == key.getDay(); row++)
+            if (roomIds[row] == roomId && starts[row] == key.getStart() && ends[row] == key.getEnd())
+                return materialize(row);
+        return null;
+    }
+
+    /**
+     * Approximate heap footprint of the columns, without the shared room table and side table entries.
+     */
+    public long footprintBytes() {
+        return (long) days.length * (Integer.BYTES + Short.BYTES + Short.BYTES + Integer.BYTES);
+    }
+
+    private int firstRowOf(long day) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private ScheduleSlot materialize(int row) {
+        ScheduleSlot original = sideTable.get(row);
+        if (original != null)
+            return original;
+
+        return new ScheduleSlot.Builder()
+                .setDate(dateOfEpochDay(days[row]))
+                .setStartTime(formatMinute(starts[row]))
+                .setEndTime(formatMinute(ends[row]))
+                .setLocation(roomTable[roomIds[row]])
+                .build();
+    }
+}
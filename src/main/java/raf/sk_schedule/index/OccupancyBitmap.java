@@ -0,0 +1,86 @@
+package raf.sk_schedule.index;
+
+import java.util.Arrays;
+
+import static raf.sk_schedule.index.SlotTimes.MINUTES_PER_DAY;
+
+/**
+ * Minute granularity occupancy of one room on one day, a booked slot [start, end) sets the bits of the minutes it covers.
+ * <p>
+ * Checking a time window is a handful of word operations. The bitmap only knows minutes, not the collision rules of the
+ * model, so it answers with certainty only where every sensible rule agrees: a booked minute inside the window is a
+ * collision, nothing booked inside or right next to the window is free. A window that only touches booked slots is
+ * left to {@link raf.sk_schedule.model.schedule_node.ScheduleSlot#isCollidingWith}.
+ * <p>
+ * Not synchronized, guarded together with the room/day bucket that owns it.
+ */
+public final class OccupancyBitmap {
+
+    public enum Probe {
+        FREE, OCCUPIED, UNDECIDED;
+
+        /**
+         * Answer for a window checked against two independent sources of occupancy.
+         */
+        public Probe and(Probe other) {
+            if (this == OCCUPIED || other == OCCUPIED)
+                return OCCUPIED;
+            return this == FREE && other == FREE ? FREE : UNDECIDED;
+        }
+    }
+
+    private static final int WORDS = (MINUTES_PER_DAY + Long.SIZE - 1) / Long.SIZE;
+
+    private final long[] words = new long[WORDS];
+
+    /**
+     * Windows the bitmap can represent, anything else has to be decided slot by slot.
+     */
+    public static boolean fits(int start, int end) {
+        return 0 <= start && start < end && end <= MINUTES_PER_DAY;
+    }
+
+    public void set(int start, int end) {
+        int first = Math.max(start, 0);
+        int last = Math.min(end, MINUTES_PER_DAY) - 1;
+        for (int word = first >>> 6; first <= last && word <= last >>> 6; word++)
+            words[word] |= mask(word, first, last);
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    public Probe probe(int start, int end) {
+        if (!fits(start, end))
+            return Probe.UNDECIDED;
+        if (any(start, end))
+            return Probe.OCCUPIED;
+        // a slot ending exactly at the start or starting exactly at the end may or may not collide
+        return any(start - 1, end + 1) ? Probe.UNDECIDED : Probe.FREE;
+    }
+
+    /**
+     * True if any minute in [from, to) is booked, bounds are clipped to the day.
+     */
+    private boolean any(int from, int to) {
+        int first = Math.max(from, 0);
+        int last = Math.min(to, MINUTES_PER_DAY) - 1;
+        for (int word = first >>> 6; first <= last && word <= last >>> 6; word++)
+            if ((words[word] & mask(word, first, last)) != 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * Bits of the word that fall into the minutes [first, last].
+     */
+    private static long mask(int word, int first, int last) {
+        long mask = -1L;
+        if (word == first >>> 6)
+            mask &= -1L << (first & 63);
+        if (word == last >>> 6)
+            mask &= -1L >>> (63 - (last & 63));
+        return mask;
+    }
+}
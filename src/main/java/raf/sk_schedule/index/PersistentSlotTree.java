@@ -0,0 +1,252 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+
+/**
+ * Immutable sorted map of slots by {@link SlotKey}, a persistent AVL tree.
+ * <p>
+ * Adding or removing a slot copies only the O(log n) nodes on the path to it and shares the rest of the tree with
+ * the previous version, so every version stays valid and complete after it has been changed and holding on to one
+ * is O(1). Nodes also count their subtree, which makes the size of any day range O(log n).
+ */
+public final class PersistentSlotTree {
+
+    private static final PersistentSlotTree EMPTY = new PersistentSlotTree(null);
+
+    private final Node root;
+
+    private PersistentSlotTree(Node root) {
+        this.root = root;
+    }
+
+    public static PersistentSlotTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Tree with the slot stored under the key, a slot already stored under the key is replaced.
+     */
+    public PersistentSlotTree with(SlotKey key, ScheduleSlot slot) {
+        return new PersistentSlotTree(insert(root, key, slot));
+    }
+
+    /**
+     * Tree without the key, the same tree if the key is not stored.
+     */
+    public PersistentSlotTree without(SlotKey key) {
+        if (get(key) == null)
+            return this;
+        return new PersistentSlotTree(delete(root, key));
+    }
+
+    public ScheduleSlot get(SlotKey key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node.slot;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Epoch day of the earliest slot, null if the tree is empty.
+     */
+    public Long firstDay() {
+        if (root == null)
+            return null;
+        Node node = root;
+        while (node.left != null)
+            node = node.left;
+        return node.key.getDay();
+    }
+
+    /**
+     * Epoch day of the latest slot, null if the tree is empty.
+     */
+    public Long lastDay() {
+        if (root == null)
+            return null;
+        Node node = root;
+        while (node.right != null)
+            node = node.right;
+        return node.key.getDay();
+    }
+
+    /**
+     * Chronological view of the slots between the two epoch days, both inclusive. Null bound means the range is open on that side.
+     * The view reads this version only, it never changes.
+     */
+    public Collection<ScheduleSlot> range(Long fromDay, Long toDay) {
+        if (fromDay != null && toDay != null && fromDay > toDay)
+            return Collections.emptyList();
+
+        SlotKey from = fromDay == null ? null : SlotKey.dayStart(fromDay);
+        SlotKey until = toDay == null ? null : SlotKey.dayStart(toDay + 1);
+        return new AbstractCollection<ScheduleSlot>() {
+
+            @Override
+            public Iterator<ScheduleSlot> iterator() {
+                return new RangeIterator(root, from, until);
+            }
+
+            @Override
+            public int size() {
+                return (until == null ? PersistentSlotTree.size(root) : rank(root, until)) - (from == null ? 0 : rank(root, from));
+            }
+        };
+    }
+
+    // number of keys smaller than the key
+    private static int rank(Node node, SlotKey key) {
+        int rank = 0;
+        while (node != null) {
+            if (key.compareTo(node.key) <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    private static Node insert(Node node, SlotKey key, ScheduleSlot slot) {
+        if (node == null)
+            return new Node(key, slot, null, null);
+
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0)
+            return new Node(key, slot, node.left, node.right);
+        if (cmp < 0)
+            return balance(node.key, node.slot, insert(node.left, key, slot), node.right);
+        return balance(node.key, node.slot, node.left, insert(node.right, key, slot));
+    }
+
+    // caller made sure the key is in the subtree
+    private static Node delete(Node node, SlotKey key) {
+        int cmp = key.compareTo(node.key);
+        if (cmp < 0)
+            return balance(node.key, node.slot, delete(node.left, key), node.right);
+        if (cmp > 0)
+            return balance(node.key, node.slot, node.left, delete(node.right, key));
+
+        if (node.left == null)
+            return node.right;
+        if (node.right == null)
+            return node.left;
+
+        // the successor takes the place of the removed node
+        Node successor = node.right;
+        while (successor.left != null)
+            successor = successor.left;
+        return balance(successor.key, successor.slot, node.left, deleteFirst(node.right));
+    }
+
+    private static Node deleteFirst(Node node) {
+        if (node.left == null)
+            return node.right;
+        return balance(node.key, node.slot, deleteFirst(node.left), node.right);
+    }
+
+    private static Node balance(SlotKey key, ScheduleSlot slot, Node left, Node right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) < height(left.right))
+                left = rotateLeft(left.left, left.right, left.key, left.slot);
+            return new Node(left.key, left.slot, left.left, new Node(key, slot, left.right, right));
+        }
+        if (difference < -1) {
+            if (height(right.right) < height(right.left))
+                right = rotateRight(right.left, right.right, right.key, right.slot);
+            return new Node(right.key, right.slot, new Node(key, slot, left, right.left), right.right);
+        }
+        return new Node(key, slot, left, right);
+    }
+
+    private static Node rotateLeft(Node left, Node right, SlotKey key, ScheduleSlot slot) {
+        return new Node(right.key, right.slot, new Node(key, slot, left, right.left), right.right);
+    }
+
+    private static Node rotateRight(Node left, Node right, SlotKey key, ScheduleSlot slot) {
+        return new Node(left.key, left.slot, left.left, new Node(key, slot, left.right, right));
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+
+    private static final class Node {
+
+        final SlotKey key;
+        final ScheduleSlot slot;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(SlotKey key, ScheduleSlot slot, Node left, Node right) {
+            this.key = key;
+            this.slot = slot;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+
+    /**
+     * In order walk from the first key not below the lower bound, stops before the first key not below the upper bound.
+     */
+    private static final class RangeIterator implements Iterator<ScheduleSlot> {
+
+        private final Deque<Node> path = new ArrayDeque<>();
+        private final SlotKey until;
+
+        RangeIterator(Node root, SlotKey from, SlotKey until) {
+            this.until = until;
+            Node node = root;
+            while (node != null) {
+                if (from == null || from.compareTo(node.key) <= 0) {
+                    path.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty() && (until == null || path.peek().key.compareTo(until) < 0);
+        }
+
+        @Override
+        public ScheduleSlot next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Node node = path.pop();
+            for (Node next = node.right; next != null; next = next.left)
+                path.push(next);
+            return node.slot;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.metrics.ScheduleMetricsListener;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.report.ConflictReport;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+
+/**
+ * Interval index of booked slots partitioned by room and by day.
+ * <p>
+ * Inside one room/day bucket slots are kept in a map sorted by their start minute, together with
+ * the longest duration ever stored in the bucket. Any slot overlapping a window [start, end] must
+ * therefore start inside [start - maxDuration, end], so a collision lookup is a single sub map scan
+ * instead of a pass over the whole schedule. Candidates are confirmed with {@link ScheduleSlot#isCollidingWith(ScheduleSlot)}
+ * so the index never changes the collision semantics of the model.
+ * <p>
+ * Every bucket also keeps a minute {@link OccupancyBitmap} of its slots, a yes/no availability check
+ * is a few word operations and falls back to the sorted map only when the window just touches booked slots.
+ * <p>
+ * Slots are indexed by the values of their date, time and location fields at the moment of insertion,
+ * a slot has to be removed before any of those fields is changed and added again afterwards.
+ * <p>
+ * Rooms are independent of each other: different rooms can be modified concurrently, but everything below the room level
+ * is not synchronized, so the caller has to guard each room (see the room lock table of the manager).
+ */
+public class RoomDayIndex {
+
+    private final Map<String, NavigableMap<Long, DayBucket>> rooms = new ConcurrentHashMap<>();
+    // every collision check reports how many booked slots it compared
+    private volatile ScheduleMetricsListener metrics = ScheduleMetricsListener.NOOP;
+
+    public void setMetricsListener(ScheduleMetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    public static String roomKey(ScheduleSlot slot) {
+        return slot.getLocation() == null ? "" : slot.getLocation().getName();
+    }
+
+    public void add(ScheduleSlot slot) {
+        rooms.computeIfAbsent(roomKey(slot), key -> new TreeMap<>())
+                .computeIfAbsent(epochDay(slot.getDate()), key -> new DayBucket())
+                .add(slot);
+    }
+
+    /**
+     * Removes exactly the passed slot instance, returns false if it was not indexed.
+     */
+    public boolean remove(ScheduleSlot slot) {
+        NavigableMap<Long, DayBucket> days = rooms.get(roomKey(slot));
+        if (days == null)
+            return false;
+
+        long day = epochDay(slot.getDate());
+        DayBucket bucket = days.get(day);
+        if (bucket == null || !bucket.remove(slot))
+            return false;
+
+        if (bucket.isEmpty()) {
+            days.remove(day);
+            if (days.isEmpty())
+                rooms.remove(roomKey(slot));
+        }
+        return true;
+    }
+
+    /**
+     * Drops every slot booked in the room and returns them.
+     */
+    public List<ScheduleSlot> removeRoom(String roomName) {
+        List<ScheduleSlot> removed = new ArrayList<>();
+        NavigableMap<Long, DayBucket> days = rooms.remove(roomName);
+        if (days != null)
+            for (DayBucket bucket : days.values())
+                bucket.collect(removed);
+        return removed;
+    }
+
+    public Set<String> roomNames() {
+        return new HashSet<>(rooms.keySet());
+    }
+
+    /**
+     * Slots booked in the room on the given epoch day, ordered by start time.
+     */
+    public List<ScheduleSlot> slotsOn(String roomName, long day) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        NavigableMap<Long, DayBucket> days = rooms.get(roomName);
+        DayBucket bucket = days == null ? null : days.get(day);
+        if (bucket != null)
+            bucket.collect(slots);
+        return slots;
+    }
+
+    /**
+     * Slots booked in the room between the two epoch days (both inclusive, null is open), ordered by day and start time.
+     */
+    public List<ScheduleSlot> slotsBetween(String roomName, Long fromDay, Long toDay) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        NavigableMap<Long, DayBucket> days = rooms.get(roomName);
+        if (days == null || (fromDay != null && toDay != null && fromDay > toDay))
+            return slots;
+
+        NavigableMap<Long, DayBucket> range = days;
+        if (fromDay != null)
+            range = range.tailMap(fromDay, true);
+        if (toDay != null)
+            range = range.headMap(toDay, true);
+        for (DayBucket bucket : range.values())
+            bucket.collect(slots);
+        return slots;
+    }
+
+    /**
+     * All indexed slots colliding with the probe slot, ordered by start time.
+     */
+    public List<ScheduleSlot> findCollisions(ScheduleSlot probe) {
+        List<ScheduleSlot> collisions = new ArrayList<>();
+        DayBucket bucket = bucketOf(probe);
+        int scanned = bucket == null ? 0 : bucket.collectCollisions(probe, collisions, false);
+        reportScan(scanned, collisions.size());
+        return collisions;
+    }
+
+    /**
+     * Occupancy of the window [start, end) in the room on the day according to the bitmap of the bucket.
+     */
+    public OccupancyBitmap.Probe probe(String roomName, long day, int start, int end) {
+        NavigableMap<Long, DayBucket> days = rooms.get(roomName);
+        DayBucket bucket = days == null ? null : days.get(day);
+        return bucket == null ? OccupancyBitmap.Probe.FREE : bucket.probe(start, end);
+    }
+
+    /**
+     * First indexed slot colliding with the probe slot or null if the time window is free.
+     */
+    public ScheduleSlot findFirstCollision(ScheduleSlot probe) {
+        List<ScheduleSlot> collisions = new ArrayList<>(1);
+        DayBucket bucket = bucketOf(probe);
+        int scanned = bucket == null ? 0 : bucket.collectCollisions(probe, collisions, true);
+        reportScan(scanned, collisions.size());
+        return collisions.isEmpty() ? null : collisions.get(0);
+    }
+
+    /**
+     * Sweep line conflict detection for a batch of slots that are about to be booked.
+     * <p>
+     * The batch is sorted by room, day and start time once, then every room/day group is merged with the
+     * already sorted bucket of the same room and day in a single pass. Slots whose time window is still open
+     * are kept in two active lists (booked and requested), so each slot is only compared with the slots that
+     * overlap it in time. Every collision is reported, including collisions between the requested slots themselves.
+     */
+    public void sweepConflicts(List<ScheduleSlot> requested, ConflictReport report) {
+        List<Timed> batch = new ArrayList<>(requested.size());
+        for (ScheduleSlot slot : requested)
+            batch.add(new Timed(slot));
+
+        batch.sort(Comparator.comparing((Timed t) -> t.room).thenComparingLong(t -> t.day).thenComparingInt(t -> t.start));
+
+        int scanned = 0;
+        int conflictsBefore = report.getConflicts().size();
+        int groupStart = 0;
+        while (groupStart < batch.size()) {
+            Timed first = batch.get(groupStart);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < batch.size() && batch.get(groupEnd).room.equals(first.room) && batch.get(groupEnd).day == first.day)
+                groupEnd++;
+
+            NavigableMap<Long, DayBucket> days = rooms.get(first.room);
+            DayBucket bucket = days == null ? null : days.get(first.day);
+            List<Timed> booked = new ArrayList<>();
+            if (bucket != null)
+                for (List<ScheduleSlot> sameStart : bucket.byStart.values())
+                    for (ScheduleSlot slot : sameStart)
+                        booked.add(new Timed(slot));
+
+            scanned += booked.size();
+            sweepGroup(booked, batch.subList(groupStart, groupEnd), report);
+            groupStart = groupEnd;
+        }
+        report.setCheckedSlots(requested.size());
+        reportScan(scanned, report.getConflicts().size() - conflictsBefore);
+    }
+
+    private static void sweepGroup(List<Timed> booked, List<Timed> requested, ConflictReport report) {
+        List<Timed> activeBooked = new ArrayList<>();
+        List<Timed> activeRequested = new ArrayList<>();
+        int b = 0, r = 0;
+
+        // once the requested slots are exhausted only booked slots starting inside a still open requested slot matter
+        while (r < requested.size() || (b < booked.size() && !activeRequested.isEmpty())) {
+            boolean takeBooked = r == requested.size() || (b < booked.size() && booked.get(b).start <= requested.get(r).start);
+            Timed next = takeBooked ? booked.get(b++) : requested.get(r++);
+
+            // everything that ended before this slot started can not collide with it or anything after it
+            activeBooked.removeIf(t -> t.end < next.start);
+            activeRequested.removeIf(t -> t.end < next.start);
+
+            if (takeBooked) {
+                // booked slots never have to be compared with each other
+                for (Timed curr : activeRequested)
+                    if (next.slot.isCollidingWith(curr.slot))
+                        report.addConflict(next.slot, curr.slot, false);
+
+                activeBooked.add(next);
+                continue;
+            }
+
+            for (Timed curr : activeBooked)
+                if (curr.slot.isCollidingWith(next.slot))
+                    report.addConflict(curr.slot, next.slot, false);
+
+            for (Timed curr : activeRequested)
+                if (curr.slot.isCollidingWith(next.slot))
+                    report.addConflict(curr.slot, next.slot, true);
+
+            activeRequested.add(next);
+        }
+    }
+
+    private void reportScan(int scanned, int collisions) {
+        ScheduleMetricsListener listener = metrics;
+        if (listener.isEnabled())
+            listener.onCollisionScan(scanned, collisions);
+    }
+
+    public void clear() {
+        rooms.clear();
+    }
+
+    private DayBucket bucketOf(ScheduleSlot slot) {
+        NavigableMap<Long, DayBucket> days = rooms.get(roomKey(slot));
+        return days == null ? null : days.get(epochDay(slot.getDate()));
+    }
+
+
+    private static class Timed {
+
+        final ScheduleSlot slot;
+        final String room;
+        final long day;
+        final int start;
+        final int end;
+
+        Timed(ScheduleSlot slot) {
+            this.slot = slot;
+            this.room = roomKey(slot);
+            this.day = epochDay(slot.getDate());
+            this.start = minuteOfDay(slot.getStartTime());
+            this.end = minuteOfDay(slot.getEndTime());
+        }
+    }
+
+
+    private static class DayBucket {
+
+        private final TreeMap<Integer, List<ScheduleSlot>> byStart = new TreeMap<>();
+        // never shrinks on removal, a too wide scan window is still correct
+        private int maxDuration;
+        private int size;
+        private final OccupancyBitmap occupancy = new OccupancyBitmap();
+        // slots the bitmap can not represent (empty or crossing the day bounds), while there are any it decides nothing
+        private int irregular;
+
+        void add(ScheduleSlot slot) {
+            int start = minuteOfDay(slot.getStartTime());
+            int end = minuteOfDay(slot.getEndTime());
+            maxDuration = Math.max(maxDuration, end - start);
+            byStart.computeIfAbsent(start, key -> new ArrayList<>(1)).add(slot);
+            size++;
+            occupy(start, end);
+        }
+
+        private void occupy(int start, int end) {
+            if (OccupancyBitmap.fits(start, end))
+                occupancy.set(start, end);
+            else
+                irregular++;
+        }
+
+        /**
+         * Minutes of a removed slot may be shared with a touching or (replayed) overlapping one,
+         * so the bitmap is rebuilt from the slots that stay, a bucket holds one day of one room.
+         */
+        private void rebuildOccupancy() {
+            occupancy.clear();
+            irregular = 0;
+            for (List<ScheduleSlot> sameStart : byStart.values())
+                for (ScheduleSlot slot : sameStart)
+                    occupy(minuteOfDay(slot.getStartTime()), minuteOfDay(slot.getEndTime()));
+        }
+
+        OccupancyBitmap.Probe probe(int start, int end) {
+            return irregular > 0 ? OccupancyBitmap.Probe.UNDECIDED : occupancy.probe(start, end);
+        }
+
+        boolean remove(ScheduleSlot slot) {
+            int start = minuteOfDay(slot.getStartTime());
+            List<ScheduleSlot> sameStart = byStart.get(start);
+            if (sameStart == null)
+                return false;
+
+            for (Iterator<ScheduleSlot> it = sameStart.iterator(); it.hasNext(); ) {
+                if (it.next() == slot) {
+                    it.remove();
+                    if (sameStart.isEmpty())
+                        byStart.remove(start);
+                    size--;
+                    rebuildOccupancy();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void collect(List<ScheduleSlot> out) {
+            for (List<ScheduleSlot> sameStart : byStart.values())
+                out.addAll(sameStart);
+        }
+
+        /**
+         * Returns the number of slots that were compared with the probe.
+         */
+        int collectCollisions(ScheduleSlot probe, List<ScheduleSlot> out, boolean firstOnly) {
+            int scanned = 0;
+            int start = minuteOfDay(probe.getStartTime());
+            int end = minuteOfDay(probe.getEndTime());
+
+            // bounds are inclusive so touching slots are handed to isCollidingWith as well
+            for (List<ScheduleSlot> sameStart : byStart.subMap(start - maxDuration, true, end, true).values()) {
+                for (ScheduleSlot curr : sameStart) {
+                    scanned++;
+                    if (minuteOfDay(curr.getEndTime()) >= start && curr.isCollidingWith(probe)) {
+                        out.add(curr);
+                        if (firstOnly)
+                            return scanned;
+                    }
+                }
+            }
+            return scanned;
+        }
+    }
+}
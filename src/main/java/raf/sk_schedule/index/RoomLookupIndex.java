@@ -0,0 +1,196 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.model.location_node.RoomProperties;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over room properties used by room look ups.
+ * <p>
+ * Every room gets a small integer id and each queryable property maps to a bitset of ids: projector flag,
+ * number of computers and capacity (kept in a sorted map so capacity ranges are a sub map union).
+ * Attribute postings are built lazily the first time an attribute name is queried and are maintained
+ * from then on, so a look up is a handful of bitset intersections instead of a pass over all rooms.
+ * Rooms are indexed under the name they are registered with in the schedule.
+ * <p>
+ * Modifications need exclusive access. Look ups may run concurrently with each other (they only add attribute postings),
+ * but not with modifications.
+ */
+public class RoomLookupIndex {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<RoomProperties> byId = new ArrayList<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+
+    private final BitSet allRooms = new BitSet();
+    private final BitSet withProjector = new BitSet();
+    private final Map<Integer, BitSet> byComputers = new HashMap<>();
+    private final NavigableMap<Integer, BitSet> byCapacity = new TreeMap<>();
+    private final Map<String, AttributePostings> byAttribute = new ConcurrentHashMap<>();
+
+    public void add(String name, RoomProperties room) {
+        remove(name);
+
+        Integer id = freeIds.poll();
+        if (id == null) {
+            id = byId.size();
+            byId.add(room);
+        } else
+            byId.set(id, room);
+
+        ids.put(name, id);
+        allRooms.set(id);
+        if (room.hasProjector())
+            withProjector.set(id);
+        byComputers.computeIfAbsent(room.hasComputers(), key -> new BitSet()).set(id);
+        byCapacity.computeIfAbsent(room.getCapacity(), key -> new BitSet()).set(id);
+
+        for (Map.Entry<String, AttributePostings> entry : byAttribute.entrySet())
+            entry.getValue().add(id, room, entry.getKey());
+    }
+
+    public void remove(String name) {
+        Integer id = ids.remove(name);
+        if (id == null)
+            return;
+
+        RoomProperties room = byId.get(id);
+        allRooms.clear(id);
+        withProjector.clear(id);
+        clearBit(byComputers, room.hasComputers(), id);
+        clearBit(byCapacity, room.getCapacity(), id);
+        for (AttributePostings postings : byAttribute.values())
+            postings.remove(id);
+
+        byId.set(id, null);
+        freeIds.push(id);
+    }
+
+    public void clear() {
+        ids.clear();
+        byId.clear();
+        freeIds.clear();
+        allRooms.clear();
+        withProjector.clear();
+        byComputers.clear();
+        byCapacity.clear();
+        byAttribute.clear();
+    }
+
+    /**
+     * Same semantics as the original room look up: negative numeric arguments and null arguments are ignored,
+     * a room is excluded by a queried attribute only if it has that attribute with a different value.
+     *
+     * @param minCapacity inclusive lower capacity bound, negative for no bound
+     * @param maxCapacity inclusive upper capacity bound, negative for no bound
+     */
+    public List<RoomProperties> lookUp(String name, int minCapacity, int maxCapacity, int hasComputers, Boolean hasProjector, Map<String, String> attributes) {
+
+        BitSet result;
+        if (name != null) {
+            result = new BitSet();
+            Integer id = ids.get(name);
+            if (id != null)
+                result.set(id);
+        } else
+            result = (BitSet) allRooms.clone();
+
+        if (hasProjector != null) {
+            if (hasProjector)
+                result.and(withProjector);
+            else
+                result.andNot(withProjector);
+        }
+
+        if (hasComputers >= 0 && !result.isEmpty())
+            result.and(byComputers.getOrDefault(hasComputers, new BitSet()));
+
+        if ((minCapacity >= 0 || maxCapacity >= 0) && !result.isEmpty())
+            result.and(capacityRange(minCapacity, maxCapacity));
+
+        if (attributes != null) {
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                if (result.isEmpty())
+                    break;
+                result.andNot(postingsOf(attribute.getKey()).mismatching(attribute.getValue()));
+            }
+        }
+
+        List<RoomProperties> lookUpResult = new ArrayList<>(result.cardinality());
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1))
+            lookUpResult.add(byId.get(id));
+        return lookUpResult;
+    }
+
+    private BitSet capacityRange(int minCapacity, int maxCapacity) {
+        // an inverted range matches nothing, the sub map views would reject it
+        if (minCapacity >= 0 && maxCapacity >= 0 && minCapacity > maxCapacity)
+            return new BitSet();
+
+        NavigableMap<Integer, BitSet> range = byCapacity;
+        if (minCapacity >= 0)
+            range = range.tailMap(minCapacity, true);
+        if (maxCapacity >= 0)
+            range = range.headMap(maxCapacity, true);
+
+        BitSet union = new BitSet();
+        for (BitSet ids : range.values())
+            union.or(ids);
+        return union;
+    }
+
+    private AttributePostings postingsOf(String attribute) {
+        // first query of this attribute builds its postings once, they are kept up to date afterwards
+        return byAttribute.computeIfAbsent(attribute, key -> {
+            AttributePostings postings = new AttributePostings();
+            for (int id = allRooms.nextSetBit(0); id >= 0; id = allRooms.nextSetBit(id + 1))
+                postings.add(id, byId.get(id), key);
+            return postings;
+        });
+    }
+
+    private static void clearBit(Map<Integer, BitSet> postings, int key, int id) {
+        BitSet ids = postings.get(key);
+        if (ids != null) {
+            ids.clear(id);
+            if (ids.isEmpty())
+                postings.remove(key);
+        }
+    }
+
+
+    private static class AttributePostings {
+
+        private final BitSet hasAttribute = new BitSet();
+        private final Map<String, BitSet> byValue = new HashMap<>();
+
+        void add(int id, RoomProperties room, String attribute) {
+            if (!room.hasAttribute(attribute))
+                return;
+            hasAttribute.set(id);
+            byValue.computeIfAbsent(room.getAttribute(attribute), key -> new BitSet()).set(id);
+        }
+
+        void remove(int id) {
+            if (!hasAttribute.get(id))
+                return;
+            hasAttribute.clear(id);
+            byValue.values().removeIf(ids -> {
+                ids.clear(id);
+                return ids.isEmpty();
+            });
+        }
+
+        /**
+         * Rooms that have the attribute but with some other value.
+         */
+        BitSet mismatching(String value) {
+            BitSet mismatching = (BitSet) hasAttribute.clone();
+            BitSet matching = byValue.get(value);
+            if (matching != null)
+                mismatching.andNot(matching);
+            return mismatching;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.Date;
+import java.util.Objects;
+
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+
+/**
+ * Identity of a slot inside the schedule: day, start, end and room.
+ * Keys are ordered chronologically by absolute start time, ties are broken by end time and room name.
+ */
+public final class SlotKey implements Comparable<SlotKey> {
+
+    private final long day;
+    private final int start;
+    private final int end;
+    private final String room;
+
+    public SlotKey(long day, int start, int end, String room) {
+        this.day = day;
+        this.start = start;
+        this.end = end;
+        this.room = room;
+    }
+
+    public static SlotKey of(ScheduleSlot slot) {
+        return new SlotKey(epochDay(slot.getDate()), minuteOfDay(slot.getStartTime()), minuteOfDay(slot.getEndTime()), RoomDayIndex.roomKey(slot));
+    }
+
+    public static SlotKey of(Date date, String startTime, String endTime, String room) {
+        return new SlotKey(epochDay(date), minuteOfDay(startTime), minuteOfDay(endTime), room);
+    }
+
+    /**
+     * Lower than every key of the given day.
+     */
+    public static SlotKey dayStart(long day) {
+        return new SlotKey(day, Integer.MIN_VALUE, Integer.MIN_VALUE, "");
+    }
+
+    public long getDay() {
+        return day;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    @Override
+    public int compareTo(SlotKey other) {
+        if (day != other.day)
+            return Long.compare(day, other.day);
+        if (start != other.start)
+            return Integer.compare(start, other.start);
+        if (end != other.end)
+            return Integer.compare(end, other.end);
+        return room.compareTo(other.room);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof SlotKey))
+            return false;
+        SlotKey other = (SlotKey) o;
+        return day == other.day && start == other.start && end == other.end && room.equals(other.room);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(day, start, end, room);
+    }
+
+    @Override
+    public String toString() {
+        return room + "@" + day + "[" + start + "-" + end + "]";
+    }
+}
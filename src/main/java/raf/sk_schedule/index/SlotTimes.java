@@ -0,0 +1,87 @@
+package raf.sk_schedule.index;
+
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Conversions between the string/Date representation used by the schedule model
+ * and the primitive day/minute coordinates used by the internal indexes.
+ */
+public final class SlotTimes {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    // week day of every epoch day modulo 7, resolved lazily through the schedule model itself
+    private static final WeekDay[] WEEK_DAYS = new WeekDay[7];
+
+    private SlotTimes() {
+    }
+
+    /**
+     * Parses a time of day in "HH:mm" form into minutes since midnight.
+     */
+    public static int minuteOfDay(String time) {
+        if (time == null)
+            throw new ScheduleException("Time of day is missing.");
+
+        int separator = time.indexOf(':');
+        try {
+            if (separator < 0)
+                return Integer.parseInt(time.trim()) * 60;
+
+            int hours = Integer.parseInt(time.substring(0, separator).trim());
+            int minutes = Integer.parseInt(time.substring(separator + 1).trim());
+            return hours * 60 + minutes;
+        } catch (NumberFormatException e) {
+            throw new ScheduleException("Time of day: " + time + " is not in HH:mm format.");
+        }
+    }
+
+    /**
+     * Formats minutes since midnight back to the "HH:mm" form.
+     */
+    public static String formatMinute(int minuteOfDay) {
+        int hours = minuteOfDay / 60;
+        int minutes = minuteOfDay % 60;
+        return (hours < 10 ? "0" : "") + hours + ":" + (minutes < 10 ? "0" : "") + minutes;
+    }
+
+    /**
+     * Number of days since 1970-01-01 in the system time zone.
+     */
+    public static long epochDay(Date date) {
+        return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Midnight (system time zone) of the given epoch day.
+     */
+    public static Date dateOfEpochDay(long epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Week day of the epoch day as the schedule model names it.
+     */
+    public static WeekDay weekDayOf(long epochDay) {
+        int weekDayIndex = (int) Math.floorMod(epochDay, 7L);
+        WeekDay weekDay = WEEK_DAYS[weekDayIndex];
+        if (weekDay == null) {
+            weekDay = new ScheduleSlot.Builder()
+                    .setDate(dateOfEpochDay(epochDay))
+                    .setStartTime("08:00")
+                    .setEndTime("09:00")
+                    .build()
+                    .getDayOfWeek();
+            // benign race, every thread resolves the same value
+            WEEK_DAYS[weekDayIndex] = weekDay;
+        }
+        return weekDay;
+    }
+}
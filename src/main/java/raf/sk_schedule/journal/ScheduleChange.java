@@ -0,0 +1,106 @@
+package raf.sk_schedule.journal;
+
+import raf.sk_schedule.index.SlotKey;
+
+/**
+ * One versioned entry of the {@link ScheduleChangeLog}. Depending on the type of the change some fields are not set:
+ * slot changes carry the slot (and the new position of a moved slot), room changes carry the room names
+ * and archiving carries the first day that is still live.
+ */
+public final class ScheduleChange {
+
+    public enum Type {
+        BOOKED, DELETED, MOVED, ROOM_UPDATED, ROOM_DELETED, ARCHIVED
+    }
+
+    private final long version;
+    private final Type type;
+    private final SlotKey slot;
+    private final SlotKey movedTo;
+    private final String room;
+    private final String newRoom;
+    private final long day;
+
+    private ScheduleChange(long version, Type type, SlotKey slot, SlotKey movedTo, String room, String newRoom, long day) {
+        this.version = version;
+        this.type = type;
+        this.slot = slot;
+        this.movedTo = movedTo;
+        this.room = room;
+        this.newRoom = newRoom;
+        this.day = day;
+    }
+
+    static ScheduleChange ofSlot(long version, Type type, SlotKey slot) {
+        return new ScheduleChange(version, type, slot, null, slot.getRoom(), null, slot.getDay());
+    }
+
+    static ScheduleChange ofMove(long version, SlotKey from, SlotKey to) {
+        return new ScheduleChange(version, Type.MOVED, from, to, from.getRoom(), to.getRoom(), from.getDay());
+    }
+
+    static ScheduleChange ofRoom(long version, Type type, String room, String newRoom) {
+        return new ScheduleChange(version, type, null, null, room, newRoom, 0);
+    }
+
+    static ScheduleChange ofArchive(long version, long untilDay) {
+        return new ScheduleChange(version, Type.ARCHIVED, null, null, null, null, untilDay);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Booked, deleted or moved slot (its old position for a move), null for room changes and archiving.
+     */
+    public SlotKey getSlot() {
+        return slot;
+    }
+
+    /**
+     * New position of a moved slot, null for every other change.
+     */
+    public SlotKey getMovedTo() {
+        return movedTo;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * New name of an updated room (equal to the old one unless it was renamed), room of the new position of a moved slot.
+     * A rename moves every slot of the room to the new name, the slots get no entries of their own.
+     */
+    public String getNewRoom() {
+        return newRoom;
+    }
+
+    /**
+     * Epoch day of the slot, for archiving the first day that is still live.
+     */
+    public long getDay() {
+        return day;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case MOVED:
+                return version + " " + type + " " + slot + " -> " + movedTo;
+            case ROOM_UPDATED:
+                return version + " " + type + " " + room + " -> " + newRoom;
+            case ROOM_DELETED:
+                return version + " " + type + " " + room;
+            case ARCHIVED:
+                return version + " " + type + " before " + day;
+            default:
+                return version + " " + type + " " + slot;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package raf.sk_schedule.journal;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.model.location_node.RoomProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In memory log of every change of the schedule, each slot level change gets its own version number.
+ * <p>
+ * Versions start at 1 and grow by one without gaps, so a consumer that remembers the last version it has seen
+ * asks for exactly the changes it has missed. Appending takes a short lock that covers numbering and insertion,
+ * a reader that sees some version therefore also sees every version before it. Readers never lock.
+ * <p>
+ * Only the latest retained changes are kept. Asking for changes older than that (or for a version this log never
+ * handed out, for example after a restart) fails, the consumer has to start over from a full export.
+ */
+public class ScheduleChangeLog implements ScheduleMutationListener {
+
+    private final NavigableMap<Long, ScheduleChange> changes = new ConcurrentSkipListMap<>();
+    private final int retainedChanges;
+    private volatile long version;
+    // every version up to this one has been dropped from the log
+    private volatile long trimmedUntil;
+
+    public ScheduleChangeLog(int retainedChanges) {
+        if (retainedChanges <= 0)
+            throw new ScheduleException("The change log has to retain at least one change.");
+        this.retainedChanges = retainedChanges;
+    }
+
+    /**
+     * Version of the latest change, 0 before the first one.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Changes made after the given version up to the current one, ordered by version.
+     */
+    public List<ScheduleChange> changesSince(long sinceVersion) {
+        long upTo = version;
+        if (sinceVersion > upTo || sinceVersion < 0)
+            throw new ScheduleException("The change log never handed out version " + sinceVersion + ", the latest version is " + upTo + ".");
+
+        List<ScheduleChange> delta = new ArrayList<>(changes.subMap(sinceVersion, false, upTo, true).values());
+        // checked after the copy, changes trimmed while copying must not go missing silently
+        if (sinceVersion < trimmedUntil)
+            throw new ScheduleException("Changes after version " + sinceVersion + " are no longer retained (the oldest retained change follows version "
+                    + trimmedUntil + "), export the whole schedule and continue from the current version.");
+        return delta;
+    }
+
+    @Override
+    public void onBooked(List<SlotKey> slots) {
+        appendSlots(ScheduleChange.Type.BOOKED, slots);
+    }
+
+    @Override
+    public void onDeleted(List<SlotKey> slots) {
+        appendSlots(ScheduleChange.Type.DELETED, slots);
+    }
+
+    @Override
+    public synchronized void onMoved(SlotKey from, SlotKey to) {
+        append(ScheduleChange.ofMove(version + 1, from, to));
+    }
+
+    @Override
+    public synchronized void onRoomUpdated(String roomName, RoomProperties properties) {
+        append(ScheduleChange.ofRoom(version + 1, ScheduleChange.Type.ROOM_UPDATED, roomName, properties.getName()));
+    }
+
+    @Override
+    public synchronized void onRoomDeleted(String roomName) {
+        append(ScheduleChange.ofRoom(version + 1, ScheduleChange.Type.ROOM_DELETED, roomName, null));
+    }
+
+    @Override
+    public synchronized void onArchived(long untilDay) {
+        append(ScheduleChange.ofArchive(version + 1, untilDay));
+    }
+
+    private synchronized void appendSlots(ScheduleChange.Type type, List<SlotKey> slots) {
+        for (SlotKey slot : slots)
+            append(ScheduleChange.ofSlot(version + 1, type, slot));
+    }
+
+    // caller holds the monitor
+    private void append(ScheduleChange change) {
+        changes.put(change.getVersion(), change);
+        // published after the entry, a reader never asks for a version that is not there yet
+        version = change.getVersion();
+
+        // versions have no gaps, the number of retained changes is a difference (size() of the skip list is a full walk)
+        while (version - trimmedUntil > retainedChanges) {
+            changes.remove(trimmedUntil + 1);
+            trimmedUntil++;
+        }
+    }
+}
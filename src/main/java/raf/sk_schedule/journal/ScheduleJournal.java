@@ -0,0 +1,396 @@
+package raf.sk_schedule.journal;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.recurrence.RecurrenceIndex;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Durable form of a schedule: a binary snapshot plus the write-ahead log generations written after it.
+ * <p>
+ * As a {@link ScheduleMutationListener} the journal appends every change to the current log generation.
+ * Compaction seals the current generation, starts a new one and folds the snapshot and the sealed generations
+ * into a new snapshot. Compaction works only on the files, never on the live schedule, so it does not block
+ * bookings for longer than the generation switch. It runs in the background whenever the current generation
+ * grows over the compaction threshold, or on demand through {@link #compact()}.
+ * <p>
+ * Rooms are not part of the journal, slots reference rooms by name and the rooms have to be loaded before a replay.
+ * Renames are journaled, so the replay target can match the names of the journal with the names of the loaded rooms.
+ * <p>
+ * Known limitations:
+ * <ul>
+ * <li>The room catalog is neither in the snapshot nor in the log, room properties still come from the rooms CSV.
+ * A replay only finds a room that is loaded under one of the names the journal knows it by, if the rooms were imported
+ * under other names (or a renamed room under a name it never had) the replay fails on the first slot of that room.</li>
+ * <li>A restore replays every slot into the indexes, the snapshot is read, not mapped. It takes about one to two seconds
+ * per 200 000 slots, not milliseconds.</li>
+ * </ul>
+ */
+public class ScheduleJournal implements ScheduleMutationListener, Closeable {
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 16L << 20;
+    private static final long COMPACTION_CHECK_SECONDS = 5;
+
+    private final Path directory;
+    private final boolean syncOnWrite;
+    private final long compactionThreshold;
+    // only one compaction at a time, appends are guarded by the journal monitor
+    private final Object compactionLock = new Object();
+    private final ScheduledExecutorService compactor;
+
+    private WriteAheadLog log;
+    private volatile boolean closed;
+    private volatile ScheduleException lastCompactionFailure;
+
+    private ScheduleJournal(Path directory, boolean syncOnWrite, long compactionThreshold, long generation) {
+        this.directory = directory;
+        this.syncOnWrite = syncOnWrite;
+        this.compactionThreshold = compactionThreshold;
+        this.log = WriteAheadLog.open(directory, generation, syncOnWrite);
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "schedule-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static ScheduleJournal open(Path directory, boolean syncOnWrite) {
+        return open(directory, syncOnWrite, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens (or creates) the journal in the directory. Torn tails left by a crash are cut off and generations already
+     * folded into the snapshot are removed, new changes go to a fresh generation.
+     */
+    public static ScheduleJournal open(Path directory, boolean syncOnWrite, long compactionThreshold) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new ScheduleException("Journal directory: " + directory + " could not be created. " + e.getMessage());
+        }
+
+        ScheduleSnapshot snapshot = ScheduleSnapshot.open(directory);
+        long firstGeneration = snapshot == null ? 0 : snapshot.getNextGeneration();
+
+        long nextGeneration = firstGeneration;
+        for (long generation : generations(directory)) {
+            Path file = WriteAheadLog.pathOf(directory, generation);
+            if (generation < firstGeneration)
+                delete(file);
+            else {
+                truncateTornTail(file);
+                nextGeneration = Math.max(nextGeneration, generation + 1);
+            }
+        }
+
+        return new ScheduleJournal(directory, syncOnWrite, compactionThreshold, nextGeneration);
+    }
+
+    /**
+     * Replays the snapshot and every sealed log generation into the target, must be called before any change is appended.
+     */
+    public void replay(ScheduleMutationListener target) {
+        long current;
+        synchronized (this) {
+            current = log.getGeneration();
+        }
+        replayUpTo(current - 1, target);
+    }
+
+    /**
+     * Every room rename and room deletion {@link #replay(ScheduleMutationListener)} reports, in the order they were made,
+     * as old name to new name, a deleted room maps to null. A replay target learns from it the later names of a room
+     * before the first change booked under an earlier name arrives.
+     */
+    public List<Map.Entry<String, String>> roomChanges() {
+        long current;
+        synchronized (this) {
+            current = log.getGeneration();
+        }
+
+        RoomChangeCollector collector = new RoomChangeCollector();
+        ScheduleSnapshot snapshot = ScheduleSnapshot.open(directory);
+        long firstGeneration = 0;
+        if (snapshot != null) {
+            collector.changes.addAll(snapshot.getRenames());
+            firstGeneration = snapshot.getNextGeneration();
+        }
+
+        for (long generation : generations(directory))
+            if (generation >= firstGeneration && generation < current)
+                WriteAheadLog.replay(WriteAheadLog.pathOf(directory, generation), collector);
+        return collector.changes;
+    }
+
+    public ScheduleException getLastCompactionFailure() {
+        return lastCompactionFailure;
+    }
+
+    @Override
+    public synchronized void onBooked(List<SlotKey> slots) {
+        requireOpen().onBooked(slots);
+    }
+
+    @Override
+    public synchronized void onRuleBooked(RecurrenceRule rule) {
+        requireOpen().onRuleBooked(rule);
+    }
+
+    @Override
+    public synchronized void onDeleted(List<SlotKey> slots) {
+        requireOpen().onDeleted(slots);
+    }
+
+    @Override
+    public synchronized void onMoved(SlotKey from, SlotKey to) {
+        requireOpen().onMoved(from, to);
+    }
+
+    @Override
+    public synchronized void onRoomRenamed(String roomName, String newName) {
+        requireOpen().onRoomRenamed(roomName, newName);
+    }
+
+    @Override
+    public synchronized void onRoomDeleted(String roomName) {
+        requireOpen().onRoomDeleted(roomName);
+    }
+
+    @Override
+    public synchronized void onArchived(long untilDay) {
+        requireOpen().onArchived(untilDay);
+    }
+
+    /**
+     * Folds the snapshot and the whole log written so far into a new snapshot.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            long sealed;
+            synchronized (this) {
+                requireOpen();
+                sealed = log.getGeneration();
+                log.close();
+                log = WriteAheadLog.open(directory, sealed + 1, syncOnWrite);
+            }
+
+            SnapshotState state = new SnapshotState();
+            replayUpTo(sealed, state);
+            ScheduleSnapshot.write(directory, state.renames, state.slots, state.rules.rules(), state.archivedUntil, sealed + 1);
+
+            for (long generation : generations(directory))
+                if (generation <= sealed)
+                    delete(WriteAheadLog.pathOf(directory, generation));
+        }
+    }
+
+    private void compactIfNeeded() {
+        try {
+            long size;
+            synchronized (this) {
+                if (closed)
+                    return;
+                size = log.size();
+            }
+            if (size >= compactionThreshold)
+                compact();
+        } catch (ScheduleException e) {
+            // the log keeps growing and the next check tries again
+            lastCompactionFailure = e;
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        synchronized (compactionLock) {
+            synchronized (this) {
+                if (closed)
+                    return;
+                closed = true;
+                log.close();
+            }
+        }
+    }
+
+    private WriteAheadLog requireOpen() {
+        if (closed)
+            throw new ScheduleException("Schedule journal: " + directory + " is closed.");
+        return log;
+    }
+
+    private void replayUpTo(long lastGeneration, ScheduleMutationListener target) {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.open(directory);
+        long firstGeneration = 0;
+        if (snapshot != null) {
+            snapshot.replay(target);
+            firstGeneration = snapshot.getNextGeneration();
+        }
+
+        for (long generation : generations(directory))
+            if (generation >= firstGeneration && generation <= lastGeneration)
+                WriteAheadLog.replay(WriteAheadLog.pathOf(directory, generation), target);
+    }
+
+    private static List<Long> generations(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(WriteAheadLog::generationOf)
+                    .filter(generation -> generation >= 0)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new ScheduleException("Journal directory: " + directory + " could not be listed. " + e.getMessage());
+        }
+    }
+
+    private static void truncateTornTail(Path file) {
+        long valid = WriteAheadLog.validLength(file);
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            if (channel.size() > valid) {
+                channel.truncate(valid);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new ScheduleException("Torn tail of write-ahead log: " + file + " could not be cut off. " + e.getMessage());
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new ScheduleException("Write-ahead log: " + file + " could not be deleted. " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Schedule contents rebuilt from the files alone, follows the same rules the manager applies on replay.
+     */
+    private static class SnapshotState implements ScheduleMutationListener {
+
+        private final List<Map.Entry<String, String>> renames = new ArrayList<>();
+        private final TreeSet<SlotKey> slots = new TreeSet<>();
+        private final RecurrenceIndex rules = new RecurrenceIndex();
+        private long archivedUntil = Long.MIN_VALUE;
+
+        @Override
+        public void onBooked(List<SlotKey> booked) {
+            slots.addAll(booked);
+        }
+
+        @Override
+        public void onRuleBooked(RecurrenceRule rule) {
+            rules.add(rule);
+        }
+
+        @Override
+        public void onDeleted(List<SlotKey> deleted) {
+            List<SlotKey> occurrences = new ArrayList<>();
+            for (SlotKey key : deleted)
+                if (!slots.remove(key))
+                    occurrences.add(key);
+            rules.cancelAll(occurrences);
+        }
+
+        @Override
+        public void onMoved(SlotKey from, SlotKey to) {
+            // a moved occurrence stays on its rule as an exception and becomes a regular slot
+            if (slots.remove(from) || !rules.cancelAll(Collections.singletonList(from)).isEmpty())
+                slots.add(to);
+        }
+
+        @Override
+        public void onRoomRenamed(String roomName, String newName) {
+            // the slots are kept under the latest name, the rename itself is kept for rooms loaded under the old one
+            List<SlotKey> renamed = slots.stream().filter(slot -> slot.getRoom().equals(roomName)).collect(Collectors.toList());
+            slots.removeAll(renamed);
+            for (SlotKey slot : renamed)
+                slots.add(new SlotKey(slot.getDay(), slot.getStart(), slot.getEnd(), newName));
+            for (RecurrenceRule rule : rules.removeRoom(roomName))
+                rules.add(RecurrenceRule.of(rule.getFirstDay(), rule.getPeriod(), rule.getCount(), rule.getStartTime(), rule.getEndTime(),
+                        newName, rule.getCancelled()));
+            renames.add(Map.entry(roomName, newName));
+        }
+
+        @Override
+        public void onRoomDeleted(String roomName) {
+            slots.removeIf(slot -> slot.getRoom().equals(roomName));
+            rules.removeRoom(roomName);
+
+            // the earlier names of a deleted room say nothing about the rooms that are loaded later
+            String name = roomName;
+            for (int i = renames.size() - 1; i >= 0; i--) {
+                if (renames.get(i).getValue().equals(name)) {
+                    name = renames.get(i).getKey();
+                    renames.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public void onArchived(long untilDay) {
+            archivedUntil = Math.max(archivedUntil, untilDay);
+        }
+    }
+
+
+    /**
+     * Picks the room renames and deletions out of the log, every other record is skipped.
+     */
+    private static class RoomChangeCollector implements ScheduleMutationListener {
+
+        private final List<Map.Entry<String, String>> changes = new ArrayList<>();
+
+        @Override
+        public void onBooked(List<SlotKey> slots) {
+        }
+
+        @Override
+        public void onRuleBooked(RecurrenceRule rule) {
+        }
+
+        @Override
+        public void onDeleted(List<SlotKey> slots) {
+        }
+
+        @Override
+        public void onMoved(SlotKey from, SlotKey to) {
+        }
+
+        @Override
+        public void onRoomRenamed(String roomName, String newName) {
+            changes.add(Map.entry(roomName, newName));
+        }
+
+        @Override
+        public void onRoomDeleted(String roomName) {
+            changes.add(new AbstractMap.SimpleImmutableEntry<>(roomName, null));
+        }
+
+        @Override
+        public void onArchived(long untilDay) {
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package raf.sk_schedule.journal;
+
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+
+import java.util.List;
+
+/**
+ * Receives every change of the schedule contents after it has been applied.
+ * <p>
+ * Slots are passed as {@link SlotKey}s (day, start, end and room), which is everything that identifies a slot in the schedule.
+ * The manager calls listeners while it still holds the locks of the affected rooms, so the changes of one room arrive
+ * in the order they were applied. They are called once the change is visible to snapshots, a slow listener does not
+ * hold up opening them. Implementations have to be thread safe and must not call back into the manager.
+ * A listener that throws does not keep the change from the listeners after it, the manager rethrows the failure once all were called.
+ */
+public interface ScheduleMutationListener {
+
+    void onBooked(List<SlotKey> slots);
+
+    /**
+     * A recurring booking kept as a rule. Listeners that only care about slots get the active occurrences through
+     * {@link #onBooked(List)}, the journal keeps the rule itself. Later cancellations of single occurrences arrive as
+     * {@link #onDeleted(List)} or {@link #onMoved(SlotKey, SlotKey)} of their keys.
+     */
+    default void onRuleBooked(RecurrenceRule rule) {
+        onBooked(rule.keys());
+    }
+
+    void onDeleted(List<SlotKey> slots);
+
+    void onMoved(SlotKey from, SlotKey to);
+
+    /**
+     * The room got a new name, every slot and rule booked in it is now keyed by the new name. The slots are not reported
+     * one by one, a listener that keeps slot keys has to re-key the room itself. {@link #onRoomUpdated(String, RoomProperties)}
+     * with the new properties follows.
+     */
+    default void onRoomRenamed(String roomName, String newName) {
+    }
+
+    /**
+     * Properties of the room changed, the slots booked in it stay where they are.
+     * Rooms are not part of the journal, so listeners that do not care about rooms can ignore it.
+     */
+    default void onRoomUpdated(String roomName, RoomProperties properties) {
+    }
+
+    /**
+     * The room was removed from the schedule together with every slot booked in it.
+     */
+    void onRoomDeleted(String roomName);
+
+    /**
+     * Every day before the given epoch day became read only history.
+     */
+    void onArchived(long untilDay);
+}
@@ -0,0 +1,254 @@
+package raf.sk_schedule.journal;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+
+/**
+ * Binary image of the schedule contents, read and written through a memory mapped file.
+ * <p>
+ * Layout: magic, version, next log generation, archived until day, the room renames (old and new name, in the order they
+ * were made), the room name table, one fixed size entry per slot (int day, short start minute, short end minute, int room id),
+ * one entry per recurrence rule (int first day, int period, int occurrence count, short start minute, short end minute,
+ * int room id and the cancelled occurrences as a word count plus long words), followed by a CRC32 of everything before it.
+ * Version 1 snapshots end after the slots, versions 1 and 2 have no renames.
+ * Slots are stored in chronological order under the latest names of their rooms. The renames come first, so a replay target
+ * can map those names to rooms loaded under an older name before the first slot arrives.
+ * Log generations from {@link #getNextGeneration()} on are not part of the snapshot.
+ * <p>
+ * A snapshot is always written to a temporary file and moved over the previous one, so a crash never leaves a half written snapshot behind.
+ */
+public class ScheduleSnapshot {
+
+    public static final String FILE_NAME = "schedule.snapshot";
+
+    private static final int MAGIC = 0x534B534E;
+    private static final int VERSION = 3;
+    private static final int SLOT_BYTES = Integer.BYTES + 2 * Short.BYTES + Integer.BYTES;
+    private static final int RULE_BYTES = 3 * Integer.BYTES + 2 * Short.BYTES + 2 * Integer.BYTES;
+    // slots are handed to the replay target in chunks of this size
+    private static final int REPLAY_CHUNK = 8192;
+
+    private final MappedByteBuffer image;
+    private final int version;
+    private final long nextGeneration;
+    private final long archivedUntil;
+
+    private ScheduleSnapshot(MappedByteBuffer image, int version, long nextGeneration, long archivedUntil) {
+        this.image = image;
+        this.version = version;
+        this.nextGeneration = nextGeneration;
+        this.archivedUntil = archivedUntil;
+    }
+
+    /**
+     * Maps the snapshot of the directory, null if there is none yet.
+     */
+    public static ScheduleSnapshot open(Path directory) {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (image.limit() < 6 * Integer.BYTES || image.getInt(0) != MAGIC)
+                throw new ScheduleException("File: " + file + " is not a schedule snapshot.");
+            if (image.getInt(4) < 1 || image.getInt(4) > VERSION)
+                throw new ScheduleException("Schedule snapshot version " + image.getInt(4) + " is not supported.");
+
+            CRC32 crc = new CRC32();
+            crc.update(image.duplicate().limit(image.limit() - Integer.BYTES));
+            if ((int) crc.getValue() != image.getInt(image.limit() - Integer.BYTES))
+                throw new ScheduleException("Schedule snapshot: " + file + " is corrupted (checksum mismatch).");
+
+            return new ScheduleSnapshot(image, image.getInt(4), image.getLong(8), image.getLong(16));
+        } catch (IOException e) {
+            throw new ScheduleException("Schedule snapshot: " + file + " could not be read. " + e.getMessage());
+        }
+    }
+
+    public long getNextGeneration() {
+        return nextGeneration;
+    }
+
+    public long getArchivedUntil() {
+        return archivedUntil;
+    }
+
+    /**
+     * Room renames folded into the snapshot, old name to new name in the order they were made.
+     */
+    public List<Map.Entry<String, String>> getRenames() {
+        ByteBuffer buffer = image.duplicate();
+        buffer.position(24);
+        return readRenames(buffer);
+    }
+
+    /**
+     * Reports the renames to the target, then books every slot and rule of the snapshot and archives the archived part afterwards.
+     */
+    public void replay(ScheduleMutationListener target) {
+        ByteBuffer buffer = image.duplicate();
+        buffer.position(24);
+
+        for (Map.Entry<String, String> rename : readRenames(buffer))
+            target.onRoomRenamed(rename.getKey(), rename.getValue());
+
+        String[] roomTable = new String[buffer.getInt()];
+        for (int i = 0; i < roomTable.length; i++)
+            roomTable[i] = WriteAheadLog.getName(buffer);
+
+        int slotCount = buffer.getInt();
+        List<SlotKey> chunk = new ArrayList<>(Math.min(slotCount, REPLAY_CHUNK));
+        for (int i = 0; i < slotCount; i++) {
+            int day = buffer.getInt();
+            short start = buffer.getShort();
+            short end = buffer.getShort();
+            chunk.add(new SlotKey(day, start, end, roomTable[buffer.getInt()]));
+
+            if (chunk.size() == REPLAY_CHUNK) {
+                target.onBooked(chunk);
+                chunk = new ArrayList<>(REPLAY_CHUNK);
+            }
+        }
+        if (!chunk.isEmpty())
+            target.onBooked(chunk);
+
+        int ruleCount = version < 2 ? 0 : buffer.getInt();
+        for (int i = 0; i < ruleCount; i++) {
+            int firstDay = buffer.getInt();
+            int period = buffer.getInt();
+            int count = buffer.getInt();
+            int start = buffer.getShort();
+            int end = buffer.getShort();
+            String room = roomTable[buffer.getInt()];
+            long[] cancelled = new long[buffer.getInt()];
+            for (int w = 0; w < cancelled.length; w++)
+                cancelled[w] = buffer.getLong();
+            target.onRuleBooked(RecurrenceRule.of(firstDay, period, count, formatMinute(start), formatMinute(end), room, BitSet.valueOf(cancelled)));
+        }
+
+        if (archivedUntil != Long.MIN_VALUE)
+            target.onArchived(archivedUntil);
+    }
+
+    private List<Map.Entry<String, String>> readRenames(ByteBuffer buffer) {
+        if (version < 3)
+            return Collections.emptyList();
+
+        int renameCount = buffer.getInt();
+        List<Map.Entry<String, String>> renames = new ArrayList<>(renameCount);
+        for (int i = 0; i < renameCount; i++)
+            renames.add(Map.entry(WriteAheadLog.getName(buffer), WriteAheadLog.getName(buffer)));
+        return renames;
+    }
+
+    /**
+     * Writes the room renames, chronologically ordered slots and the recurrence rules as the new snapshot of the directory.
+     */
+    public static void write(Path directory, List<Map.Entry<String, String>> renames, Collection<SlotKey> slots, Collection<RecurrenceRule> rules,
+                             long archivedUntil, long nextGeneration) {
+        List<byte[]> renamedNames = new ArrayList<>(2 * renames.size());
+        for (Map.Entry<String, String> rename : renames) {
+            renamedNames.add(rename.getKey().getBytes(StandardCharsets.UTF_8));
+            renamedNames.add(rename.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        Map<String, Integer> roomIds = new LinkedHashMap<>();
+        List<byte[]> roomNames = new ArrayList<>();
+        for (SlotKey slot : slots)
+            addRoom(slot.getRoom(), roomIds, roomNames);
+        List<long[]> cancelled = new ArrayList<>(rules.size());
+        for (RecurrenceRule rule : rules) {
+            addRoom(rule.getRoom(), roomIds, roomNames);
+            cancelled.add(rule.getCancelled().toLongArray());
+        }
+
+        long size = 24 + Integer.BYTES;
+        for (byte[] name : renamedNames)
+            size += Short.BYTES + name.length;
+        size += Integer.BYTES;
+        for (byte[] name : roomNames)
+            size += Short.BYTES + name.length;
+        size += Integer.BYTES + (long) slots.size() * SLOT_BYTES;
+        size += Integer.BYTES + (long) rules.size() * RULE_BYTES;
+        for (long[] words : cancelled)
+            size += (long) words.length * Long.BYTES;
+        size += Integer.BYTES;
+        if (size > Integer.MAX_VALUE)
+            throw new ScheduleException("Schedule is too large for a single snapshot file.");
+
+        Path file = directory.resolve(FILE_NAME);
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            image.putInt(MAGIC).putInt(VERSION).putLong(nextGeneration).putLong(archivedUntil);
+            image.putInt(renames.size());
+            for (byte[] name : renamedNames)
+                image.putShort((short) name.length).put(name);
+
+            image.putInt(roomNames.size());
+            for (byte[] name : roomNames)
+                image.putShort((short) name.length).put(name);
+
+            image.putInt(slots.size());
+            for (SlotKey slot : slots)
+                image.putInt((int) slot.getDay())
+                        .putShort((short) slot.getStart())
+                        .putShort((short) slot.getEnd())
+                        .putInt(roomIds.get(slot.getRoom()));
+
+            image.putInt(rules.size());
+            int ruleNumber = 0;
+            for (RecurrenceRule rule : rules) {
+                long[] words = cancelled.get(ruleNumber++);
+                image.putInt((int) rule.getFirstDay())
+                        .putInt(rule.getPeriod())
+                        .putInt(rule.getCount())
+                        .putShort((short) rule.getStart())
+                        .putShort((short) rule.getEnd())
+                        .putInt(roomIds.get(rule.getRoom()))
+                        .putInt(words.length);
+                for (long word : words)
+                    image.putLong(word);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(image.duplicate().flip());
+            image.putInt((int) crc.getValue());
+            image.force();
+        } catch (IOException e) {
+            throw new ScheduleException("Schedule snapshot could not be written. " + e.getMessage());
+        }
+
+        try {
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new ScheduleException("Schedule snapshot could not be replaced. " + e.getMessage());
+        }
+    }
+
+    private static void addRoom(String room, Map<String, Integer> roomIds, List<byte[]> roomNames) {
+        if (!roomIds.containsKey(room)) {
+            roomIds.put(room, roomIds.size());
+            roomNames.add(room.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
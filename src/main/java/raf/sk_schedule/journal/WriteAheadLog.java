@@ -0,0 +1,360 @@
+package raf.sk_schedule.journal;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+
+/**
+ * One generation of the write-ahead log, an append only file of schedule changes.
+ * <p>
+ * Every record is framed as [payload length][CRC32 of the payload][payload] and the payload starts with the record type.
+ * A crash can leave the last record half written, {@link #replay(Path, ScheduleMutationListener)} stops at the first record
+ * that is incomplete or fails its checksum and reports how much of the file is valid, so the torn tail can be cut off.
+ */
+public class WriteAheadLog implements ScheduleMutationListener, Closeable {
+
+    static final byte BOOK = 1;
+    static final byte DELETE = 2;
+    static final byte MOVE = 3;
+    static final byte DELETE_ROOM = 4;
+    static final byte ARCHIVE = 5;
+    static final byte BOOK_RULE = 6;
+    static final byte RENAME_ROOM = 7;
+
+    private static final int FRAME_HEADER = 8;
+    private static final long REPLAY_WINDOW = 64L << 20;
+
+    private final long generation;
+    private final FileChannel channel;
+    private final boolean syncOnWrite;
+    private final CRC32 crc = new CRC32();
+    // reused for every record, grows to the largest record written so far
+    private ByteBuffer record = ByteBuffer.allocate(4096);
+
+    private WriteAheadLog(long generation, FileChannel channel, boolean syncOnWrite) {
+        this.generation = generation;
+        this.channel = channel;
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    public static Path pathOf(Path directory, long generation) {
+        return directory.resolve(String.format("wal-%010d.log", generation));
+    }
+
+    /**
+     * Generation number of a log file name, -1 if the file is not a log file.
+     */
+    public static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith("wal-") || !name.endsWith(".log"))
+            return -1;
+        try {
+            return Long.parseLong(name.substring(4, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Opens the log file of the generation for appending, the file is created if it does not exist.
+     */
+    public static WriteAheadLog open(Path directory, long generation, boolean syncOnWrite) {
+        try {
+            return new WriteAheadLog(generation, FileChannel.open(pathOf(directory, generation), CREATE, WRITE, APPEND), syncOnWrite);
+        } catch (IOException e) {
+            throw new ScheduleException("Write-ahead log " + pathOf(directory, generation) + " could not be opened. " + e.getMessage());
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public synchronized long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new ScheduleException("Write-ahead log size could not be read. " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void onBooked(List<SlotKey> slots) {
+        begin(BOOK);
+        putKeys(slots);
+        commit();
+    }
+
+    @Override
+    public synchronized void onRuleBooked(RecurrenceRule rule) {
+        begin(BOOK_RULE);
+        long[] cancelled = rule.getCancelled().toLongArray();
+        ensure(3 * Integer.BYTES + 2 * Short.BYTES + Integer.BYTES + cancelled.length * Long.BYTES);
+        record.putInt((int) rule.getFirstDay());
+        record.putInt(rule.getPeriod());
+        record.putInt(rule.getCount());
+        record.putShort((short) rule.getStart());
+        record.putShort((short) rule.getEnd());
+        record.putInt(cancelled.length);
+        for (long word : cancelled)
+            record.putLong(word);
+        putName(rule.getRoom());
+        commit();
+    }
+
+    @Override
+    public synchronized void onDeleted(List<SlotKey> slots) {
+        begin(DELETE);
+        putKeys(slots);
+        commit();
+    }
+
+    @Override
+    public synchronized void onMoved(SlotKey from, SlotKey to) {
+        begin(MOVE);
+        putKey(from);
+        putKey(to);
+        commit();
+    }
+
+    @Override
+    public synchronized void onRoomRenamed(String roomName, String newName) {
+        begin(RENAME_ROOM);
+        putName(roomName);
+        putName(newName);
+        commit();
+    }
+
+    @Override
+    public synchronized void onRoomDeleted(String roomName) {
+        begin(DELETE_ROOM);
+        putName(roomName);
+        commit();
+    }
+
+    @Override
+    public synchronized void onArchived(long untilDay) {
+        begin(ARCHIVE);
+        ensure(Long.BYTES);
+        record.putLong(untilDay);
+        commit();
+    }
+
+    public synchronized void sync() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ScheduleException("Write-ahead log could not be synced to disk. " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new ScheduleException("Write-ahead log could not be closed. " + e.getMessage());
+        }
+    }
+
+    private void begin(byte type) {
+        record.clear();
+        record.position(FRAME_HEADER);
+        record.put(type);
+    }
+
+    private void putKeys(List<SlotKey> slots) {
+        ensure(Integer.BYTES);
+        record.putInt(slots.size());
+        for (SlotKey slot : slots)
+            putKey(slot);
+    }
+
+    private void putKey(SlotKey key) {
+        ensure(Integer.BYTES + 2 * Short.BYTES);
+        record.putInt((int) key.getDay());
+        record.putShort((short) key.getStart());
+        record.putShort((short) key.getEnd());
+        putName(key.getRoom());
+    }
+
+    private void putName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ensure(Short.BYTES + bytes.length);
+        record.putShort((short) bytes.length);
+        record.put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (record.remaining() >= bytes)
+            return;
+
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+        record.flip();
+        larger.put(record);
+        record = larger;
+    }
+
+    private void commit() {
+        int length = record.position() - FRAME_HEADER;
+        crc.reset();
+        crc.update(record.array(), FRAME_HEADER, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        try {
+            while (record.hasRemaining())
+                channel.write(record);
+            if (syncOnWrite)
+                channel.force(false);
+        } catch (IOException e) {
+            throw new ScheduleException("The change is applied in memory but could not be written to the write-ahead log. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Feeds every intact record of the log file to the target, in order.
+     *
+     * @return length of the valid prefix of the file, smaller than the file size if the tail is torn
+     */
+    public static long replay(Path file, ScheduleMutationListener target) {
+        return replay(file, target, REPLAY_WINDOW);
+    }
+
+    /**
+     * The file is mapped one window at a time, a single mapping can not be larger than 2 GB.
+     * A record that does not fit into the rest of the window starts the next window.
+     */
+    static long replay(Path file, ScheduleMutationListener target, long windowSize) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            CRC32 crc = new CRC32();
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            long position = 0;
+
+            while (size - position >= FRAME_HEADER) {
+                if (window == null || position + FRAME_HEADER > windowStart + window.limit()) {
+                    windowStart = position;
+                    window = map(channel, windowStart, Math.min(windowSize, size - windowStart));
+                }
+
+                int offset = (int) (position - windowStart);
+                int length = window.getInt(offset);
+                int checksum = window.getInt(offset + 4);
+                if (length <= 0 || length > size - position - FRAME_HEADER || length > Integer.MAX_VALUE - FRAME_HEADER)
+                    break;
+
+                if (offset + FRAME_HEADER + length > window.limit()) {
+                    windowStart = position;
+                    window = map(channel, windowStart, Math.min(Math.max(windowSize, FRAME_HEADER + length), size - windowStart));
+                    offset = 0;
+                }
+
+                ByteBuffer payload = window.duplicate();
+                payload.position(offset + FRAME_HEADER).limit(offset + FRAME_HEADER + length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum)
+                    break;
+
+                if (target != null)
+                    apply(payload, target);
+                position += FRAME_HEADER + length;
+            }
+            return position;
+        } catch (IOException e) {
+            throw new ScheduleException("Write-ahead log " + file + " could not be read. " + e.getMessage());
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    }
+
+    /**
+     * Length of the intact prefix of the log file, the records are checked but not decoded.
+     */
+    public static long validLength(Path file) {
+        return replay(file, null);
+    }
+
+    private static void apply(ByteBuffer payload, ScheduleMutationListener target) {
+        byte type = payload.get();
+        switch (type) {
+            case BOOK:
+                target.onBooked(getKeys(payload));
+                break;
+            case DELETE:
+                target.onDeleted(getKeys(payload));
+                break;
+            case MOVE:
+                target.onMoved(getKey(payload), getKey(payload));
+                break;
+            case DELETE_ROOM:
+                target.onRoomDeleted(getName(payload));
+                break;
+            case ARCHIVE:
+                target.onArchived(payload.getLong());
+                break;
+            case BOOK_RULE:
+                target.onRuleBooked(getRule(payload));
+                break;
+            case RENAME_ROOM:
+                target.onRoomRenamed(getName(payload), getName(payload));
+                break;
+            default:
+                throw new ScheduleException("Unknown write-ahead log record type: " + type + ".");
+        }
+    }
+
+    private static List<SlotKey> getKeys(ByteBuffer payload) {
+        int count = payload.getInt();
+        List<SlotKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            keys.add(getKey(payload));
+        return keys;
+    }
+
+    private static SlotKey getKey(ByteBuffer payload) {
+        int day = payload.getInt();
+        short start = payload.getShort();
+        short end = payload.getShort();
+        return new SlotKey(day, start, end, getName(payload));
+    }
+
+    private static RecurrenceRule getRule(ByteBuffer payload) {
+        int firstDay = payload.getInt();
+        int period = payload.getInt();
+        int count = payload.getInt();
+        int start = payload.getShort();
+        int end = payload.getShort();
+        long[] cancelled = new long[payload.getInt()];
+        for (int i = 0; i < cancelled.length; i++)
+            cancelled[i] = payload.getLong();
+        return RecurrenceRule.of(firstDay, period, count, formatMinute(start), formatMinute(end), getName(payload), BitSet.valueOf(cancelled));
+    }
+
+    static String getName(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,43 @@
+package raf.sk_schedule.metrics;
+
+/**
+ * Receives measurements from the schedule manager.
+ * <p>
+ * Callbacks run on the thread doing the work, some of them while room locks are held, so implementations
+ * have to be thread safe, fast and must not call back into the manager. Every callback does nothing by default,
+ * an implementation only overrides what it is interested in.
+ * <p>
+ * When {@link #isEnabled()} returns false the manager skips taking timestamps and counting altogether,
+ * which makes {@link #NOOP} (the default listener) free.
+ */
+public interface ScheduleMetricsListener {
+
+    ScheduleMetricsListener NOOP = new ScheduleMetricsListener() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * One finished call of a manager operation, failed is true if it ended with an exception.
+     */
+    default void onOperation(ScheduleOperation operation, long nanos, boolean failed) {
+    }
+
+    /**
+     * One collision check against the room/day index: how many booked slots were compared and how many collided.
+     */
+    default void onCollisionScan(int slotsScanned, int collisionsFound) {
+    }
+
+    default void onImport(long rows, long bytes) {
+    }
+
+    default void onExport(long rows, long bytes) {
+    }
+}
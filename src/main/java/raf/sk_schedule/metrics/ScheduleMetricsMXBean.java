@@ -0,0 +1,37 @@
+package raf.sk_schedule.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link ScheduleMetricsRegistry}, latencies are exposed in microseconds and keyed by operation name.
+ */
+public interface ScheduleMetricsMXBean {
+
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Long> getOperationFailures();
+
+    Map<String, Double> getMeanLatencyMicros();
+
+    Map<String, Double> getP50LatencyMicros();
+
+    Map<String, Double> getP99LatencyMicros();
+
+    Map<String, Double> getMaxLatencyMicros();
+
+    long getCollisionChecks();
+
+    long getSlotsScanned();
+
+    long getCollisionsFound();
+
+    long getImportedRows();
+
+    long getImportedBytes();
+
+    long getExportedRows();
+
+    long getExportedBytes();
+
+    void reset();
+}
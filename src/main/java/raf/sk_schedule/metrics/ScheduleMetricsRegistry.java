@@ -0,0 +1,235 @@
+package raf.sk_schedule.metrics;
+
+import raf.sk_schedule.exception.ScheduleException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * In memory {@link ScheduleMetricsListener}: per operation call/failure counters and latency histograms,
+ * a histogram of slots scanned per collision check and import/export totals.
+ * <p>
+ * Everything is preallocated per operation, recording only touches adders and histogram buckets.
+ * The registry can also be published over JMX with {@link #registerMBean(String)}.
+ */
+public class ScheduleMetricsRegistry implements ScheduleMetricsListener, ScheduleMetricsMXBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "raf.sk_schedule:type=ScheduleMetrics";
+
+    private static final ScheduleOperation[] OPERATIONS = ScheduleOperation.values();
+
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] failures = new LongAdder[OPERATIONS.length];
+    private final LogBucketHistogram[] latencies = new LogBucketHistogram[OPERATIONS.length];
+
+    private final LogBucketHistogram slotsScanned = new LogBucketHistogram();
+    private final LongAdder collisionsFound = new LongAdder();
+
+    private final LongAdder importedRows = new LongAdder();
+    private final LongAdder importedBytes = new LongAdder();
+    private final LongAdder exportedRows = new LongAdder();
+    private final LongAdder exportedBytes = new LongAdder();
+
+    public ScheduleMetricsRegistry() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            calls[i] = new LongAdder();
+            failures[i] = new LongAdder();
+            latencies[i] = new LogBucketHistogram();
+        }
+    }
+
+    @Override
+    public void onOperation(ScheduleOperation operation, long nanos, boolean failed) {
+        int i = operation.ordinal();
+        calls[i].increment();
+        if (failed)
+            failures[i].increment();
+        latencies[i].record(nanos);
+    }
+
+    @Override
+    public void onCollisionScan(int slotsScanned, int collisionsFound) {
+        this.slotsScanned.record(slotsScanned);
+        this.collisionsFound.add(collisionsFound);
+    }
+
+    @Override
+    public void onImport(long rows, long bytes) {
+        importedRows.add(rows);
+        importedBytes.add(bytes);
+    }
+
+    @Override
+    public void onExport(long rows, long bytes) {
+        exportedRows.add(rows);
+        exportedBytes.add(bytes);
+    }
+
+    public long getCount(ScheduleOperation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    public long getFailures(ScheduleOperation operation) {
+        return failures[operation.ordinal()].sum();
+    }
+
+    /**
+     * Latency histogram of the operation in nanoseconds.
+     */
+    public LogBucketHistogram getLatency(ScheduleOperation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * Histogram of booked slots compared per collision check.
+     */
+    public LogBucketHistogram getSlotsScannedHistogram() {
+        return slotsScanned;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ScheduleOperation operation : OPERATIONS)
+            counts.put(operation.name(), getCount(operation));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getOperationFailures() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ScheduleOperation operation : OPERATIONS)
+            counts.put(operation.name(), getFailures(operation));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+        return latencyMicros(LogBucketHistogram::getMean);
+    }
+
+    @Override
+    public Map<String, Double> getP50LatencyMicros() {
+        return latencyMicros(histogram -> histogram.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMicros() {
+        return latencyMicros(histogram -> histogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMicros() {
+        return latencyMicros(LogBucketHistogram::getMax);
+    }
+
+    private Map<String, Double> latencyMicros(ToDoubleFunction<LogBucketHistogram> nanos) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (ScheduleOperation operation : OPERATIONS)
+            values.put(operation.name(), nanos.applyAsDouble(getLatency(operation)) / 1000.0);
+        return values;
+    }
+
+    @Override
+    public long getCollisionChecks() {
+        return slotsScanned.getCount();
+    }
+
+    @Override
+    public long getSlotsScanned() {
+        return slotsScanned.getTotal();
+    }
+
+    @Override
+    public long getCollisionsFound() {
+        return collisionsFound.sum();
+    }
+
+    @Override
+    public long getImportedRows() {
+        return importedRows.sum();
+    }
+
+    @Override
+    public long getImportedBytes() {
+        return importedBytes.sum();
+    }
+
+    @Override
+    public long getExportedRows() {
+        return exportedRows.sum();
+    }
+
+    @Override
+    public long getExportedBytes() {
+        return exportedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            calls[i].reset();
+            failures[i].reset();
+            latencies[i].reset();
+        }
+        slotsScanned.reset();
+        collisionsFound.reset();
+        importedRows.reset();
+        importedBytes.reset();
+        exportedRows.reset();
+        exportedBytes.reset();
+    }
+
+    /**
+     * Publishes the registry on the platform MBean server under the given object name.
+     */
+    public ObjectName registerMBean(String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new ScheduleException("Schedule metrics could not be registered as: " + objectName + ". " + e.getMessage());
+        }
+    }
+
+    public void unregisterMBean(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new ScheduleException("Schedule metrics could not be unregistered: " + name + ". " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (ScheduleOperation operation : OPERATIONS) {
+            LogBucketHistogram latency = getLatency(operation);
+            if (getCount(operation) == 0)
+                continue;
+            sb.append(operation.name())
+                    .append(": calls=").append(getCount(operation))
+                    .append(" failed=").append(getFailures(operation))
+                    .append(" p50=").append(latency.getValueAtPercentile(50) / 1000).append("us")
+                    .append(" p99=").append(latency.getValueAtPercentile(99) / 1000).append("us")
+                    .append(" max=").append(latency.getMax() / 1000).append("us")
+                    .append('\n');
+        }
+        sb.append("collision checks=").append(getCollisionChecks())
+                .append(" slots scanned=").append(getSlotsScanned())
+                .append(" collisions=").append(getCollisionsFound()).append('\n');
+        sb.append("imported rows=").append(getImportedRows()).append(" bytes=").append(getImportedBytes())
+                .append(", exported rows=").append(getExportedRows()).append(" bytes=").append(getExportedBytes());
+        return sb.toString();
+    }
+}
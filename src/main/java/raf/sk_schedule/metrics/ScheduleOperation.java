@@ -0,0 +1,20 @@
+package raf.sk_schedule.metrics;
+
+/**
+ * Operations of the schedule manager that are timed and counted when metrics are enabled.
+ */
+public enum ScheduleOperation {
+    BOOK_SLOT,
+    BOOK_REPETITIVE,
+    DETECT_CONFLICTS,
+    AVAILABILITY_CHECK,
+    DELETE_SLOT,
+    MOVE_SLOT,
+    GET_SCHEDULE,
+    SEARCH,
+    FREE_SLOTS,
+    ROOM_LOOKUP,
+    IMPORT,
+    EXPORT,
+    ARCHIVE
+}
@@ -0,0 +1,172 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.exception.ScheduleException;
+
+import java.util.*;
+
+/**
+ * Where and when does a booking of some length fit first: room requirements (same semantics as roomLookUp),
+ * the length in minutes, a date window, the week days to consider and the number of candidates wanted.
+ */
+public final class EarliestFitQuery {
+
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final int hasComputers;
+    private final Boolean hasProjector;
+    private final Map<String, String> attributes;
+    private final int duration;
+    private final Object lowerDateBound;
+    private final Object upperDateBound;
+    // null means the acceptable days of the schedule
+    private final Collection<WeekDay> acceptableDays;
+    private final int limit;
+    private final boolean parallel;
+
+    private EarliestFitQuery(Builder builder) {
+        this.minCapacity = builder.minCapacity;
+        this.maxCapacity = builder.maxCapacity;
+        this.hasComputers = builder.hasComputers;
+        this.hasProjector = builder.hasProjector;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<>(builder.attributes));
+        this.duration = builder.duration;
+        this.lowerDateBound = builder.lowerDateBound;
+        this.upperDateBound = builder.upperDateBound;
+        this.acceptableDays = builder.acceptableDays == null ? null : Collections.unmodifiableSet(EnumSet.copyOf(builder.acceptableDays));
+        this.limit = builder.limit;
+        this.parallel = builder.parallel;
+    }
+
+    public int getMinCapacity() {
+        return minCapacity;
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    public int getHasComputers() {
+        return hasComputers;
+    }
+
+    public Boolean getHasProjector() {
+        return hasProjector;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public Object getLowerDateBound() {
+        return lowerDateBound;
+    }
+
+    public Object getUpperDateBound() {
+        return upperDateBound;
+    }
+
+    public Collection<WeekDay> getAcceptableDays() {
+        return acceptableDays;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+
+    public static class Builder {
+
+        private int minCapacity = -1;
+        private int maxCapacity = -1;
+        private int hasComputers = -1;
+        private Boolean hasProjector;
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+        private int duration;
+        private Object lowerDateBound;
+        private Object upperDateBound;
+        private Collection<WeekDay> acceptableDays;
+        private int limit = 10;
+        private boolean parallel = true;
+
+        /**
+         * Inclusive capacity bounds, negative for no bound.
+         */
+        public Builder setCapacity(int minCapacity, int maxCapacity) {
+            this.minCapacity = minCapacity;
+            this.maxCapacity = maxCapacity;
+            return this;
+        }
+
+        public Builder setHasComputers(int hasComputers) {
+            this.hasComputers = hasComputers;
+            return this;
+        }
+
+        public Builder setHasProjector(Boolean hasProjector) {
+            this.hasProjector = hasProjector;
+            return this;
+        }
+
+        public Builder setAttribute(String attribute, String value) {
+            attributes.put(attribute, value);
+            return this;
+        }
+
+        /**
+         * Length of the booking in minutes.
+         */
+        public Builder setDuration(int duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * String or java util Date bounds, both inclusive, null bound falls back to the schedule start/end.
+         */
+        public Builder setDateWindow(Object lowerDateBound, Object upperDateBound) {
+            this.lowerDateBound = lowerDateBound;
+            this.upperDateBound = upperDateBound;
+            return this;
+        }
+
+        /**
+         * Week days to search, only days the schedule accepts as well are searched.
+         */
+        public Builder setAcceptableDays(Collection<WeekDay> acceptableDays) {
+            this.acceptableDays = acceptableDays;
+            return this;
+        }
+
+        /**
+         * Number of candidates to return.
+         */
+        public Builder setLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder setParallel(boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        public EarliestFitQuery build() {
+            if (duration <= 0)
+                throw new ScheduleException("Duration of the searched booking has to be a positive number of minutes.");
+            if (limit <= 0)
+                throw new ScheduleException("Number of searched candidates has to be positive.");
+            if (acceptableDays != null && acceptableDays.isEmpty())
+                throw new ScheduleException("At least one week day has to be acceptable.");
+            return new EarliestFitQuery(this);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.FreeScheduleSlot;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static raf.sk_schedule.index.SlotTimes.*;
+
+/**
+ * Computes free time windows by sweeping over the sorted occupied intervals of each room and day.
+ * <p>
+ * Only one room/day is materialized at a time, the rest of the range is produced lazily by the returned stream.
+ * Rooms are independent of each other so a parallel stream splits the work per room on the fork-join pool.
+ * Occupied slots are read one room/day at a time, so a lazily consumed stream reflects bookings made while it is consumed.
+ */
+public class FreeSlotFinder {
+
+    private final OccupiedSlots occupied;
+    private final int workingHoursStart;
+    private final int workingHoursEnd;
+    private final Collection<WeekDay> acceptableDays;
+
+    public FreeSlotFinder(OccupiedSlots occupied, String workingHoursStart, String workingHoursEnd, Collection<WeekDay> acceptableDays) {
+        this.occupied = occupied;
+        this.workingHoursStart = minuteOfDay(workingHoursStart);
+        this.workingHoursEnd = minuteOfDay(workingHoursEnd);
+        this.acceptableDays = acceptableDays;
+    }
+
+    /**
+     * Free windows of every room between the two epoch days (both inclusive),
+     * ordered by room (in the order they are passed), date and start time.
+     */
+    public Stream<FreeScheduleSlot> stream(List<RoomProperties> rooms, long fromDay, long toDay, boolean parallel) {
+        Stream<RoomProperties> roomStream = parallel ? rooms.parallelStream() : rooms.stream();
+        return roomStream.flatMap(room -> stream(room, fromDay, toDay));
+    }
+
+    public Stream<FreeScheduleSlot> stream(RoomProperties room, long fromDay, long toDay) {
+        return LongStream.rangeClosed(fromDay, toDay)
+                .filter(this::isAcceptableDay)
+                .boxed()
+                .flatMap(day -> freeSlotsOn(room, day).stream());
+    }
+
+    /**
+     * Gaps between the booked slots of the room on the day, clipped to the working hours.
+     */
+    public List<FreeScheduleSlot> freeSlotsOn(RoomProperties room, long day) {
+        List<FreeScheduleSlot> gaps = new ArrayList<>();
+        Date date = dateOfEpochDay(day);
+        for (int[] window : freeWindowsOf(occupied.slotsOn(room.getName(), day)))
+            gaps.add(gap(room, date, window[0], window[1]));
+        return gaps;
+    }
+
+    /**
+     * The first limit windows of the given length in any of the rooms between the two epoch days (both inclusive),
+     * ordered by date, start time and room name. Every window starts at the beginning of a free gap, or a minute later
+     * when the booking collision check treats a window touching the slot before it as a collision.
+     * <p>
+     * Rooms are searched independently, each one stops at its own first limit fits (usually within the first days),
+     * so a parallel search splits the work per room and the merge only orders rooms x limit candidates.
+     */
+    public List<FreeScheduleSlot> earliestFits(List<RoomProperties> rooms, long fromDay, long toDay, int duration, int limit, boolean parallel) {
+        Stream<RoomProperties> roomStream = parallel ? rooms.parallelStream() : rooms.stream();
+        return roomStream
+                .flatMap(room -> earliestFits(room, fromDay, toDay, duration).limit(limit))
+                .sorted(Comparator.comparingLong((Fit fit) -> fit.day).thenComparingInt(fit -> fit.start).thenComparing(fit -> fit.room.getName()))
+                .limit(limit)
+                .map(fit -> gap(fit.room, dateOfEpochDay(fit.day), fit.start, fit.start + duration))
+                .collect(Collectors.toList());
+    }
+
+    private Stream<Fit> earliestFits(RoomProperties room, long fromDay, long toDay, int duration) {
+        return LongStream.rangeClosed(fromDay, toDay)
+                .filter(this::isAcceptableDay)
+                .boxed()
+                .flatMap(day -> fitsOn(room, day, duration).stream());
+    }
+
+    /**
+     * One fit per free gap of the room on the day that is long enough, each confirmed with the booking collision check.
+     */
+    private List<Fit> fitsOn(RoomProperties room, long day, int duration) {
+        List<ScheduleSlot> booked = occupied.slotsOn(room.getName(), day);
+        List<Fit> fits = new ArrayList<>();
+        Date date = null;
+
+        for (int[] window : freeWindowsOf(booked)) {
+            // gaps start at a booked end, a window touching it may still collide, one minute later it can not
+            for (int start = window[0]; start <= window[0] + 1 && start + duration <= window[1]; start++) {
+                if (date == null)
+                    date = dateOfEpochDay(day);
+                if (!collides(booked, candidate(room, date, start, start + duration))) {
+                    fits.add(new Fit(room, day, start));
+                    break;
+                }
+            }
+        }
+        return fits;
+    }
+
+    private static boolean collides(List<ScheduleSlot> booked, ScheduleSlot candidate) {
+        int start = minuteOfDay(candidate.getStartTime());
+        int end = minuteOfDay(candidate.getEndTime());
+        for (ScheduleSlot slot : booked) {
+            // only slots overlapping or touching the candidate can collide with it
+            if (minuteOfDay(slot.getStartTime()) <= end && minuteOfDay(slot.getEndTime()) >= start && slot.isCollidingWith(candidate))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Free [start, end) minutes between the booked slots of a room/day in start order.
+     */
+    private List<int[]> freeWindowsOf(List<ScheduleSlot> booked) {
+        List<int[]> windows = new ArrayList<>();
+        int cursor = workingHoursStart;
+
+        // occupied intervals come sorted by start, so a single pass finds every gap
+        for (ScheduleSlot slot : booked) {
+            int start = Math.max(minuteOfDay(slot.getStartTime()), workingHoursStart);
+            int end = Math.min(minuteOfDay(slot.getEndTime()), workingHoursEnd);
+
+            if (start > cursor)
+                windows.add(new int[]{cursor, Math.min(start, workingHoursEnd)});
+
+            cursor = Math.max(cursor, end);
+            if (cursor >= workingHoursEnd)
+                return windows;
+        }
+
+        if (cursor < workingHoursEnd)
+            windows.add(new int[]{cursor, workingHoursEnd});
+
+        return windows;
+    }
+
+    public boolean isAcceptableDay(long day) {
+        return acceptableDays.contains(weekDayOf(day));
+    }
+
+    private static ScheduleSlot candidate(RoomProperties room, Date date, int start, int end) {
+        return new ScheduleSlot.Builder()
+                .setDate(date)
+                .setStartTime(formatMinute(start))
+                .setEndTime(formatMinute(end))
+                .setLocation(room)
+                .build();
+    }
+
+    private static FreeScheduleSlot gap(RoomProperties room, Date date, int start, int end) {
+        return new FreeScheduleSlot.Builder()
+                .setDate(date)
+                .setStartTime(formatMinute(start))
+                .setEndTime(formatMinute(end))
+                .setLocation(room)
+                .build();
+    }
+
+
+    private static class Fit {
+
+        final RoomProperties room;
+        final long day;
+        final int start;
+
+        Fit(RoomProperties room, long day, int start) {
+            this.room = room;
+            this.day = day;
+            this.start = start;
+        }
+    }
+}
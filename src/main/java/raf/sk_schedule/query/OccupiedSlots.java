@@ -0,0 +1,14 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.List;
+
+/**
+ * Source of the slots booked in a room on one epoch day, ordered by start time.
+ */
+@FunctionalInterface
+public interface OccupiedSlots {
+
+    List<ScheduleSlot> slotsOn(String roomName, long day);
+}
@@ -0,0 +1,144 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.api.Constants.WeekDay;
+
+import java.util.*;
+
+import static raf.sk_schedule.index.SlotTimes.dateOfEpochDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+/**
+ * Access path the {@link QueryPlanner} chose for a query, the estimates it chose by and, once the results
+ * have been consumed, how many candidates the path produced and how many of them the residual filter kept.
+ * {@link #toString()} is the explain output.
+ */
+public final class QueryPlan {
+
+    public enum AccessPath {
+        // every slot of the schedule
+        FULL_SCAN,
+        // chronological sub view between the day bounds
+        DATE_RANGE,
+        // one day range per requested week day
+        WEEK_DAY,
+        // the room/day index of every matching room
+        ROOM
+    }
+
+    private final ScheduleQuery query;
+    private final AccessPath accessPath;
+    private final Long fromDay;
+    private final Long toDay;
+    // null when the query does not name week days the planner understands
+    private final Set<WeekDay> weekDays;
+    // null when the query does not restrict rooms
+    private final Set<String> rooms;
+    private final Map<AccessPath, Long> estimates;
+
+    // filled in by the single consumer of the results
+    private long candidates;
+    private long returned;
+
+    QueryPlan(ScheduleQuery query, AccessPath accessPath, Long fromDay, Long toDay, Set<WeekDay> weekDays, Set<String> rooms, Map<AccessPath, Long> estimates) {
+        this.query = query;
+        this.accessPath = accessPath;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        this.weekDays = weekDays;
+        this.rooms = rooms;
+        this.estimates = estimates;
+    }
+
+    public ScheduleQuery getQuery() {
+        return query;
+    }
+
+    public AccessPath getAccessPath() {
+        return accessPath;
+    }
+
+    public Long getFromDay() {
+        return fromDay;
+    }
+
+    public Long getToDay() {
+        return toDay;
+    }
+
+    public Set<WeekDay> getWeekDays() {
+        return weekDays;
+    }
+
+    public Set<String> getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Estimated number of candidates of every access path that was applicable.
+     */
+    public Map<AccessPath, Long> getEstimates() {
+        return Collections.unmodifiableMap(estimates);
+    }
+
+    public long getEstimatedCandidates() {
+        return estimates.get(accessPath);
+    }
+
+    /**
+     * Candidates the access path produced so far.
+     */
+    public long getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Candidates the residual filter kept so far.
+     */
+    public long getReturned() {
+        return returned;
+    }
+
+    void countChunk(int chunkCandidates, int chunkReturned) {
+        candidates += chunkCandidates;
+        returned += chunkReturned;
+    }
+
+    /**
+     * True if the room predicate still has to be checked on the candidates of the access path.
+     */
+    boolean hasResidualRooms() {
+        return rooms != null && accessPath != AccessPath.ROOM;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder explain = new StringBuilder("access path: ").append(accessPath);
+        switch (accessPath) {
+            case ROOM:
+                explain.append(' ').append(rooms);
+                break;
+            case WEEK_DAY:
+                explain.append(' ').append(weekDays);
+                break;
+            default:
+        }
+        if (accessPath != AccessPath.FULL_SCAN && (fromDay != null || toDay != null))
+            explain.append(" from ").append(dayString(fromDay)).append(" to ").append(dayString(toDay));
+
+        explain.append("\nestimated candidates: ").append(estimates);
+
+        List<String> residual = new ArrayList<>();
+        if (query.getSearchCriteria() != null)
+            residual.add(query.isOpaque() ? "search criteria (opaque)" : "search criteria " + query.getCriteria().keySet());
+        if (hasResidualRooms())
+            residual.add("rooms " + rooms);
+        explain.append("\nresidual filter: ").append(residual.isEmpty() ? "none" : String.join(", ", residual));
+
+        explain.append("\ncandidates: ").append(candidates).append(", returned: ").append(returned);
+        return explain.toString();
+    }
+
+    private static String dayString(Long day) {
+        return day == null ? "open" : formatDate(dateOfEpochDay(day));
+    }
+}
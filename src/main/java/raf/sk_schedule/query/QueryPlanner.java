@@ -0,0 +1,215 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.query.QueryPlan.AccessPath;
+import raf.sk_schedule.util.filter.CriteriaFilter;
+import raf.sk_schedule.util.filter.SearchCriteria;
+
+import java.util.*;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.weekDayOf;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+/**
+ * Chooses how a {@link ScheduleQuery} reads the schedule.
+ * <p>
+ * Every applicable access path gets an estimate of the candidates it produces, assuming slots are spread evenly over
+ * the days of the schedule, over its rooms and over the week days, and the path with the fewest candidates wins.
+ * Whatever the path does not guarantee is checked by the residual filter: the query's SearchCriteria always runs on the
+ * candidates (the planner only narrows them, the criteria semantics stay those of the API), the room predicate runs
+ * whenever rooms are not the access path. Candidates are filtered in bounded chunks in chronological order.
+ */
+public class QueryPlanner {
+
+    public static final int CHUNK_SIZE = 4096;
+
+    private final QuerySource source;
+
+    public QueryPlanner(QuerySource source) {
+        this.source = source;
+    }
+
+    public QueryPlan plan(ScheduleQuery query) {
+        Map<String, Object> criteria = query.getCriteria();
+        Long fromDay = dayOf(criteria.get(CriteriaFilter.LOWER_BOUND_DATE_KEY));
+        Long toDay = dayOf(criteria.get(CriteriaFilter.UPPER_BOUND_DATE_KEY));
+        Set<WeekDay> weekDays = weekDaysOf(criteria.get(CriteriaFilter.WEEK_DAY_KEY));
+        Set<String> rooms = query.restrictsRooms() ? source.roomsMatching(query.getLocations(), query.getAttributes()) : null;
+
+        long slots = source.slotCount();
+        long[] span = source.daySpan();
+        // share of the schedule's days that fall between the bounds
+        double dayShare = 1.0;
+        if (span != null && (fromDay != null || toDay != null)) {
+            long from = fromDay == null ? span[0] : Math.max(fromDay, span[0]);
+            long to = toDay == null ? span[1] : Math.min(toDay, span[1]);
+            dayShare = Math.max(0, to - from + 1) / (double) (span[1] - span[0] + 1);
+        }
+
+        // insertion order breaks ties, cheaper paths per candidate come first
+        Map<AccessPath, Long> estimates = new EnumMap<>(AccessPath.class);
+        if (fromDay != null || toDay != null)
+            estimates.put(AccessPath.DATE_RANGE, Math.round(slots * dayShare));
+        if (weekDays != null)
+            estimates.put(AccessPath.WEEK_DAY, Math.round(slots * dayShare * weekDays.size() / 7.0));
+        if (rooms != null)
+            estimates.put(AccessPath.ROOM, Math.round(slots * dayShare * rooms.size() / Math.max(1, source.roomCount())));
+        estimates.put(AccessPath.FULL_SCAN, slots);
+
+        AccessPath best = AccessPath.FULL_SCAN;
+        for (Map.Entry<AccessPath, Long> estimate : estimates.entrySet())
+            if (estimate.getValue() < estimates.get(best))
+                best = estimate.getKey();
+
+        return new QueryPlan(query, best, fromDay, toDay, weekDays, rooms, estimates);
+    }
+
+    /**
+     * Lazily filtered results of the plan in chronological order, the plan counts candidates as they are consumed.
+     */
+    public Iterable<ScheduleSlot> results(QueryPlan plan) {
+        Iterable<ScheduleSlot> candidates = candidates(plan);
+        return () -> new ResidualIterator(candidates.iterator(), plan);
+    }
+
+    private Iterable<ScheduleSlot> candidates(QueryPlan plan) {
+        switch (plan.getAccessPath()) {
+            case DATE_RANGE:
+                return source.range(plan.getFromDay(), plan.getToDay());
+
+            case WEEK_DAY:
+                return weekDayCandidates(plan);
+
+            case ROOM:
+                List<ScheduleSlot> slots = new ArrayList<>();
+                for (String room : plan.getRooms())
+                    slots.addAll(source.roomRange(room, plan.getFromDay(), plan.getToDay()));
+                // every room comes in chronological order, the union has to be put back in order
+                slots.sort(Comparator.comparing(SlotKey::of));
+                return slots;
+
+            default:
+                return source.range(null, null);
+        }
+    }
+
+    /**
+     * Day ranges of the requested week days only, every skipped day costs nothing but the week day check.
+     */
+    private Iterable<ScheduleSlot> weekDayCandidates(QueryPlan plan) {
+        long[] span = source.daySpan();
+        if (span == null)
+            return Collections.emptyList();
+
+        long from = plan.getFromDay() == null ? span[0] : Math.max(plan.getFromDay(), span[0]);
+        long to = plan.getToDay() == null ? span[1] : Math.min(plan.getToDay(), span[1]);
+        Set<WeekDay> weekDays = plan.getWeekDays();
+
+        return () -> LongStream.rangeClosed(from, to)
+                .filter(day -> weekDays.contains(weekDayOf(day)))
+                .boxed()
+                .flatMap(day -> StreamSupport.stream(source.range(day, day).spliterator(), false))
+                .iterator();
+    }
+
+    /**
+     * Epoch day of a date criteria value, null if the planner can not tell which day it is (the residual filter still decides).
+     */
+    private static Long dayOf(Object value) {
+        try {
+            if (value instanceof Date)
+                return epochDay((Date) value);
+            if (value instanceof String)
+                return epochDay(parseDate((String) value));
+        } catch (RuntimeException e) {
+            // left to the search criteria
+        }
+        return null;
+    }
+
+    /**
+     * Week days of a week day criteria value, a single day or a collection/array of days or day names.
+     * Null if the value is missing or not understood.
+     */
+    private static Set<WeekDay> weekDaysOf(Object value) {
+        if (value == null)
+            return null;
+
+        Collection<?> values;
+        if (value instanceof Collection)
+            values = (Collection<?>) value;
+        else if (value instanceof Object[])
+            values = Arrays.asList((Object[]) value);
+        else
+            values = Collections.singletonList(value);
+
+        Set<WeekDay> weekDays = EnumSet.noneOf(WeekDay.class);
+        for (Object day : values) {
+            if (day instanceof WeekDay)
+                weekDays.add((WeekDay) day);
+            else if (day instanceof String) {
+                try {
+                    weekDays.add(WeekDay.valueOf(((String) day).trim().toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            } else
+                return null;
+        }
+        return weekDays;
+    }
+
+
+    /**
+     * Pulls candidates chunk by chunk and lets through only those passing every residual predicate.
+     */
+    private static class ResidualIterator implements Iterator<ScheduleSlot> {
+
+        private final Iterator<ScheduleSlot> candidates;
+        private final QueryPlan plan;
+        private final SearchCriteria criteria;
+        private Iterator<ScheduleSlot> accepted = Collections.emptyIterator();
+
+        ResidualIterator(Iterator<ScheduleSlot> candidates, QueryPlan plan) {
+            this.candidates = candidates;
+            this.plan = plan;
+            this.criteria = plan.getQuery().getSearchCriteria();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!accepted.hasNext() && candidates.hasNext())
+                accepted = nextChunk();
+            return accepted.hasNext();
+        }
+
+        @Override
+        public ScheduleSlot next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return accepted.next();
+        }
+
+        private Iterator<ScheduleSlot> nextChunk() {
+            List<ScheduleSlot> chunk = new ArrayList<>();
+            while (candidates.hasNext() && chunk.size() < CHUNK_SIZE)
+                chunk.add(candidates.next());
+            int chunkCandidates = chunk.size();
+
+            if (plan.hasResidualRooms())
+                chunk.removeIf(slot -> slot.getLocation() == null || !plan.getRooms().contains(slot.getLocation().getName()));
+
+            List<ScheduleSlot> kept = criteria == null || chunk.isEmpty() ? chunk : criteria.filter(chunk);
+            if (kept == null)
+                kept = Collections.emptyList();
+
+            plan.countChunk(chunkCandidates, kept.size());
+            return kept.iterator();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Access paths into the schedule the query planner chooses from, plus the statistics it estimates their cost with.
+ * Bounds are epoch days, both inclusive, null bound means the range is open on that side.
+ */
+public interface QuerySource {
+
+    /**
+     * Chronological view of every slot between the days.
+     */
+    Iterable<ScheduleSlot> range(Long fromDay, Long toDay);
+
+    /**
+     * Slots of one room between the days, in chronological order.
+     */
+    List<ScheduleSlot> roomRange(String roomName, Long fromDay, Long toDay);
+
+    /**
+     * Names of the rooms that are among the passed names (empty means any name)
+     * and have every passed attribute set to the passed value.
+     */
+    Set<String> roomsMatching(Set<String> names, Map<String, String> attributes);
+
+    int roomCount();
+
+    long slotCount();
+
+    /**
+     * First and last epoch day holding any slot, null if the schedule is empty.
+     */
+    long[] daySpan();
+}
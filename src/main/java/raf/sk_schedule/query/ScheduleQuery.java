@@ -0,0 +1,115 @@
+package raf.sk_schedule.query;
+
+import raf.sk_schedule.util.filter.SearchCriteria;
+
+import java.util.*;
+
+/**
+ * Search over the schedule that the {@link QueryPlanner} can see into.
+ * <p>
+ * A built SearchCriteria does not expose its keys, so the query records what it is built with: criteria keys are kept
+ * for planning and forwarded to a SearchCriteria that still filters every candidate, room name and room attribute
+ * predicates are evaluated by the planner itself. A query wrapping an already built SearchCriteria is opaque and always
+ * scans the whole schedule.
+ */
+public final class ScheduleQuery {
+
+    private final Map<String, Object> criteria;
+    private final Set<String> locations;
+    private final Map<String, String> attributes;
+    // null when the query has no criteria keys
+    private final SearchCriteria searchCriteria;
+
+    private ScheduleQuery(Map<String, Object> criteria, Set<String> locations, Map<String, String> attributes, SearchCriteria searchCriteria) {
+        this.criteria = Collections.unmodifiableMap(criteria);
+        this.locations = Collections.unmodifiableSet(locations);
+        this.attributes = Collections.unmodifiableMap(attributes);
+        this.searchCriteria = searchCriteria;
+    }
+
+    /**
+     * Query for criteria that were built elsewhere, nothing about them is known to the planner.
+     */
+    public static ScheduleQuery of(SearchCriteria searchCriteria) {
+        return new ScheduleQuery(new HashMap<>(), new HashSet<>(), new HashMap<>(), searchCriteria);
+    }
+
+    public Map<String, Object> getCriteria() {
+        return criteria;
+    }
+
+    public Set<String> getLocations() {
+        return locations;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public SearchCriteria getSearchCriteria() {
+        return searchCriteria;
+    }
+
+    /**
+     * True if the query filters by criteria the planner does not know the keys of.
+     */
+    public boolean isOpaque() {
+        return searchCriteria != null && criteria.isEmpty();
+    }
+
+    /**
+     * True if the query keeps only slots of some rooms.
+     */
+    public boolean restrictsRooms() {
+        return !locations.isEmpty() || !attributes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (isOpaque())
+            return "ScheduleQuery{opaque search criteria}";
+        return "ScheduleQuery{criteria=" + criteria + ", locations=" + locations + ", attributes=" + attributes + "}";
+    }
+
+
+    public static class Builder {
+
+        private final Map<String, Object> criteria = new LinkedHashMap<>();
+        private final Set<String> locations = new LinkedHashSet<>();
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+
+        /**
+         * Same keys and values as SearchCriteria.Builder, see CriteriaFilter.
+         */
+        public Builder setCriteria(String key, Object value) {
+            criteria.put(key, value);
+            return this;
+        }
+
+        /**
+         * Keeps only slots booked in one of the rooms, repeated calls add more rooms.
+         */
+        public Builder setLocation(String... roomNames) {
+            locations.addAll(Arrays.asList(roomNames));
+            return this;
+        }
+
+        /**
+         * Keeps only slots booked in rooms that have the attribute set to the value.
+         */
+        public Builder setAttribute(String attribute, String value) {
+            attributes.put(attribute, value);
+            return this;
+        }
+
+        public ScheduleQuery build() {
+            SearchCriteria searchCriteria = null;
+            if (!criteria.isEmpty()) {
+                SearchCriteria.Builder builder = new SearchCriteria.Builder();
+                criteria.forEach(builder::setCriteria);
+                searchCriteria = builder.build();
+            }
+            return new ScheduleQuery(new LinkedHashMap<>(criteria), new LinkedHashSet<>(locations), new LinkedHashMap<>(attributes), searchCriteria);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package raf.sk_schedule.recurrence;
+
+import raf.sk_schedule.index.OccupancyBitmap;
+import raf.sk_schedule.index.RoomDayIndex;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.report.ConflictReport;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+
+/**
+ * Recurring bookings of the schedule, kept as {@link RecurrenceRule}s per room and expanded only when asked for.
+ * <p>
+ * Whether a rule occurs on a day is a matter of arithmetic on its first day and period, so checking a slot against
+ * the rules of its room never enumerates occurrences, and two rules are compared by solving for their common days.
+ * <p>
+ * Writers have to hold the lock of the rule's room (the same room locks that guard the room/day index).
+ * Rules are immutable and so is the room -> rules map, every change publishes a new map (copying the changed room's list
+ * and the outer map, rules change far less often than they are read), so readers never lock and {@link #snapshot()} is O(1).
+ */
+public class RecurrenceIndex {
+
+    private final AtomicReference<Map<String, List<RecurrenceRule>>> rooms;
+
+    public RecurrenceIndex() {
+        this(Collections.emptyMap());
+    }
+
+    private RecurrenceIndex(Map<String, List<RecurrenceRule>> rooms) {
+        this.rooms = new AtomicReference<>(rooms);
+    }
+
+    /**
+     * Read only index over the rules as they are now, later changes of this index are not visible through it.
+     */
+    public RecurrenceIndex snapshot() {
+        return new RecurrenceIndex(rooms.get());
+    }
+
+    public void add(RecurrenceRule rule) {
+        update(current -> {
+            List<RecurrenceRule> rules = new ArrayList<>(current.getOrDefault(rule.getRoom(), Collections.emptyList()));
+            rules.add(rule);
+            return withRules(current, rule.getRoom(), rules);
+        });
+    }
+
+    /**
+     * Replaces the rule with its changed version, a null replacement drops the rule.
+     */
+    public void replace(RecurrenceRule rule, RecurrenceRule replacement) {
+        update(current -> replaced(current, rule, replacement));
+    }
+
+    private static Map<String, List<RecurrenceRule>> replaced(Map<String, List<RecurrenceRule>> current, RecurrenceRule rule, RecurrenceRule replacement) {
+        List<RecurrenceRule> rules = current.get(rule.getRoom());
+        if (rules == null)
+            return current;
+
+        int position = rules.indexOf(rule);
+        if (position < 0)
+            return current;
+
+        List<RecurrenceRule> changed = new ArrayList<>(rules);
+        if (replacement == null || replacement.size() == 0)
+            changed.remove(position);
+        else
+            changed.set(position, replacement);
+        return withRules(current, rule.getRoom(), changed);
+    }
+
+    /**
+     * Cancels every active occurrence identified by the keys. Each changed rule copies its exceptions once and the
+     * map is published once, however many occurrences the batch cancels.
+     *
+     * @return keys of the cancelled occurrences, keys that are not active occurrences of any rule are skipped
+     */
+    public Set<SlotKey> cancelAll(Collection<SlotKey> keys) {
+        Set<SlotKey> cancelled = new HashSet<>();
+        update(current -> {
+            cancelled.clear();
+            Map<RecurrenceRule, BitSet> indexes = new LinkedHashMap<>();
+            for (SlotKey key : keys) {
+                for (RecurrenceRule rule : current.getOrDefault(key.getRoom(), Collections.emptyList())) {
+                    int index = rule.indexOf(key);
+                    if (index >= 0) {
+                        indexes.computeIfAbsent(rule, r -> new BitSet()).set(index);
+                        cancelled.add(key);
+                        break;
+                    }
+                }
+            }
+            if (indexes.isEmpty())
+                return current;
+
+            Map<String, List<RecurrenceRule>> changed = new HashMap<>(current);
+            for (Map.Entry<RecurrenceRule, BitSet> entry : indexes.entrySet()) {
+                RecurrenceRule rule = entry.getKey();
+                RecurrenceRule replacement = rule.withCancelled(entry.getValue());
+                List<RecurrenceRule> rules = new ArrayList<>(changed.get(rule.getRoom()));
+                if (replacement.size() == 0)
+                    rules.remove(rule);
+                else
+                    rules.set(rules.indexOf(rule), replacement);
+
+                if (rules.isEmpty())
+                    changed.remove(rule.getRoom());
+                else
+                    changed.put(rule.getRoom(), Collections.unmodifiableList(rules));
+            }
+            return Collections.unmodifiableMap(changed);
+        });
+        return cancelled;
+    }
+
+    public List<RecurrenceRule> removeRoom(String roomName) {
+        Map<String, List<RecurrenceRule>> before = rooms.getAndUpdate(current -> withRules(current, roomName, Collections.emptyList()));
+        return new ArrayList<>(before.getOrDefault(roomName, Collections.emptyList()));
+    }
+
+    public void updateRoom(String roomName, RoomProperties properties) {
+        update(current -> {
+            List<RecurrenceRule> rules = current.get(roomName);
+            if (rules == null)
+                return current;
+
+            List<RecurrenceRule> changed = new ArrayList<>(rules.size());
+            for (RecurrenceRule rule : rules)
+                changed.add(rule.withLocation(properties));
+            return withRules(current, roomName, changed);
+        });
+    }
+
+    public List<RecurrenceRule> rulesOf(String roomName) {
+        return rooms.get().getOrDefault(roomName, Collections.emptyList());
+    }
+
+    /**
+     * Every stored rule, room by room.
+     */
+    public List<RecurrenceRule> rules() {
+        List<RecurrenceRule> all = new ArrayList<>();
+        for (List<RecurrenceRule> rules : rooms.get().values())
+            all.addAll(rules);
+        return all;
+    }
+
+    public Set<String> roomNames() {
+        return new HashSet<>(rooms.get().keySet());
+    }
+
+    public boolean isEmpty() {
+        // rooms without rules are never kept in the map
+        return rooms.get().isEmpty();
+    }
+
+    /**
+     * Number of active occurrences of all rules.
+     */
+    public int size() {
+        int size = 0;
+        for (List<RecurrenceRule> rules : rooms.get().values())
+            for (RecurrenceRule rule : rules)
+                size += rule.size();
+        return size;
+    }
+
+    /**
+     * Rule with an active occurrence identified by the key, null if there is none.
+     */
+    public RecurrenceRule ruleOf(SlotKey key) {
+        for (RecurrenceRule rule : rulesOf(key.getRoom()))
+            if (rule.indexOf(key) >= 0)
+                return rule;
+        return null;
+    }
+
+    /**
+     * Occurrences in the room on the day, ordered by start time.
+     */
+    public List<ScheduleSlot> slotsOn(String roomName, long day) {
+        List<RecurrenceRule> onDay = new ArrayList<>();
+        for (RecurrenceRule rule : rulesOf(roomName))
+            if (rule.indexOn(day) >= 0)
+                onDay.add(rule);
+
+        onDay.sort(Comparator.comparingInt(RecurrenceRule::getStart).thenComparingInt(RecurrenceRule::getEnd));
+        List<ScheduleSlot> slots = new ArrayList<>(onDay.size());
+        for (RecurrenceRule rule : onDay)
+            slots.add(rule.occurrence(rule.indexOn(day)));
+        return slots;
+    }
+
+    /**
+     * Occurrences colliding with the probe slot, ordered by start time.
+     */
+    public List<ScheduleSlot> findCollisions(ScheduleSlot probe) {
+        long day = epochDay(probe.getDate());
+        int start = minuteOfDay(probe.getStartTime());
+        int end = minuteOfDay(probe.getEndTime());
+
+        List<ScheduleSlot> collisions = new ArrayList<>();
+        for (RecurrenceRule rule : rulesOf(RoomDayIndex.roomKey(probe))) {
+            if (!rule.overlapsWindow(start, end))
+                continue;
+            int index = rule.indexOn(day);
+            if (index < 0)
+                continue;
+
+            ScheduleSlot occurrence = rule.occurrence(index);
+            if (occurrence.isCollidingWith(probe))
+                collisions.add(occurrence);
+        }
+        collisions.sort(Comparator.comparingInt(slot -> minuteOfDay(slot.getStartTime())));
+        return collisions;
+    }
+
+    /**
+     * Occupancy of the window [start, end) in the room on the day by the occurrences of the rules, decided arithmetically.
+     * Occurrences that only touch the window are left undecided, the same as in {@link OccupancyBitmap}.
+     */
+    public OccupancyBitmap.Probe probe(String roomName, long day, int start, int end) {
+        OccupancyBitmap.Probe probe = OccupancyBitmap.Probe.FREE;
+        for (RecurrenceRule rule : rulesOf(roomName)) {
+            if (!rule.overlapsWindow(start, end) || rule.indexOn(day) < 0)
+                continue;
+            if (!OccupancyBitmap.fits(start, end) || rule.getStart() >= rule.getEnd())
+                return OccupancyBitmap.Probe.UNDECIDED;
+            if (rule.getStart() < end && start < rule.getEnd())
+                return OccupancyBitmap.Probe.OCCUPIED;
+            probe = OccupancyBitmap.Probe.UNDECIDED;
+        }
+        return probe;
+    }
+
+    /**
+     * Reports every slot of the batch that collides with an occurrence of a stored rule, one check per slot and rule of its room.
+     */
+    public void addConflicts(List<ScheduleSlot> requested, ConflictReport report) {
+        if (isEmpty())
+            return;
+        for (ScheduleSlot slot : requested)
+            for (ScheduleSlot occurrence : findCollisions(slot))
+                report.addConflict(occurrence, slot, false);
+    }
+
+    /**
+     * Reports collisions of a new rule with the stored rules of its room. Only the days both rules occur on are visited,
+     * they are found arithmetically, the occurrences of the new rule are never enumerated.
+     *
+     * @param requestedSlots occurrences of the new rule by index, reported as the requested side of each conflict
+     */
+    public void addConflicts(RecurrenceRule requested, List<ScheduleSlot> requestedSlots, ConflictReport report) {
+        for (RecurrenceRule rule : rulesOf(requested.getRoom())) {
+            if (!rule.overlapsWindow(requested.getStart(), requested.getEnd()))
+                continue;
+
+            long step = rule.commonPeriod(requested);
+            long lastDay = Math.min(rule.getLastDay(), requested.getLastDay());
+            long firstDay = rule.firstCommonDay(requested, RecurrenceRule.NO_DAY);
+            for (long day = firstDay; firstDay != RecurrenceRule.NO_DAY && day <= lastDay; day += step) {
+                int bookedIndex = rule.indexOn(day);
+                int requestedIndex = requested.indexOn(day);
+                if (bookedIndex < 0 || requestedIndex < 0)
+                    continue;
+
+                ScheduleSlot booked = rule.occurrence(bookedIndex);
+                ScheduleSlot slot = requestedSlots.get(requestedIndex);
+                if (booked.isCollidingWith(slot))
+                    report.addConflict(booked, slot, false);
+            }
+        }
+    }
+
+    /**
+     * Occurrences of every rule between the days (null bound is open), in chronological order.
+     */
+    public Iterable<ScheduleSlot> range(Long fromDay, Long toDay) {
+        Collection<List<RecurrenceRule>> roomRules = rooms.get().values();
+        return () -> new OccurrenceIterator(roomRules, fromDay, toDay);
+    }
+
+    /**
+     * Occurrences of the rules of one room between the days (null bound is open), in chronological order.
+     */
+    public Iterable<ScheduleSlot> range(String roomName, Long fromDay, Long toDay) {
+        List<RecurrenceRule> rules = rulesOf(roomName);
+        return () -> new OccurrenceIterator(Collections.singletonList(rules), fromDay, toDay);
+    }
+
+    /**
+     * First and last day any rule occurs on, null if there are no rules.
+     */
+    public long[] daySpan() {
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (List<RecurrenceRule> rules : rooms.get().values())
+            for (RecurrenceRule rule : rules) {
+                first = Math.min(first, rule.getFirstDay());
+                last = Math.max(last, rule.getLastDay());
+            }
+        return first > last ? null : new long[]{first, last};
+    }
+
+    /**
+     * Merges chronologically ordered stored slots with the occurrences of the same day range.
+     */
+    public Iterable<ScheduleSlot> mergeWith(Iterable<ScheduleSlot> storedSlots, Long fromDay, Long toDay) {
+        Collection<List<RecurrenceRule>> roomRules = rooms.get().values();
+        if (roomRules.isEmpty())
+            return storedSlots;
+
+        return () -> new Iterator<ScheduleSlot>() {
+
+            private final Iterator<ScheduleSlot> stored = storedSlots.iterator();
+            private final OccurrenceIterator occurrences = new OccurrenceIterator(roomRules, fromDay, toDay);
+            private ScheduleSlot nextStored = stored.hasNext() ? stored.next() : null;
+            private SlotKey nextStoredKey = nextStored == null ? null : SlotKey.of(nextStored);
+
+            @Override
+            public boolean hasNext() {
+                return nextStored != null || occurrences.hasNext();
+            }
+
+            @Override
+            public ScheduleSlot next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                if (nextStored == null || (occurrences.hasNext() && occurrences.peekKey().compareTo(nextStoredKey) < 0))
+                    return occurrences.next();
+
+                ScheduleSlot slot = nextStored;
+                nextStored = stored.hasNext() ? stored.next() : null;
+                nextStoredKey = nextStored == null ? null : SlotKey.of(nextStored);
+                return slot;
+            }
+        };
+    }
+
+    /**
+     * Cuts every occurrence before the day off the rules. Caller holds the locks of all rooms.
+     */
+    public void trimBefore(long day) {
+        update(current -> {
+            Map<String, List<RecurrenceRule>> trimmed = current;
+            for (List<RecurrenceRule> rules : current.values())
+                for (RecurrenceRule rule : rules)
+                    if (rule.getFirstDay() < day)
+                        trimmed = replaced(trimmed, rule, rule.startingFrom(day));
+            return trimmed;
+        });
+    }
+
+    public void clear() {
+        rooms.set(Collections.emptyMap());
+    }
+
+
+    // writers of different rooms may publish at the same time, a lost race recomputes the change on the winner's map
+    private void update(UnaryOperator<Map<String, List<RecurrenceRule>>> change) {
+        rooms.updateAndGet(change);
+    }
+
+    private static Map<String, List<RecurrenceRule>> withRules(Map<String, List<RecurrenceRule>> current, String roomName, List<RecurrenceRule> rules) {
+        Map<String, List<RecurrenceRule>> changed = new HashMap<>(current);
+        if (rules.isEmpty())
+            changed.remove(roomName);
+        else
+            changed.put(roomName, Collections.unmodifiableList(rules));
+        return Collections.unmodifiableMap(changed);
+    }
+
+
+    /**
+     * K-way merge of the occurrence sequences of all rules overlapping the range.
+     */
+    private class OccurrenceIterator implements Iterator<ScheduleSlot> {
+
+        private final PriorityQueue<Cursor> cursors = new PriorityQueue<>(Comparator.comparing(cursor -> cursor.key));
+        private final Long toDay;
+
+        OccurrenceIterator(Collection<List<RecurrenceRule>> roomRules, Long fromDay, Long toDay) {
+            this.toDay = toDay;
+            for (List<RecurrenceRule> rules : roomRules) {
+                for (RecurrenceRule rule : rules) {
+                    int index = rule.firstIndexFrom(fromDay == null ? Long.MIN_VALUE : fromDay);
+                    if (index >= 0 && inRange(rule, index))
+                        cursors.add(new Cursor(rule, index));
+                }
+            }
+        }
+
+        private boolean inRange(RecurrenceRule rule, int index) {
+            return toDay == null || rule.dayOf(index) <= toDay;
+        }
+
+        SlotKey peekKey() {
+            return cursors.peek().key;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public ScheduleSlot next() {
+            Cursor cursor = cursors.poll();
+            if (cursor == null)
+                throw new NoSuchElementException();
+
+            ScheduleSlot occurrence = cursor.rule.occurrence(cursor.index);
+            int next = cursor.rule.nextIndex(cursor.index);
+            if (next >= 0 && inRange(cursor.rule, next))
+                cursors.add(new Cursor(cursor.rule, next));
+            return occurrence;
+        }
+    }
+
+
+    private static class Cursor {
+
+        final RecurrenceRule rule;
+        final int index;
+        final SlotKey key;
+
+        Cursor(RecurrenceRule rule, int index) {
+            this.rule = rule;
+            this.index = index;
+            this.key = rule.keyOf(index);
+        }
+    }
+}
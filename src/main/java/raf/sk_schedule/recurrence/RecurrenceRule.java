@@ -0,0 +1,325 @@
+package raf.sk_schedule.recurrence;
+
+import raf.sk_schedule.index.RoomDayIndex;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static raf.sk_schedule.index.SlotTimes.dateOfEpochDay;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+
+/**
+ * A recurring booking kept as a rule: the same time window in the same room every {@code period} days,
+ * {@code count} times starting with {@code firstDay}. Cancelled occurrences are stored as exceptions on the rule.
+ * <p>
+ * Rules are immutable, every change (cancellation, trimming, room update) returns a new rule,
+ * so readers can expand a rule without any locking.
+ * <p>
+ * Occurrences are values: a read builds a new slot for each of them, equal to the mapped slot the rule was booked with,
+ * and look ups, moves and deletes find them by their date, times and room. Mapped slots that carry more than that
+ * (linked slots) are rare, the rule keeps those instances and hands them out as its occurrences, so nothing they carry is lost.
+ */
+public final class RecurrenceRule {
+
+    public static final long NO_DAY = Long.MIN_VALUE;
+
+    private final long firstDay;
+    private final int period;
+    private final int count;
+    private final String startTime;
+    private final String endTime;
+    private final int start;
+    private final int end;
+    private final RoomProperties location;
+    private final String room;
+    // indexes of cancelled occurrences, never modified after construction
+    private final BitSet cancelled;
+    // the mapped slots by occurrence index if they carry state of their own, null if occurrences are built on every read
+    private final List<ScheduleSlot> mappedSlots;
+
+    private RecurrenceRule(long firstDay, int period, int count, String startTime, String endTime,
+                           RoomProperties location, String room, BitSet cancelled, List<ScheduleSlot> mappedSlots) {
+        this.firstDay = firstDay;
+        this.period = period;
+        this.count = count;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.start = minuteOfDay(startTime);
+        this.end = minuteOfDay(endTime);
+        this.location = location;
+        this.room = room;
+        this.cancelled = cancelled;
+        this.mappedSlots = mappedSlots;
+    }
+
+    /**
+     * Rule describing the mapped slots, or null if they are not evenly spaced occurrences of one time window in one room.
+     */
+    public static RecurrenceRule of(List<ScheduleSlot> mappedSlots) {
+        if (mappedSlots.size() < 2)
+            return null;
+
+        ScheduleSlot first = mappedSlots.get(0);
+        long firstDay = epochDay(first.getDate());
+        long period = epochDay(mappedSlots.get(1).getDate()) - firstDay;
+        if (period <= 0 || period > Integer.MAX_VALUE)
+            return null;
+
+        for (int i = 0; i < mappedSlots.size(); i++) {
+            ScheduleSlot slot = mappedSlots.get(i);
+            if (epochDay(slot.getDate()) != firstDay + i * period
+                    || !first.getStartTime().equals(slot.getStartTime())
+                    || !first.getEndTime().equals(slot.getEndTime())
+                    || first.getLocation() != slot.getLocation())
+                return null;
+        }
+
+        boolean stateful = false;
+        for (ScheduleSlot slot : mappedSlots)
+            stateful |= slot.getSharedState() != null;
+
+        return new RecurrenceRule(firstDay, (int) period, mappedSlots.size(), first.getStartTime(), first.getEndTime(),
+                first.getLocation(), RoomDayIndex.roomKey(first), new BitSet(), stateful ? List.copyOf(mappedSlots) : null);
+    }
+
+    /**
+     * Rule read back from the journal, bound to no room properties yet, see {@link #withLocation(RoomProperties)}.
+     */
+    public static RecurrenceRule of(long firstDay, int period, int count, String startTime, String endTime, String room, BitSet cancelled) {
+        if (period <= 0 || count <= 0)
+            throw new IllegalArgumentException("A rule needs a positive period and occurrence count.");
+        return new RecurrenceRule(firstDay, period, count, startTime, endTime, null, room, (BitSet) cancelled.clone(), null);
+    }
+
+    public long getFirstDay() {
+        return firstDay;
+    }
+
+    public long getLastDay() {
+        return dayOf(count - 1);
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Number of occurrences including the cancelled ones.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public String getStartTime() {
+        return startTime;
+    }
+
+    public String getEndTime() {
+        return endTime;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * Indexes of the cancelled occurrences.
+     */
+    public BitSet getCancelled() {
+        return (BitSet) cancelled.clone();
+    }
+
+    /**
+     * Number of occurrences that are not cancelled.
+     */
+    public int size() {
+        return count - cancelled.cardinality();
+    }
+
+    public long dayOf(int index) {
+        return firstDay + (long) index * period;
+    }
+
+    /**
+     * Index of the (not cancelled) occurrence on the day, -1 if the rule does not occur on that day.
+     */
+    public int indexOn(long day) {
+        if (day < firstDay || day > getLastDay() || (day - firstDay) % period != 0)
+            return -1;
+        int index = (int) ((day - firstDay) / period);
+        return cancelled.get(index) ? -1 : index;
+    }
+
+    /**
+     * Index of the occurrence identified by the key, -1 if the key is not an active occurrence of this rule.
+     */
+    public int indexOf(SlotKey key) {
+        if (key.getStart() != start || key.getEnd() != end || !key.getRoom().equals(room))
+            return -1;
+        return indexOn(key.getDay());
+    }
+
+    /**
+     * First active occurrence on or after the day, -1 if there is none.
+     */
+    public int firstIndexFrom(long day) {
+        long index = day <= firstDay ? 0 : (day - firstDay + period - 1) / period;
+        if (index >= count)
+            return -1;
+        int next = cancelled.nextClearBit((int) index);
+        return next < count ? next : -1;
+    }
+
+    public int nextIndex(int index) {
+        int next = cancelled.nextClearBit(index + 1);
+        return next < count ? next : -1;
+    }
+
+    /**
+     * Inclusive minute bounds, so touching windows are handed to {@link ScheduleSlot#isCollidingWith(ScheduleSlot)} as well.
+     */
+    public boolean overlapsWindow(int otherStart, int otherEnd) {
+        return start <= otherEnd && otherStart <= end;
+    }
+
+    public SlotKey keyOf(int index) {
+        return new SlotKey(dayOf(index), start, end, room);
+    }
+
+    /**
+     * Keys of the active occurrences in chronological order.
+     */
+    public List<SlotKey> keys() {
+        List<SlotKey> keys = new ArrayList<>(size());
+        for (int index = firstIndexFrom(firstDay); index >= 0; index = nextIndex(index))
+            keys.add(keyOf(index));
+        return keys;
+    }
+
+    /**
+     * Active mapped slots the rule keeps as its occurrences, empty if the occurrences are built on every read.
+     */
+    public List<ScheduleSlot> getMappedSlots() {
+        if (mappedSlots == null)
+            return Collections.emptyList();
+        List<ScheduleSlot> active = new ArrayList<>(size());
+        for (int index = firstIndexFrom(firstDay); index >= 0; index = nextIndex(index))
+            active.add(mappedSlots.get(index));
+        return active;
+    }
+
+    /**
+     * Slot of the occurrence, the mapped slot itself if the rule keeps it, otherwise a new instance.
+     */
+    public ScheduleSlot occurrence(int index) {
+        if (mappedSlots != null)
+            return mappedSlots.get(index);
+        return new ScheduleSlot.Builder()
+                .setDate(dateOfEpochDay(dayOf(index)))
+                .setStartTime(startTime)
+                .setEndTime(endTime)
+                .setLocation(location)
+                .build();
+    }
+
+    public RecurrenceRule withCancelled(int index) {
+        BitSet newCancelled = (BitSet) cancelled.clone();
+        newCancelled.set(index);
+        return new RecurrenceRule(firstDay, period, count, startTime, endTime, location, room, newCancelled, mappedSlots);
+    }
+
+    /**
+     * The rule with all the occurrences cancelled at once, the exceptions are copied a single time.
+     */
+    public RecurrenceRule withCancelled(BitSet indexes) {
+        BitSet newCancelled = (BitSet) cancelled.clone();
+        newCancelled.or(indexes);
+        return new RecurrenceRule(firstDay, period, count, startTime, endTime, location, room, newCancelled, mappedSlots);
+    }
+
+    /**
+     * The rule bound to the new properties of its room, kept mapped slots are relinked by the caller.
+     */
+    public RecurrenceRule withLocation(RoomProperties newLocation) {
+        return new RecurrenceRule(firstDay, period, count, startTime, endTime, newLocation, room, cancelled, mappedSlots);
+    }
+
+    /**
+     * The same occurrences in the renamed room, the occurrences are keyed by the new room name.
+     * Kept mapped slots are not changed, they are relinked by the caller.
+     */
+    public RecurrenceRule inRoom(RoomProperties renamedLocation) {
+        return new RecurrenceRule(firstDay, period, count, startTime, endTime, renamedLocation, renamedLocation.getName(), cancelled, mappedSlots);
+    }
+
+    /**
+     * The rule without its occurrences before the day, null if nothing is left.
+     */
+    public RecurrenceRule startingFrom(long day) {
+        int first = firstIndexFrom(day);
+        if (first < 0)
+            return null;
+        if (first == 0)
+            return this;
+        return new RecurrenceRule(dayOf(first), period, count - first, startTime, endTime, location, room, cancelled.get(first, count),
+                mappedSlots == null ? null : mappedSlots.subList(first, count));
+    }
+
+    /**
+     * First day on which both rules occur, at or after the day, or {@link #NO_DAY} if there is none.
+     * Occurrence days are {@code firstDay + k * period}, so common days are the solutions of two congruences:
+     * they exist only if the distance of the first days is a multiple of gcd(period, other period) and then repeat every lcm.
+     */
+    public long firstCommonDay(RecurrenceRule other, long fromDay) {
+        long lastDay = Math.min(getLastDay(), other.getLastDay());
+        long lowerDay = Math.max(fromDay, Math.max(firstDay, other.firstDay));
+        if (lowerDay > lastDay)
+            return NO_DAY;
+
+        long gcd = BigInteger.valueOf(period).gcd(BigInteger.valueOf(other.period)).longValue();
+        long distance = other.firstDay - firstDay;
+        if (distance % gcd != 0)
+            return NO_DAY;
+
+        // firstDay + period * k = other.firstDay (mod other.period)  =>  (period / gcd) * k = distance / gcd (mod other.period / gcd)
+        long modulus = other.period / gcd;
+        long k = modulus == 1 ? 0 : BigInteger.valueOf(Math.floorMod(distance / gcd, modulus))
+                .multiply(BigInteger.valueOf(period / gcd).modInverse(BigInteger.valueOf(modulus)))
+                .mod(BigInteger.valueOf(modulus)).longValue();
+
+        long step = commonPeriod(other);
+        long common = firstDay + period * k;
+        if (common < lowerDay)
+            common += (lowerDay - common + step - 1) / step * step;
+        return common <= lastDay ? common : NO_DAY;
+    }
+
+    /**
+     * Distance between two consecutive common days of the rules (lcm of the periods).
+     */
+    public long commonPeriod(RecurrenceRule other) {
+        long gcd = BigInteger.valueOf(period).gcd(BigInteger.valueOf(other.period)).longValue();
+        return period / gcd * other.period;
+    }
+
+    @Override
+    public String toString() {
+        return room + " " + startTime + "-" + endTime + " every " + period + " days from day " + firstDay
+                + " (" + size() + " of " + count + " occurrences)";
+    }
+}
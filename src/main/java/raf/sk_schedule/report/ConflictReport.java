@@ -0,0 +1,104 @@
+package raf.sk_schedule.report;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+/**
+ * Result of checking a batch of slots that are about to be booked.
+ * Holds every collision found and every slot that landed on a day excluded by the schedule configuration,
+ * so the caller can fix the whole batch at once instead of retrying after each exception.
+ */
+public class ConflictReport {
+
+    private final List<Conflict> conflicts = new ArrayList<>();
+    private final List<ScheduleSlot> excludedDaySlots = new ArrayList<>();
+    private int checkedSlots;
+
+    public void addConflict(ScheduleSlot booked, ScheduleSlot requested, boolean withinBatch) {
+        conflicts.add(new Conflict(booked, requested, withinBatch));
+    }
+
+    public void addExcludedDaySlot(ScheduleSlot requested) {
+        excludedDaySlots.add(requested);
+    }
+
+    public void setCheckedSlots(int checkedSlots) {
+        this.checkedSlots = checkedSlots;
+    }
+
+    public List<Conflict> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    public List<ScheduleSlot> getExcludedDaySlots() {
+        return Collections.unmodifiableList(excludedDaySlots);
+    }
+
+    public int getCheckedSlots() {
+        return checkedSlots;
+    }
+
+    public boolean isClean() {
+        return conflicts.isEmpty() && excludedDaySlots.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Checked ").append(checkedSlots).append(" slots, found ")
+                .append(conflicts.size()).append(" collisions and ")
+                .append(excludedDaySlots.size()).append(" slots on excluded week days.");
+
+        for (Conflict conflict : conflicts)
+            sb.append('\n').append(conflict);
+
+        for (ScheduleSlot slot : excludedDaySlots)
+            sb.append("\nslot on date: ").append(formatDate(slot.getDate()))
+                    .append(" lands on excluded week day ").append(slot.getDayOfWeek());
+
+        return sb.toString();
+    }
+
+
+    /**
+     * A pair of colliding slots. If withinBatch is true both slots belong to the checked batch,
+     * otherwise booked is a slot that is already in the schedule.
+     */
+    public static class Conflict {
+
+        private final ScheduleSlot booked;
+        private final ScheduleSlot requested;
+        private final boolean withinBatch;
+
+        public Conflict(ScheduleSlot booked, ScheduleSlot requested, boolean withinBatch) {
+            this.booked = booked;
+            this.requested = requested;
+            this.withinBatch = withinBatch;
+        }
+
+        public ScheduleSlot getBooked() {
+            return booked;
+        }
+
+        public ScheduleSlot getRequested() {
+            return requested;
+        }
+
+        public boolean isWithinBatch() {
+            return withinBatch;
+        }
+
+        @Override
+        public String toString() {
+            return (withinBatch ? "requested slots collide with each other" : "collision with an existing slot")
+                    + " on date: " + formatDate(booked.getDate())
+                    + " between " + booked.getStartTime() + " and " + booked.getEndTime()
+                    + " / " + requested.getStartTime() + " and " + requested.getEndTime() + ".";
+        }
+    }
+}
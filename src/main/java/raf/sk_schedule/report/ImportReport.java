@@ -0,0 +1,67 @@
+package raf.sk_schedule.report;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a schedule import: which rows made it into the schedule and why the others did not.
+ */
+public class ImportReport {
+
+    private int rowsRead;
+    private final List<ScheduleSlot> accepted = new ArrayList<>();
+    private final List<ScheduleSlot> rejectedByDay = new ArrayList<>();
+    private final List<ScheduleSlot> rejectedByCollision = new ArrayList<>();
+    private final List<String> malformedRows = new ArrayList<>();
+
+    public void setRowsRead(int rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public void addAccepted(ScheduleSlot slot) {
+        accepted.add(slot);
+    }
+
+    public void addRejectedByDay(ScheduleSlot slot) {
+        rejectedByDay.add(slot);
+    }
+
+    public void addRejectedByCollision(ScheduleSlot slot) {
+        rejectedByCollision.add(slot);
+    }
+
+    public void addMalformedRow(int line, String reason) {
+        malformedRows.add("line " + line + ": " + reason);
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public List<ScheduleSlot> getAccepted() {
+        return Collections.unmodifiableList(accepted);
+    }
+
+    public List<ScheduleSlot> getRejectedByDay() {
+        return Collections.unmodifiableList(rejectedByDay);
+    }
+
+    public List<ScheduleSlot> getRejectedByCollision() {
+        return Collections.unmodifiableList(rejectedByCollision);
+    }
+
+    public List<String> getMalformedRows() {
+        return Collections.unmodifiableList(malformedRows);
+    }
+
+    @Override
+    public String toString() {
+        return "Read " + rowsRead + " rows: " + accepted.size() + " accepted, "
+                + rejectedByDay.size() + " rejected by day filter, "
+                + rejectedByCollision.size() + " rejected by collision, "
+                + malformedRows.size() + " malformed.";
+    }
+}
@@ -0,0 +1,22 @@
+package raf.sk_schedule.report;
+
+import raf.sk_schedule.exception.ScheduleException;
+
+/**
+ * Thrown when a batch booking is rejected, carries the full conflict report of the batch.
+ */
+public class ScheduleConflictException extends ScheduleException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ConflictReport report;
+
+    public ScheduleConflictException(String message, ConflictReport report) {
+        super(message + "\n" + report);
+        this.report = report;
+    }
+
+    public ConflictReport getReport() {
+        return report;
+    }
+}
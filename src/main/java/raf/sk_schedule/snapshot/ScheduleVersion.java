@@ -0,0 +1,173 @@
+package raf.sk_schedule.snapshot;
+
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.CompactSlotArchive;
+import raf.sk_schedule.index.PersistentSlotTree;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.recurrence.RecurrenceIndex;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+/**
+ * Immutable view of the rooms and slots of a schedule as of one version.
+ * <p>
+ * A version only references the persistent structures that were current when it was taken (the slot tree, the rule map,
+ * the archive and the room map), so taking one is O(1) and reading it needs no locks while the schedule keeps changing.
+ * Every open snapshot gets a handle of its own, handles opened while nothing changed share one reference counted
+ * {@link SharedVersion}. Closing a handle twice releases it once, and {@link #close()} of the last open handle releases
+ * the shared version so the structures only it still pinned can be garbage collected.
+ * <p>
+ * Slot objects are shared with the live schedule. A slot the schedule changes in place after the version was taken
+ * (a move or a room update) is listed as a copy with its old date, times and room.
+ */
+public final class ScheduleVersion implements AutoCloseable {
+
+    private final SharedVersion shared;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public ScheduleVersion(long version, long changeVersion, PersistentSlotTree slots, RecurrenceIndex rules, CompactSlotArchive archive, Map<String, RoomProperties> rooms) {
+        this(new SharedVersion(version, changeVersion, new Contents(slots, rules, archive, rooms)));
+    }
+
+    ScheduleVersion(SharedVersion shared) {
+        this.shared = shared;
+    }
+
+    public long getVersion() {
+        return shared.getVersion();
+    }
+
+    /**
+     * Version of the last change log entry contained in this version, -1 if the change log was not enabled.
+     * The change log is fed inside the same step as the change itself, so the two never disagree.
+     */
+    public long getChangeVersion() {
+        return shared.getChangeVersion();
+    }
+
+    public List<RoomProperties> getAllRooms() {
+        return new ArrayList<>(contents().rooms.values());
+    }
+
+    public RoomProperties getRoomByName(String name) {
+        return contents().rooms.get(name);
+    }
+
+    public boolean hasRoom(String name) {
+        return contents().rooms.containsKey(name);
+    }
+
+    /**
+     * Number of slots in the version, archived slots and rule occurrences included.
+     */
+    public int size() {
+        Contents current = contents();
+        return current.archive.size() + current.slots.size() + current.rules.size();
+    }
+
+    /**
+     * Chronological slots of the version between the two epoch days, both inclusive. Null bound means the range is open on that side.
+     * Archived days all come before the live ones, rule occurrences are merged into the live part.
+     * The returned view keeps reading the structures of this version after the version has been closed.
+     */
+    public Iterable<ScheduleSlot> range(Long fromDay, Long toDay) {
+        Contents current = contents();
+        // stored slots are merged by the place they had in this version, kept mapped slots of rules are listed the same way
+        Iterable<ScheduleSlot> live = asCaptured(current.rules.mergeWith(asCaptured(current.slots.range(fromDay, toDay)), fromDay, toDay));
+        if (current.archive.size() == 0 || (fromDay != null && !current.archive.isArchived(fromDay)))
+            return live;
+
+        Iterable<ScheduleSlot> history = current.archive.range(fromDay, toDay);
+        return () -> Stream.concat(StreamSupport.stream(history.spliterator(), false), StreamSupport.stream(live.spliterator(), false)).iterator();
+    }
+
+    /**
+     * Slots between the dates (String or java util Date), null bound leaves the range open on that side.
+     */
+    public List<ScheduleSlot> getSchedule(Object lowerBoundDate, Object upperBoundDate) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        range(lowerBoundDate == null ? null : epochDay(toDate(lowerBoundDate)),
+                upperBoundDate == null ? null : epochDay(toDate(upperBoundDate))).forEach(slots::add);
+        return slots;
+    }
+
+    public List<ScheduleSlot> getWholeSchedule() {
+        return getSchedule(null, null);
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Releases this handle's hold on the version, closing it again does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true))
+            shared.release();
+    }
+
+    private Iterable<ScheduleSlot> asCaptured(Iterable<ScheduleSlot> stored) {
+        return () -> {
+            Iterator<ScheduleSlot> slots = stored.iterator();
+            return new Iterator<ScheduleSlot>() {
+                @Override
+                public boolean hasNext() {
+                    return slots.hasNext();
+                }
+
+                @Override
+                public ScheduleSlot next() {
+                    return shared.asCaptured(slots.next());
+                }
+            };
+        };
+    }
+
+    SharedVersion getShared() {
+        return shared;
+    }
+
+    // an open handle holds the shared version, so its contents are still there
+    private Contents contents() {
+        Contents current = closed.get() ? null : shared.getContents();
+        if (current == null)
+            throw new ScheduleException("Schedule version " + getVersion() + " has been closed.");
+        return current;
+    }
+
+    private static Date toDate(Object date) {
+        if (date instanceof Date)
+            return (Date) date;
+        if (date instanceof String)
+            return parseDate((String) date);
+        throw new ScheduleException("Argument date should be a String or java util Date object!");
+    }
+
+
+    /**
+     * The persistent structures a version reads.
+     */
+    static final class Contents {
+
+        final PersistentSlotTree slots;
+        final RecurrenceIndex rules;
+        final CompactSlotArchive archive;
+        final Map<String, RoomProperties> rooms;
+
+        Contents(PersistentSlotTree slots, RecurrenceIndex rules, CompactSlotArchive archive, Map<String, RoomProperties> rooms) {
+            this.slots = slots;
+            this.rules = rules;
+            this.archive = archive;
+            this.rooms = rooms;
+        }
+    }
+}
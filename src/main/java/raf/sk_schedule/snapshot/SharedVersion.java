@@ -0,0 +1,81 @@
+package raf.sk_schedule.snapshot;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One version of a schedule shared by every {@link ScheduleVersion} handle opened on it, counts the open handles.
+ */
+final class SharedVersion {
+
+    private final long version;
+    private final long changeVersion;
+    private final AtomicInteger handles = new AtomicInteger(1);
+    // null once the last handle closed
+    private volatile ScheduleVersion.Contents contents;
+    private volatile VersionRegistry registry;
+    // copies of the slots changed in place since the version was taken, as they were in the version
+    private final Map<ScheduleSlot, ScheduleSlot> retired = new IdentityHashMap<>();
+    private volatile boolean anyRetired;
+
+    SharedVersion(long version, long changeVersion, ScheduleVersion.Contents contents) {
+        this.version = version;
+        this.changeVersion = changeVersion;
+        this.contents = contents;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getChangeVersion() {
+        return changeVersion;
+    }
+
+    ScheduleVersion.Contents getContents() {
+        return contents;
+    }
+
+    synchronized void retire(ScheduleSlot slot, ScheduleSlot asBefore) {
+        retired.putIfAbsent(slot, asBefore);
+        anyRetired = true;
+    }
+
+    /**
+     * The slot as it was in this version.
+     */
+    ScheduleSlot asCaptured(ScheduleSlot slot) {
+        if (!anyRetired)
+            return slot;
+        synchronized (this) {
+            return retired.getOrDefault(slot, slot);
+        }
+    }
+
+    void registerWith(VersionRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * One more handle on the version, null if the last handle already closed it.
+     */
+    ScheduleVersion open() {
+        for (int current = handles.get(); current > 0; current = handles.get()) {
+            if (handles.compareAndSet(current, current + 1))
+                return new ScheduleVersion(this);
+        }
+        return null;
+    }
+
+    void release() {
+        if (handles.decrementAndGet() == 0) {
+            contents = null;
+            VersionRegistry current = registry;
+            if (current != null)
+                current.reclaim(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package raf.sk_schedule.snapshot;
+
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Version numbers and open {@link ScheduleVersion}s of a schedule.
+ * <p>
+ * Every change runs through {@link #change(Supplier)}. Changes share the gate with each other (their own locks keep them apart),
+ * taking a version holds it exclusively for the few reference reads it needs, so a version never sees a change half applied,
+ * e.g. a moved slot in neither or both of its places. Changes must not acquire any lock inside the gate.
+ * <p>
+ * Open versions stay registered until their last reader closes them, the registry does not keep closed versions alive.
+ */
+public class VersionRegistry {
+
+    private final StampedLock gate = new StampedLock();
+    private final AtomicLong version = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, SharedVersion> open = new ConcurrentSkipListMap<>();
+
+    /**
+     * Applies the change as one step of the version history. A change that throws does not start a new version.
+     */
+    public <T> T change(Supplier<T> change) {
+        long stamp = gate.readLock();
+        try {
+            T result = change.get();
+            version.incrementAndGet();
+            return result;
+        } finally {
+            gate.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Opens a handle on the current version. If the version is already open the handle shares it, otherwise
+     * the capture builds it from the structures that are current at that moment.
+     */
+    public ScheduleVersion acquire(LongFunction<ScheduleVersion> capture) {
+        long stamp = gate.writeLock();
+        try {
+            long current = version.get();
+            SharedVersion latest = open.get(current);
+            ScheduleVersion handle = latest == null ? null : latest.open();
+            if (handle != null)
+                return handle;
+
+            ScheduleVersion captured = capture.apply(current);
+            captured.getShared().registerWith(this);
+            open.put(current, captured.getShared());
+            return captured;
+        } finally {
+            gate.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Called inside a change that is about to change a stored slot in place. Every open version lists a copy of the slot
+     * as it is now instead, the copy is only made if some version is open. A version keeps the first copy it gets.
+     */
+    public void retire(ScheduleSlot slot, UnaryOperator<ScheduleSlot> copy) {
+        if (open.isEmpty())
+            return;
+        ScheduleSlot asBefore = copy.apply(slot);
+        for (SharedVersion shared : open.values())
+            shared.retire(slot, asBefore);
+    }
+
+    void reclaim(SharedVersion closed) {
+        open.remove(closed.getVersion(), closed);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public int getOpenVersions() {
+        return open.size();
+    }
+
+    /**
+     * Oldest version some reader still holds, -1 if no version is open.
+     */
+    public long getOldestOpenVersion() {
+        Map.Entry<Long, SharedVersion> oldest = open.firstEntry();
+        return oldest == null ? -1 : oldest.getKey();
+    }
+}
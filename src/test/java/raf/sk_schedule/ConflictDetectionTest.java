@@ -0,0 +1,78 @@
+package raf.sk_schedule;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.index.RoomDayIndex;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.report.ConflictReport;
+import raf.sk_schedule.report.ScheduleConflictException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+
+class ConflictDetectionTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties a2 = room("A2");
+
+    @Test
+    void sweepReportsCollisionsWithBookedSlotsAndWithinTheBatch() {
+        RoomDayIndex index = new RoomDayIndex();
+        ScheduleSlot booked = slot("2024-03-04", "10:00", "12:00", a1);
+        index.add(booked);
+        index.add(slot("2024-03-04", "14:00", "15:00", a2));
+
+        ScheduleSlot hitsBooked = slot("2024-03-04", "11:00", "11:30", a1);
+        ScheduleSlot first = slot("2024-03-04", "16:00", "18:00", a1);
+        ScheduleSlot second = slot("2024-03-04", "17:00", "19:00", a1);
+        ScheduleSlot otherRoom = slot("2024-03-04", "10:30", "11:30", a2);
+        ScheduleSlot otherDay = slot("2024-03-05", "10:30", "11:30", a1);
+
+        ConflictReport report = new ConflictReport();
+        index.sweepConflicts(List.of(second, otherDay, hitsBooked, otherRoom, first), report);
+
+        assertEquals(5, report.getCheckedSlots());
+        assertEquals(2, report.getConflicts().size());
+
+        ConflictReport.Conflict withBooked = report.getConflicts().stream().filter(c -> !c.isWithinBatch()).findFirst().orElseThrow();
+        assertSame(booked, withBooked.getBooked());
+        assertSame(hitsBooked, withBooked.getRequested());
+
+        ConflictReport.Conflict withinBatch = report.getConflicts().stream().filter(ConflictReport.Conflict::isWithinBatch).findFirst().orElseThrow();
+        assertSame(first, withinBatch.getBooked());
+        assertSame(second, withinBatch.getRequested());
+    }
+
+    @Test
+    void sweepComparesLongBookedSlotsWithEveryLaterRequest() {
+        RoomDayIndex index = new RoomDayIndex();
+        index.add(slot("2024-03-04", "08:00", "20:00", a1));
+
+        ConflictReport report = new ConflictReport();
+        index.sweepConflicts(List.of(slot("2024-03-04", "09:00", "10:00", a1), slot("2024-03-04", "18:00", "19:00", a1)), report);
+
+        assertEquals(2, report.getConflicts().size());
+        assertTrue(report.getConflicts().stream().noneMatch(ConflictReport.Conflict::isWithinBatch));
+    }
+
+    @Test
+    void detectConflictsDoesNotBook() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.bookScheduleSlot(slot("2024-03-04", "10:00", "12:00", a1));
+
+        ConflictReport report = manager.detectConflicts(List.of(slot("2024-03-04", "11:00", "13:00", a1), slot("2024-03-05", "11:00", "13:00", a1)));
+
+        assertFalse(report.isClean());
+        assertEquals(1, report.getConflicts().size());
+        assertEquals(1, manager.getWholeSchedule().size());
+    }
+
+    @Test
+    void conflictExceptionCarriesTheReport() {
+        ScheduleConflictException exception = new ScheduleConflictException("rejected", new ConflictReport());
+        assertTrue(exception.getReport().isClean());
+        assertTrue(exception.getMessage().startsWith("rejected"));
+    }
+}
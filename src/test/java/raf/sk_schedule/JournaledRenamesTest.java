@@ -0,0 +1,214 @@
+package raf.sk_schedule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.journal.ScheduleMutationListener;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class JournaledRenamesTest {
+
+    @TempDir
+    Path directory;
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B2");
+    private final RoomProperties c3 = room("C3");
+
+    private static List<SlotKey> keys(ScheduleSlotsManager manager) {
+        return manager.getSchedule((Object) null, null).stream().map(SlotKey::of).collect(Collectors.toList());
+    }
+
+    private static List<SlotKey> inRoom(List<SlotKey> keys, String from, String to) {
+        return keys.stream()
+                .map(key -> key.getRoom().equals(from) ? new SlotKey(key.getDay(), key.getStart(), key.getEnd(), to) : key)
+                .collect(Collectors.toList());
+    }
+
+    // A1 is renamed to C3 with slots and a weekly rule booked before and after the rename
+    private List<SlotKey> journalARename(boolean compactAfterRename) {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        manager.openJournal(directory.toString());
+        ScheduleSlot monday = slot("2024-03-04", "09:00", "10:00", a1);
+        manager.bookScheduleSlot(monday);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", b2));
+        List<ScheduleSlot> series = manager.bookRepetitiveScheduleSlot(new RepetitiveScheduleMapper.Builder()
+                .setStartTime("14:00")
+                .setEndTime("15:00")
+                .setRecurrencePeriod(7)
+                .setRecurrenceIntervalStart(parseDate("2024-03-04"))
+                .setRecurrenceIntervalEnd(parseDate("2024-04-29"))
+                .setLocation(a1)
+                .build());
+
+        manager.updateRoom("A1", c3);
+        if (compactAfterRename)
+            manager.compactJournal();
+
+        // changes made under the new name, to slots booked under the old one
+        manager.moveScheduleSlot(manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "C3"), "2024-03-05", "11:00", "12:00", c3);
+        manager.deleteScheduleSlot(manager.getScheduleSlot("2024-03-11", "14:00", "15:00", "C3"));
+        manager.bookScheduleSlot(slot("2024-03-06", "08:00", "09:00", c3));
+        assertEquals(series.size() + 2, keys(manager).size());
+
+        List<SlotKey> expected = keys(manager);
+        manager.closeJournal();
+        return expected;
+    }
+
+    @Test
+    void renameIsPublishedOnceInsteadOfEverySlotAgain() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1));
+        List<String> heard = new ArrayList<>();
+        manager.addMutationListener(new ScheduleMutationListener() {
+            @Override
+            public void onBooked(List<SlotKey> slots) {
+                heard.add("booked");
+            }
+
+            @Override
+            public void onDeleted(List<SlotKey> slots) {
+                heard.add("deleted");
+            }
+
+            @Override
+            public void onMoved(SlotKey from, SlotKey to) {
+                heard.add("moved");
+            }
+
+            @Override
+            public void onRoomRenamed(String roomName, String newName) {
+                heard.add("renamed " + roomName + " " + newName);
+            }
+
+            @Override
+            public void onRoomUpdated(String roomName, RoomProperties properties) {
+                heard.add("updated " + roomName + " " + properties.getName());
+            }
+
+            @Override
+            public void onRoomDeleted(String roomName) {
+            }
+
+            @Override
+            public void onArchived(long untilDay) {
+            }
+        });
+
+        manager.updateRoom("A1", c3);
+
+        assertEquals(List.of("renamed A1 C3", "updated A1 C3"), heard);
+    }
+
+    @Test
+    void slotsKeepTheirInstancesThroughARenameAndAnUpdate() {
+        ScheduleSlotsManager manager = manager(a1);
+        ScheduleSlot booked = slot("2024-03-04", "09:00", "10:00", a1);
+        manager.bookScheduleSlot(booked);
+
+        manager.updateRoom("A1", c3);
+        assertSame(booked, manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "C3"));
+        assertSame(c3, booked.getLocation());
+
+        RoomProperties biggerC3 = room("C3", 120, 10, true);
+        manager.updateRoom("C3", biggerC3);
+        assertSame(booked, manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "C3"));
+        assertSame(biggerC3, booked.getLocation());
+
+        // the instance the caller holds still works for the other slot operations
+        manager.moveScheduleSlot(booked, "2024-03-05", "09:00", "10:00", biggerC3);
+        assertEquals(List.of(booked), manager.deleteScheduleSlot(booked));
+        assertTrue(keys(manager).isEmpty());
+    }
+
+    @Test
+    void roomLoadedUnderItsNewNameGetsTheSlotsBookedUnderTheOldOne() {
+        List<SlotKey> expected = journalARename(false);
+
+        ScheduleSlotsManager restarted = manager(room("B2"), room("C3"));
+        assertEquals(expected.size(), restarted.openJournal(directory.toString()));
+        assertEquals(expected, keys(restarted));
+        assertFalse(restarted.isAvailable("2024-03-18", "14:30", "15:30", "C3"));
+        assertTrue(restarted.isAvailable("2024-03-11", "14:30", "15:30", "C3"));
+        restarted.closeJournal();
+    }
+
+    @Test
+    void roomLoadedUnderItsOldNameGetsTheSlotsBookedUnderTheNewOne() {
+        List<SlotKey> expected = inRoom(journalARename(false), "C3", "A1");
+
+        ScheduleSlotsManager restarted = manager(room("A1"), room("B2"));
+        restarted.openJournal(directory.toString());
+        assertEquals(expected, keys(restarted));
+        assertFalse(restarted.isAvailable("2024-03-18", "14:30", "15:30", "A1"));
+        restarted.closeJournal();
+    }
+
+    @Test
+    void compactedRenameIsReplayedForEitherName() {
+        List<SlotKey> expected = journalARename(true);
+
+        ScheduleSlotsManager underNewName = manager(room("B2"), room("C3"));
+        underNewName.openJournal(directory.toString());
+        assertEquals(expected, keys(underNewName));
+        underNewName.closeJournal();
+
+        ScheduleSlotsManager underOldName = manager(room("A1"), room("B2"));
+        underOldName.openJournal(directory.toString());
+        assertEquals(inRoom(expected, "C3", "A1"), keys(underOldName));
+        underOldName.closeJournal();
+    }
+
+    @Test
+    void newRoomUnderAnOldNameKeepsItsOwnSlots() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.openJournal(directory.toString());
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1));
+        manager.updateRoom("A1", c3);
+        RoomProperties newA1 = room("A1");
+        manager.addRoom(newA1);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", newA1));
+        manager.updateRoom("C3", room("B2"));
+        List<SlotKey> expected = keys(manager);
+        manager.closeJournal();
+
+        ScheduleSlotsManager restarted = manager(room("A1"), room("B2"));
+        restarted.openJournal(directory.toString());
+        assertEquals(expected, keys(restarted));
+        assertNotNull(restarted.getScheduleSlot("2024-03-04", "09:00", "10:00", "A1"));
+        assertNotNull(restarted.getScheduleSlot("2024-03-04", "09:00", "10:00", "B2"));
+        restarted.closeJournal();
+    }
+
+    @Test
+    void deletedRoomDoesNotFollowTheRenamesOfItsSuccessor() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.openJournal(directory.toString());
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1));
+        manager.deleteRoom("A1");
+        RoomProperties newA1 = room("A1");
+        manager.addRoom(newA1);
+        manager.bookScheduleSlot(slot("2024-03-05", "09:00", "10:00", newA1));
+        manager.updateRoom("A1", c3);
+        List<SlotKey> expected = keys(manager);
+        manager.closeJournal();
+
+        ScheduleSlotsManager restarted = manager(room("A1"), room("C3"));
+        restarted.openJournal(directory.toString());
+        assertEquals(expected, keys(restarted));
+        assertFalse(restarted.hasRoom("A1"));
+        restarted.closeJournal();
+    }
+}
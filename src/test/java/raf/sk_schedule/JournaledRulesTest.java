@@ -0,0 +1,120 @@
+package raf.sk_schedule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.journal.ScheduleMutationListener;
+import raf.sk_schedule.journal.WriteAheadLog;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class JournaledRulesTest {
+
+    @TempDir
+    Path directory;
+
+    private final RoomProperties a1 = room("A1");
+
+    private List<ScheduleSlot> bookWeekly(ScheduleSlotsManager manager, RoomProperties room) {
+        return manager.bookRepetitiveScheduleSlot(new RepetitiveScheduleMapper.Builder()
+                .setStartTime("14:00")
+                .setEndTime("15:00")
+                .setRecurrencePeriod(7)
+                .setRecurrenceIntervalStart(parseDate("2024-03-04"))
+                .setRecurrenceIntervalEnd(parseDate("2024-06-24"))
+                .setLocation(room)
+                .build());
+    }
+
+    private static List<SlotKey> keys(ScheduleSlotsManager manager) {
+        return manager.getSchedule((Object) null, null).stream().map(SlotKey::of).collect(Collectors.toList());
+    }
+
+    @Test
+    void aSeriesIsOneLogRecord() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.openJournal(directory.toString());
+        List<ScheduleSlot> series = bookWeekly(manager, a1);
+        manager.closeJournal();
+
+        List<String> records = new ArrayList<>();
+        WriteAheadLog.replay(WriteAheadLog.pathOf(directory, 0), new ScheduleMutationListener() {
+            @Override
+            public void onRuleBooked(RecurrenceRule rule) {
+                records.add("rule of " + rule.size());
+            }
+
+            @Override
+            public void onBooked(List<SlotKey> slots) {
+                records.add("book " + slots.size());
+            }
+
+            @Override
+            public void onDeleted(List<SlotKey> slots) {
+            }
+
+            @Override
+            public void onMoved(SlotKey from, SlotKey to) {
+            }
+
+            @Override
+            public void onRoomDeleted(String roomName) {
+            }
+
+            @Override
+            public void onArchived(long untilDay) {
+            }
+        });
+
+        assertEquals(List.of("rule of " + series.size()), records);
+    }
+
+    @Test
+    void restartRestoresTheRuleWithItsExceptions() {
+        RoomProperties b2 = room("B2");
+        ScheduleSlotsManager manager = manager(a1, b2);
+        manager.openJournal(directory.toString());
+        List<ScheduleSlot> series = bookWeekly(manager, a1);
+        manager.deleteScheduleSlots(List.of(series.get(1), series.get(3)));
+        manager.moveScheduleSlot(series.get(5), "2024-04-10", "09:00", "10:00", b2);
+        List<SlotKey> expected = keys(manager);
+        manager.closeJournal();
+
+        ScheduleSlotsManager restarted = manager(room("A1"), room("B2"));
+        assertEquals(expected.size(), restarted.openJournal(directory.toString()));
+        assertEquals(expected, keys(restarted));
+
+        // the restored rule still guards its remaining occurrences, and the cancelled ones are free again
+        assertFalse(restarted.isAvailable("2024-03-04", "14:30", "15:30", "A1"));
+        assertTrue(restarted.isAvailable("2024-03-11", "14:30", "15:30", "A1"));
+        restarted.closeJournal();
+    }
+
+    @Test
+    void compactedSnapshotKeepsTheRule() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.openJournal(directory.toString());
+        List<ScheduleSlot> series = bookWeekly(manager, a1);
+        manager.deleteScheduleSlot(series.get(0));
+        manager.compactJournal();
+        manager.deleteScheduleSlot(series.get(2));
+        List<SlotKey> expected = keys(manager);
+        manager.closeJournal();
+
+        ScheduleSlotsManager restarted = manager(room("A1"));
+        restarted.openJournal(directory.toString());
+        assertEquals(expected, keys(restarted));
+        restarted.closeJournal();
+    }
+}
@@ -0,0 +1,115 @@
+package raf.sk_schedule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.importer.ChunkedScheduleImporter;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.journal.ScheduleMutationListener;
+import raf.sk_schedule.model.location_node.RoomProperties;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+
+class MutationListenerTest {
+
+    @TempDir
+    Path directory;
+
+    private final RoomProperties a1 = room("A1");
+
+    @Test
+    void aFailingListenerDoesNotHideTheChangeFromTheOthers() {
+        ScheduleSlotsManager manager = manager(a1);
+        Recorder recorder = new Recorder();
+        IllegalStateException failure = new IllegalStateException("disk full");
+        manager.addMutationListener(new Failing(failure));
+        manager.addMutationListener(recorder);
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> manager.bookScheduleSlot(slot("2024-03-04", "10:00", "12:00", a1)));
+
+        assertSame(failure, thrown);
+        assertEquals(1, recorder.booked.size());
+        assertEquals(1, manager.getSchedule((Object) null, null).size());
+    }
+
+    @Test
+    void laterFailuresAreSuppressedIntoTheFirst() {
+        ScheduleSlotsManager manager = manager(a1);
+        IllegalStateException first = new IllegalStateException("first");
+        IllegalStateException second = new IllegalStateException("second");
+        manager.addMutationListener(new Failing(first));
+        manager.addMutationListener(new Failing(second));
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> manager.bookScheduleSlot(slot("2024-03-04", "10:00", "12:00", a1)));
+
+        assertSame(first, thrown);
+        assertArrayEquals(new Throwable[]{second}, thrown.getSuppressed());
+    }
+
+    @Test
+    void importOverSeveralChunksPublishesEverySlotOnce() throws IOException {
+        List<String> rows = new ArrayList<>();
+        LocalDate day = LocalDate.of(2024, 3, 4);
+        for (int row = 0; row <= ChunkedScheduleImporter.CHUNK_SIZE; row++)
+            rows.add(day.plusDays(row / 10) + "," + String.format("%02d:00,%02d:00", 8 + row % 10, 9 + row % 10) + ",A1");
+        Path file = Files.write(directory.resolve("schedule.csv"), rows);
+
+        ScheduleSlotsManager manager = manager(a1);
+        Recorder recorder = new Recorder();
+        manager.addMutationListener(recorder);
+
+        assertEquals(rows.size(), manager.importScheduleCSVChunked(file.toString()).getAccepted().size());
+        assertEquals(rows.size(), recorder.booked.size());
+        assertEquals(rows.size(), new HashSet<>(recorder.booked).size());
+    }
+
+    private static class Recorder implements ScheduleMutationListener {
+
+        final List<SlotKey> booked = new ArrayList<>();
+
+        @Override
+        public void onBooked(List<SlotKey> slots) {
+            booked.addAll(slots);
+        }
+
+        @Override
+        public void onDeleted(List<SlotKey> slots) {
+        }
+
+        @Override
+        public void onMoved(SlotKey from, SlotKey to) {
+        }
+
+        @Override
+        public void onRoomDeleted(String roomName) {
+        }
+
+        @Override
+        public void onArchived(long untilDay) {
+        }
+    }
+
+    private static class Failing extends Recorder {
+
+        private final RuntimeException failure;
+
+        Failing(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void onBooked(List<SlotKey> slots) {
+            throw failure;
+        }
+    }
+}
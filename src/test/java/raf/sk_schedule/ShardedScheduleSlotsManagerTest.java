@@ -0,0 +1,198 @@
+package raf.sk_schedule;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+
+class ShardedScheduleSlotsManagerTest {
+
+    // with two shards "A" (hash 65) and "B" (hash 66) belong to different shards
+    private final RoomProperties a = room("A");
+    private final RoomProperties b = room("B");
+
+    private static Sharded manager(RoomProperties... rooms) {
+        Sharded manager = new Sharded();
+        manager.accept(WeekDay.values());
+        for (RoomProperties room : rooms)
+            manager.addRoom(room);
+        return manager;
+    }
+
+    @Test
+    void roomRenamedIntoAnotherShardKeepsItsSlots() {
+        Sharded manager = manager(a);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a));
+
+        manager.updateRoom("A", b);
+
+        assertTrue(manager.hasRoom("B"));
+        assertFalse(manager.hasRoom("A"));
+        assertSame(b, manager.getRoomByName("B"));
+        assertNotNull(manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "B"));
+        assertFalse(manager.isAvailable("2024-03-04", "09:30", "10:30", "B"));
+        assertThrows(ScheduleException.class, () -> manager.bookScheduleSlot(slot("2024-03-04", "09:30", "10:30", b)));
+
+        // the old name is free again and lives in a shard of its own
+        RoomProperties newA = room("A");
+        manager.addRoom(newA);
+        assertTrue(manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", newA)));
+        assertEquals(2, manager.getSchedule((Object) null, null).size());
+    }
+
+    @Test
+    void renameOntoARoomOfAnotherShardIsRejected() {
+        Sharded manager = manager(a, b);
+
+        assertThrows(ScheduleException.class, () -> manager.updateRoom("A", room("B")));
+        assertThrows(ScheduleException.class, () -> manager.updateRoom("C", room("D")));
+        assertSame(a, manager.getRoomByName("A"));
+        assertSame(b, manager.getRoomByName("B"));
+    }
+
+    @Test
+    void renamedRoomCanBeRenamedBackAndDeleted() {
+        Sharded manager = manager(a);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a));
+
+        manager.updateRoom("A", b);
+        RoomProperties backToA = room("A");
+        manager.updateRoom("B", backToA);
+        assertNotNull(manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "A"));
+
+        assertTrue(manager.deleteRoom("A"));
+        assertFalse(manager.hasRoom("A"));
+        assertTrue(manager.getSchedule((Object) null, null).isEmpty());
+    }
+
+    @Test
+    void failedMoveBetweenShardsLeavesTheSlotInPlace() {
+        Sharded manager = manager(a, b);
+        ScheduleSlot booked = slot("2024-03-04", "09:00", "10:00", a);
+        manager.bookScheduleSlot(booked);
+        manager.accept(WeekDay.MONDAY);
+
+        // 2024-03-05 is a tuesday, the target shard refuses it before the slot leaves its own shard
+        assertThrows(ScheduleException.class, () -> manager.moveScheduleSlot(booked, "2024-03-05", "09:00", "10:00", b));
+
+        assertSame(booked, manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "A"));
+        assertTrue(manager.isAvailable("2024-03-05", "09:00", "10:00", "B"));
+
+        // neither the old monday nor the new tuesday is acceptable any more, the slot still stays where it is
+        manager.accept(WeekDay.WEDNESDAY);
+        assertThrows(ScheduleException.class, () -> manager.moveScheduleSlot(booked, "2024-03-05", "09:00", "10:00", b));
+        assertSame(booked, manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "A"));
+    }
+
+    @Test
+    void moveBetweenShardsAndABookingOfTheSameWindowNeverBothWin() throws Exception {
+        Sharded manager = manager(a, b);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int day = 1; day <= 28; day++) {
+                String date = String.format("2024-02-%02d", day);
+                ScheduleSlot booked = slot(date, "09:00", "10:00", a);
+                manager.bookScheduleSlot(booked);
+
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> move = executor.submit(() -> {
+                    start.await();
+                    try {
+                        manager.moveScheduleSlot(booked, date, "09:00", "10:00", b);
+                    } catch (ScheduleException collided) {
+                    }
+                    return null;
+                });
+                Future<?> booking = executor.submit(() -> {
+                    start.await();
+                    try {
+                        manager.bookScheduleSlot(slot(date, "09:30", "10:30", b));
+                    } catch (ScheduleException collided) {
+                    }
+                    return null;
+                });
+                start.countDown();
+                move.get();
+                booking.get();
+
+                // one of them got the window, a slot that was not moved is still in its old room
+                boolean moved = manager.getScheduleSlot(date, "09:00", "10:00", "B") != null;
+                assertNotEquals(moved, manager.getScheduleSlot(date, "09:30", "10:30", "B") != null, date);
+                assertNotEquals(moved, manager.getScheduleSlot(date, "09:00", "10:00", "A") != null, date);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shardsNeverSeeAHalfChangedConfiguration() throws Exception {
+        Sharded manager = manager(a, b);
+        List<WeekDay> everyDay = Arrays.asList(WeekDay.values());
+        List<WeekDay> weekDays = Arrays.asList(WeekDay.MONDAY, WeekDay.TUESDAY, WeekDay.WEDNESDAY, WeekDay.THURSDAY, WeekDay.FRIDAY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        AtomicBoolean booking = new AtomicBoolean(true);
+        try {
+            // the configuration keeps changing, monday stays acceptable in every version of it
+            Future<?> reconfiguring = executor.submit(() -> {
+                for (int i = 0; booking.get(); i++)
+                    manager.replaceDays(i % 2 == 0 ? everyDay : weekDays);
+            });
+
+            List<Future<Integer>> bookings = new ArrayList<>();
+            for (RoomProperties room : new RoomProperties[]{a, b}) {
+                bookings.add(executor.submit(() -> {
+                    int booked = 0;
+                    // one minute slots with a minute between them, spread over the mondays of a year
+                    for (int week = 0; week < 52; week++) {
+                        String date = String.format("%tF", new GregorianCalendar(2024, Calendar.JANUARY, 1 + 7 * week));
+                        for (int minute = 480; minute < 720; minute += 2) {
+                            if (manager.bookScheduleSlot(slot(date, formatMinute(minute), formatMinute(minute + 1), room)))
+                                booked++;
+                        }
+                    }
+                    return booked;
+                }));
+            }
+
+            for (Future<Integer> booked : bookings)
+                assertEquals(52 * 120, booked.get(60, TimeUnit.SECONDS));
+            booking.set(false);
+            reconfiguring.get(60, TimeUnit.SECONDS);
+        } finally {
+            booking.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Sharded manager whose configuration the tests change, the api keeps it in protected fields.
+     */
+    private static class Sharded extends ShardedScheduleSlotsManager {
+
+        Sharded() {
+            super(2);
+        }
+
+        void accept(WeekDay... days) {
+            replaceDays(Arrays.asList(days));
+        }
+
+        // the list is replaced, never changed in place, so copying it while it is replaced is safe
+        void replaceDays(List<WeekDay> days) {
+            acceptableDays = new ArrayList<>(days);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package raf.sk_schedule;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class SlotLookupTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B2");
+
+    @Test
+    void exactLookupMatchesAllFourProperties() {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        ScheduleSlot booked = slot("2024-03-04", "10:00", "11:00", a1);
+        manager.bookScheduleSlot(booked);
+
+        assertSame(booked, manager.getScheduleSlot("2024-03-04", "10:00", "11:00", "A1"));
+        assertSame(booked, manager.getScheduleSlot(parseDate("2024-03-04"), "10:00", "11:00", "A1"));
+        assertNull(manager.getScheduleSlot("2024-03-04", "10:00", "11:30", "A1"));
+        assertNull(manager.getScheduleSlot("2024-03-04", "10:00", "11:00", "B2"));
+        assertNull(manager.getScheduleSlot("2024-03-05", "10:00", "11:00", "A1"));
+        assertThrows(ScheduleException.class, () -> manager.getScheduleSlot("2024-03-04", "10:00", "11:00", "C3"));
+    }
+
+    @Test
+    void seriesOccurrencesAreValuesTheSlotOperationsAccept() {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        List<ScheduleSlot> series = manager.bookRepetitiveScheduleSlot(new RepetitiveScheduleMapper.Builder()
+                .setStartTime("14:00")
+                .setEndTime("15:00")
+                .setRecurrencePeriod(7)
+                .setRecurrenceIntervalStart(parseDate("2024-03-04"))
+                .setRecurrenceIntervalEnd(parseDate("2024-03-25"))
+                .setLocation(a1)
+                .build());
+        assertEquals(4, series.size());
+
+        // a read builds its own occurrence, equal to the booked one
+        ScheduleSlot read = manager.getScheduleSlot("2024-03-11", "14:00", "15:00", "A1");
+        assertEquals(series.get(1), read);
+        assertEquals(series, manager.getSchedule((Object) null, null));
+
+        // the booked instances and the read ones both work for moves and deletes
+        manager.moveScheduleSlot(series.get(0), "2024-03-05", "14:00", "15:00", b2);
+        assertEquals(List.of(read), manager.deleteScheduleSlot(read));
+        assertEquals(List.of(series.get(2)), manager.deleteScheduleSlot(series.get(2)));
+        assertEquals(List.of(slot("2024-03-05", "14:00", "15:00", b2), series.get(3)), manager.getSchedule((Object) null, null));
+    }
+
+    @Test
+    void bulkDeleteSkipsWhatIsNotBooked() {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        List<ScheduleSlot> booked = new ArrayList<>();
+        for (int day = 4; day <= 8; day++) {
+            for (RoomProperties room : List.of(a1, b2)) {
+                ScheduleSlot slot = slot("2024-03-0" + day, "09:00", "10:00", room);
+                manager.bookScheduleSlot(slot);
+                booked.add(slot);
+            }
+        }
+
+        List<ScheduleSlot> toDelete = new ArrayList<>(booked.subList(0, 6));
+        toDelete.add(slot("2024-03-09", "09:00", "10:00", a1));
+
+        List<ScheduleSlot> deleted = manager.deleteScheduleSlots(toDelete);
+
+        assertEquals(booked.subList(0, 6), deleted);
+        assertEquals(booked.subList(6, 10), manager.getWholeSchedule());
+        assertNull(manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "A1"));
+        assertTrue(manager.isAvailable("2024-03-04", "09:00", "10:00", "A1"));
+        assertTrue(manager.deleteScheduleSlots(booked.subList(0, 6)).isEmpty());
+    }
+
+    @Test
+    void singleDeleteOfAMissingSlotFails() {
+        ScheduleSlotsManager manager = manager(a1);
+        assertThrows(ScheduleException.class, () -> manager.deleteScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1)));
+    }
+}
@@ -0,0 +1,55 @@
+package raf.sk_schedule;
+
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.Arrays;
+
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+/**
+ * Rooms and slots for the tests, dates in the yyyy-MM-dd form of the schedule model.
+ */
+public final class TestSlots {
+
+    private TestSlots() {
+    }
+
+    /**
+     * Empty manager that accepts every week day, with the given rooms added.
+     */
+    public static ScheduleSlotsManager manager(RoomProperties... rooms) {
+        ScheduleSlotsManager manager = new ScheduleSlotsManager() {
+            {
+                acceptableDays.clear();
+                acceptableDays.addAll(Arrays.asList(WeekDay.values()));
+            }
+        };
+        for (RoomProperties room : rooms)
+            manager.addRoom(room);
+        return manager;
+    }
+
+    public static RoomProperties room(String name) {
+        return room(name, 30, 0, false);
+    }
+
+    public static RoomProperties room(String name, int capacity, int computers, boolean projector) {
+        return new RoomProperties.Builder()
+                .setName(name)
+                .setCapacity(capacity)
+                .setHasComputers(computers)
+                .setHasProjector(projector)
+                .build();
+    }
+
+    public static ScheduleSlot slot(String date, String startTime, String endTime, RoomProperties room) {
+        return new ScheduleSlot.Builder()
+                .setDate(parseDate(date))
+                .setStartTime(startTime)
+                .setEndTime(endTime)
+                .setLocation(room)
+                .build();
+    }
+}
@@ -0,0 +1,127 @@
+package raf.sk_schedule.concurrent;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.metrics.ScheduleMetricsListener;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+import static raf.sk_schedule.index.SlotTimes.minuteOfDay;
+
+class ConcurrentBookingTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 4000;
+    // windows start every 30 minutes and last 50, so neighbours overlap and no two windows just touch
+    private static final int STEP = 30;
+    private static final int LENGTH = 50;
+    private static final int WINDOWS = 22;
+    private static final String[] DATES = {"2024-03-04", "2024-03-05"};
+
+    private final RoomProperties[] rooms = {room("R0"), room("R1"), room("R2")};
+
+    @Test
+    void concurrentBookDeleteAndAvailabilityKeepTheIndexConsistent() throws Exception {
+        ScheduleSlotsManager manager = manager(rooms);
+        AtomicLong scans = new AtomicLong();
+        AtomicLong scanningCalls = new AtomicLong();
+        manager.setMetricsListener(new ScheduleMetricsListener() {
+            @Override
+            public void onCollisionScan(int slotsScanned, int collisionsFound) {
+                scans.incrementAndGet();
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<ScheduleSlot>>> results = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            results.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                // every thread deletes only what it booked itself
+                List<ScheduleSlot> booked = new ArrayList<>();
+                start.await();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    int operation = random.nextInt(10);
+                    if (operation < 4) {
+                        ScheduleSlot slot = window(random);
+                        try {
+                            scanningCalls.incrementAndGet();
+                            if (manager.bookScheduleSlot(slot))
+                                booked.add(slot);
+                        } catch (ScheduleException collision) {
+                            // someone else holds an overlapping window
+                        }
+                    } else if (operation < 7 && !booked.isEmpty()) {
+                        ScheduleSlot slot = booked.remove(random.nextInt(booked.size()));
+                        assertEquals(1, manager.deleteScheduleSlot(slot).size());
+                    } else if (operation < 9) {
+                        ScheduleSlot slot = window(random);
+                        manager.isAvailable(slot.getDate(), slot.getStartTime(), slot.getEndTime(), slot.getLocation().getName());
+                    } else {
+                        scanningCalls.incrementAndGet();
+                        manager.isScheduleSlotAvailable(window(random));
+                    }
+                }
+                return booked;
+            }));
+        }
+        start.countDown();
+
+        Set<ScheduleSlot> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<List<ScheduleSlot>> result : results)
+            expected.addAll(result.get(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        List<ScheduleSlot> schedule = manager.getWholeSchedule();
+        assertEquals(expected.size(), schedule.size());
+        assertTrue(expected.containsAll(schedule));
+        assertNoOverlaps(schedule);
+
+        // every window is free exactly when no booked slot overlaps it, through the bitmaps and through the index
+        for (String date : DATES) {
+            for (RoomProperties room : rooms) {
+                for (int w = 0; w < WINDOWS; w++) {
+                    ScheduleSlot probe = window(date, room, w);
+                    boolean free = schedule.stream().noneMatch(slot -> overlaps(slot, probe));
+                    assertEquals(free, manager.isAvailable(date, probe.getStartTime(), probe.getEndTime(), room.getName()), probe::toString);
+                    assertEquals(free, manager.isScheduleSlotAvailable(probe).isEmpty(), probe::toString);
+                }
+            }
+        }
+
+        // a collision check reports its scan once, however it raced with writers
+        assertTrue(scans.get() <= scanningCalls.get(), scans + " scans for " + scanningCalls + " checks");
+    }
+
+    private ScheduleSlot window(Random random) {
+        return window(DATES[random.nextInt(DATES.length)], rooms[random.nextInt(rooms.length)], random.nextInt(WINDOWS));
+    }
+
+    private static ScheduleSlot window(String date, RoomProperties room, int index) {
+        int start = minuteOfDay("08:00") + index * STEP;
+        return slot(date, formatMinute(start), formatMinute(start + LENGTH), room);
+    }
+
+    private static boolean overlaps(ScheduleSlot a, ScheduleSlot b) {
+        return a.getLocation().getName().equals(b.getLocation().getName())
+                && a.getDate().equals(b.getDate())
+                && minuteOfDay(a.getStartTime()) < minuteOfDay(b.getEndTime())
+                && minuteOfDay(b.getStartTime()) < minuteOfDay(a.getEndTime());
+    }
+
+    private static void assertNoOverlaps(List<ScheduleSlot> schedule) {
+        for (int i = 0; i < schedule.size(); i++)
+            for (int j = i + 1; j < schedule.size(); j++)
+                assertFalse(overlaps(schedule.get(i), schedule.get(j)), schedule.get(i) + " / " + schedule.get(j));
+    }
+}
@@ -0,0 +1,134 @@
+package raf.sk_schedule.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+class ChangeFeedBaselineTest {
+
+    @TempDir
+    Path directory;
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B2");
+
+    @Test
+    void baselineNeedsTheChangeLog() {
+        ScheduleSlotsManager manager = manager(a1);
+
+        assertThrows(ScheduleException.class, () -> manager.exportChangeFeedBaselineCSV(directory.resolve("base.csv").toString()));
+    }
+
+    @Test
+    void baselineReturnsTheVersionItsExportEndsAt() throws IOException {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.bookScheduleSlot(slot("2024-03-04", "10:00", "11:00", a1));
+        manager.enableChangeLog(100);
+        manager.bookScheduleSlot(slot("2024-03-05", "10:00", "11:00", a1));
+
+        Path baseline = directory.resolve("base.csv");
+        long version = manager.exportChangeFeedBaselineCSV(baseline.toString());
+
+        assertEquals(manager.getChangeVersion(), version);
+        assertEquals(3, Files.readAllLines(baseline).size());
+
+        manager.bookScheduleSlot(slot("2024-03-06", "10:00", "11:00", a1));
+        Path feed = directory.resolve("feed.csv");
+        manager.exportChangesCSV(feed.toString(), version);
+        List<String> lines = Files.readAllLines(feed);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).contains("BOOKED"), lines.get(1));
+    }
+
+    @Test
+    void jsonBaselineHasEverySlot() throws IOException {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.enableChangeLog(100);
+        manager.bookScheduleSlot(slot("2024-03-04", "10:00", "11:00", a1));
+
+        Path baseline = directory.resolve("base.json");
+        assertEquals(manager.getChangeVersion(), manager.exportChangeFeedBaselineJSON(baseline.toString()));
+        assertTrue(new String(Files.readAllBytes(baseline)).contains("2024-03-04"));
+    }
+
+    @Test
+    void baselinePlusChangesRebuildTheScheduleWhileItKeepsChanging() throws Exception {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        manager.enableChangeLog(1_000_000);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(7);
+            List<ScheduleSlot> booked = new ArrayList<>();
+            try {
+                while (running.get()) {
+                    if (!booked.isEmpty() && random.nextInt(3) == 0) {
+                        manager.deleteScheduleSlot(booked.remove(random.nextInt(booked.size())));
+                        continue;
+                    }
+                    int start = 8 * 60 + 60 * random.nextInt(10);
+                    ScheduleSlot slot = slot("2024-03-" + (10 + random.nextInt(10)), formatMinute(start), formatMinute(start + 50),
+                            random.nextBoolean() ? a1 : b2);
+                    try {
+                        manager.bookScheduleSlot(slot);
+                        booked.add(slot);
+                    } catch (ScheduleException e) {
+                        // the window is taken
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        Path baseline = directory.resolve("base.csv");
+        long version = -1;
+        for (int i = 0; i < 20; i++)
+            version = manager.exportChangeFeedBaselineCSV(baseline.toString());
+
+        running.set(false);
+        writer.join();
+        assertNull(failure.get());
+
+        Path feed = directory.resolve("feed.csv");
+        manager.exportChangesCSV(feed.toString(), version);
+
+        Set<String> rebuilt = new HashSet<>();
+        List<String> rows = Files.readAllLines(baseline);
+        for (String row : rows.subList(1, rows.size()))
+            assertTrue(rebuilt.add(row));
+        List<String> changes = Files.readAllLines(feed);
+        for (String change : changes.subList(1, changes.size())) {
+            String[] columns = change.split(",", -1);
+            String slot = String.join(",", Arrays.asList(columns).subList(2, 6));
+            if (columns[1].equals("BOOKED"))
+                assertTrue(rebuilt.add(slot), "booked twice: " + slot);
+            else if (columns[1].equals("DELETED"))
+                assertTrue(rebuilt.remove(slot), "deleted but never booked: " + slot);
+            else
+                fail("unexpected change: " + change);
+        }
+
+        Set<String> expected = new HashSet<>();
+        for (ScheduleSlot slot : manager.getSchedule((Object) null, null))
+            expected.add(formatDate(slot.getDate()) + "," + slot.getStartTime() + "," + slot.getEndTime() + "," + slot.getLocation().getName());
+        assertEquals(expected, rebuilt);
+    }
+}
@@ -0,0 +1,80 @@
+package raf.sk_schedule.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+
+class StreamingScheduleExporterTest {
+
+    @TempDir
+    Path directory;
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties quoted = room("Hall \"B\", east");
+
+    @Test
+    void csvHasAHeaderAndOneRowPerSlotInIterationOrder() throws IOException {
+        Path file = directory.resolve("out/schedule.csv");
+        int rows = StreamingScheduleExporter.exportCSV(file.toString(),
+                List.of(slot("2024-03-04", "08:00", "09:30", a1), slot("2024-03-05", "10:00", "11:00", quoted)), null);
+
+        assertEquals(2, rows);
+        assertEquals(List.of(
+                "date,startTime,endTime,location",
+                "2024-03-04,08:00,09:30,A1",
+                "2024-03-05,10:00,11:00,\"Hall \"\"B\"\", east\""), Files.readAllLines(file));
+    }
+
+    @Test
+    void jsonIsAnArrayOfEscapedObjects() throws IOException {
+        Path file = directory.resolve("schedule.json");
+        int rows = StreamingScheduleExporter.exportJSON(file.toString(),
+                List.of(slot("2024-03-04", "08:00", "09:30", a1), slot("2024-03-05", "10:00", "11:00", quoted)), null);
+
+        assertEquals(2, rows);
+        assertEquals("[\n"
+                + "  {\"date\": \"2024-03-04\", \"startTime\": \"08:00\", \"endTime\": \"09:30\", \"location\": \"A1\"},\n"
+                + "  {\"date\": \"2024-03-05\", \"startTime\": \"10:00\", \"endTime\": \"11:00\", \"location\": \"Hall \\\"B\\\", east\"}\n"
+                + "]\n", Files.readString(file));
+    }
+
+    @Test
+    void emptyInputStillWritesAValidDocument() throws IOException {
+        Path file = directory.resolve("empty.json");
+        assertEquals(0, StreamingScheduleExporter.exportJSON(file.toString(), List.of(), null));
+        assertEquals("[\n]\n", Files.readString(file));
+    }
+
+    @Test
+    void exportsMoreRowsThanOneChunk() throws IOException {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        for (int i = 0; i < StreamingScheduleExporter.CHUNK_SIZE + 10; i++)
+            slots.add(slot("2024-03-04", "08:00", "09:00", room("R" + i)));
+
+        Path file = directory.resolve("big.csv");
+        assertEquals(slots.size(), StreamingScheduleExporter.exportCSV(file.toString(), slots, null));
+        assertEquals(slots.size() + 1, Files.readAllLines(file).size());
+    }
+
+    @Test
+    void valuesAreEscapedOnlyWhenNeeded() {
+        assertEquals("plain", StreamingScheduleExporter.csvValue("plain"));
+        assertEquals("\"a,b\"", StreamingScheduleExporter.csvValue("a,b"));
+        assertEquals("", StreamingScheduleExporter.csvValue(null));
+
+        StringBuilder json = new StringBuilder();
+        StreamingScheduleExporter.jsonValue("tab\there\\\u0001", json);
+        assertEquals("\"tab\\there\\\\\\u0001\"", json.toString());
+    }
+}
@@ -0,0 +1,170 @@
+package raf.sk_schedule.importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.report.ImportReport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.manager;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+class ChunkedScheduleImporterTest {
+
+    @TempDir
+    Path directory;
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B 2");
+    private final Map<String, RoomProperties> rooms = Map.of(a1.getName(), a1, b2.getName(), b2);
+
+    private Path write(String... lines) throws IOException {
+        return Files.write(directory.resolve("schedule.csv"), List.of(lines));
+    }
+
+    private List<List<ScheduleSlot>> parse(Path file, ImportReport report) {
+        List<List<ScheduleSlot>> chunks = new ArrayList<>();
+        new ChunkedScheduleImporter(rooms).parse(file.toString(), report, chunks::add);
+        return chunks;
+    }
+
+    private static List<String> rows(List<List<ScheduleSlot>> chunks) {
+        return chunks.stream().flatMap(List::stream)
+                .map(slot -> formatDate(slot.getDate()) + " " + slot.getStartTime() + "-" + slot.getEndTime() + " " + slot.getLocation().getName())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void headerLocatesTheColumnsInAnyOrder() throws IOException {
+        Path file = write(
+                "location,date,startTime,endTime",
+                "A1,2024-03-04,08:00,10:00",
+                "\"B 2\",2024-03-05,12:00,13:30");
+
+        ImportReport report = new ImportReport();
+        assertEquals(List.of("2024-03-04 08:00-10:00 A1", "2024-03-05 12:00-13:30 B 2"), rows(parse(file, report)));
+        assertEquals(2, report.getRowsRead());
+    }
+
+    @Test
+    void readsTheStreamingExportHeaderAndHeaderlessFiles() throws IOException {
+        Path exported = write("date,startTime,endTime,location", "2024-03-04,08:00,10:00,A1");
+        assertEquals(List.of("2024-03-04 08:00-10:00 A1"), rows(parse(exported, new ImportReport())));
+
+        Path headerless = write("2024-03-04,08:00,10:00,A1");
+        assertEquals(List.of("2024-03-04 08:00-10:00 A1"), rows(parse(headerless, new ImportReport())));
+    }
+
+    @Test
+    void headerWithoutARoomColumnIsRejected() throws IOException {
+        Path file = write("date,startTime,endTime", "2024-03-04,08:00,10:00");
+        assertThrows(ScheduleException.class, () -> parse(file, new ImportReport()));
+    }
+
+    @Test
+    void unknownColumnsAreRejectedInsteadOfDropped() throws IOException {
+        Path synonyms = write("Room,Date,Start Time,End Time", "A1,2024-03-04,08:00,10:00");
+        assertThrows(ScheduleException.class, () -> parse(synonyms, new ImportReport()));
+
+        Path extraColumn = write("date,startTime,endTime,location,capacity", "2024-03-04,08:00,10:00,A1,30");
+        assertThrows(ScheduleException.class, () -> parse(extraColumn, new ImportReport()));
+
+        ImportReport report = new ImportReport();
+        Path headerless = write("2024-03-04,08:00,10:00,A1,30");
+        assertTrue(rows(parse(headerless, report)).isEmpty());
+        assertEquals(1, report.getMalformedRows().size());
+    }
+
+    @Test
+    void blankLinesAreNotRowsAndBadRowsAreReportedByLine() throws IOException {
+        Path file = write(
+                "date,startTime,endTime,location",
+                "2024-03-04,08:00,10:00,A1",
+                "",
+                "2024-03-04,08:00,10:00,C3",
+                "2024-03-04,8 o'clock,10:00,A1",
+                "   ",
+                "2024-03-04,08:00");
+
+        ImportReport report = new ImportReport();
+        assertEquals(1, rows(parse(file, report)).size());
+        assertEquals(4, report.getRowsRead());
+        assertEquals(3, report.getMalformedRows().size());
+        assertTrue(report.getMalformedRows().get(0).startsWith("line 4:"));
+        assertTrue(report.getMalformedRows().get(1).startsWith("line 5:"));
+        assertTrue(report.getMalformedRows().get(2).startsWith("line 7:"));
+    }
+
+    @Test
+    void chunksArriveInFileOrder() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("date,startTime,endTime,location");
+        int rowCount = ChunkedScheduleImporter.CHUNK_SIZE * 3 + 17;
+        for (int i = 0; i < rowCount; i++)
+            lines.add(String.format("2024-03-%02d,%02d:00,%02d:30,A1", 1 + i % 28, i % 24, i % 24));
+        Path file = Files.write(directory.resolve("big.csv"), lines);
+
+        ImportReport report = new ImportReport();
+        List<List<ScheduleSlot>> chunks = parse(file, report);
+
+        assertEquals(4, chunks.size());
+        assertEquals(rowCount, report.getRowsRead());
+        List<String> parsed = rows(chunks);
+        for (int i = 0; i < rowCount; i += 997)
+            assertEquals(String.format("2024-03-%02d %02d:00-%02d:30 A1", 1 + i % 28, i % 24, i % 24), parsed.get(i));
+    }
+
+    @Test
+    void managerImportAccountsForEveryRow() throws IOException {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        Path file = write(
+                "date,startTime,endTime,location",
+                "2024-03-04,08:00,10:00,A1",
+                "2024-03-04,09:00,11:00,A1",
+                "2024-03-04,09:00,11:00,B 2",
+                "",
+                "2024-03-04,09:00,11:00,nowhere");
+
+        ImportReport report = manager.importScheduleCSVChunked(file.toString());
+
+        assertEquals(4, report.getRowsRead());
+        assertEquals(2, report.getAccepted().size());
+        assertEquals(1, report.getRejectedByCollision().size());
+        assertEquals(1, report.getMalformedRows().size());
+        assertEquals(report.getRowsRead(), report.getAccepted().size() + report.getRejectedByDay().size()
+                + report.getRejectedByCollision().size() + report.getMalformedRows().size());
+        assertEquals(2, manager.getWholeSchedule().size());
+        assertEquals(0, manager.importScheduleCSVChunked(file.toString()).getAccepted().size());
+    }
+
+    @Test
+    void loadGoesThroughTheScheduleApiParserInChunks() throws IOException {
+        ScheduleSlotsManager manager = manager(a1);
+        List<String> lines = new ArrayList<>();
+        lines.add("date,startTime,endTime,location");
+        int rowCount = ChunkedScheduleImporter.CHUNK_SIZE + 5;
+        for (int i = 0; i < rowCount; i++)
+            lines.add(String.format("2024-03-%02d,%02d:00,%02d:30,A1", 1 + i / 24 % 28, i % 24, i % 24));
+        Path file = Files.write(directory.resolve("api.csv"), lines);
+
+        ImportReport report = manager.importScheduleCSV(file.toString());
+
+        assertEquals(rowCount, report.getRowsRead());
+        assertEquals(report.getRowsRead(), report.getAccepted().size() + report.getRejectedByDay().size()
+                + report.getRejectedByCollision().size());
+        assertEquals(report.getAccepted().size(), manager.getWholeSchedule().size());
+        assertEquals(0, manager.loadScheduleSCV(file.toString()));
+    }
+}
@@ -0,0 +1,97 @@
+package raf.sk_schedule.index;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class ChronologicalSlotStoreTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B2");
+
+    @Test
+    void keysOrderByDayStartEndAndRoom() {
+        SlotKey early = new SlotKey(10, 480, 540, "B2");
+        SlotKey sameStartShorter = new SlotKey(10, 600, 630, "Z9");
+        SlotKey sameStartLonger = new SlotKey(10, 600, 660, "A1");
+        SlotKey sameTimesOtherRoom = new SlotKey(10, 600, 660, "B2");
+        SlotKey nextDay = new SlotKey(11, 0, 30, "A1");
+
+        List<SlotKey> keys = new ArrayList<>(List.of(nextDay, sameTimesOtherRoom, sameStartLonger, early, sameStartShorter));
+        keys.sort(null);
+
+        assertEquals(List.of(early, sameStartShorter, sameStartLonger, sameTimesOtherRoom, nextDay), keys);
+        assertTrue(SlotKey.dayStart(11).compareTo(nextDay) < 0);
+        assertTrue(SlotKey.dayStart(11).compareTo(sameTimesOtherRoom) > 0);
+    }
+
+    @Test
+    void iteratesChronologicallyWhateverTheInsertionOrder() {
+        ChronologicalSlotStore store = new ChronologicalSlotStore();
+        ScheduleSlot third = slot("2024-03-05", "08:00", "09:00", a1);
+        ScheduleSlot first = slot("2024-03-04", "08:00", "09:00", b2);
+        ScheduleSlot second = slot("2024-03-04", "13:00", "14:00", a1);
+        store.add(third);
+        store.add(first);
+        store.add(second);
+
+        assertEquals(List.of(first, second, third), store.toList());
+        assertEquals(epochDay(parseDate("2024-03-04")), store.firstDay());
+        assertEquals(epochDay(parseDate("2024-03-05")), store.lastDay());
+    }
+
+    @Test
+    void rangeBoundsAreInclusiveDays() {
+        ChronologicalSlotStore store = new ChronologicalSlotStore();
+        List<ScheduleSlot> week = new ArrayList<>();
+        for (int day = 4; day <= 10; day++) {
+            ScheduleSlot slot = slot(String.format("2024-03-%02d", day), "10:00", "11:00", a1);
+            week.add(slot);
+            store.add(slot);
+        }
+
+        long monday = epochDay(parseDate("2024-03-04"));
+        assertEquals(week.subList(1, 4), new ArrayList<>(store.range(monday + 1, monday + 3)));
+        assertEquals(3, store.range(monday + 1, monday + 3).size());
+        assertEquals(week.subList(5, 7), new ArrayList<>(store.range(monday + 5, null)));
+        assertEquals(week.subList(0, 2), new ArrayList<>(store.range(null, monday + 1)));
+        assertTrue(store.range(monday + 3, monday + 1).isEmpty());
+    }
+
+    @Test
+    void rejectsASecondSlotWithTheSameKey() {
+        ChronologicalSlotStore store = new ChronologicalSlotStore();
+        ScheduleSlot stored = slot("2024-03-04", "10:00", "11:00", a1);
+        ScheduleSlot twin = slot("2024-03-04", "10:00", "11:00", a1);
+
+        assertTrue(store.add(stored));
+        assertFalse(store.add(twin));
+        assertSame(stored, store.get(SlotKey.of(twin)));
+
+        assertTrue(store.remove(stored));
+        assertTrue(store.isEmpty());
+        assertNull(store.firstDay());
+    }
+
+    @Test
+    void rangeViewKeepsReadingTheVersionItWasTakenFrom() {
+        ChronologicalSlotStore store = new ChronologicalSlotStore();
+        ScheduleSlot kept = slot("2024-03-04", "10:00", "11:00", a1);
+        store.add(kept);
+
+        var view = store.range(null, null);
+        store.add(slot("2024-03-04", "12:00", "13:00", a1));
+        store.remove(kept);
+
+        assertEquals(List.of(kept), new ArrayList<>(view));
+    }
+}
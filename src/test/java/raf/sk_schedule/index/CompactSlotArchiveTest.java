@@ -0,0 +1,133 @@
+package raf.sk_schedule.index;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.query.ScheduleQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class CompactSlotArchiveTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B2");
+    private final RoomProperties c3 = room("C3");
+    private final long monday = epochDay(parseDate("2024-03-04"));
+
+    private static List<String> describe(Iterable<ScheduleSlot> slots) {
+        List<String> described = new ArrayList<>();
+        for (ScheduleSlot slot : slots)
+            described.add(formatDate(slot.getDate()) + " " + slot.getStartTime() + "-" + slot.getEndTime() + " " + slot.getLocation().getName());
+        return described;
+    }
+
+    private CompactSlotArchive archive() {
+        return CompactSlotArchive.empty().append(List.of(
+                slot("2024-03-04", "08:00", "09:00", a1),
+                slot("2024-03-04", "08:00", "09:00", b2),
+                slot("2024-03-05", "10:00", "11:30", c3),
+                slot("2024-03-06", "12:00", "13:00", a1)), monday + 7);
+    }
+
+    @Test
+    void materializesTheArchivedRows() {
+        CompactSlotArchive archive = archive();
+
+        assertEquals(4, archive.size());
+        assertTrue(archive.isArchived(monday + 6));
+        assertFalse(archive.isArchived(monday + 7));
+        assertEquals(List.of("2024-03-05 10:00-11:30 C3", "2024-03-06 12:00-13:00 A1"), describe(archive.range(monday + 1, null)));
+        assertEquals(List.of("2024-03-04 08:00-09:00 A1", "2024-03-06 12:00-13:00 A1"), describe(archive.slotsBetween("A1", null, null)));
+        assertEquals(List.of("2024-03-04 08:00-09:00 B2"), describe(archive.slotsOn("B2", monday)));
+        assertEquals("2024-03-05 10:00-11:30 C3", describe(List.of(archive.get(new SlotKey(monday + 1, 600, 690, "C3")))).get(0));
+        assertNull(archive.get(new SlotKey(monday + 1, 600, 690, "A1")));
+        assertEquals(4 * 12, archive.footprintBytes());
+    }
+
+    @Test
+    void withoutRoomDropsItsRowsAndItsRoomTableEntry() {
+        CompactSlotArchive archive = archive();
+        CompactSlotArchive withoutB2 = archive.withoutRoom("B2");
+
+        assertEquals(3, archive.roomCount());
+        assertEquals(2, withoutB2.roomCount());
+        assertEquals(List.of("2024-03-04 08:00-09:00 A1", "2024-03-05 10:00-11:30 C3", "2024-03-06 12:00-13:00 A1"), describe(withoutB2.range(null, null)));
+        assertTrue(withoutB2.slotsOn("B2", monday).isEmpty());
+        // the ids of the rooms after the removed one moved down, their rows still resolve to them
+        assertEquals(List.of("2024-03-05 10:00-11:30 C3"), describe(withoutB2.slotsOn("C3", monday + 1)));
+        assertSame(withoutB2, withoutB2.withoutRoom("B2"));
+        assertEquals(4, archive.size());
+    }
+
+    @Test
+    void withRoomRenamesTheRows() {
+        RoomProperties renamed = room("A1-new");
+        CompactSlotArchive archive = archive().withRoom("A1", renamed);
+
+        assertTrue(archive.slotsBetween("A1", null, null).isEmpty());
+        assertEquals(List.of("2024-03-04 08:00-09:00 A1-new", "2024-03-06 12:00-13:00 A1-new"), describe(archive.slotsBetween("A1-new", null, null)));
+    }
+
+    @Test
+    void managerReadsArchivedAndLiveSlotsOnceAndRejectsArchivedDays() {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        for (int day = 4; day <= 8; day++)
+            manager.bookScheduleSlot(slot("2024-03-0" + day, "09:00", "10:00", a1));
+
+        assertEquals(3, manager.archiveScheduleBefore("2024-03-07"));
+
+        List<String> schedule = describe(manager.getWholeSchedule());
+        assertEquals(5, schedule.size());
+        assertEquals(schedule.stream().sorted().collect(Collectors.toList()), schedule);
+        assertNotNull(manager.getScheduleSlot("2024-03-05", "09:00", "10:00", "A1"));
+        assertFalse(manager.isAvailable("2024-03-05", "09:30", "10:30", "A1"));
+        assertThrows(ScheduleException.class, () -> manager.bookScheduleSlot(slot("2024-03-05", "12:00", "13:00", a1)));
+
+        // archiving again up to the same day changes nothing
+        assertEquals(0, manager.archiveScheduleBefore("2024-03-07"));
+        assertEquals(5, manager.getWholeSchedule().size());
+
+        manager.deleteRoom("A1");
+        assertTrue(manager.getWholeSchedule().isEmpty());
+    }
+
+    @Test
+    void concurrentReadersNeverSeeASlotTwiceOrMissItWhileArchiving() throws Exception {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        int days = 60;
+        for (int day = 0; day < days; day++) {
+            manager.bookScheduleSlot(slot(formatDate(SlotTimes.dateOfEpochDay(monday + day)), "09:00", "10:00", a1));
+            manager.bookScheduleSlot(slot(formatDate(SlotTimes.dateOfEpochDay(monday + day)), "09:00", "10:00", b2));
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> failures = new CopyOnWriteArrayList<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                int read = manager.getWholeSchedule().size();
+                int roomRead = manager.searchScheduleSlots(new ScheduleQuery.Builder().setLocation("A1").build()).size();
+                if (read != 2 * days || roomRead != days)
+                    failures.add(read + " / " + roomRead);
+            }
+        });
+        reader.start();
+        for (int day = 1; day <= days; day++)
+            manager.archiveScheduleBefore(SlotTimes.dateOfEpochDay(monday + day));
+        done.set(true);
+        reader.join();
+
+        assertEquals(List.of(), failures);
+    }
+}
@@ -0,0 +1,119 @@
+package raf.sk_schedule.index;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.index.OccupancyBitmap.Probe;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.index.SlotTimes.MINUTES_PER_DAY;
+
+class OccupancyBitmapTest {
+
+    @Test
+    void windowsOverlappingABookedSlotAreOccupied() {
+        OccupancyBitmap bitmap = new OccupancyBitmap();
+        bitmap.set(600, 660);
+
+        assertEquals(Probe.OCCUPIED, bitmap.probe(600, 660));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(630, 700));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(500, 601));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(659, 700));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(0, MINUTES_PER_DAY));
+    }
+
+    @Test
+    void touchingWindowsAreLeftUndecided() {
+        OccupancyBitmap bitmap = new OccupancyBitmap();
+        bitmap.set(600, 660);
+
+        assertEquals(Probe.UNDECIDED, bitmap.probe(540, 600));
+        assertEquals(Probe.UNDECIDED, bitmap.probe(660, 720));
+    }
+
+    @Test
+    void windowsWithAGapAreFree() {
+        OccupancyBitmap bitmap = new OccupancyBitmap();
+        bitmap.set(600, 660);
+
+        assertEquals(Probe.FREE, bitmap.probe(540, 599));
+        assertEquals(Probe.FREE, bitmap.probe(661, 720));
+        assertEquals(Probe.FREE, new OccupancyBitmap().probe(0, MINUTES_PER_DAY));
+    }
+
+    @Test
+    void windowsTheBitmapCanNotRepresentAreUndecided() {
+        OccupancyBitmap bitmap = new OccupancyBitmap();
+
+        assertFalse(OccupancyBitmap.fits(600, 600));
+        assertFalse(OccupancyBitmap.fits(660, 600));
+        assertFalse(OccupancyBitmap.fits(-1, 60));
+        assertFalse(OccupancyBitmap.fits(1380, MINUTES_PER_DAY + 1));
+        assertEquals(Probe.UNDECIDED, bitmap.probe(600, 600));
+        assertEquals(Probe.UNDECIDED, bitmap.probe(1380, MINUTES_PER_DAY + 1));
+    }
+
+    @Test
+    void slotsSpanningWordBoundariesAndTheDayEdges() {
+        OccupancyBitmap bitmap = new OccupancyBitmap();
+        // minutes 63 - 128 cross two word boundaries
+        bitmap.set(63, 129);
+        bitmap.set(MINUTES_PER_DAY - 1, MINUTES_PER_DAY + 30);
+        bitmap.set(-30, 1);
+
+        assertEquals(Probe.OCCUPIED, bitmap.probe(128, 129));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(63, 64));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(100, 101));
+        assertEquals(Probe.FREE, bitmap.probe(131, 200));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(MINUTES_PER_DAY - 1, MINUTES_PER_DAY));
+        assertEquals(Probe.OCCUPIED, bitmap.probe(0, 1));
+        assertEquals(Probe.FREE, bitmap.probe(2, 61));
+    }
+
+    @Test
+    void clearFreesEverything() {
+        OccupancyBitmap bitmap = new OccupancyBitmap();
+        bitmap.set(0, MINUTES_PER_DAY);
+        bitmap.clear();
+
+        assertEquals(Probe.FREE, bitmap.probe(0, MINUTES_PER_DAY));
+    }
+
+    @Test
+    void probesMatchAMinuteByMinuteModel() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            OccupancyBitmap bitmap = new OccupancyBitmap();
+            boolean[] booked = new boolean[MINUTES_PER_DAY];
+            for (int slot = 0; slot < 5; slot++) {
+                int start = random.nextInt(MINUTES_PER_DAY - 1);
+                int end = start + 1 + random.nextInt(Math.min(180, MINUTES_PER_DAY - start));
+                bitmap.set(start, end);
+                for (int minute = start; minute < end; minute++)
+                    booked[minute] = true;
+            }
+
+            for (int window = 0; window < 50; window++) {
+                int start = random.nextInt(MINUTES_PER_DAY - 1);
+                int end = start + 1 + random.nextInt(Math.min(240, MINUTES_PER_DAY - start));
+                assertEquals(expected(booked, start, end), bitmap.probe(start, end), "window " + start + "-" + end);
+            }
+        }
+    }
+
+    private static Probe expected(boolean[] booked, int start, int end) {
+        for (int minute = start; minute < end; minute++)
+            if (booked[minute])
+                return Probe.OCCUPIED;
+        boolean touches = (start > 0 && booked[start - 1]) || (end < MINUTES_PER_DAY && booked[end]);
+        return touches ? Probe.UNDECIDED : Probe.FREE;
+    }
+
+    @Test
+    void combinedProbesAreOnlyFreeWhenBothAre() {
+        assertEquals(Probe.FREE, Probe.FREE.and(Probe.FREE));
+        assertEquals(Probe.UNDECIDED, Probe.FREE.and(Probe.UNDECIDED));
+        assertEquals(Probe.OCCUPIED, Probe.UNDECIDED.and(Probe.OCCUPIED));
+        assertEquals(Probe.OCCUPIED, Probe.OCCUPIED.and(Probe.FREE));
+    }
+}
@@ -0,0 +1,149 @@
+package raf.sk_schedule.index;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+import static raf.sk_schedule.index.SlotTimes.dateOfEpochDay;
+import static raf.sk_schedule.index.SlotTimes.formatMinute;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+class PersistentSlotTreeTest {
+
+    private static final long FIRST_DAY = 19_700;
+
+    private final RoomProperties[] rooms = {room("A1"), room("B2"), room("C3")};
+
+    private ScheduleSlot slotAt(long day, int start, RoomProperties room) {
+        return slot(formatDate(dateOfEpochDay(day)), formatMinute(start), formatMinute(start + 30), room);
+    }
+
+    private static PersistentSlotTree with(PersistentSlotTree tree, ScheduleSlot slot) {
+        return tree.with(SlotKey.of(slot), slot);
+    }
+
+    @Test
+    void emptyTreeHasNoDaysAndNoSlots() {
+        PersistentSlotTree empty = PersistentSlotTree.empty();
+
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.size());
+        assertNull(empty.firstDay());
+        assertNull(empty.lastDay());
+        assertFalse(empty.range(null, null).iterator().hasNext());
+        assertSame(empty, empty.without(new SlotKey(FIRST_DAY, 0, 30, "A1")));
+    }
+
+    @Test
+    void olderVersionsStayAsTheyWere() {
+        ScheduleSlot first = slotAt(FIRST_DAY, 480, rooms[0]);
+        ScheduleSlot second = slotAt(FIRST_DAY + 1, 480, rooms[0]);
+        PersistentSlotTree one = with(PersistentSlotTree.empty(), first);
+        PersistentSlotTree two = with(one, second);
+        PersistentSlotTree withoutFirst = two.without(SlotKey.of(first));
+
+        assertEquals(List.of(first), new ArrayList<>(one.range(null, null)));
+        assertEquals(List.of(first, second), new ArrayList<>(two.range(null, null)));
+        assertEquals(List.of(second), new ArrayList<>(withoutFirst.range(null, null)));
+        assertSame(first, two.get(SlotKey.of(first)));
+        assertNull(withoutFirst.get(SlotKey.of(first)));
+    }
+
+    @Test
+    void slotUnderAnExistingKeyIsReplaced() {
+        ScheduleSlot stored = slotAt(FIRST_DAY, 480, rooms[0]);
+        ScheduleSlot replacement = slotAt(FIRST_DAY, 480, rooms[0]);
+        PersistentSlotTree tree = with(with(PersistentSlotTree.empty(), stored), replacement);
+
+        assertEquals(1, tree.size());
+        assertSame(replacement, tree.get(SlotKey.of(stored)));
+    }
+
+    @Test
+    void rangesAreChronologicalAndCountedWithoutWalking() {
+        PersistentSlotTree tree = PersistentSlotTree.empty();
+        for (int day = 0; day < 10; day++)
+            for (RoomProperties room : rooms)
+                tree = with(tree, slotAt(FIRST_DAY + day, 600 - day, room));
+
+        Collection<ScheduleSlot> middle = tree.range(FIRST_DAY + 3, FIRST_DAY + 5);
+        assertEquals(9, middle.size());
+        List<ScheduleSlot> listed = new ArrayList<>(middle);
+        assertEquals(9, listed.size());
+        for (ScheduleSlot slot : listed) {
+            long day = SlotKey.of(slot).getDay();
+            assertTrue(day >= FIRST_DAY + 3 && day <= FIRST_DAY + 5);
+        }
+
+        assertEquals(12, tree.range(null, FIRST_DAY + 3).size());
+        assertEquals(6, tree.range(FIRST_DAY + 8, null).size());
+        assertEquals(0, tree.range(FIRST_DAY + 5, FIRST_DAY + 3).size());
+        assertEquals(FIRST_DAY, tree.firstDay());
+        assertEquals(FIRST_DAY + 9, tree.lastDay());
+    }
+
+    @Test
+    void randomChangesMatchASortedMap() {
+        Random random = new Random(17);
+        TreeMap<SlotKey, ScheduleSlot> model = new TreeMap<>();
+        PersistentSlotTree tree = PersistentSlotTree.empty();
+        List<PersistentSlotTree> versions = new ArrayList<>();
+        List<List<ScheduleSlot>> expected = new ArrayList<>();
+
+        for (int i = 0; i < 3000; i++) {
+            ScheduleSlot slot = slotAt(FIRST_DAY + random.nextInt(40), 30 * random.nextInt(30), rooms[random.nextInt(rooms.length)]);
+            SlotKey key = SlotKey.of(slot);
+            if (random.nextInt(3) == 0) {
+                tree = tree.without(key);
+                model.remove(key);
+            } else {
+                tree = tree.with(key, slot);
+                model.put(key, slot);
+            }
+
+            if (i % 300 == 0) {
+                versions.add(tree);
+                expected.add(new ArrayList<>(model.values()));
+            }
+        }
+
+        assertEquals(model.size(), tree.size());
+        assertEquals(new ArrayList<>(model.values()), new ArrayList<>(tree.range(null, null)));
+        for (long day = FIRST_DAY - 1; day <= FIRST_DAY + 40; day += 7) {
+            Collection<ScheduleSlot> range = tree.range(day, day + 6);
+            List<ScheduleSlot> fromModel = new ArrayList<>(model.subMap(SlotKey.dayStart(day), SlotKey.dayStart(day + 7)).values());
+            assertEquals(fromModel.size(), range.size());
+            assertEquals(fromModel, new ArrayList<>(range));
+        }
+
+        // every version kept along the way still lists exactly what the model held at that point
+        for (int i = 0; i < versions.size(); i++)
+            assertEquals(expected.get(i), new ArrayList<>(versions.get(i).range(null, null)));
+    }
+
+    @Test
+    void sortedInsertionsStayBalanced() {
+        // an unbalanced tree would be a list here, the recursive insert and delete would run out of stack
+        ScheduleSlot stored = slotAt(FIRST_DAY, 0, rooms[0]);
+        PersistentSlotTree tree = PersistentSlotTree.empty();
+        List<SlotKey> keys = new ArrayList<>();
+        for (int day = 0; day < 2000; day++) {
+            for (int start = 0; start < 1440; start += 30) {
+                SlotKey key = new SlotKey(FIRST_DAY + day, start, start + 30, "A1");
+                keys.add(key);
+                tree = tree.with(key, stored);
+            }
+        }
+        assertEquals(keys.size(), tree.size());
+
+        for (int i = 0; i < keys.size(); i += 2)
+            tree = tree.without(keys.get(i));
+        assertEquals(keys.size() / 2, tree.size());
+        assertEquals(48, tree.range(FIRST_DAY + 1000, FIRST_DAY + 1001).size());
+    }
+}
@@ -0,0 +1,81 @@
+package raf.sk_schedule.index;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class RoomDayIndexTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties a2 = room("A2");
+
+    @Test
+    void findsOverlappingSlotsOfTheSameRoomAndDayOnly() {
+        RoomDayIndex index = new RoomDayIndex();
+        ScheduleSlot morning = slot("2024-03-04", "08:00", "10:00", a1);
+        ScheduleSlot noon = slot("2024-03-04", "11:00", "13:00", a1);
+        index.add(morning);
+        index.add(noon);
+        index.add(slot("2024-03-04", "09:00", "12:00", a2));
+        index.add(slot("2024-03-05", "09:00", "12:00", a1));
+
+        assertEquals(List.of(morning, noon), index.findCollisions(slot("2024-03-04", "09:30", "11:30", a1)));
+        assertSame(morning, index.findFirstCollision(slot("2024-03-04", "09:00", "12:00", a1)));
+        assertNull(index.findFirstCollision(slot("2024-03-04", "10:15", "10:45", a1)));
+        assertNull(index.findFirstCollision(slot("2024-03-06", "09:00", "12:00", a1)));
+    }
+
+    @Test
+    void longSlotIsFoundFromAWindowStartingAfterIt() {
+        // the scan window reaches back by the longest duration stored in the bucket
+        RoomDayIndex index = new RoomDayIndex();
+        ScheduleSlot allDay = slot("2024-03-04", "07:00", "19:00", a1);
+        index.add(allDay);
+        index.add(slot("2024-03-04", "19:30", "20:00", a1));
+
+        assertEquals(List.of(allDay), index.findCollisions(slot("2024-03-04", "17:00", "17:30", a1)));
+    }
+
+    @Test
+    void removesOnlyTheIndexedInstance() {
+        RoomDayIndex index = new RoomDayIndex();
+        ScheduleSlot booked = slot("2024-03-04", "08:00", "10:00", a1);
+        index.add(booked);
+
+        assertFalse(index.remove(slot("2024-03-04", "08:00", "10:00", a1)));
+        assertTrue(index.remove(booked));
+        assertFalse(index.remove(booked));
+        assertTrue(index.roomNames().isEmpty());
+        assertNull(index.findFirstCollision(slot("2024-03-04", "08:00", "10:00", a1)));
+    }
+
+    @Test
+    void listsSlotsOrderedByDayAndStart() {
+        RoomDayIndex index = new RoomDayIndex();
+        ScheduleSlot second = slot("2024-03-05", "08:00", "09:00", a1);
+        ScheduleSlot firstLate = slot("2024-03-04", "12:00", "13:00", a1);
+        ScheduleSlot firstEarly = slot("2024-03-04", "08:00", "09:00", a1);
+        ScheduleSlot third = slot("2024-03-07", "08:00", "09:00", a1);
+        index.add(second);
+        index.add(firstLate);
+        index.add(firstEarly);
+        index.add(third);
+
+        long day = epochDay(parseDate("2024-03-04"));
+        assertEquals(List.of(firstEarly, firstLate), index.slotsOn("A1", day));
+        assertEquals(List.of(firstEarly, firstLate, second), index.slotsBetween("A1", day, day + 1));
+        assertEquals(List.of(second, third), index.slotsBetween("A1", day + 1, null));
+        assertTrue(index.slotsBetween("A1", day + 1, day).isEmpty());
+
+        assertEquals(List.of(firstEarly, firstLate, second, third), index.removeRoom("A1"));
+        assertTrue(index.slotsOn("A1", day).isEmpty());
+    }
+}
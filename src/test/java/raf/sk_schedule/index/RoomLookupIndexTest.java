@@ -0,0 +1,72 @@
+package raf.sk_schedule.index;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.model.location_node.RoomProperties;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+
+class RoomLookupIndexTest {
+
+    private final RoomProperties small = room("S1", 20, 0, true);
+    private final RoomProperties lab = room("L1", 30, 25, false);
+    private final RoomProperties hall = room("H1", 120, 0, true);
+
+    private RoomLookupIndex index() {
+        RoomLookupIndex index = new RoomLookupIndex();
+        index.add(small.getName(), small);
+        index.add(lab.getName(), lab);
+        index.add(hall.getName(), hall);
+        return index;
+    }
+
+    @Test
+    void intersectsTheQueriedProperties() {
+        RoomLookupIndex index = index();
+
+        assertEquals(List.of(small, hall), index.lookUp(null, -1, -1, -1, true, null));
+        assertEquals(List.of(lab), index.lookUp(null, -1, -1, 25, null, null));
+        assertEquals(List.of(small), index.lookUp(null, 20, 20, 0, true, null));
+        assertEquals(List.of(hall), index.lookUp("H1", -1, -1, -1, null, null));
+        assertTrue(index.lookUp("H1", -1, -1, -1, false, null).isEmpty());
+        assertTrue(index.lookUp("X9", -1, -1, -1, null, null).isEmpty());
+    }
+
+    @Test
+    void capacityBoundsAreInclusiveAndEitherMayBeOpen() {
+        RoomLookupIndex index = index();
+
+        assertEquals(List.of(small, lab), index.lookUp(null, 20, 30, -1, null, null));
+        assertEquals(List.of(lab, hall), index.lookUp(null, 25, -1, -1, null, null));
+        assertEquals(List.of(small, lab), index.lookUp(null, -1, 119, -1, null, null));
+    }
+
+    @Test
+    void invertedCapacityRangeMatchesNothing() {
+        assertTrue(index().lookUp(null, 100, 30, -1, null, null).isEmpty());
+    }
+
+    @Test
+    void removedRoomIsNotFoundAndItsIdIsReused() {
+        RoomLookupIndex index = index();
+        index.remove("L1");
+        assertEquals(List.of(small, hall), index.lookUp(null, -1, -1, -1, null, null));
+
+        RoomProperties lab2 = room("L2", 30, 25, false);
+        index.add(lab2.getName(), lab2);
+        assertEquals(List.of(small, lab2, hall), index.lookUp(null, -1, -1, -1, null, null));
+        assertEquals(List.of(lab2), index.lookUp(null, -1, -1, 25, null, null));
+    }
+
+    @Test
+    void addingUnderAKnownNameReplacesTheRoom() {
+        RoomLookupIndex index = index();
+        RoomProperties biggerLab = room("L1", 60, 25, true);
+        index.add("L1", biggerLab);
+
+        assertEquals(List.of(biggerLab), index.lookUp("L1", -1, -1, -1, null, null));
+        assertEquals(List.of(biggerLab, hall), index.lookUp(null, 50, -1, -1, null, null));
+    }
+}
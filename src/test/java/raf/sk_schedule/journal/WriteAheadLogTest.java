@@ -0,0 +1,320 @@
+package raf.sk_schedule.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.recurrence.RecurrenceRule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private final SlotKey monday = new SlotKey(19_786, 8 * 60, 10 * 60, "A1");
+    private final SlotKey tuesday = new SlotKey(19_787, 12 * 60, 13 * 60, "B2");
+    private final SlotKey wednesday = new SlotKey(19_788, 9 * 60, 11 * 60, "A1");
+
+    @Test
+    void replaysEveryRecordInOrder() {
+        Path file = writeLog();
+
+        Recorder recorder = new Recorder();
+        assertEquals(size(file), WriteAheadLog.replay(file, recorder));
+        assertEquals(expectedRecords(), recorder.records);
+    }
+
+    @Test
+    void smallWindowsReplayTheSameRecords() {
+        Path file = writeLog();
+
+        // every record spans or starts a window, none fits the initial mapping
+        for (long window : new long[]{9, 16, 31, 64}) {
+            Recorder recorder = new Recorder();
+            assertEquals(size(file), WriteAheadLog.replay(file, recorder, window), "window " + window);
+            assertEquals(expectedRecords(), recorder.records, "window " + window);
+        }
+    }
+
+    @Test
+    void replayStopsBeforeAHalfWrittenRecord() throws IOException {
+        Path file = writeLog();
+        long complete = WriteAheadLog.validLength(file);
+        long lastRecord = lengthWithRecords(3);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(complete - 3);
+        }
+
+        Recorder recorder = new Recorder();
+        assertEquals(lastRecord, WriteAheadLog.replay(file, recorder));
+        assertEquals(expectedRecords().subList(0, 3), recorder.records);
+    }
+
+    @Test
+    void replayStopsAtACorruptChecksum() throws IOException {
+        Path file = writeLog();
+        long firstRecord = lengthWithRecords(1);
+
+        // flips the last byte of the second record's payload
+        byte[] bytes = Files.readAllBytes(file);
+        int lastByte = (int) lengthWithRecords(2) - 1;
+        bytes[lastByte] ^= 0x55;
+        Files.write(file, bytes);
+
+        Recorder recorder = new Recorder();
+        assertEquals(firstRecord, WriteAheadLog.replay(file, recorder));
+        assertEquals(expectedRecords().subList(0, 1), recorder.records);
+    }
+
+    @Test
+    void replayStopsAtGarbageAfterTheLastRecord() throws IOException {
+        Path file = writeLog();
+        long complete = size(file);
+        Files.write(file, new byte[]{0, 0, 0, 0, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        assertEquals(complete, WriteAheadLog.validLength(file));
+    }
+
+    @Test
+    void emptyLogHasNothingToReplay() throws IOException {
+        Path file = Files.createFile(WriteAheadLog.pathOf(directory, 0));
+
+        Recorder recorder = new Recorder();
+        assertEquals(0, WriteAheadLog.replay(file, recorder));
+        assertTrue(recorder.records.isEmpty());
+    }
+
+    @Test
+    void reopeningTheJournalCutsTheTornTailAndAppendsAfterIt() throws IOException {
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            journal.onBooked(List.of(monday, tuesday));
+            journal.onDeleted(List.of(tuesday));
+        }
+        Path first = WriteAheadLog.pathOf(directory, 0);
+        long valid = size(first);
+        Files.write(first, new byte[]{42, 0, 0, 0, 7}, StandardOpenOption.APPEND);
+
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            assertEquals(valid, size(first));
+            journal.onBooked(List.of(wednesday));
+        }
+
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            Recorder recorder = new Recorder();
+            journal.replay(recorder);
+            assertEquals(List.of(
+                    "book " + List.of(monday, tuesday),
+                    "delete " + List.of(tuesday),
+                    "book " + List.of(wednesday)), recorder.records);
+        }
+    }
+
+    @Test
+    void compactionKeepsTheReplayedContents() {
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            journal.onBooked(List.of(monday, tuesday));
+            journal.onMoved(tuesday, wednesday);
+            journal.compact();
+            journal.onDeleted(List.of(monday));
+        }
+
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            Recorder recorder = new Recorder();
+            journal.replay(recorder);
+            assertEquals(List.of("book " + List.of(monday, wednesday), "delete " + List.of(monday)), recorder.records);
+        }
+    }
+
+    @Test
+    void rulesAreJournaledAsOneRecordWithTheirExceptions() {
+        BitSet cancelled = new BitSet();
+        cancelled.set(1);
+        cancelled.set(70);
+        RecurrenceRule rule = RecurrenceRule.of(19_786, 7, 100, "14:00", "15:30", "A1", cancelled);
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, false)) {
+            log.onRuleBooked(rule);
+        }
+
+        Recorder recorder = new Recorder();
+        WriteAheadLog.replay(WriteAheadLog.pathOf(directory, 0), recorder);
+
+        assertEquals(List.of("rule " + rule), recorder.records);
+        RecurrenceRule replayed = recorder.rules.get(0);
+        assertEquals(rule.keys(), replayed.keys());
+        assertEquals(cancelled, replayed.getCancelled());
+    }
+
+    @Test
+    void compactionKeepsRulesAsRules() {
+        RecurrenceRule rule = RecurrenceRule.of(19_786, 7, 10, "14:00", "15:00", "A1", new BitSet());
+        SlotKey second = rule.keyOf(1);
+        SlotKey third = rule.keyOf(2);
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            journal.onRuleBooked(rule);
+            journal.onBooked(List.of(tuesday));
+            journal.onDeleted(List.of(second));
+            journal.onMoved(third, wednesday);
+            journal.compact();
+        }
+
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            Recorder recorder = new Recorder();
+            journal.replay(recorder);
+
+            assertEquals(List.of("book " + List.of(tuesday, wednesday)), recorder.records.subList(0, 1));
+            assertEquals(1, recorder.rules.size());
+            RecurrenceRule replayed = recorder.rules.get(0);
+            assertEquals(8, replayed.size());
+            assertEquals(-1, replayed.indexOf(second));
+            assertEquals(-1, replayed.indexOf(third));
+        }
+    }
+
+    @Test
+    void compactionKeepsSlotsUnderTheNewNameAndTheRenameItself() {
+        RecurrenceRule rule = RecurrenceRule.of(19_786, 7, 10, "14:00", "15:00", "A1", new BitSet());
+        SlotKey renamedMonday = new SlotKey(monday.getDay(), monday.getStart(), monday.getEnd(), "C3");
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            journal.onBooked(List.of(monday, tuesday));
+            journal.onRuleBooked(rule);
+            journal.onRoomRenamed("A1", "C3");
+            journal.compact();
+            journal.onRoomRenamed("C3", "D4");
+        }
+
+        try (ScheduleJournal journal = ScheduleJournal.open(directory, false)) {
+            assertEquals(List.of(Map.entry("A1", "C3"), Map.entry("C3", "D4")), journal.roomChanges());
+
+            Recorder recorder = new Recorder();
+            journal.replay(recorder);
+            assertEquals(List.of("rename room A1 C3", "book " + List.of(renamedMonday, tuesday)), recorder.records.subList(0, 2));
+            assertEquals("rename room C3 D4", recorder.records.get(3));
+            assertEquals("C3", recorder.rules.get(0).getRoom());
+            assertEquals(rule.size(), recorder.rules.get(0).size());
+        }
+    }
+
+    @Test
+    void version2SnapshotsAreStillRead() throws IOException {
+        byte[] room = "A1".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer image = ByteBuffer.allocate(24 + 4 + 2 + room.length + 4 + 12 + 4 + 4);
+        image.putInt(0x534B534E).putInt(2).putLong(3).putLong(Long.MIN_VALUE);
+        image.putInt(1).putShort((short) room.length).put(room);
+        image.putInt(1).putInt((int) monday.getDay()).putShort((short) monday.getStart()).putShort((short) monday.getEnd()).putInt(0);
+        image.putInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(image.array(), 0, image.position());
+        image.putInt((int) crc.getValue());
+        Files.write(directory.resolve(ScheduleSnapshot.FILE_NAME), image.array());
+
+        ScheduleSnapshot snapshot = ScheduleSnapshot.open(directory);
+        assertEquals(3, snapshot.getNextGeneration());
+        assertTrue(snapshot.getRenames().isEmpty());
+        Recorder recorder = new Recorder();
+        snapshot.replay(recorder);
+        assertEquals(List.of("book " + List.of(monday)), recorder.records);
+    }
+
+    private Path writeLog() {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, false)) {
+            log.onBooked(List.of(monday, tuesday));
+            log.onMoved(monday, wednesday);
+            log.onRoomDeleted("B2");
+            log.onArchived(19_787);
+        }
+        return WriteAheadLog.pathOf(directory, 0);
+    }
+
+    private List<String> expectedRecords() {
+        return List.of(
+                "book " + List.of(monday, tuesday),
+                "move " + monday + " " + wednesday,
+                "delete room B2",
+                "archive 19787");
+    }
+
+    // length of a log holding only the first records of writeLog()
+    private long lengthWithRecords(int records) {
+        Path other = directory.resolve("prefix-" + records);
+        try {
+            Files.createDirectories(other);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        try (WriteAheadLog log = WriteAheadLog.open(other, 0, false)) {
+            if (records > 0)
+                log.onBooked(List.of(monday, tuesday));
+            if (records > 1)
+                log.onMoved(monday, wednesday);
+            if (records > 2)
+                log.onRoomDeleted("B2");
+        }
+        return size(WriteAheadLog.pathOf(other, 0));
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+
+    private static class Recorder implements ScheduleMutationListener {
+
+        final List<String> records = new ArrayList<>();
+        final List<RecurrenceRule> rules = new ArrayList<>();
+
+        @Override
+        public void onBooked(List<SlotKey> slots) {
+            records.add("book " + slots);
+        }
+
+        @Override
+        public void onRuleBooked(RecurrenceRule rule) {
+            records.add("rule " + rule);
+            rules.add(rule);
+        }
+
+        @Override
+        public void onDeleted(List<SlotKey> slots) {
+            records.add("delete " + slots);
+        }
+
+        @Override
+        public void onMoved(SlotKey from, SlotKey to) {
+            records.add("move " + from + " " + to);
+        }
+
+        @Override
+        public void onRoomRenamed(String roomName, String newName) {
+            records.add("rename room " + roomName + " " + newName);
+        }
+
+        @Override
+        public void onRoomDeleted(String roomName) {
+            records.add("delete room " + roomName);
+        }
+
+        @Override
+        public void onArchived(long untilDay) {
+            records.add("archive " + untilDay);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package raf.sk_schedule.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogBucketHistogramTest {
+
+    @Test
+    void smallValuesAreExact() {
+        LogBucketHistogram histogram = new LogBucketHistogram();
+        for (long value = 1; value <= 10; value++)
+            histogram.record(value);
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(55, histogram.getTotal());
+        assertEquals(5.5, histogram.getMean());
+        assertEquals(10, histogram.getMax());
+        assertEquals(5, histogram.getValueAtPercentile(50));
+        assertEquals(9, histogram.getValueAtPercentile(90));
+        assertEquals(10, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void bucketsCoverEveryValueWithinTheRelativeError() {
+        long[] values = {31, 32, 33, 63, 64, 1_000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LogBucketHistogram.bucketOf(value);
+            long highest = LogBucketHistogram.highestValueOf(bucket);
+
+            assertTrue(highest >= value, "bucket of " + value + " ends below it");
+            assertTrue(highest - value <= value / 32, "bucket of " + value + " is too wide");
+            if (bucket > 0)
+                assertTrue(LogBucketHistogram.highestValueOf(bucket - 1) < value, "previous bucket of " + value + " already covers it");
+        }
+    }
+
+    @Test
+    void percentilesStayWithinTheRelativeErrorAndNeverPassTheMax() {
+        LogBucketHistogram histogram = new LogBucketHistogram();
+        for (long value = 1; value <= 100_000; value++)
+            histogram.record(value);
+
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 50_000 && median <= 50_000 + 50_000 / 32, "median " + median);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+        assertEquals(100_000, histogram.getValueAtPercentile(150));
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LogBucketHistogram histogram = new LogBucketHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void emptyAndResetHistogramsReportZero() {
+        LogBucketHistogram histogram = new LogBucketHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMean());
+
+        histogram.record(1_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    void concurrentRecordingLosesNothing() throws InterruptedException {
+        LogBucketHistogram histogram = new LogBucketHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++)
+                    histogram.record(i * 4 + offset);
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(39_999, histogram.getMax());
+        assertEquals(39_999L * 40_000 / 2, histogram.getTotal());
+    }
+}
@@ -0,0 +1,99 @@
+package raf.sk_schedule.metrics;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.model.location_node.RoomProperties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+
+class ScheduleMetricsRegistryTest {
+
+    @Test
+    void countsCallsFailuresAndLatencies() {
+        ScheduleMetricsRegistry registry = new ScheduleMetricsRegistry();
+        registry.onOperation(ScheduleOperation.BOOK_SLOT, 2_000, false);
+        registry.onOperation(ScheduleOperation.BOOK_SLOT, 4_000, true);
+        registry.onCollisionScan(3, 1);
+        registry.onCollisionScan(5, 0);
+        registry.onImport(10, 400);
+        registry.onExport(7, 300);
+
+        assertEquals(2, registry.getCount(ScheduleOperation.BOOK_SLOT));
+        assertEquals(1, registry.getFailures(ScheduleOperation.BOOK_SLOT));
+        assertEquals(0, registry.getCount(ScheduleOperation.MOVE_SLOT));
+        assertEquals(3.0, registry.getMeanLatencyMicros().get("BOOK_SLOT"));
+        assertEquals(4_000, registry.getLatency(ScheduleOperation.BOOK_SLOT).getMax());
+        assertEquals(2, registry.getCollisionChecks());
+        assertEquals(8, registry.getSlotsScanned());
+        assertEquals(1, registry.getCollisionsFound());
+        assertEquals(10, registry.getImportedRows());
+        assertEquals(400, registry.getImportedBytes());
+        assertEquals(7, registry.getExportedRows());
+        assertEquals(300, registry.getExportedBytes());
+        assertEquals(ScheduleOperation.values().length, registry.getOperationCounts().size());
+
+        registry.reset();
+
+        assertEquals(0, registry.getCount(ScheduleOperation.BOOK_SLOT));
+        assertEquals(0, registry.getCollisionChecks());
+        assertEquals(0, registry.getImportedRows());
+        assertEquals(0.0, registry.getMaxLatencyMicros().get("BOOK_SLOT"));
+    }
+
+    @Test
+    void managerReportsItsOperations() {
+        RoomProperties room = room("R1");
+        ScheduleSlotsManager manager = manager(room);
+        ScheduleMetricsRegistry registry = new ScheduleMetricsRegistry();
+        manager.setMetricsListener(registry);
+
+        manager.bookScheduleSlot(slot("2024-03-04", "10:00", "12:00", room));
+        assertThrows(ScheduleException.class, () -> manager.bookScheduleSlot(slot("2024-03-04", "11:00", "13:00", room)));
+
+        assertEquals(2, registry.getCount(ScheduleOperation.BOOK_SLOT));
+        assertEquals(1, registry.getFailures(ScheduleOperation.BOOK_SLOT));
+        // the first booking is decided by the occupancy bitmap alone, only the second one compares slots
+        assertEquals(1, registry.getCollisionChecks());
+        assertEquals(1, registry.getCollisionsFound());
+    }
+
+    @Test
+    void disabledListenerIsNeverCalled() {
+        RoomProperties room = room("R1");
+        ScheduleSlotsManager manager = manager(room);
+        manager.setMetricsListener(new ScheduleMetricsListener() {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+
+            @Override
+            public void onOperation(ScheduleOperation operation, long nanos, boolean failed) {
+                fail("disabled listener received " + operation);
+            }
+        });
+
+        manager.bookScheduleSlot(slot("2024-03-04", "10:00", "12:00", room));
+    }
+
+    @Test
+    void registersAndUnregistersOverJmx() throws Exception {
+        ScheduleMetricsRegistry registry = new ScheduleMetricsRegistry();
+        registry.onImport(3, 30);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = registry.registerMBean("raf.sk_schedule:type=ScheduleMetrics,name=test");
+        try {
+            assertEquals(3L, server.getAttribute(name, "ImportedRows"));
+        } finally {
+            registry.unregisterMBean(name);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,129 @@
+package raf.sk_schedule.query;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.index.RoomDayIndex;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.FreeScheduleSlot;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.manager;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.index.SlotTimes.weekDayOf;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class FreeSlotFinderTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties a2 = room("A2");
+    private final long monday = epochDay(parseDate("2024-03-04"));
+    private final RoomDayIndex index = new RoomDayIndex();
+
+    private FreeSlotFinder finder(WeekDay... days) {
+        return new FreeSlotFinder(index::slotsOn, "08:00", "20:00", days.length == 0 ? Arrays.asList(WeekDay.values()) : Arrays.asList(days));
+    }
+
+    private static List<String> windows(List<FreeScheduleSlot> free) {
+        return free.stream()
+                .map(slot -> slot.getLocation().getName() + " " + formatDate(slot.getDate()) + " " + slot.getStartTime() + "-" + slot.getEndTime())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void gapsAreClippedToTheWorkingHours() {
+        index.add(slot("2024-03-04", "07:00", "09:00", a1));
+        index.add(slot("2024-03-04", "10:00", "11:00", a1));
+        // overlaps the previous one, the cursor must not move back
+        index.add(slot("2024-03-04", "10:30", "10:45", a1));
+        index.add(slot("2024-03-04", "19:00", "21:00", a1));
+
+        assertEquals(List.of("A1 2024-03-04 09:00-10:00", "A1 2024-03-04 11:00-19:00"), windows(finder().freeSlotsOn(a1, monday)));
+    }
+
+    @Test
+    void freeDayIsOneWindowAndFullDayHasNone() {
+        index.add(slot("2024-03-05", "06:00", "22:00", a1));
+
+        assertEquals(List.of("A1 2024-03-04 08:00-20:00"), windows(finder().freeSlotsOn(a1, monday)));
+        assertTrue(finder().freeSlotsOn(a1, monday + 1).isEmpty());
+    }
+
+    @Test
+    void streamSkipsExcludedDaysAndKeepsRoomOrder() {
+        WeekDay mondayWeekDay = weekDayOf(monday);
+        EnumSet<WeekDay> others = EnumSet.allOf(WeekDay.class);
+        others.remove(mondayWeekDay);
+        index.add(slot("2024-03-05", "08:00", "19:00", a2));
+
+        List<String> free = windows(finder(others.toArray(new WeekDay[0])).stream(List.of(a2, a1), monday, monday + 1, false).collect(Collectors.toList()));
+
+        assertEquals(List.of("A2 2024-03-05 19:00-20:00", "A1 2024-03-05 08:00-20:00"), free);
+    }
+
+    @Test
+    void parallelStreamFindsTheSameWindows() {
+        for (int i = 0; i < 5; i++)
+            index.add(slot("2024-03-0" + (4 + i), "12:00", "13:00", i % 2 == 0 ? a1 : a2));
+
+        FreeSlotFinder finder = finder();
+        assertEquals(windows(finder.stream(List.of(a1, a2), monday, monday + 6, false).collect(Collectors.toList())),
+                windows(finder.stream(List.of(a1, a2), monday, monday + 6, true).collect(Collectors.toList())));
+    }
+
+    @Test
+    void earliestFitsSkipShortGapsAndOrderByTimeThenRoom() {
+        index.add(slot("2024-03-04", "08:00", "09:00", a1));
+        index.add(slot("2024-03-04", "09:30", "20:00", a1));
+        index.add(slot("2024-03-04", "08:00", "12:00", a2));
+
+        List<String> fits = windows(finder().earliestFits(List.of(a2, a1), monday, monday + 1, 60, 3, false));
+
+        assertEquals(List.of("A2 2024-03-04 12:00-13:00", "A1 2024-03-05 08:00-09:00", "A2 2024-03-05 08:00-09:00"), fits);
+    }
+
+    @Test
+    void earliestFitsDoNotCollideWithTheSlotsAroundThem() {
+        // back to back bookings leave gaps that start exactly where a booking ends
+        index.add(slot("2024-03-04", "08:00", "10:00", a1));
+        index.add(slot("2024-03-04", "11:00", "12:00", a1));
+        index.add(slot("2024-03-04", "13:30", "20:00", a1));
+
+        List<FreeScheduleSlot> fits = finder().earliestFits(List.of(a1), monday, monday, 60, 10, false);
+
+        assertEquals(2, fits.size());
+        for (FreeScheduleSlot fit : fits) {
+            ScheduleSlot candidate = slot(formatDate(fit.getDate()), fit.getStartTime(), fit.getEndTime(), a1);
+            for (ScheduleSlot booked : index.slotsOn("A1", monday))
+                assertFalse(booked.isCollidingWith(candidate), fit.getStartTime() + "-" + fit.getEndTime() + " collides");
+        }
+    }
+
+    @Test
+    void everyEarliestFitCanBeBooked() {
+        ScheduleSlotsManager manager = manager(a1, a2);
+        manager.bookScheduleSlot(slot("2024-03-04", "08:00", "10:00", a1));
+        manager.bookScheduleSlot(slot("2024-03-04", "10:00", "11:00", a2));
+        manager.bookScheduleSlot(slot("2024-03-04", "12:00", "14:00", a2));
+
+        EarliestFitQuery query = new EarliestFitQuery.Builder()
+                .setDuration(60)
+                .setDateWindow("2024-03-04", "2024-03-04")
+                .setLimit(4)
+                .build();
+        List<FreeScheduleSlot> fits = manager.findEarliestFits(query);
+
+        assertEquals(4, fits.size());
+        for (FreeScheduleSlot fit : fits)
+            assertTrue(manager.bookScheduleSlot(slot(formatDate(fit.getDate()), fit.getStartTime(), fit.getEndTime(), fit.getLocation())));
+    }
+}
@@ -0,0 +1,252 @@
+package raf.sk_schedule.query;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.api.Constants.WeekDay;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.TestSlots;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_mapper.RepetitiveScheduleMapper;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.query.QueryPlan.AccessPath;
+import raf.sk_schedule.util.filter.CriteriaFilter;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.room;
+import static raf.sk_schedule.TestSlots.slot;
+import static raf.sk_schedule.index.SlotTimes.epochDay;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.parseDate;
+
+class QueryPlannerTest {
+
+    private final List<RoomProperties> rooms = new ArrayList<>();
+    private final Map<String, Map<String, String>> attributes = new HashMap<>();
+    private final List<ScheduleSlot> slots = new ArrayList<>();
+    private final QueryPlanner planner = new QueryPlanner(new ListSource());
+
+    // 10 rooms, one slot per room on each of the 28 days from Monday 2024-03-04
+    QueryPlannerTest() {
+        for (int r = 0; r < 10; r++) {
+            RoomProperties room = room("R" + r);
+            rooms.add(room);
+            attributes.put(room.getName(), Collections.singletonMap("building", r < 2 ? "north" : "south"));
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(parseDate("2024-03-04"));
+        for (int day = 0; day < 28; day++) {
+            for (RoomProperties room : rooms)
+                slots.add(slot(formatDate(calendar.getTime()), "10:00", "11:00", room));
+            calendar.add(Calendar.DATE, 1);
+        }
+        slots.sort(Comparator.comparing(SlotKey::of));
+    }
+
+    private static List<String> describe(Iterable<ScheduleSlot> results) {
+        List<String> described = new ArrayList<>();
+        results.forEach(slot -> described.add(slot.getLocation().getName() + " " + formatDate(slot.getDate())));
+        return described;
+    }
+
+    @Test
+    void withoutPredicatesTheWholeScheduleIsScanned() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder().build());
+
+        assertEquals(AccessPath.FULL_SCAN, plan.getAccessPath());
+        assertEquals(Map.of(AccessPath.FULL_SCAN, 280L), plan.getEstimates());
+        assertEquals(280, describe(planner.results(plan)).size());
+        assertEquals(280, plan.getCandidates());
+        assertEquals(280, plan.getReturned());
+    }
+
+    @Test
+    void roomsNarrowADateRangeFurther() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder()
+                .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, "2024-03-10")
+                .setCriteria(CriteriaFilter.UPPER_BOUND_DATE_KEY, "2024-03-11")
+                .setLocation("R1", "R2", "R3")
+                .build());
+
+        assertEquals(AccessPath.ROOM, plan.getAccessPath());
+        assertEquals(20L, plan.getEstimates().get(AccessPath.DATE_RANGE));
+        assertEquals(6L, plan.getEstimates().get(AccessPath.ROOM));
+        assertEquals(280L, plan.getEstimates().get(AccessPath.FULL_SCAN));
+
+        describe(planner.results(plan));
+        // the room index is read between the bounds only
+        assertEquals(6, plan.getCandidates());
+    }
+
+    @Test
+    void aNarrowDateRangeBeatsAFullScan() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder()
+                .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, "2024-03-10")
+                .setCriteria(CriteriaFilter.UPPER_BOUND_DATE_KEY, "2024-03-11")
+                .build());
+
+        assertEquals(AccessPath.DATE_RANGE, plan.getAccessPath());
+        assertEquals(20L, plan.getEstimatedCandidates());
+        assertEquals(epochDay(parseDate("2024-03-10")), plan.getFromDay());
+    }
+
+    @Test
+    void fewRoomsOverTheWholeScheduleUseTheRoomIndex() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder().setLocation("R4").build());
+
+        assertEquals(AccessPath.ROOM, plan.getAccessPath());
+        assertEquals(28L, plan.getEstimatedCandidates());
+
+        List<String> results = describe(planner.results(plan));
+        assertEquals(28, results.size());
+        assertTrue(results.stream().allMatch(result -> result.startsWith("R4 ")));
+        assertEquals(28, plan.getCandidates(), "the room path produces no candidate of other rooms");
+    }
+
+    @Test
+    void roomAttributesAreMatchedByThePlanner() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder().setAttribute("building", "north").build());
+
+        assertEquals(AccessPath.ROOM, plan.getAccessPath());
+        assertEquals(Set.of("R0", "R1"), plan.getRooms());
+
+        List<String> results = describe(planner.results(plan));
+        assertEquals(56, results.size());
+        assertEquals(List.of("R0 2024-03-04", "R1 2024-03-04", "R0 2024-03-05"), results.subList(0, 3), "the rooms are merged back into chronological order");
+    }
+
+    @Test
+    void roomsAreAResidualFilterOnOtherPaths() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder()
+                .setCriteria(CriteriaFilter.WEEK_DAY_KEY, EnumSet.of(WeekDay.MONDAY))
+                .setLocation("R0", "R1", "R2", "R3", "R4", "R5", "R6", "R7")
+                .build());
+
+        assertEquals(AccessPath.WEEK_DAY, plan.getAccessPath());
+        assertTrue(plan.toString().contains("rooms [R0, R1, R2, R3, R4, R5, R6, R7]"), plan.toString());
+
+        List<String> results = describe(planner.results(plan));
+        assertEquals(32, results.size());
+        assertTrue(results.stream().noneMatch(result -> result.startsWith("R8 ") || result.startsWith("R9 ")));
+        assertEquals(40, plan.getCandidates());
+        assertEquals(32, plan.getReturned());
+    }
+
+    @Test
+    void weekDaysReadOnlyTheirOwnDays() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder()
+                .setCriteria(CriteriaFilter.WEEK_DAY_KEY, EnumSet.of(WeekDay.MONDAY))
+                .build());
+
+        assertEquals(AccessPath.WEEK_DAY, plan.getAccessPath());
+        assertEquals(40L, plan.getEstimatedCandidates());
+
+        describe(planner.results(plan));
+        // four Mondays with ten slots each, the other days are never read
+        assertEquals(40, plan.getCandidates());
+    }
+
+    @Test
+    void weekDayNamesAreUnderstoodAndUnknownOnesLeftToTheCriteria() {
+        QueryPlan named = planner.plan(new ScheduleQuery.Builder().setCriteria(CriteriaFilter.WEEK_DAY_KEY, List.of("monday", " Friday ")).build());
+        assertEquals(EnumSet.of(WeekDay.MONDAY, WeekDay.FRIDAY), named.getWeekDays());
+
+        QueryPlan unknown = planner.plan(new ScheduleQuery.Builder().setCriteria(CriteriaFilter.WEEK_DAY_KEY, List.of("someday")).build());
+        assertNull(unknown.getWeekDays());
+        assertFalse(unknown.getEstimates().containsKey(AccessPath.WEEK_DAY));
+    }
+
+    @Test
+    void boundsOutsideTheScheduleEstimateNothing() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder()
+                .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, "2025-01-01")
+                .build());
+
+        assertEquals(AccessPath.DATE_RANGE, plan.getAccessPath());
+        assertEquals(0L, plan.getEstimatedCandidates());
+        assertTrue(describe(planner.results(plan)).isEmpty());
+    }
+
+    @Test
+    void unparsableBoundsAreLeftToTheCriteria() {
+        QueryPlan plan = planner.plan(new ScheduleQuery.Builder()
+                .setCriteria(CriteriaFilter.LOWER_BOUND_DATE_KEY, 42)
+                .build());
+
+        assertNull(plan.getFromDay());
+        assertEquals(AccessPath.FULL_SCAN, plan.getAccessPath());
+    }
+
+    @Test
+    void managerRoomSearchReadsTheArchiveTheSlotsAndTheRules() {
+        RoomProperties a1 = room("A1");
+        RoomProperties b2 = room("B2");
+        ScheduleSlotsManager manager = TestSlots.manager(a1, b2);
+        manager.bookScheduleSlot(slot("2024-03-05", "08:00", "09:00", a1));
+        manager.bookScheduleSlot(slot("2024-03-05", "08:00", "09:00", b2));
+        manager.bookScheduleSlot(slot("2024-03-20", "08:00", "09:00", a1));
+        manager.bookRepetitiveScheduleSlot(new RepetitiveScheduleMapper.Builder()
+                .setStartTime("12:00")
+                .setEndTime("13:00")
+                .setRecurrencePeriod(7)
+                .setRecurrenceIntervalStart(parseDate("2024-03-04"))
+                .setRecurrenceIntervalEnd(parseDate("2024-03-25"))
+                .setLocation(a1)
+                .build());
+        manager.archiveScheduleBefore("2024-03-12");
+
+        ScheduleQuery query = new ScheduleQuery.Builder().setLocation("A1").build();
+        assertEquals(AccessPath.ROOM, manager.explainSearch(query).getAccessPath());
+        assertEquals(List.of("A1 2024-03-04", "A1 2024-03-05", "A1 2024-03-11", "A1 2024-03-18", "A1 2024-03-20", "A1 2024-03-25"),
+                describe(manager.searchScheduleSlots(query)));
+    }
+
+
+    private class ListSource implements QuerySource {
+
+        @Override
+        public Iterable<ScheduleSlot> range(Long fromDay, Long toDay) {
+            return slots.stream()
+                    .filter(slot -> inRange(slot, fromDay, toDay))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public List<ScheduleSlot> roomRange(String roomName, Long fromDay, Long toDay) {
+            return slots.stream()
+                    .filter(slot -> slot.getLocation().getName().equals(roomName) && inRange(slot, fromDay, toDay))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public Set<String> roomsMatching(Set<String> names, Map<String, String> wanted) {
+            Set<String> matching = new TreeSet<>();
+            for (RoomProperties room : rooms)
+                if ((names.isEmpty() || names.contains(room.getName())) && attributes.get(room.getName()).entrySet().containsAll(wanted.entrySet()))
+                    matching.add(room.getName());
+            return matching;
+        }
+
+        @Override
+        public int roomCount() {
+            return rooms.size();
+        }
+
+        @Override
+        public long slotCount() {
+            return slots.size();
+        }
+
+        @Override
+        public long[] daySpan() {
+            return slots.isEmpty() ? null : new long[]{epochDay(slots.get(0).getDate()), epochDay(slots.get(slots.size() - 1).getDate())};
+        }
+
+        private boolean inRange(ScheduleSlot slot, Long fromDay, Long toDay) {
+            long day = epochDay(slot.getDate());
+            return (fromDay == null || day >= fromDay) && (toDay == null || day <= toDay);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package raf.sk_schedule.recurrence;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.index.SlotKey;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecurrenceIndexTest {
+
+    private final RecurrenceRule weekly = RecurrenceRule.of(100, 7, 10, "10:00", "11:00", "A1", new BitSet());
+    private final RecurrenceRule daily = RecurrenceRule.of(100, 1, 5, "12:00", "13:00", "A1", new BitSet());
+    private final RecurrenceRule other = RecurrenceRule.of(100, 7, 3, "10:00", "11:00", "B2", new BitSet());
+
+    private RecurrenceIndex index() {
+        RecurrenceIndex index = new RecurrenceIndex();
+        index.add(weekly);
+        index.add(daily);
+        index.add(other);
+        return index;
+    }
+
+    @Test
+    void cancelAllCancelsEveryOccurrenceOfTheBatch() {
+        RecurrenceIndex index = index();
+        SlotKey weeklyThird = weekly.keyOf(2);
+        SlotKey dailyFirst = daily.keyOf(0);
+        SlotKey otherLast = other.keyOf(2);
+        SlotKey notAnOccurrence = new SlotKey(101, 600, 660, "A1");
+
+        Set<SlotKey> cancelled = index.cancelAll(List.of(weeklyThird, dailyFirst, otherLast, notAnOccurrence, weeklyThird));
+
+        assertEquals(Set.of(weeklyThird, dailyFirst, otherLast), cancelled);
+        assertEquals(10 + 5 + 3 - 3, index.size());
+        assertNull(index.ruleOf(weeklyThird));
+        assertNull(index.ruleOf(dailyFirst));
+        assertNotNull(index.ruleOf(weekly.keyOf(3)));
+    }
+
+    @Test
+    void cancellingAllOccurrencesDropsTheRule() {
+        RecurrenceIndex index = index();
+
+        index.cancelAll(other.keys());
+
+        assertEquals(Set.of("A1"), index.roomNames());
+        assertEquals(2, index.rules().size());
+    }
+
+    @Test
+    void snapshotsDoNotSeeLaterCancellations() {
+        RecurrenceIndex index = index();
+        RecurrenceIndex snapshot = index.snapshot();
+
+        index.cancelAll(weekly.keys());
+
+        assertEquals(18, snapshot.size());
+        assertEquals(8, index.size());
+    }
+
+    @Test
+    void emptyBatchChangesNothing() {
+        RecurrenceIndex index = index();
+
+        assertTrue(index.cancelAll(new ArrayList<>()).isEmpty());
+        assertEquals(18, index.size());
+    }
+}
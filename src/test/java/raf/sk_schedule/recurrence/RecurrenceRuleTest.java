@@ -0,0 +1,105 @@
+package raf.sk_schedule.recurrence;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.index.SlotKey;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.recurrence.RecurrenceRule.NO_DAY;
+
+class RecurrenceRuleTest {
+
+    private static RecurrenceRule rule(long firstDay, int period, int count) {
+        return RecurrenceRule.of(firstDay, period, count, "10:00", "11:00", "A1", new BitSet());
+    }
+
+    @Test
+    void rulesWithTheSamePeriodMeetOnlyInPhase() {
+        assertEquals(100, rule(100, 7, 10).firstCommonDay(rule(100, 7, 10), NO_DAY));
+        assertEquals(114, rule(100, 7, 10).firstCommonDay(rule(114, 7, 10), NO_DAY));
+        assertEquals(NO_DAY, rule(100, 7, 10).firstCommonDay(rule(101, 7, 10), NO_DAY));
+    }
+
+    @Test
+    void commonDaysExistOnlyWhenTheGcdDividesTheDistance() {
+        // gcd(4, 6) = 2, first days 3 apart never meet
+        assertEquals(NO_DAY, rule(0, 4, 100).firstCommonDay(rule(3, 6, 100), NO_DAY));
+        // 0, 4, 8 ... and 2, 8, 14 ... meet on 8 and then every lcm(4, 6) = 12 days
+        assertEquals(8, rule(0, 4, 100).firstCommonDay(rule(2, 6, 100), NO_DAY));
+        assertEquals(12, rule(0, 4, 100).commonPeriod(rule(2, 6, 100)));
+        assertEquals(20, rule(0, 4, 100).firstCommonDay(rule(2, 6, 100), 9));
+    }
+
+    @Test
+    void coprimePeriodsAlwaysMeet() {
+        // 5, 12, 19, 26, 33 ... and 2, 11, 20, 29 ... first meet on 47
+        assertEquals(47, rule(5, 7, 100).firstCommonDay(rule(2, 9, 100), NO_DAY));
+        assertEquals(63, rule(5, 7, 100).commonPeriod(rule(2, 9, 100)));
+    }
+
+    @Test
+    void commonDayHasToBeWithinBothRules() {
+        // the rules would meet on day 47, the first one ends on day 40
+        assertEquals(NO_DAY, rule(5, 7, 6).firstCommonDay(rule(2, 9, 100), NO_DAY));
+        assertEquals(NO_DAY, rule(0, 4, 100).firstCommonDay(rule(2, 6, 100), 400));
+        assertEquals(NO_DAY, rule(0, 7, 3).firstCommonDay(rule(100, 7, 3), NO_DAY));
+    }
+
+    @Test
+    void firstCommonDayMatchesEnumeration() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2_000; i++) {
+            RecurrenceRule a = rule(random.nextInt(60), 1 + random.nextInt(30), 1 + random.nextInt(40));
+            RecurrenceRule b = rule(random.nextInt(60), 1 + random.nextInt(30), 1 + random.nextInt(40));
+            long fromDay = random.nextBoolean() ? NO_DAY : random.nextInt(200);
+
+            long expected = NO_DAY;
+            for (int index = 0; index < a.getCount(); index++) {
+                long day = a.dayOf(index);
+                if (day >= fromDay && b.indexOn(day) >= 0) {
+                    expected = day;
+                    break;
+                }
+            }
+            assertEquals(expected, a.firstCommonDay(b, fromDay), a + " and " + b + " from " + fromDay);
+        }
+    }
+
+    @Test
+    void cancelledOccurrencesAreSkipped() {
+        BitSet cancelled = new BitSet();
+        cancelled.set(0);
+        cancelled.set(2);
+        RecurrenceRule rule = RecurrenceRule.of(100, 7, 4, "10:00", "11:00", "A1", cancelled);
+
+        assertEquals(2, rule.size());
+        assertEquals(-1, rule.indexOn(100));
+        assertEquals(1, rule.indexOn(107));
+        assertEquals(List.of(new SlotKey(107, 600, 660, "A1"), new SlotKey(121, 600, 660, "A1")), rule.keys());
+
+        BitSet more = new BitSet();
+        more.set(1);
+        more.set(3);
+        RecurrenceRule none = rule.withCancelled(more);
+        assertEquals(0, none.size());
+        assertTrue(none.keys().isEmpty());
+        assertEquals(2, rule.size(), "the original rule does not change");
+    }
+
+    @Test
+    void startingFromDropsTheEarlierOccurrences() {
+        BitSet cancelled = new BitSet();
+        cancelled.set(3);
+        RecurrenceRule rule = RecurrenceRule.of(100, 7, 5, "10:00", "11:00", "A1", cancelled);
+
+        RecurrenceRule trimmed = rule.startingFrom(110);
+        assertEquals(114, trimmed.getFirstDay());
+        assertEquals(3, trimmed.getCount());
+        assertEquals(2, trimmed.size());
+        assertEquals(-1, trimmed.indexOn(121));
+        assertNull(rule.startingFrom(200));
+    }
+}
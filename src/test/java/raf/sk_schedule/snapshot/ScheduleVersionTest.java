@@ -0,0 +1,196 @@
+package raf.sk_schedule.snapshot;
+
+import org.junit.jupiter.api.Test;
+import raf.sk_schedule.ScheduleSlotsManager;
+import raf.sk_schedule.exception.ScheduleException;
+import raf.sk_schedule.index.CompactSlotArchive;
+import raf.sk_schedule.index.PersistentSlotTree;
+import raf.sk_schedule.index.SlotKey;
+import raf.sk_schedule.journal.ScheduleMutationListener;
+import raf.sk_schedule.model.location_node.RoomProperties;
+import raf.sk_schedule.model.schedule_node.ScheduleSlot;
+import raf.sk_schedule.recurrence.RecurrenceIndex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static raf.sk_schedule.TestSlots.*;
+import static raf.sk_schedule.util.date_formater.DateTimeFormatter.formatDate;
+
+class ScheduleVersionTest {
+
+    private final RoomProperties a1 = room("A1");
+    private final RoomProperties b2 = room("B2");
+
+    @Test
+    void handlesOnOneVersionAreClosedIndependently() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1));
+
+        ScheduleVersion first = manager.openSnapshot();
+        ScheduleVersion second = manager.openSnapshot();
+        assertEquals(first.getVersion(), second.getVersion());
+
+        // a second close of the same handle must not release the other one
+        first.close();
+        first.close();
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        assertEquals(1, second.size());
+        assertThrows(ScheduleException.class, first::getWholeSchedule);
+
+        second.close();
+        assertThrows(ScheduleException.class, second::getWholeSchedule);
+    }
+
+    @Test
+    void lastClosedHandleReleasesTheVersion() {
+        VersionRegistry registry = new VersionRegistry();
+        ScheduleVersion first = registry.acquire(version -> emptyVersion(version));
+        ScheduleVersion second = registry.acquire(version -> fail("the open version is shared"));
+        assertEquals(1, registry.getOpenVersions());
+
+        first.close();
+        first.close();
+        assertEquals(1, registry.getOpenVersions());
+        second.close();
+        assertEquals(0, registry.getOpenVersions());
+
+        // a closed version is captured again instead of being reopened
+        try (ScheduleVersion third = registry.acquire(version -> emptyVersion(version))) {
+            assertFalse(third.isClosed());
+            assertEquals(1, registry.getOpenVersions());
+        }
+    }
+
+    @Test
+    void failedChangeDoesNotStartAVersion() {
+        VersionRegistry registry = new VersionRegistry();
+        registry.change(() -> null);
+        assertEquals(1, registry.getVersion());
+
+        assertThrows(ScheduleException.class, () -> registry.change(() -> {
+            throw new ScheduleException("rejected");
+        }));
+        assertEquals(1, registry.getVersion());
+
+        ScheduleSlotsManager manager = manager(a1);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1));
+        long version = manager.getScheduleVersion();
+        assertThrows(ScheduleException.class, () -> manager.deleteScheduleSlot(slot("2024-03-05", "09:00", "10:00", a1)));
+        assertEquals(version, manager.getScheduleVersion());
+    }
+
+    @Test
+    void movedSlotKeepsItsOldPlaceInAnOlderVersion() {
+        ScheduleSlotsManager manager = manager(a1, b2);
+        ScheduleSlot booked = slot("2024-03-04", "09:00", "10:00", a1);
+        manager.bookScheduleSlot(booked);
+
+        try (ScheduleVersion before = manager.openSnapshot()) {
+            manager.moveScheduleSlot(booked, "2024-03-05", "11:00", "12:00", b2);
+
+            ScheduleSlot old = before.getWholeSchedule().get(0);
+            assertEquals(new SlotKey(SlotKey.of(booked).getDay() - 1, 540, 600, "A1"), SlotKey.of(old));
+            assertSame(a1, old.getLocation());
+
+            // the booked instance itself is moved, it is still the one the schedule holds
+            assertEquals("11:00", booked.getStartTime());
+            assertSame(booked, manager.getScheduleSlot("2024-03-05", "11:00", "12:00", "B2"));
+            assertEquals("2024-03-05", formatDate(booked.getDate()));
+        }
+
+        try (ScheduleVersion after = manager.openSnapshot()) {
+            assertSame(booked, after.getWholeSchedule().get(0));
+        }
+        manager.deleteScheduleSlot(booked);
+        assertTrue(manager.getWholeSchedule().isEmpty());
+    }
+
+    @Test
+    void roomUpdateDoesNotRelinkTheSlotsOfAnOlderVersion() {
+        ScheduleSlotsManager manager = manager(a1);
+        manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1));
+        RoomProperties bigger = room("A1", 120, 10, true);
+
+        try (ScheduleVersion before = manager.openSnapshot()) {
+            manager.updateRoom("A1", bigger);
+
+            assertSame(a1, before.getWholeSchedule().get(0).getLocation());
+            assertSame(a1, before.getRoomByName("A1"));
+            assertSame(bigger, manager.getScheduleSlot("2024-03-04", "09:00", "10:00", "A1").getLocation());
+        }
+    }
+
+    @Test
+    void listenersDoNotHoldUpSnapshots() throws Exception {
+        ScheduleSlotsManager manager = manager(a1);
+        CountDownLatch listening = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        manager.addMutationListener(new BlockingListener(listening, release));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> booking = executor.submit(() -> manager.bookScheduleSlot(slot("2024-03-04", "09:00", "10:00", a1)));
+            assertTrue(listening.await(10, TimeUnit.SECONDS));
+
+            // the listener is still running, the booking it hears about is already visible
+            Future<Integer> snapshot = executor.submit(() -> {
+                try (ScheduleVersion version = manager.openSnapshot()) {
+                    return version.size();
+                }
+            });
+            assertEquals(1, snapshot.get(10, TimeUnit.SECONDS));
+
+            release.countDown();
+            assertTrue(booking.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static ScheduleVersion emptyVersion(long version) {
+        return new ScheduleVersion(version, -1, PersistentSlotTree.empty(), new RecurrenceIndex(), CompactSlotArchive.empty(), Collections.emptyMap());
+    }
+
+
+    private static class BlockingListener implements ScheduleMutationListener {
+
+        private final CountDownLatch listening;
+        private final CountDownLatch release;
+
+        BlockingListener(CountDownLatch listening, CountDownLatch release) {
+            this.listening = listening;
+            this.release = release;
+        }
+
+        @Override
+        public void onBooked(List<SlotKey> slots) {
+            listening.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onDeleted(List<SlotKey> slots) {
+        }
+
+        @Override
+        public void onMoved(SlotKey from, SlotKey to) {
+        }
+
+        @Override
+        public void onRoomDeleted(String roomName) {
+        }
+
+        @Override
+        public void onArchived(long untilDay) {
+        }
+    }
+}